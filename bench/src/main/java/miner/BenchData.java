@@ -0,0 +1,110 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.ItemDictionary;
+import entity.Itemset;
+import util.MiningConfig;
+import util.WPFI_Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dữ liệu và tham số dùng chung cho các benchmark.
+ *  - dataset: tên file trong thư mục dữ liệu (system property wpfi.data, mặc định ../src/data)
+ *  - profile: bộ tham số MSUP/T/ALPHA/MIN_W theo dataset ("default" = bộ dùng trong README,
+ *    "loose" = ngưỡng thấp hơn, nhiều ứng viên hơn)
+ * DB được load 1 lần cho mỗi JVM (JMH fork) và dùng lại giữa các benchmark.
+ */
+final class BenchData {
+
+    static final String DATA_DIR = System.getProperty("wpfi.data", "../src/data");
+
+    // dataset -> {default, loose}, mỗi bộ = {MSUP, T, ALPHA, MIN_AVG_WEIGHT}
+    private static final Map<String, double[][]> PROFILES = new HashMap<>();
+    static {
+        PROFILES.put("chess",      new double[][]{{1100, 0.8, 3, 8.5}, {900, 0.6, 3, 8.5}});
+        PROFILES.put("mushrooms",  new double[][]{{800, 0.8, 3, 5},   {600, 0.6, 3, 5}});
+        PROFILES.put("retail",     new double[][]{{300, 0.5, 0.6, 0},  {150, 0.4, 0.6, 0}});
+        PROFILES.put("kosarak10k", new double[][]{{100, 0.5, 0.6, 0},  {60, 0.4, 0.6, 0}});
+        PROFILES.put("kosarak25k", new double[][]{{250, 0.5, 0.6, 0},  {150, 0.4, 0.6, 0}});
+    }
+
+    private static final Map<String, UncertainDatabase> CACHE = new HashMap<>();
+
+    private BenchData() {}
+
+    static String path(String dataset) {
+        return new File(DATA_DIR, dataset + ".txt").getPath();
+    }
+
+    static synchronized UncertainDatabase load(String dataset) throws IOException {
+        UncertainDatabase db = CACHE.get(dataset);
+        if (db == null) {
+            db = new UncertainDatabase();
+            db.loadDatabase(path(dataset));
+            CACHE.put(dataset, db);
+        }
+        return db;
+    }
+
+    /** Config theo profile, MAX_K và THREADS giữ mặc định */
+    static MiningConfig config(String dataset, String profile) {
+        double[][] p = PROFILES.get(dataset);
+        if (p == null) throw new IllegalArgumentException("Dataset không có profile: " + dataset);
+        double[] s = p[profile.equals("loose") ? 1 : 0];
+        return MiningConfig.fromConstants().withMsup((int) s[0]).withT(s[1]).withAlpha(s[2]).withMinAvgWeight(s[3]);
+    }
+
+    /** μ của mọi 1-itemset (1 lần quét CSR) */
+    static double[] singleMus(UncertainDatabase db) {
+        double[] mu1 = new double[db.getDictionary().size()];
+        for (int pos = 0, end = db.occurrences(); pos < end; pos++) mu1[db.itemAt(pos)] += db.probAt(pos);
+        return mu1;
+    }
+
+    /**
+     * Mẫu ứng viên cố định: mọi cặp trong top item theo μ và mọi bộ ba trong top nhỏ hơn,
+     * giống các ứng viên mức 2-3 mà miner thực sự tính μ.
+     */
+    static Itemset[] sampleCandidates(UncertainDatabase db, int pairTop, int tripleTop) {
+        ItemDictionary dict = db.getDictionary();
+        double[] mu1 = singleMus(db);
+        Integer[] order = new Integer[mu1.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(mu1[b], mu1[a]));
+
+        int[] top = new int[Math.min(pairTop, order.length)];
+        for (int a = 0; a < top.length; a++) top[a] = order[a];
+        Arrays.sort(top);
+
+        List<Itemset> out = new ArrayList<>();
+        for (int a = 0; a < top.length; a++) {
+            for (int b = a + 1; b < top.length; b++) out.add(new Itemset(dict, top[a], top[b]));
+        }
+        int t = Math.min(tripleTop, top.length);
+        for (int a = 0; a < t; a++) {
+            for (int b = a + 1; b < t; b++) {
+                for (int c = b + 1; c < t; c++) out.add(new Itemset(dict, top[a], top[b], top[c]));
+            }
+        }
+        return out.toArray(new Itemset[0]);
+    }
+
+    /** μ̂ như trong mine(): Poisson tail nghịch đảo với maxW của universe */
+    static double muHat(UncertainDatabase db, int[] universe, MiningConfig config) {
+        double maxW = maxWeight(db, universe);
+        return WPFI_Metrics.solveMuHatPoisson(config.msup, config.t / maxW);
+    }
+
+    static double maxWeight(UncertainDatabase db, int[] universe) {
+        double maxW = 0.0;
+        for (int i : universe) maxW = Math.max(maxW, db.getDictionary().weight(i));
+        return (maxW > 0) ? maxW : 1.0;
+    }
+}
@@ -0,0 +1,83 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.ItemDictionary;
+import entity.Itemset;
+import org.openjdk.jmh.annotations.*;
+import util.MiningConfig;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * generateCandidatesWithPruning cho mức 2 (L1 × item của F1 + bộ lọc của mode),
+ * trạng thái đầu vào dựng lại đúng như mine() sau bước L1.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CandidateGenBench {
+
+    @Param({"chess", "mushrooms", "kosarak10k", "kosarak25k", "retail"})
+    public String dataset;
+
+    @Param({"default", "loose"})
+    public String profile;
+
+    @Param({"ALL", "FAST"})
+    public WPFI_Apriori.PruningMode mode;
+
+    private int[] f1;
+    private Set<Itemset> L1;
+    private WPFI_Apriori.SubsetFilter subsets;
+    private WPFI_Apriori.ItemOrder I0;
+    private Map<Itemset, Double> muMap;
+    private double[] mu1;
+    private double muHat;
+    private int n;
+    private WPFI_Apriori.ScoreCheck check;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        MiningConfig config = BenchData.config(dataset, profile);
+        UncertainDatabase db = BenchData.load(dataset);
+        ItemDictionary dict = db.getDictionary();
+
+        int[] universe = WPFI_Apriori.collectUniverse(db);
+        mu1 = BenchData.singleMus(db);
+        muHat = BenchData.muHat(db, universe, config);
+        n = db.size();
+
+        check = new WPFI_Apriori.ScoreCheck(dict, universe, BenchData.maxWeight(db, universe), null,
+                new WPFI_Apriori.MiningReport(), config);
+        if (mode == WPFI_Apriori.PruningMode.FAST) check.restrictTo(WPFI_Apriori.extendableItems(universe, mu1, check));
+
+        List<Integer> F1 = new ArrayList<>();
+        L1 = new LinkedHashSet<>();
+        muMap = new HashMap<>();
+        subsets = new WPFI_Apriori.SubsetFilter();
+        for (int i : universe) {
+            Itemset X = new Itemset(dict, i);
+            if (check.extendable(X, mu1[i])) {
+                F1.add(i);
+                muMap.put(X, mu1[i]);
+                subsets.add(X, LevelTable.EXTENDABLE);
+            }
+            if (check.isResult(X, mu1[i], 0.0)) L1.add(X);
+        }
+        for (Itemset X : L1) subsets.add(X, LevelTable.RESULT);
+        f1 = F1.stream().mapToInt(Integer::intValue).toArray();
+        if (mode == WPFI_Apriori.PruningMode.FAST) check.restrictTo(f1);
+        I0 = new WPFI_Apriori.ItemOrder(dict.size());
+        for (Itemset x : L1) I0.addAll(x);
+    }
+
+    @Benchmark
+    public Itemset[] level2() {
+        return WPFI_Apriori.generateCandidatesWithPruning(L1, f1, subsets, I0, muMap, mu1, muHat, n, mode, check, false);
+    }
+}
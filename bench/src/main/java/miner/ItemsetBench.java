@@ -0,0 +1,64 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.Itemset;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Các thao tác Itemset trên đường sinh ứng viên: unionWith (tạo Y từ A và item cuối của B),
+ * hashCode của itemset mới, và tra tập con Y.without(d) trong tập F (kiểm tra Apriori).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemsetBench {
+
+    @Param({"chess", "retail"})
+    public String dataset;
+
+    private Itemset[] pairs;
+    private int[] extra;
+    private Set<Itemset> pairSet;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        UncertainDatabase db = BenchData.load(dataset);
+        pairs = BenchData.sampleCandidates(db, 40, 0);
+        pairSet = new HashSet<>();
+        for (Itemset p : pairs) pairSet.add(p);
+        extra = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            // item ghép thêm: phần tử thứ 2 của cặp kế tiếp, bỏ qua nếu đã có trong cặp
+            Itemset next = pairs[(i + 1) % pairs.length];
+            extra[i] = pairs[i].contains(next.get(1)) ? -1 : next.get(1);
+        }
+    }
+
+    @Benchmark
+    public int unionWithHashCode() {
+        int h = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            if (extra[i] >= 0) h += pairs[i].unionWith(extra[i]).hashCode();
+        }
+        return h;
+    }
+
+    @Benchmark
+    public int subsetLookup() {
+        int hits = 0;
+        for (int i = 0; i < pairs.length; i++) {
+            if (extra[i] < 0) continue;
+            Itemset Y = pairs[i].unionWith(extra[i]);
+            for (int d = 0; d < Y.size(); d++) if (pairSet.contains(Y.without(d))) hits++;
+        }
+        return hits;
+    }
+}
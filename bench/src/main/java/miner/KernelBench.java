@@ -0,0 +1,73 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.Itemset;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProbKernels scalar so với vector (jdk.incubator.vector) qua TidIndex.computeMu / computeMoments
+ * trên cùng mẫu ứng viên như MuBench. chess / mushrooms: nhánh toàn item dày (denseMu),
+ * retail / kosarak: phần lớn gốc thưa + item dày (gatherMu) hoặc toàn thưa (không đổi).
+ * Fork chạy với --add-modules jdk.incubator.vector; nếu không nạp được, vector* đo lại scalar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class KernelBench {
+
+    @Param({"chess", "mushrooms", "kosarak10k", "retail"})
+    public String dataset;
+
+    private TidIndex index;
+    private Itemset[] cands;
+    private double[] vars;
+    private ProbKernels vector;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        UncertainDatabase db = BenchData.load(dataset);
+        index = TidIndex.build(db);
+        cands = BenchData.sampleCandidates(db, 40, 16);
+        vars = new double[cands.length];
+        vector = ProbKernels.load("vector");
+        System.out.println("\nkernel: " + vector.name() + ", candidates: " + cands.length);
+    }
+
+    @Benchmark
+    public double scalarMu() {
+        index.useKernels(ProbKernels.Scalar.INSTANCE);
+        double s = 0.0;
+        for (Itemset X : cands) s += index.computeMu(X);
+        return s;
+    }
+
+    @Benchmark
+    public double vectorMu() {
+        index.useKernels(vector);
+        double s = 0.0;
+        for (Itemset X : cands) s += index.computeMu(X);
+        return s;
+    }
+
+    @Benchmark
+    public double scalarMoments() {
+        index.useKernels(ProbKernels.Scalar.INSTANCE);
+        double s = 0.0;
+        for (int i = 0; i < cands.length; i++) s += index.computeMoments(cands[i], vars, i);
+        return s;
+    }
+
+    @Benchmark
+    public double vectorMoments() {
+        index.useKernels(vector);
+        double s = 0.0;
+        for (int i = 0; i < cands.length; i++) s += index.computeMoments(cands[i], vars, i);
+        return s;
+    }
+}
@@ -0,0 +1,30 @@
+package miner;
+
+import db.UncertainDatabase;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/** UncertainDatabase.loadDatabase (parse text + dựng CSR), mỗi lần gọi là 1 DB mới */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBench {
+
+    @Param({"chess", "mushrooms", "kosarak10k", "kosarak25k", "retail"})
+    public String dataset;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Benchmark
+    public UncertainDatabase loadDatabase() throws IOException {
+        UncertainDatabase db = new UncertainDatabase();
+        db.loadDatabase(BenchData.path(dataset), threads);
+        return db;
+    }
+}
@@ -0,0 +1,67 @@
+package miner;
+
+import db.UncertainDatabase;
+import org.openjdk.jmh.annotations.*;
+import util.MiningConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * mine() đầu-cuối cho từng PruningMode. Mỗi lần gọi ghi ra file tạm mới (xoá trước đó,
+ * để resume không bỏ qua việc ghi), log [INFO] của miner bị tắt trong lúc đo.
+ * NONE/WEIGHT_ONLY/MUHAT_ONLY với profile loose trên retail mất hàng chục giây mỗi lần.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MineBench {
+
+    @Param({"chess", "mushrooms", "kosarak10k", "kosarak25k", "retail"})
+    public String dataset;
+
+    @Param({"default", "loose"})
+    public String profile;
+
+    @Param({"NONE", "WEIGHT_ONLY", "MUHAT_ONLY", "APPROX_ONLY", "ALL", "FAST", "DEPTH_FIRST", "EXACT", "CLOSED", "MAXIMAL"})
+    public WPFI_Apriori.PruningMode mode;
+
+    private UncertainDatabase db;
+    private MiningConfig config;
+    private File out;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        config = BenchData.config(dataset, profile);
+        db = BenchData.load(dataset);
+        out = File.createTempFile("wpfi-bench-", ".txt");
+        out.deleteOnExit();
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Setup(Level.Iteration)
+    public void clearOutput() {
+        out.delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+        out.delete();
+    }
+
+    @Benchmark
+    public int mine() {
+        WPFI_Apriori miner = new WPFI_Apriori(db, mode, config);
+        miner.mine(out.getPath());
+        return miner.getLastReport().totalPatterns;
+    }
+}
@@ -0,0 +1,62 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.Itemset;
+import org.openjdk.jmh.annotations.*;
+import util.WPFI_Metrics;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * μ của cùng 1 mẫu ứng viên (cặp + bộ ba các item có μ lớn nhất): quét CSR cho từng ứng viên,
+ * 1 lần quét CSR cho cả mẫu qua CandidateTrie (gồm cả dựng cây) và TID-index.
+ * Kết quả theo thời gian cho cả mẫu (số ứng viên in ở setup).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MuBench {
+
+    @Param({"chess", "mushrooms", "kosarak10k", "kosarak25k", "retail"})
+    public String dataset;
+
+    private UncertainDatabase db;
+    private TidIndex index;
+    private Itemset[] cands;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        db = BenchData.load(dataset);
+        index = TidIndex.build(db);
+        cands = BenchData.sampleCandidates(db, 40, 16);
+    }
+
+    @Benchmark
+    public double csrComputeMu() {
+        double s = 0.0;
+        for (Itemset X : cands) s += WPFI_Metrics.computeMu(X, db);
+        return s;
+    }
+
+    @Benchmark
+    public double csrTrieBatchMu() {
+        CandidateTrie trie = CandidateTrie.build(cands, cands.length, db.getDictionary().size());
+        double[] mus = new double[cands.length];
+        int[] all = trie.split(1);
+        trie.count(db, 0, db.size(), all[0], all[1], mus, null);
+        double s = 0.0;
+        for (double mu : mus) s += mu;
+        return s;
+    }
+
+    @Benchmark
+    public double tidIndexComputeMu() {
+        double s = 0.0;
+        for (Itemset X : cands) s += index.computeMu(X);
+        return s;
+    }
+}
@@ -0,0 +1,42 @@
+package miner;
+
+import org.openjdk.jmh.annotations.*;
+import util.WPFI_Metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tail Poisson P(X >= msup): bản cộng CDF từ exp(-μ) (vòng lặp msup lần) so với bản ổn định
+ * cộng pmf từ msup ra xa. μ = ratio * msup (dưới / sát / trên ngưỡng).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TailBench {
+
+    @Param({"60", "300", "1100"})
+    public int msup;
+
+    @Param({"0.5", "1.0", "1.5"})
+    public double ratio;
+
+    private double mu;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        mu = ratio * msup;
+    }
+
+    @Benchmark
+    public double poissonTailAtLeast() {
+        return WPFI_Metrics.poissonTailAtLeast(msup, mu);
+    }
+
+    @Benchmark
+    public double poissonTailAtLeastStable() {
+        return WPFI_Metrics.poissonTailAtLeastStable(msup, mu);
+    }
+}
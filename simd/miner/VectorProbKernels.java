@@ -0,0 +1,179 @@
+package miner;
+
+import entity.Itemset;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * ProbKernels bằng Vector API (jdk.incubator.vector), độ rộng theo CPU (SPECIES_PREFERRED:
+ * 8 double với AVX-512, 4 với AVX2). Nạp qua ProbKernels.load("vector").
+ *  - denseMu / denseMoments: mỗi word 64 TID chia thành các khối L lane liền nhau, khối có bit
+ *    AND khác 0 thì nhân các cột theo lane và cộng vào accumulator theo lane.
+ *  - Accumulator nằm trong mảng (ACC), không phải biến vector mang qua vòng lặp: C2 của JDK 17 không
+ *    bỏ được việc box vector qua phi của vòng lặp (hàng chục MB cấp phát cho mỗi lần quét mẫu).
+ *  - gatherMu: L phần tử của TID-list gốc mỗi lần, cột item dày đọc bằng gather theo TID
+ *    (cột = 0 ở TID không chứa item nên không cần kiểm tra bit). Dừng sớm kiểm tra mỗi 8 khối.
+ * Tích của từng TID nhân theo đúng thứ tự như scalar; chỉ thứ tự cộng khác (theo lane rồi gộp).
+ */
+final class VectorProbKernels implements ProbKernels {
+
+    private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+    private static final int L = S.length();
+    private static final long LANES = (1L << L) - 1;   // L < 64
+    private static final int CHECK_EVERY = 8 * L;       // dừng sớm: kiểm tra sau mỗi 8 khối
+
+    // cột của các item khác base, dùng lại giữa các lần gọi trên cùng thread
+    private static final ThreadLocal<double[][]> OTHERS = ThreadLocal.withInitial(() -> new double[8][]);
+    // accumulator theo lane trong 1 mảng, các vùng cách nhau >= 1 cache line (load/store vector của 2 vùng
+    // chung 1 line làm chậm hơn 2 lần): Σp, Σp² (gather: Σ xác suất gốc đã duyệt), tích tạm, đuôi Σp²
+    private static final int SUM = 0, SQ = 2 * L, TMP = 4 * L, TAIL_SQ = 6 * L;
+    private static final ThreadLocal<double[]> ACC = ThreadLocal.withInitial(() -> new double[TAIL_SQ + 1]);
+
+    @Override
+    public String name() { return "vector" + L; }
+
+    /** cols của các item khác base theo thứ tự trong X (X.size() - 1 cột đầu) */
+    private static double[][] others(TidIndex index, Itemset X, int base) {
+        int k = X.size();
+        double[][] out = OTHERS.get();
+        if (out.length < k) {
+            out = new double[Math.max(k, out.length * 2)][];
+            OTHERS.set(out);
+        }
+        int c = 0;
+        for (int j = 0; j < k; j++) {
+            int it = X.get(j);
+            if (it != base) out[c++] = index.cols[it];
+        }
+        return out;
+    }
+
+    @Override
+    public double denseMu(TidIndex index, Itemset X, int base) {
+        return dense(index, X, base, null, 0);
+    }
+
+    @Override
+    public double denseMoments(TidIndex index, Itemset X, int base, double[] vars, int slot) {
+        return dense(index, X, base, vars, slot);
+    }
+
+    /** vars == null: chỉ μ */
+    private static double dense(TidIndex index, Itemset X, int base, double[] vars, int slot) {
+        double[][] cols = others(index, X, base);
+        int k = X.size(), nc = k - 1;
+        int n = index.n;
+        long[] baseBits = index.bits[base];
+        double[] baseCol = index.cols[base];
+        double[] acc = ACC.get();
+        Arrays.fill(acc, 0.0);
+        double[] sq = (vars != null) ? acc : null;
+
+        double mu = 0.0;                       // phần đuôi (khối vượt quá n)
+        for (int w = 0; w < baseBits.length; w++) {
+            long m = baseBits[w];
+            for (int j = 0; j < k && m != 0; j++) m &= index.bits[X.get(j)][w];
+            if (m == 0) continue;
+
+            int t0 = w << 6;
+            for (int off = 0; off < 64; off += L) {
+                long lanes = (m >>> off) & LANES;
+                if (lanes == 0) continue;
+                int t = t0 + off;
+                if (t + L <= n) block(baseCol, cols, nc, t, acc, sq != null);
+                else mu += tail(baseCol, cols, nc, t, lanes, acc);
+            }
+        }
+        mu += DoubleVector.fromArray(S, acc, SUM).reduceLanes(VectorOperators.ADD);
+        if (vars != null) {
+            double sumSq = DoubleVector.fromArray(S, acc, SQ).reduceLanes(VectorOperators.ADD) + acc[TAIL_SQ];
+            vars[slot] = Math.max(0.0, mu - sumSq);
+        }
+        return mu;
+    }
+
+    /** acc[SUM] += Π cột trên [t, t + L) (và acc[SQ] += tích² nếu moments) */
+    private static void block(double[] baseCol, double[][] cols, int nc, int t, double[] acc, boolean moments) {
+        DoubleVector p = DoubleVector.fromArray(S, baseCol, t);
+        if (nc >= 1) p = p.mul(DoubleVector.fromArray(S, cols[0], t));
+        if (nc >= 2) p = p.mul(DoubleVector.fromArray(S, cols[1], t));
+        if (nc >= 3) p = p.mul(DoubleVector.fromArray(S, cols[2], t));
+        if (nc >= 4) {
+            p.intoArray(acc, TMP);
+            for (int c = 3; c < nc; c++) {
+                DoubleVector.fromArray(S, acc, TMP).mul(DoubleVector.fromArray(S, cols[c], t)).intoArray(acc, TMP);
+            }
+            p = DoubleVector.fromArray(S, acc, TMP);
+        }
+        DoubleVector.fromArray(S, acc, SUM).add(p).intoArray(acc, SUM);
+        if (moments) DoubleVector.fromArray(S, acc, SQ).add(p.mul(p)).intoArray(acc, SQ);
+    }
+
+    /** Khối cuối không đủ L phần tử trước n: từng bit, Σp² cộng vào acc[TAIL_SQ] */
+    private static double tail(double[] baseCol, double[][] cols, int nc, int t, long lanes, double[] acc) {
+        double mu = 0.0;
+        while (lanes != 0) {
+            int tt = t + Long.numberOfTrailingZeros(lanes);
+            double prod = baseCol[tt];
+            for (int c = 0; c < nc; c++) prod *= cols[c][tt];
+            mu += prod;
+            acc[TAIL_SQ] += prod * prod;
+            lanes &= lanes - 1;
+        }
+        return mu;
+    }
+
+    @Override
+    public double gatherMu(TidIndex index, Itemset X, int base, double floor, double slack) {
+        double[][] cols = others(index, X, base);
+        int nc = X.size() - 1;
+        int[] baseTids = index.tids[base];
+        double[] basePs = index.probs[base];
+        int len = baseTids.length;
+        boolean bounded = floor > 0;
+        double total = index.sums[base];
+        double[] acc = ACC.get();
+        Arrays.fill(acc, 0.0);
+
+        int i = 0;
+        for (int upper = S.loopBound(len); i < upper; i += L) {
+            gatherBlock(basePs, baseTids, cols, nc, i, acc, bounded);
+            if (bounded && (i + L) % CHECK_EVERY == 0) {
+                double mu = DoubleVector.fromArray(S, acc, SUM).reduceLanes(VectorOperators.ADD);
+                double rest = total - DoubleVector.fromArray(S, acc, SQ).reduceLanes(VectorOperators.ADD);
+                if (mu + rest + slack < floor) return -1.0;
+            }
+        }
+        double mu = DoubleVector.fromArray(S, acc, SUM).reduceLanes(VectorOperators.ADD);
+        for (; i < len; i++) {
+            int tid = baseTids[i];
+            double prod = basePs[i];
+            for (int c = 0; c < nc; c++) prod *= cols[c][tid];
+            mu += prod;
+        }
+        return mu;
+    }
+
+    /** acc[SUM] += basePs[i, i + L) * Π cột tại baseTids[i, i + L) (gather), acc[SQ] += basePs nếu bounded */
+    private static void gatherBlock(double[] basePs, int[] baseTids, double[][] cols, int nc, int i, double[] acc,
+                                    boolean bounded) {
+        DoubleVector b = DoubleVector.fromArray(S, basePs, i);
+        if (bounded) DoubleVector.fromArray(S, acc, SQ).add(b).intoArray(acc, SQ);
+        DoubleVector p = b;
+        if (nc >= 1) p = p.mul(DoubleVector.fromArray(S, cols[0], 0, baseTids, i));
+        if (nc >= 2) p = p.mul(DoubleVector.fromArray(S, cols[1], 0, baseTids, i));
+        if (nc >= 3) p = p.mul(DoubleVector.fromArray(S, cols[2], 0, baseTids, i));
+        if (nc >= 4) {
+            p.intoArray(acc, TMP);
+            for (int c = 3; c < nc; c++) {
+                DoubleVector.fromArray(S, acc, TMP).mul(DoubleVector.fromArray(S, cols[c], 0, baseTids, i))
+                        .intoArray(acc, TMP);
+            }
+            p = DoubleVector.fromArray(S, acc, TMP);
+        }
+        DoubleVector.fromArray(S, acc, SUM).add(p).intoArray(acc, SUM);
+    }
+}
@@ -0,0 +1,206 @@
+package db;
+
+import entity.Item;
+import entity.ItemDictionary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Định dạng nhị phân của UncertainDatabase (little-endian), đọc bằng mmap:
+ * <pre>
+ *   header (80 byte):
+ *     magic "WPFIDB" 0 1 | int version | int rows | int items | int 0
+ *     long occurrences
+ *     long namesPos | long offsetsPos | long itemIdsPos | long probsPos
+ *     long weightsPos | long repProbsPos
+ *   weights  : double[items]      w(i) đã tính khi load text
+ *   repProbs : double[items]      p của lần xuất hiện đầu tiên (để in kết quả)
+ *   names    : (int len, byte[len] UTF-8) x items, theo thứ tự ID
+ *   offsets  : int[rows + 1]
+ *   itemIds  : int[occurrences]
+ *   probs    : double[occurrences] p(i,t) đã gán (có seed) khi load text
+ * </pre>
+ * Các section bắt đầu ở vị trí chia hết cho 8. Mỗi section phải < 2GB (giới hạn của 1 lần map).
+ * File được sinh từ DB đã load (text) nên p/w giống hệt loader text có seed.
+ */
+public final class BinaryDatabaseFormat {
+
+    private static final byte[] MAGIC = {'W', 'P', 'F', 'I', 'D', 'B', 0, 1};
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 80;
+
+    private BinaryDatabaseFormat() {}
+
+    /** Kết quả mmap: CSR view + từ điển */
+    static final class Mapped {
+        final CsrStore store;
+        final ItemDictionary dictionary;
+
+        Mapped(CsrStore store, ItemDictionary dictionary) {
+            this.store = store;
+            this.dictionary = dictionary;
+        }
+    }
+
+    /** Chuyển file text (hoặc id(p)) sang nhị phân, dùng đúng loader text có seed */
+    public static void convert(String textPath, String binPath) throws IOException {
+        UncertainDatabase db = new UncertainDatabase();
+        db.loadDatabase(textPath);
+        db.saveBinary(binPath);
+    }
+
+    public static boolean isBinary(File f) throws IOException {
+        if (f.length() < HEADER_BYTES) return false;
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer b = ByteBuffer.allocate(MAGIC.length);
+            while (b.hasRemaining() && ch.read(b) >= 0) { }
+            return Arrays.equals(b.array(), MAGIC);
+        }
+    }
+
+    static void write(CsrStore store, ItemDictionary dict, File out) throws IOException {
+        int rows = store.rows();
+        int items = dict.size();
+        long occ = store.occurrences();
+
+        try (FileChannel ch = FileChannel.open(out.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Sink s = new Sink(ch);
+            s.position(HEADER_BYTES);
+
+            long weightsPos = s.pos();
+            for (int id = 0; id < items; id++) s.putDouble(dict.weight(id));
+
+            long repProbsPos = s.pos();
+            for (int id = 0; id < items; id++) s.putDouble(dict.item(id).getProbability());
+
+            long namesPos = s.pos();
+            for (int id = 0; id < items; id++) {
+                byte[] name = dict.name(id).getBytes(StandardCharsets.UTF_8);
+                s.putInt(name.length);
+                s.put(name);
+            }
+            s.align8();
+
+            long offsetsPos = s.pos();
+            for (int r = 0; r <= rows; r++) s.putInt(store.offset(r));
+            s.align8();
+
+            long itemIdsPos = s.pos();
+            for (int pos = 0; pos < occ; pos++) s.putInt(store.item(pos));
+            s.align8();
+
+            long probsPos = s.pos();
+            for (int pos = 0; pos < occ; pos++) s.putDouble(store.prob(pos));
+            s.flush();
+
+            ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            h.put(MAGIC).putInt(VERSION).putInt(rows).putInt(items).putInt(0)
+             .putLong(occ)
+             .putLong(namesPos).putLong(offsetsPos).putLong(itemIdsPos).putLong(probsPos)
+             .putLong(weightsPos).putLong(repProbsPos);
+            h.flip();
+            ch.position(0);
+            while (h.hasRemaining()) ch.write(h);
+        }
+    }
+
+    static Mapped map(File f) throws IOException {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer h = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            h.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Không phải file WPFI nhị phân: " + f);
+            int version = h.getInt();
+            if (version != VERSION) throw new IOException("Phiên bản không hỗ trợ: " + version);
+
+            int rows = h.getInt();
+            int items = h.getInt();
+            h.getInt();
+            long occ = h.getLong();
+            long namesPos = h.getLong();
+            long offsetsPos = h.getLong();
+            long itemIdsPos = h.getLong();
+            long probsPos = h.getLong();
+            long weightsPos = h.getLong();
+            long repProbsPos = h.getLong();
+
+            // từ điển: cấp phát theo item (không theo dòng)
+            ByteBuffer w = section(ch, weightsPos, 8L * items);
+            ByteBuffer rp = section(ch, repProbsPos, 8L * items);
+            ByteBuffer nm = section(ch, namesPos, offsetsPos - namesPos);
+            List<Item> reps = new ArrayList<>(items);
+            for (int id = 0; id < items; id++) {
+                byte[] name = new byte[nm.getInt()];
+                nm.get(name);
+                reps.add(new Item(new String(name, StandardCharsets.UTF_8), rp.getDouble(), w.getDouble()));
+            }
+
+            CsrStore store = new CsrStore.Mapped(rows,
+                    section(ch, offsetsPos, 4L * (rows + 1)).asIntBuffer(),
+                    section(ch, itemIdsPos, 4L * occ).asIntBuffer(),
+                    section(ch, probsPos, 8L * occ).asDoubleBuffer());
+            return new Mapped(store, new ItemDictionary(reps));
+        }
+    }
+
+    private static ByteBuffer section(FileChannel ch, long pos, long bytes) throws IOException {
+        if (bytes > Integer.MAX_VALUE) throw new IOException("Section quá lớn để map 1 lần: " + bytes + " bytes");
+        MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, pos, bytes);
+        return b.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Ghi tuần tự qua 1 buffer tái sử dụng */
+    private static final class Sink {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long flushed;
+
+        Sink(FileChannel ch) { this.ch = ch; }
+
+        long pos() { return flushed + buf.position(); }
+
+        void position(long p) throws IOException {
+            flush();
+            ch.position(p);
+            flushed = p;
+        }
+
+        void putInt(int v) throws IOException { ensure(4); buf.putInt(v); }
+        void putDouble(double v) throws IOException { ensure(8); buf.putDouble(v); }
+
+        void put(byte[] b) throws IOException {
+            int off = 0;
+            while (off < b.length) {
+                ensure(1);
+                int len = Math.min(buf.remaining(), b.length - off);
+                buf.put(b, off, len);
+                off += len;
+            }
+        }
+
+        void align8() throws IOException {
+            while ((pos() & 7) != 0) { ensure(1); buf.put((byte) 0); }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) flushed += ch.write(buf);
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package db;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Nơi chứa 3 mảng CSR của UncertainDatabase:
+ *  - OnHeap : int[]/double[] dựng bởi loader text
+ *  - Mapped : view trực tiếp lên file nhị phân đã mmap (xem BinaryDatabaseFormat),
+ *             không chép dữ liệu, không cấp phát theo dòng
+ * Mỗi lần chạy thường chỉ dùng 1 loại nên lời gọi ảo được JIT inline.
+ */
+abstract class CsrStore {
+
+    abstract int rows();
+
+    /** offsets[row], với row trong [0, rows] */
+    abstract int offset(int row);
+
+    abstract int item(int pos);
+
+    abstract double prob(int pos);
+
+    int occurrences() { return offset(rows()); }
+
+    static final class OnHeap extends CsrStore {
+        private final int rows;
+        private final int[] offsets;
+        private final int[] itemIds;
+        private final double[] probs;
+
+        OnHeap(int rows, int[] offsets, int[] itemIds, double[] probs) {
+            this.rows = rows;
+            this.offsets = offsets;
+            this.itemIds = itemIds;
+            this.probs = probs;
+        }
+
+        @Override int rows() { return rows; }
+        @Override int offset(int row) { return offsets[row]; }
+        @Override int item(int pos) { return itemIds[pos]; }
+        @Override double prob(int pos) { return probs[pos]; }
+    }
+
+    static final class Mapped extends CsrStore {
+        private final int rows;
+        private final IntBuffer offsets;
+        private final IntBuffer itemIds;
+        private final DoubleBuffer probs;
+
+        Mapped(int rows, IntBuffer offsets, IntBuffer itemIds, DoubleBuffer probs) {
+            this.rows = rows;
+            this.offsets = offsets;
+            this.itemIds = itemIds;
+            this.probs = probs;
+        }
+
+        @Override int rows() { return rows; }
+        @Override int offset(int row) { return offsets.get(row); }
+        @Override int item(int pos) { return itemIds.get(pos); }
+        @Override double prob(int pos) { return probs.get(pos); }
+    }
+}
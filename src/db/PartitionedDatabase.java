@@ -0,0 +1,112 @@
+package db;
+
+import entity.ItemDictionary;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * DB đọc theo từng phần (các đoạn dòng liên tiếp) cho khai thác out-of-core: mỗi lúc chỉ 1 phần
+ * nằm trên heap, kích thước phần suy từ ngân sách bộ nhớ.
+ *  - File text: 1 lượt quét dựng từ điển toàn cục (xem TextDatabaseLoader.Parts), mỗi part(p)
+ *    parse lại đoạn file của phần đó. ID, p, w giống hệt loadDatabase trên cả file.
+ *  - File nhị phân (BinaryDatabaseFormat): mmap cả file (ngoài heap), phần = đoạn dòng của DB đã map.
+ */
+public final class PartitionedDatabase {
+
+    // heap ước lượng cho mỗi lần xuất hiện item của phần đang khai thác:
+    // CSR 12 byte + token khi parse 12 byte + TID-index 12 byte + buffer duyệt, dư cho dãy tăng gấp đôi
+    static final int HEAP_PER_OCCURRENCE = 96;
+    // token text ngắn nhất ("1 "): phần text theo byte không vượt quá số lần xuất hiện cho phép
+    private static final int MIN_TOKEN_BYTES = 2;
+
+    /** 1 phần: các dòng [fromRow, toRow) của db */
+    public static final class Part {
+        public final UncertainDatabase db;
+        public final int fromRow, toRow;
+
+        private Part(UncertainDatabase db, int fromRow, int toRow) {
+            this.db = db;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        public int rows() { return toRow - fromRow; }
+    }
+
+    private final ItemDictionary dictionary;
+    private final int rows;
+    private final long memoryBudgetBytes;
+    private final TextDatabaseLoader.Parts text;   // null: file nhị phân
+    private final UncertainDatabase mapped;        // file nhị phân đã mmap
+    private final int[] partStart;                 // file nhị phân: dòng đầu của mỗi phần (+ rows ở cuối)
+
+    private PartitionedDatabase(TextDatabaseLoader.Parts text, long memoryBudgetBytes) {
+        this.dictionary = text.dictionary;
+        this.rows = text.rows;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.text = text;
+        this.mapped = null;
+        this.partStart = null;
+    }
+
+    private PartitionedDatabase(UncertainDatabase mapped, int[] partStart, long memoryBudgetBytes) {
+        this.dictionary = mapped.getDictionary();
+        this.rows = mapped.size();
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.text = null;
+        this.mapped = mapped;
+        this.partStart = partStart;
+    }
+
+    /**
+     * @param memoryBudgetBytes heap dành cho 1 phần (CSR + chỉ mục khi khai thác), tối thiểu 1 dòng mỗi phần
+     */
+    public static PartitionedDatabase open(String dataPath, long memoryBudgetBytes) throws IOException {
+        File f = new File(dataPath);
+        if (!f.exists()) throw new FileNotFoundException("Không tìm thấy file: " + dataPath);
+        long maxOccurrences = Math.max(1, memoryBudgetBytes / HEAP_PER_OCCURRENCE);
+
+        if (!BinaryDatabaseFormat.isBinary(f)) {
+            return new PartitionedDatabase(TextDatabaseLoader.scanUncertain(f, maxOccurrences * MIN_TOKEN_BYTES),
+                    memoryBudgetBytes);
+        }
+
+        UncertainDatabase db = new UncertainDatabase();
+        db.loadDatabase(dataPath);
+        int n = db.size();
+        int[] starts = new int[n + 1];
+        int parts = 0;
+        for (int r = 0; r < n; ) {
+            starts[parts++] = r;
+            int from = db.rowStart(r);
+            r++;
+            while (r < n && db.rowEnd(r) - from <= maxOccurrences) r++;
+        }
+        starts[parts] = n;
+        return new PartitionedDatabase(db, Arrays.copyOf(starts, parts + 1), memoryBudgetBytes);
+    }
+
+    public ItemDictionary getDictionary() { return dictionary; }
+
+    /** Ngân sách bộ nhớ đã dùng để chia phần (byte) */
+    public long memoryBudget() { return memoryBudgetBytes; }
+
+    /** Tổng số transaction */
+    public int size() { return rows; }
+
+    public int partitions() {
+        return (text != null) ? text.count() : partStart.length - 1;
+    }
+
+    /** Đọc phần p (file text: parse lại đoạn file, mỗi lần gọi là 1 DB mới trên heap) */
+    public Part part(int p) throws IOException {
+        if (text == null) return new Part(mapped, partStart[p], partStart[p + 1]);
+        TextDatabaseLoader.Loaded l = text.load(p);
+        UncertainDatabase db = new UncertainDatabase();
+        db.setCsr(l.store, l.dictionary);
+        return new Part(db, 0, db.size());
+    }
+}
@@ -0,0 +1,734 @@
+package db;
+
+import entity.Item;
+import entity.ItemDictionary;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loader text 1 lượt, song song theo chunk (dùng cho UncertainDatabase và SPMFReader).
+ *  1) Chia file thành các chunk cắt ở đầu dòng; mỗi chunk được đọc 1 lần (FileChannel, theo vị trí)
+ *     và parse trực tiếp trên byte: token "23" / "23(0.65)" được tra trong từ điển cục bộ của chunk
+ *     theo byte, chỉ tạo String 1 lần cho mỗi item khác nhau của chunk.
+ *  2) Gộp freq cục bộ -> freq toàn cục, gán ID theo tên tăng dần, tính w(i).
+ *  3) Song song theo chunk: gán p(i,t), sắp từng dòng theo ID, ghi thẳng vào mảng CSR.
+ *
+ * Nhiễu của p vẫn là dãy java.util.Random(SEED) theo thứ tự token trong file như loader cũ:
+ * mỗi nextDouble = 2 bước LCG, nên chunk c nhảy thẳng tới trạng thái sau 2 * (số token không
+ * có p trước chunk c) bước (nhảy O(log n)). Kết quả giống hệt bản đọc tuần tự với mọi số thread.
+ */
+final class TextDatabaseLoader {
+
+    /** Kết quả load: CSR + từ điển */
+    static final class Loaded {
+        final CsrStore store;
+        final ItemDictionary dictionary;
+
+        Loaded(CsrStore store, ItemDictionary dictionary) {
+            this.store = store;
+            this.dictionary = dictionary;
+        }
+    }
+
+    // LCG của java.util.Random
+    private static final long MULT = 0x5DEECE66DL;
+    private static final long ADD = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    private static final int MIN_CHUNK = 1 << 20;
+    private static final int MAX_CHUNK = 16 << 20;
+    private static final int SCAN_WINDOW = 1 << 16;
+    private static final long MAX_PART = 1L << 30;   // 1 phần được đọc vào 1 byte[]
+
+    private final boolean spmf;        // true: dòng SPMF/FIMI "1 2 3", p/w cố định, tên "I" + id
+    private final double fixedProb;
+    private final double fixedWeight;
+    private final Charset cs = Charset.defaultCharset(); // giống FileReader cũ
+
+    private TextDatabaseLoader(boolean spmf, double fixedProb, double fixedWeight) {
+        this.spmf = spmf;
+        this.fixedProb = fixedProb;
+        this.fixedWeight = fixedWeight;
+    }
+
+    /** Định dạng của loadDatabase: token "id" hoặc "id(p)", p/w gán theo freq + nhiễu có seed */
+    static Loaded loadUncertain(File f, int threads) throws IOException {
+        return new TextDatabaseLoader(false, 0, 0).load(f, threads);
+    }
+
+    /** Định dạng SPMF: mỗi token là số nguyên, item "I" + id, p và w cố định */
+    static Loaded loadSpmf(File f, double prob, double weight, int threads) throws IOException {
+        if (prob < 0 || prob > 1) throw new IllegalArgumentException("prob phải nằm trong [0,1]");
+        return new TextDatabaseLoader(true, prob, weight).load(f, threads);
+    }
+
+    private Loaded load(File f, int threads) throws IOException {
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, ch.size() / Math.max(1, 4L * threads)));
+            long[] bounds = splitAtLines(ch, target);
+            Chunk[] chunks = new Chunk[bounds.length - 1];
+            for (int c = 0; c < chunks.length; c++) chunks[c] = new Chunk(bounds[c], bounds[c + 1]);
+
+            ForkJoinPool pool = (threads > 1 && chunks.length > 1)
+                    ? new ForkJoinPool(Math.min(threads, chunks.length)) : null;
+            try {
+                // 1) parse
+                forEach(pool, chunks, c -> c.parse(ch));
+
+                int rows = 0;
+                long tokens = 0;
+                for (Chunk c : chunks) {
+                    rows += c.rows;
+                    tokens += c.tokenCount;
+                }
+                if (rows == 0) {
+                    return new Loaded(new CsrStore.OnHeap(0, new int[]{0}, new int[0], new double[0]),
+                            new ItemDictionary(Collections.emptyList()));
+                }
+                if (tokens > Integer.MAX_VALUE - 8) throw new IOException("DB quá lớn cho CSR: " + tokens + " lần xuất hiện");
+
+                // 2) gộp freq, ID theo tên tăng dần
+                Map<String, Integer> freqByName = new HashMap<>();
+                for (Chunk c : chunks) {
+                    for (int l = 0; l < c.dict.size; l++) freqByName.merge(c.names[l], c.dict.freq[l], Integer::sum);
+                }
+                String[] names = freqByName.keySet().toArray(new String[0]);
+                Arrays.sort(names);
+                Map<String, Integer> idOf = new HashMap<>(names.length * 2);
+                for (int id = 0; id < names.length; id++) idOf.put(names[id], id);
+
+                int[] freq = new int[names.length];
+                int maxFreq = 1;
+                for (int id = 0; id < names.length; id++) {
+                    freq[id] = freqByName.get(names[id]);
+                    maxFreq = Math.max(maxFreq, freq[id]);
+                }
+                for (Chunk c : chunks) {
+                    c.toGlobal = new int[c.dict.size];
+                    for (int l = 0; l < c.dict.size; l++) c.toGlobal[l] = idOf.get(c.names[l]);
+                }
+
+                double[] weight = new double[names.length];
+                double[] baseP = new double[names.length];
+                itemParams(freq, maxFreq, weight, baseP);
+
+                // 3) gán p + sắp dòng, mỗi chunk ghi vào đoạn riêng của mảng CSR
+                int[] itemIds = new int[(int) tokens];
+                double[] probs = new double[(int) tokens];
+                long seed0 = (UncertainDatabase.SEED ^ MULT) & MASK;
+                int tokenBase = 0;
+                long noiseBefore = 0;
+                for (Chunk c : chunks) {
+                    c.tokenBase = tokenBase;
+                    c.noiseSeed = jump(seed0, 2 * noiseBefore);
+                    tokenBase += c.tokenCount;
+                    noiseBefore += c.noiseCount;
+                }
+                forEach(pool, chunks, c -> c.assign(itemIds, probs, baseP));
+
+                // dồn các chunk (item trùng trong dòng làm chunk ngắn lại) + offsets
+                int[] offsets = new int[rows + 1];
+                int size = 0, row = 0;
+                for (Chunk c : chunks) {
+                    if (c.tokenBase != size) {
+                        System.arraycopy(itemIds, c.tokenBase, itemIds, size, c.occurrences);
+                        System.arraycopy(probs, c.tokenBase, probs, size, c.occurrences);
+                    }
+                    for (int r = 0; r < c.rows; r++, row++) offsets[row + 1] = offsets[row] + c.rowLen[r];
+                    size += c.occurrences;
+                }
+
+                // p của lần xuất hiện đầu tiên (theo thứ tự file) -> Item đại diện
+                double[] firstProb = new double[names.length];
+                Arrays.fill(firstProb, Double.NaN);
+                for (Chunk c : chunks) {
+                    for (int l = 0; l < c.dict.size; l++) {
+                        int id = c.toGlobal[l];
+                        if (Double.isNaN(firstProb[id])) firstProb[id] = c.firstProb[l];
+                    }
+                }
+                List<Item> reps = new ArrayList<>(names.length);
+                for (int id = 0; id < names.length; id++) reps.add(new Item(names[id], firstProb[id], weight[id]));
+
+                return new Loaded(new CsrStore.OnHeap(rows, offsets,
+                        size == itemIds.length ? itemIds : Arrays.copyOf(itemIds, size),
+                        size == probs.length ? probs : Arrays.copyOf(probs, size)),
+                        new ItemDictionary(reps));
+            } finally {
+                if (pool != null) pool.shutdown();
+            }
+        }
+    }
+
+    /** w(i) = W_MIN + (W_MAX-W_MIN)*log(1+freq)/log(1+maxFreq); p nền = 0.20 + 0.75*sqrt(freq/maxFreq) */
+    private void itemParams(int[] freq, int maxFreq, double[] weight, double[] baseP) {
+        double denom = Math.log(1.0 + maxFreq);
+        if (denom <= 0) denom = 1.0;
+        for (int id = 0; id < freq.length; id++) {
+            int fi = freq[id];
+            weight[id] = spmf ? fixedWeight
+                    : UncertainDatabase.W_MIN + (UncertainDatabase.W_MAX - UncertainDatabase.W_MIN) * (Math.log(1.0 + fi) / denom);
+            double ratio = (double) fi / (double) maxFreq;
+            baseP[id] = 0.20 + 0.75 * Math.sqrt(ratio);
+        }
+    }
+
+    /* ĐỌC TỪNG PHẦN */
+
+    /**
+     * File text chia thành các phần (cắt ở đầu dòng, ~partBytes mỗi phần) để đọc lại từng phần với
+     * từ điển toàn cục, không bao giờ giữ cả file trong bộ nhớ. scanUncertain quét 1 lượt lấy freq
+     * (=> ID, w, p nền), số token cần nhiễu trước mỗi phần và p của lần xuất hiện đầu của mỗi item;
+     * load(part) parse lại đúng đoạn byte của phần. ID, p, w giống hệt loadUncertain trên cả file.
+     */
+    static final class Parts {
+        final ItemDictionary dictionary;
+        final int rows;
+        private final File file;
+        private final TextDatabaseLoader loader;
+        private final long[] bounds;
+        private final long[] noiseSeeds;   // trạng thái Random ở đầu mỗi phần
+        private final int[] partRows;
+        private final Map<String, Integer> idOf;
+        private final double[] baseP;
+
+        private Parts(ItemDictionary dictionary, int rows, File file, TextDatabaseLoader loader, long[] bounds,
+                      long[] noiseSeeds, int[] partRows, Map<String, Integer> idOf, double[] baseP) {
+            this.dictionary = dictionary;
+            this.rows = rows;
+            this.file = file;
+            this.loader = loader;
+            this.bounds = bounds;
+            this.noiseSeeds = noiseSeeds;
+            this.partRows = partRows;
+            this.idOf = idOf;
+            this.baseP = baseP;
+        }
+
+        int count() { return partRows.length; }
+
+        int rows(int part) { return partRows[part]; }
+
+        /** CSR của riêng phần part (dòng 0 = dòng đầu của phần), dùng chung dictionary */
+        Loaded load(int part) throws IOException {
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                Chunk c = loader.new Chunk(bounds[part], bounds[part + 1]);
+                c.parse(ch);
+                c.toGlobal = new int[c.dict.size];
+                for (int l = 0; l < c.dict.size; l++) c.toGlobal[l] = idOf.get(c.names[l]);
+                c.noiseSeed = noiseSeeds[part];
+
+                int[] itemIds = new int[c.tokenCount];
+                double[] probs = new double[c.tokenCount];
+                c.assign(itemIds, probs, baseP);
+                int[] offsets = new int[c.rows + 1];
+                for (int r = 0; r < c.rows; r++) offsets[r + 1] = offsets[r] + c.rowLen[r];
+                int size = c.occurrences;
+                return new Loaded(new CsrStore.OnHeap(c.rows, offsets,
+                        size == itemIds.length ? itemIds : Arrays.copyOf(itemIds, size),
+                        size == probs.length ? probs : Arrays.copyOf(probs, size)), dictionary);
+            }
+        }
+    }
+
+    /** Chia file định dạng loadDatabase thành các phần ~partBytes (1 lượt quét, tuần tự) */
+    static Parts scanUncertain(File f, long partBytes) throws IOException {
+        TextDatabaseLoader loader = new TextDatabaseLoader(false, 0, 0);
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            long[] bounds = splitAtLines(ch, Math.max(1, Math.min(partBytes, MAX_PART)));
+            int parts = bounds.length - 1;
+            long[] noiseSeeds = new long[parts];
+            int[] partRows = new int[parts];
+
+            // freq theo tên + lần xuất hiện đầu: {1 nếu có p trong file, p hoặc nhiễu}
+            Map<String, Integer> freqByName = new HashMap<>();
+            Map<String, double[]> first = new HashMap<>();
+            long seed0 = (UncertainDatabase.SEED ^ MULT) & MASK;
+            long noiseBefore = 0, rows = 0;
+            for (int part = 0; part < parts; part++) {
+                Chunk c = loader.new Chunk(bounds[part], bounds[part + 1]);
+                c.parse(ch);
+                noiseSeeds[part] = jump(seed0, 2 * noiseBefore);
+                c.noiseSeed = noiseSeeds[part];
+                c.firstOccurrences(first);
+                for (int l = 0; l < c.dict.size; l++) freqByName.merge(c.names[l], c.dict.freq[l], Integer::sum);
+                noiseBefore += c.noiseCount;
+                partRows[part] = c.rows;
+                rows += c.rows;
+            }
+            if (rows > Integer.MAX_VALUE - 8) throw new IOException("Quá nhiều dòng: " + rows);
+
+            String[] names = freqByName.keySet().toArray(new String[0]);
+            Arrays.sort(names);
+            Map<String, Integer> idOf = new HashMap<>(names.length * 2);
+            int[] freq = new int[names.length];
+            int maxFreq = 1;
+            for (int id = 0; id < names.length; id++) {
+                idOf.put(names[id], id);
+                freq[id] = freqByName.get(names[id]);
+                maxFreq = Math.max(maxFreq, freq[id]);
+            }
+            double[] weight = new double[names.length];
+            double[] baseP = new double[names.length];
+            loader.itemParams(freq, maxFreq, weight, baseP);
+
+            List<Item> reps = new ArrayList<>(names.length);
+            for (int id = 0; id < names.length; id++) {
+                double[] fp = first.get(names[id]);
+                double p = (fp[0] != 0) ? clamp(fp[1]) : clamp(baseP[id] + fp[1]);
+                reps.add(new Item(names[id], p, weight[id]));
+            }
+            return new Parts(new ItemDictionary(reps), (int) rows, f, loader, bounds, noiseSeeds, partRows,
+                    idOf, baseP);
+        }
+    }
+
+    /* CHUNKING */
+
+    /** Biên các chunk (~target byte): mỗi biên (trừ 0 và size) nằm ngay sau 1 ký tự xuống dòng */
+    private static long[] splitAtLines(FileChannel ch, long target) throws IOException {
+        long size = ch.size();
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer win = ByteBuffer.allocate(SCAN_WINDOW);
+        long prev = 0;
+        while (size - prev > target) {
+            long pos = prev + target, cut = size;
+            scan:
+            while (pos < size) {
+                win.clear();
+                int n = ch.read(win, pos);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    byte b = win.get(i);
+                    if (b == '\n' || b == '\r') { cut = pos + i + 1; break scan; }
+                }
+                pos += n;
+            }
+            if (cut >= size) break;
+            bounds.add(cut);
+            prev = cut;
+        }
+        bounds.add(size);
+
+        long[] out = new long[bounds.size()];
+        for (int i = 0; i < out.length; i++) out[i] = bounds.get(i);
+        return out;
+    }
+
+    private interface ChunkTask {
+        void run(Chunk c) throws IOException;
+    }
+
+    private static void forEach(ForkJoinPool pool, Chunk[] chunks, ChunkTask task) throws IOException {
+        if (pool == null) {
+            for (Chunk c : chunks) task.run(c);
+            return;
+        }
+        List<Callable<Void>> jobs = new ArrayList<>(chunks.length);
+        for (Chunk c : chunks) jobs.add(() -> { task.run(c); return null; });
+        try {
+            for (Future<Void> fu : pool.invokeAll(jobs)) fu.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Load bị ngắt", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /* RANDOM JUMP-AHEAD */
+
+    /** Trạng thái LCG của java.util.Random sau steps bước kể từ seed (đã scramble) */
+    static long jump(long seed, long steps) {
+        long mul = 1, add = 0;           // phép biến đổi tích luỹ x -> mul*x + add
+        long curMul = MULT, curAdd = ADD; // phép biến đổi 2^i bước
+        while (steps > 0) {
+            if ((steps & 1) != 0) {
+                mul = (mul * curMul) & MASK;
+                add = (add * curMul + curAdd) & MASK;
+            }
+            curAdd = ((curMul + 1) * curAdd) & MASK;
+            curMul = (curMul * curMul) & MASK;
+            steps >>>= 1;
+        }
+        return (seed * mul + add) & MASK;
+    }
+
+    private static long step(long seed) {
+        return (seed * MULT + ADD) & MASK;
+    }
+
+    /** Nhiễu của Random.nextDouble() = ((next(26) << 27) + next(27)) * 2^-53 từ 2 trạng thái liên tiếp */
+    private static double noise(long s1, long s2) {
+        long hi = (int) (s1 >>> (48 - 26));
+        long lo = (int) (s2 >>> (48 - 27));
+        double u = ((hi << 27) + lo) * 0x1.0p-53;
+        return (u * 2 - 1) * UncertainDatabase.NOISE;
+    }
+
+    /* CHUNK */
+
+    private final class Chunk {
+        final long start, end;
+
+        // sau parse
+        final LocalDict dict = new LocalDict();
+        String[] names;
+        int rows;
+        int[] rowEnd = new int[256];     // số token tích luỹ sau mỗi dòng
+        int tokenCount;
+        int[] tok = new int[1024];       // (localId << 1) | có p
+        double[] tokP = new double[1024];
+        long noiseCount;                 // số token không có p (mỗi token 1 nextDouble)
+
+        // sau gộp
+        int[] toGlobal;
+        int tokenBase;
+        long noiseSeed;
+
+        // sau assign
+        double[] firstProb;
+        int[] rowLen;
+        int occurrences;
+
+        private double parsed; // kết quả parseProb
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void parse(FileChannel ch) throws IOException {
+            byte[] buf = new byte[(int) (end - start)];
+            ByteBuffer bb = ByteBuffer.wrap(buf);
+            while (bb.hasRemaining()) {
+                if (ch.read(bb, start + bb.position()) < 0) throw new EOFException("File bị cắt khi đang đọc");
+            }
+
+            int len = buf.length, p = 0;
+            while (p < len) {
+                int ls = p;
+                while (p < len && buf[p] != '\n' && buf[p] != '\r') p++;
+                int le = p;
+                p++;
+
+                // trim như String.trim(): bỏ ký tự <= ' ' ở 2 đầu
+                while (ls < le && (buf[ls] & 0xFF) <= ' ') ls++;
+                while (le > ls && (buf[le - 1] & 0xFF) <= ' ') le--;
+                if (ls == le) continue;
+                if (!spmf && isHeader(buf, ls, le)) continue;
+
+                // split("\\s+") rồi trim từng token
+                int q = ls;
+                while (q < le) {
+                    while (q < le && isSpace(buf[q])) q++;
+                    int ts = q;
+                    while (q < le && !isSpace(buf[q])) q++;
+                    int te = q;
+                    while (ts < te && (buf[ts] & 0xFF) <= ' ') ts++;
+                    while (te > ts && (buf[te - 1] & 0xFF) <= ' ') te--;
+                    if (ts < te) addToken(buf, ts, te);
+                }
+                endRow();
+            }
+
+            names = new String[dict.size];
+            for (int l = 0; l < dict.size; l++) {
+                String name = new String(dict.pool, dict.keyOff[l], dict.keyLen[l], cs);
+                names[l] = spmf ? "I" + Integer.parseInt(name) : name;
+            }
+        }
+
+        private void addToken(byte[] buf, int ts, int te) {
+            int l = spmf ? -1 : indexOf(buf, ts, te, (byte) '(');
+            int r = spmf ? -1 : indexOf(buf, ts, te, (byte) ')');
+
+            if (l > ts && r > l) {
+                int is = ts, ie = l, ps = l + 1, pe = r;
+                while (ie > is && (buf[ie - 1] & 0xFF) <= ' ') ie--;
+                while (ps < pe && (buf[ps] & 0xFF) <= ' ') ps++;
+                while (pe > ps && (buf[pe - 1] & 0xFF) <= ' ') pe--;
+                if (parseProb(buf, ps, pe)) {
+                    push(dict.idOf(buf, is, ie, rows), true, parsed);
+                    return;
+                }
+                // parse lỗi: cả token là tên item (như parseToken cũ)
+            }
+            push(dict.idOf(buf, ts, te, rows), false, 0.0);
+        }
+
+        private void push(int local, boolean hasProb, double p) {
+            if (tokenCount == tok.length) {
+                tok = Arrays.copyOf(tok, tokenCount * 2);
+                tokP = Arrays.copyOf(tokP, tokenCount * 2);
+            }
+            tok[tokenCount] = (local << 1) | (hasProb ? 1 : 0);
+            tokP[tokenCount] = p;
+            tokenCount++;
+            if (!hasProb) noiseCount++;
+        }
+
+        private void endRow() {
+            if (rows == rowEnd.length) rowEnd = Arrays.copyOf(rowEnd, rows * 2);
+            rowEnd[rows++] = tokenCount;
+        }
+
+        /**
+         * Số thực không dấu mũ với <= 15 chữ số: m / 10^k là phép chia IEEE đúng làm tròn
+         * (m, 10^k đều biểu diễn chính xác) nên trùng Double.parseDouble. Còn lại dùng parseDouble.
+         */
+        private boolean parseProb(byte[] buf, int from, int to) {
+            int i = from;
+            boolean neg = false;
+            if (i < to && (buf[i] == '-' || buf[i] == '+')) neg = buf[i++] == '-';
+            long m = 0;
+            int digits = 0, frac = -1;
+            for (; i < to; i++) {
+                byte b = buf[i];
+                if (b >= '0' && b <= '9') {
+                    m = m * 10 + (b - '0');
+                    digits++;
+                    if (frac >= 0) frac++;
+                } else if (b == '.' && frac < 0) {
+                    frac = 0;
+                } else break;
+            }
+            if (i == to && digits > 0 && digits <= 15) {
+                double v = (frac > 0) ? m / POW10[frac] : (double) m;
+                parsed = neg ? -v : v;
+                return true;
+            }
+            try {
+                parsed = Double.parseDouble(new String(buf, from, to - from, cs));
+                return true;
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+        }
+
+        /**
+         * Ghi vào first (theo tên, nếu chưa có) lần xuất hiện đầu của mỗi item trong chunk:
+         * {1, p trong file} hoặc {0, nhiễu} (p = p nền + nhiễu, p nền cần freq toàn cục). Dùng noiseSeed.
+         */
+        void firstOccurrences(Map<String, double[]> first) {
+            boolean[] seen = new boolean[dict.size];
+            long seed = noiseSeed;
+            for (int t = 0; t < tokenCount; t++) {
+                int local = tok[t] >>> 1;
+                boolean hasProb = (tok[t] & 1) != 0;
+                double v = tokP[t];
+                if (!hasProb) {
+                    long s1 = step(seed);
+                    seed = step(s1);
+                    v = noise(s1, seed);
+                }
+                if (!seen[local]) {
+                    seen[local] = true;
+                    first.putIfAbsent(names[local], new double[]{hasProb ? 1 : 0, v});
+                }
+            }
+        }
+
+        /** Gán ID toàn cục + p cho từng token rồi sắp/khử trùng từng dòng, ghi vào [tokenBase, ...) */
+        void assign(int[] itemIds, double[] probs, double[] baseP) {
+            firstProb = new double[dict.size];
+            Arrays.fill(firstProb, Double.NaN);
+
+            long seed = noiseSeed;
+            for (int t = 0; t < tokenCount; t++) {
+                int local = tok[t] >>> 1;
+                int id = toGlobal[local];
+                double p;
+                if ((tok[t] & 1) != 0) {
+                    p = clamp(tokP[t]);
+                } else if (spmf) {
+                    p = fixedProb;
+                } else {
+                    long s1 = step(seed);
+                    seed = step(s1);
+                    p = clamp(baseP[id] + noise(s1, seed));
+                }
+                if (Double.isNaN(firstProb[local])) firstProb[local] = p;
+                itemIds[tokenBase + t] = id;
+                probs[tokenBase + t] = p;
+            }
+
+            // sắp từng dòng theo ID; item lặp lại giữ p của lần cuối (như CsrBuilder)
+            rowLen = new int[rows];
+            long[] keys = new long[16];
+            double[] rowP = new double[16];
+            int w = tokenBase, from = tokenBase;
+            for (int r = 0; r < rows; r++) {
+                int to = tokenBase + rowEnd[r];
+                int n = to - from;
+
+                boolean sorted = true;
+                for (int j = from + 1; j < to && sorted; j++) sorted = itemIds[j - 1] < itemIds[j];
+
+                if (sorted) {
+                    if (w != from) {
+                        System.arraycopy(itemIds, from, itemIds, w, n);
+                        System.arraycopy(probs, from, probs, w, n);
+                    }
+                    rowLen[r] = n;
+                } else {
+                    if (keys.length < n) {
+                        keys = new long[Math.max(n, keys.length * 2)];
+                        rowP = new double[keys.length];
+                    }
+                    for (int j = 0; j < n; j++) {
+                        keys[j] = ((long) itemIds[from + j] << 32) | j;
+                        rowP[j] = probs[from + j];
+                    }
+                    Arrays.sort(keys, 0, n);
+                    int out = w;
+                    for (int j = 0; j < n; j++) {
+                        int id = (int) (keys[j] >>> 32);
+                        double p = rowP[(int) keys[j]];
+                        if (out > w && itemIds[out - 1] == id) {
+                            probs[out - 1] = p; // cùng id: vị trí sau ghi đè
+                        } else {
+                            itemIds[out] = id;
+                            probs[out] = p;
+                            out++;
+                        }
+                    }
+                    rowLen[r] = out - w;
+                }
+                w += rowLen[r];
+                from = to;
+            }
+            occurrences = w - tokenBase;
+        }
+    }
+
+    private static final double[] POW10 = new double[16];
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10.0;
+    }
+
+    /**
+     * Từ điển cục bộ của 1 chunk: dãy byte -> ID cục bộ (open addressing),
+     * đếm freq theo số dòng chứa item.
+     */
+    private static final class LocalDict {
+        int size;
+        int[] table = new int[1024];     // ID + 1, 0 = trống
+        int[] hashes = new int[512];
+        int[] keyOff = new int[512];
+        int[] keyLen = new int[512];
+        int[] freq = new int[512];
+        int[] lastRow = new int[512];
+        byte[] pool = new byte[4096];
+        int poolSize;
+
+        int idOf(byte[] buf, int from, int to, int row) {
+            int h = 1;
+            for (int i = from; i < to; i++) h = 31 * h + buf[i];
+            h ^= h >>> 16;
+
+            int mask = table.length - 1;
+            for (int slot = h & mask; ; slot = (slot + 1) & mask) {
+                int e = table[slot];
+                if (e == 0) {
+                    int id = add(buf, from, to, h);
+                    table[slot] = id + 1;
+                    if (size * 2 > table.length) rehash();
+                    return count(id, row);
+                }
+                int id = e - 1;
+                if (hashes[id] == h && equalsKey(id, buf, from, to)) return count(id, row);
+            }
+        }
+
+        private int count(int id, int row) {
+            if (lastRow[id] != row + 1) {
+                lastRow[id] = row + 1;
+                freq[id]++;
+            }
+            return id;
+        }
+
+        private boolean equalsKey(int id, byte[] buf, int from, int to) {
+            if (keyLen[id] != to - from) return false;
+            int off = keyOff[id];
+            for (int i = from; i < to; i++) if (pool[off++] != buf[i]) return false;
+            return true;
+        }
+
+        private int add(byte[] buf, int from, int to, int h) {
+            int id = size++;
+            if (id == hashes.length) {
+                int cap = id * 2;
+                hashes = Arrays.copyOf(hashes, cap);
+                keyOff = Arrays.copyOf(keyOff, cap);
+                keyLen = Arrays.copyOf(keyLen, cap);
+                freq = Arrays.copyOf(freq, cap);
+                lastRow = Arrays.copyOf(lastRow, cap);
+            }
+            int len = to - from;
+            if (poolSize + len > pool.length) pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + len));
+            System.arraycopy(buf, from, pool, poolSize, len);
+            hashes[id] = h;
+            keyOff[id] = poolSize;
+            keyLen[id] = len;
+            poolSize += len;
+            return id;
+        }
+
+        private void rehash() {
+            int[] t = new int[table.length * 2];
+            int mask = t.length - 1;
+            for (int id = 0; id < size; id++) {
+                int slot = hashes[id] & mask;
+                while (t[slot] != 0) slot = (slot + 1) & mask;
+                t[slot] = id + 1;
+            }
+            table = t;
+        }
+    }
+
+    /* BYTE HELPERS */
+
+    /** Ký tự của regex \s */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++) if (buf[i] == b) return i;
+        return -1;
+    }
+
+    /** Dòng tiêu đề: bắt đầu bằng "Member", "Date" hoặc "@" */
+    private static boolean isHeader(byte[] buf, int from, int to) {
+        return buf[from] == '@' || startsWith(buf, from, to, "Member") || startsWith(buf, from, to, "Date");
+    }
+
+    private static boolean startsWith(byte[] buf, int from, int to, String prefix) {
+        if (to - from < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) if (buf[from + i] != prefix.charAt(i)) return false;
+        return true;
+    }
+
+    private static double clamp(double x) {
+        if (x < UncertainDatabase.P_MIN) return UncertainDatabase.P_MIN;
+        if (x > UncertainDatabase.P_MAX) return UncertainDatabase.P_MAX;
+        return x;
+    }
+}
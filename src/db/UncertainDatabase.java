@@ -1,6 +1,7 @@
 package db;
 
 import entity.Item;
+import entity.ItemDictionary;
 import entity.Transaction;
 
 import java.io.*;
@@ -8,184 +9,349 @@ import java.util.*;
 
 /**
  * UncertainDatabase:
- * - 2-pass để gán p (uncertainty) và w (weight) có quy luật dựa trên tần suất item
- * - Có seed để kết quả reproducible
+ * - Gán p (uncertainty) và w (weight) có quy luật dựa trên tần suất item
+ * - Có seed để kết quả reproducible (không phụ thuộc số thread load, xem TextDatabaseLoader)
  * - Hỗ trợ token dạng: "23" hoặc "23(0.65)"
+ * - Lưu dạng CSR (compressed sparse row) gồm 3 mảng phẳng:
+ *     offsets[r..r+1) : đoạn của transaction r trong itemIds/probs
+ *     itemIds         : ID item (xem ItemDictionary), tăng dần trong mỗi dòng
+ *     probs           : p(i,t) tương ứng
+ *   Danh sách Transaction chỉ được dựng (lazy) khi có code cần dạng đối tượng.
+ * - File nhị phân (BinaryDatabaseFormat) được mmap thẳng làm CSR, không parse.
  */
 public class UncertainDatabase {
 
-    private final List<Transaction> transactions = new ArrayList<>();
+    // Dạng đối tượng: null nếu DB được load thẳng vào CSR và chưa ai yêu cầu
+    private List<Transaction> transactions = new ArrayList<>();
+
+    // Dạng CSR (hợp lệ khi csrValid = true): mảng trên heap hoặc file mmap
+    private CsrStore store = new CsrStore.OnHeap(0, new int[]{0}, new int[0], new double[0]);
+    private boolean csrValid = true;
+
+    // Từ điển tên item -> ID nguyên (dựng khi load, hoặc lazy nếu add transaction thủ công)
+    private ItemDictionary dictionary;
 
     // Cấu hình gán p/w
-    private static final long SEED = 42L;
-    private static final double NOISE = 0.08; // biên độ nhiễu cho p (0.0 -> 0.15)
+    static final long SEED = 42L;
+    static final double NOISE = 0.08; // biên độ nhiễu cho p (0.0 -> 0.15)
 
     // p sẽ được clamp vào [P_MIN, P_MAX]
-    private static final double P_MIN = 0.05;
-    private static final double P_MAX = 0.99;
+    static final double P_MIN = 0.05;
+    static final double P_MAX = 0.99;
 
     // w sẽ nằm trong [W_MIN, W_MAX]
-    private static final double W_MIN = 1.0;
-    private static final double W_MAX = 10.0;
+    static final double W_MIN = 1.0;
+    static final double W_MAX = 10.0;
 
-    /** Thêm transaction */
+    /** Thêm transaction (chuyển DB về dạng đối tượng, CSR được dựng lại khi cần) */
     public void addTransaction(Transaction t) {
-        transactions.add(t);
+        getTransactions().add(t);
+        csrValid = false;
+        dictionary = null;
     }
 
-    /** Lấy danh sách transaction */
+    /** Lấy danh sách transaction (dựng từ CSR nếu cần, tốn bộ nhớ: mỗi lần xuất hiện 1 Item) */
     public List<Transaction> getTransactions() {
+        if (transactions == null) transactions = materializeTransactions();
         return transactions;
     }
 
+    /** Từ điển item -> ID dày đặc, ID theo thứ tự tên tăng dần */
+    public ItemDictionary getDictionary() {
+        if (dictionary == null) dictionary = ItemDictionary.fromTransactions(getTransactions());
+        return dictionary;
+    }
+
     /** Số lượng transaction */
     public int size() {
-        return transactions.size();
+        return csrValid ? store.rows() : transactions.size();
     }
 
-    public void loadDatabase(String dataPath) throws IOException {
-        transactions.clear();
+    /* CSR ACCESS */
 
-        File f = new File(dataPath);
-        if (!f.exists()) throw new FileNotFoundException("Không tìm thấy file: " + dataPath);
+    /** Vị trí bắt đầu của dòng row trong itemAt/probAt */
+    public int rowStart(int row) { ensureCsr(); return store.offset(row); }
 
-        // PASS 1: Đếm freq(item) theo số transaction chứa item
-        Map<String, Integer> freq = new HashMap<>();
-        int nTransactions = 0;
+    /** Vị trí kết thúc (không tính) của dòng row */
+    public int rowEnd(int row) { ensureCsr(); return store.offset(row + 1); }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (!isDataLine(line)) continue;
+    /** Tổng số lần xuất hiện item (= số phần tử của itemIds/probs) */
+    public int occurrences() { ensureCsr(); return store.occurrences(); }
 
-                String[] tokens = line.split("\\s+");
-                // dùng set để đảm bảo mỗi item chỉ tính 1 lần/transaction
-                Set<String> seen = new HashSet<>();
+    public int itemAt(int pos) { return store.item(pos); }
+    public double probAt(int pos) { return store.prob(pos); }
 
-                for (String token : tokens) {
-                    token = token.trim();
-                    if (token.isEmpty()) continue;
+    /**
+     * Tạo cursor duyệt CSR; một cursor có thể seek lại nhiều dòng, không cấp phát thêm.
+     * Cursor không còn hợp lệ sau khi DB bị thay đổi (addTransaction/loadDatabase).
+     */
+    public Cursor cursor() {
+        ensureCsr();
+        return new Cursor(this);
+    }
 
-                    ParsedToken pt = parseToken(token);
-                    if (pt.itemId.isEmpty()) continue;
+    /**
+     * Cursor duyệt các (item, p) của một dòng theo ID tăng dần:
+     * <pre>
+     *   c.seek(r);
+     *   while (c.next()) { c.item(); c.prob(); }
+     * </pre>
+     */
+    public static final class Cursor {
+        private final CsrStore store;
+        private int start, pos, end;
+
+        private Cursor(UncertainDatabase db) {
+            this.store = db.store;
+        }
 
-                    seen.add(pt.itemId);
-                }
+        public Cursor seek(int row) {
+            start = store.offset(row);
+            pos = start - 1;
+            end = store.offset(row + 1);
+            return this;
+        }
 
-                for (String id : seen) {
-                    freq.merge(id, 1, Integer::sum);
-                }
+        public boolean next() { return ++pos < end; }
 
-                nTransactions++;
-            }
+        public int item() { return store.item(pos); }
+        public double prob() { return store.prob(pos); }
+
+        /**
+         * Nhảy tới item có ID >= id trong dòng hiện tại.
+         * @return true nếu dừng đúng tại item id (có thể đọc prob())
+         */
+        public boolean advanceTo(int id) {
+            if (pos < start) pos = start;
+            while (pos < end && store.item(pos) < id) pos++;
+            return pos < end && store.item(pos) == id;
         }
+    }
+
+    /** Dựng CSR từ danh sách Transaction (khi DB được dựng bằng addTransaction) */
+    private void ensureCsr() {
+        if (csrValid) return;
+        ItemDictionary dict = getDictionary();
 
-        if (nTransactions == 0) return;
+        int total = 0;
+        for (Transaction t : transactions) total += t.getItems().size();
 
-        // maxFreq để chuẩn hoá
-        int maxFreq = freq.values().stream().mapToInt(Integer::intValue).max().orElse(1);
+        CsrBuilder b = new CsrBuilder(transactions.size(), total);
+        for (Transaction t : transactions) {
+            for (Map.Entry<Item, Double> e : t.getItemProbMap().entrySet()) {
+                b.add(dict.idOf(e.getKey()), e.getValue());
+            }
+            b.endRow();
+        }
+        b.finish(this);
+    }
 
-        // Tính weight map: w(i) = W_MIN + (W_MAX-W_MIN)*log(1+freq)/log(1+maxFreq)
-        Map<String, Double> weightMap = new HashMap<>();
-        double denom = Math.log(1.0 + maxFreq);
-        if (denom <= 0) denom = 1.0;
+    /** Dựng lại danh sách Transaction từ CSR */
+    private List<Transaction> materializeTransactions() {
+        ItemDictionary dict = getDictionary();
+        int rows = store.rows();
+        List<Transaction> list = new ArrayList<>(rows);
+        for (int r = 0; r < rows; r++) {
+            Transaction t = new Transaction();
+            for (int pos = store.offset(r); pos < store.offset(r + 1); pos++) {
+                int id = store.item(pos);
+                double p = store.prob(pos);
+                t.addItem(new Item(dict.name(id), p, dict.weight(id)), p);
+            }
+            list.add(t);
+        }
+        return list;
+    }
 
-        for (Map.Entry<String, Integer> e : freq.entrySet()) {
-            int fi = e.getValue();
-            double w = W_MIN + (W_MAX - W_MIN) * (Math.log(1.0 + fi) / denom);
-            weightMap.put(e.getKey(), w);
+    /**
+     * Gom từng dòng vào 3 mảng CSR. Mỗi dòng được sắp theo ID;
+     * item lặp lại trong 1 dòng giữ p của lần cuối (giống Map.put cũ).
+     */
+    private static final class CsrBuilder {
+        private int rows;
+        private int[] offsets;
+        private int[] itemIds;
+        private double[] probs;
+        private int size;
+
+        // dòng đang gom: key = (id << 32) | vị trí, để sort mà không cấp phát đối tượng
+        private long[] rowKeys = new long[64];
+        private double[] rowProbs = new double[64];
+        private int rowLen;
+
+        CsrBuilder(int expectedRows, int expectedOccurrences) {
+            offsets = new int[Math.max(1, expectedRows) + 1];
+            itemIds = new int[Math.max(16, expectedOccurrences)];
+            probs = new double[itemIds.length];
         }
 
-        // PASS 2: Tạo transactions + gán p,w
-        Random rng = new Random(SEED);
-
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (!isDataLine(line)) continue;
-
-                String[] tokens = line.split("\\s+");
-                Transaction t = new Transaction();
-
-                for (String token : tokens) {
-                    token = token.trim();
-                    if (token.isEmpty()) continue;
-
-                    ParsedToken pt = parseToken(token);
-                    if (pt.itemId.isEmpty()) continue;
-
-                    // Weight theo item (ổn định)
-                    double w = weightMap.getOrDefault(pt.itemId, W_MIN);
-
-                    // Prob:
-                    // - Nếu file có sẵn p dạng "id(p)" => dùng p đó
-                    // - Nếu không có => gán p theo độ phổ biến + noise nhỏ (có seed)
-                    double p;
-                    if (pt.hasProb) {
-                        p = clamp(pt.prob, P_MIN, P_MAX);
-                    } else {
-                        int fi = freq.getOrDefault(pt.itemId, 1);
-                        double ratio = (double) fi / (double) maxFreq;      // 0..1
-                        double base = 0.20 + 0.75 * Math.sqrt(ratio);        // ~[0.20..0.95]
-                        double noise = (rng.nextDouble() * 2 - 1) * NOISE;   // [-NOISE..+NOISE]
-                        p = clamp(base + noise, P_MIN, P_MAX);
-                    }
-
-                    Item item = new Item(pt.itemId, p, w);
-                    t.addItem(item, p);
-                }
+        void add(int id, double p) {
+            if (rowLen == rowKeys.length) {
+                rowKeys = Arrays.copyOf(rowKeys, rowLen * 2);
+                rowProbs = Arrays.copyOf(rowProbs, rowLen * 2);
+            }
+            rowKeys[rowLen] = ((long) id << 32) | rowLen;
+            rowProbs[rowLen] = p;
+            rowLen++;
+        }
 
-                // tránh add transaction rỗng
-                if (!t.getItems().isEmpty()) {
-                    transactions.add(t);
+        int rowLength() { return rowLen; }
+
+        void endRow() {
+            Arrays.sort(rowKeys, 0, rowLen);
+            if (size + rowLen > itemIds.length) {
+                int cap = Math.max(itemIds.length * 2, size + rowLen);
+                itemIds = Arrays.copyOf(itemIds, cap);
+                probs = Arrays.copyOf(probs, cap);
+            }
+            for (int j = 0; j < rowLen; j++) {
+                int id = (int) (rowKeys[j] >>> 32);
+                double p = rowProbs[(int) rowKeys[j]];
+                if (j > 0 && itemIds[size - 1] == id) {
+                    probs[size - 1] = p; // cùng id: vị trí sau ghi đè
+                } else {
+                    itemIds[size] = id;
+                    probs[size] = p;
+                    size++;
                 }
             }
+            rowLen = 0;
+
+            if (rows + 1 == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            offsets[++rows] = size;
+        }
+
+        void finish(UncertainDatabase db) {
+            db.store = new CsrStore.OnHeap(rows,
+                    Arrays.copyOf(offsets, rows + 1),
+                    (size == itemIds.length) ? itemIds : Arrays.copyOf(itemIds, size),
+                    (size == probs.length) ? probs : Arrays.copyOf(probs, size));
+            db.csrValid = true;
         }
     }
 
-    private static boolean isDataLine(String line) {
-        if (line == null) return false;
-        if (line.isEmpty()) return false;
-        if (line.startsWith("Member") || line.startsWith("Date")) return false;
-        if (line.startsWith("@")) return false;
-        return true;
+    /** Load DB từ file text (song song theo số CPU), hoặc mmap nếu là file nhị phân (BinaryDatabaseFormat) */
+    public void loadDatabase(String dataPath) throws IOException {
+        loadDatabase(dataPath, Runtime.getRuntime().availableProcessors());
     }
 
-    private static double clamp(double x, double lo, double hi) {
-        if (x < lo) return lo;
-        if (x > hi) return hi;
-        return x;
+    /**
+     * Như loadDatabase(dataPath), với số thread parse file text cho trước.
+     * Dữ liệu (p, w, ID) không phụ thuộc số thread.
+     */
+    public void loadDatabase(String dataPath, int threads) throws IOException {
+        File f = new File(dataPath);
+        if (!f.exists()) throw new FileNotFoundException("Không tìm thấy file: " + dataPath);
+
+        if (BinaryDatabaseFormat.isBinary(f)) {
+            BinaryDatabaseFormat.Mapped m = BinaryDatabaseFormat.map(f);
+            setCsr(m.store, m.dictionary);
+            return;
+        }
+
+        TextDatabaseLoader.Loaded l = TextDatabaseLoader.loadUncertain(f, threads);
+        setCsr(l.store, l.dictionary);
     }
 
-    private static class ParsedToken {
-        final String itemId;
-        final boolean hasProb;
-        final double prob;
+    /**
+     * Load file SPMF/FIMI (mỗi dòng = các ID nguyên): item "I" + id, p và w cố định.
+     */
+    public void loadSpmfDatabase(String dataPath, double prob, double weight) throws IOException {
+        File f = new File(dataPath);
+        if (!f.exists()) throw new FileNotFoundException("Không tìm thấy file: " + dataPath);
 
-        ParsedToken(String itemId, boolean hasProb, double prob) {
-            this.itemId = itemId;
-            this.hasProb = hasProb;
-            this.prob = prob;
+        TextDatabaseLoader.Loaded l = TextDatabaseLoader.loadSpmf(f, prob, weight,
+                Runtime.getRuntime().availableProcessors());
+        setCsr(l.store, l.dictionary);
+    }
+
+    void setCsr(CsrStore store, ItemDictionary dictionary) {
+        this.transactions = null;
+        this.store = store;
+        this.dictionary = dictionary;
+        this.csrValid = true;
+    }
+
+    /**
+     * DB mới = các dòng của base rồi tới các dòng của delta (p giữ nguyên như khi load từng phần).
+     * Item có trong base giữ trọng số/Item đại diện của base; item mới lấy từ delta.
+     */
+    public static UncertainDatabase concat(UncertainDatabase base, UncertainDatabase delta) {
+        base.ensureCsr();
+        delta.ensureCsr();
+        ItemDictionary bd = base.getDictionary(), dd = delta.getDictionary();
+
+        Map<String, Item> reps = new HashMap<>();
+        for (int id = 0; id < dd.size(); id++) reps.put(dd.name(id), dd.item(id));
+        for (int id = 0; id < bd.size(); id++) reps.put(bd.name(id), bd.item(id));
+        ItemDictionary dict = new ItemDictionary(reps.values());
+
+        // ID theo tên tăng dần ở cả 3 từ điển => ánh xạ đơn điệu, dòng vẫn tăng dần
+        int[] fromBase = new int[bd.size()], fromDelta = new int[dd.size()];
+        for (int id = 0; id < bd.size(); id++) fromBase[id] = dict.idOf(bd.name(id));
+        for (int id = 0; id < dd.size(); id++) fromDelta[id] = dict.idOf(dd.name(id));
+
+        int rows = base.size() + delta.size();
+        int occ = base.occurrences() + delta.occurrences();
+        int[] offsets = new int[rows + 1];
+        int[] itemIds = new int[occ];
+        double[] probs = new double[occ];
+        int row = 0, pos = 0;
+        for (UncertainDatabase part : new UncertainDatabase[]{base, delta}) {
+            int[] map = (part == base) ? fromBase : fromDelta;
+            CsrStore s = part.store;
+            for (int r = 0; r < s.rows(); r++) {
+                for (int p = s.offset(r); p < s.offset(r + 1); p++, pos++) {
+                    itemIds[pos] = map[s.item(p)];
+                    probs[pos] = s.prob(p);
+                }
+                offsets[++row] = pos;
+            }
         }
+
+        UncertainDatabase db = new UncertainDatabase();
+        db.setCsr(new CsrStore.OnHeap(rows, offsets, itemIds, probs), dict);
+        return db;
     }
 
-    private static ParsedToken parseToken(String token) {
-        int l = token.indexOf('(');
-        int r = token.indexOf(')');
+    /**
+     * DB mới gồm m dòng chọn đều ngẫu nhiên, không lặp (selection sampling, giữ thứ tự dòng),
+     * cùng từ điển và p như DB này. m >= size(): bản sao mọi dòng.
+     */
+    public UncertainDatabase sample(int m, long seed) {
+        ensureCsr();
+        int n = store.rows();
+        m = Math.max(0, Math.min(m, n));
+        Random rnd = new Random(seed);
+        int[] rows = new int[m];
+        int occ = 0;
+        for (int r = 0, k = 0; k < m; r++) {
+            if (rnd.nextInt(n - r) < m - k) {
+                rows[k++] = r;
+                occ += store.offset(r + 1) - store.offset(r);
+            }
+        }
 
-        if (l > 0 && r > l) {
-            String id = token.substring(0, l).trim();
-            String ps = token.substring(l + 1, r).trim();
-            try {
-                double p = Double.parseDouble(ps);
-                return new ParsedToken(id, true, p);
-            } catch (NumberFormatException ex) {
-                // Nếu parse lỗi, fallback coi như deterministic token
-                return new ParsedToken(token.trim(), false, 0.0);
+        int[] offsets = new int[m + 1];
+        int[] itemIds = new int[occ];
+        double[] probs = new double[occ];
+        int pos = 0;
+        for (int k = 0; k < m; k++) {
+            for (int p = store.offset(rows[k]), e = store.offset(rows[k] + 1); p < e; p++, pos++) {
+                itemIds[pos] = store.item(p);
+                probs[pos] = store.prob(p);
             }
+            offsets[k + 1] = pos;
         }
-        return new ParsedToken(token.trim(), false, 0.0);
+
+        UncertainDatabase db = new UncertainDatabase();
+        db.setCsr(new CsrStore.OnHeap(m, offsets, itemIds, probs), getDictionary());
+        return db;
+    }
+
+    /** Ghi DB hiện tại ra file nhị phân (xem BinaryDatabaseFormat) */
+    public void saveBinary(String binPath) throws IOException {
+        ensureCsr();
+        BinaryDatabaseFormat.write(store, getDictionary(), new File(binPath));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,61 @@
+package entity;
+
+import java.util.*;
+
+/**
+ * Từ điển ánh xạ tên item -> ID nguyên dày đặc (0..size-1).
+ *  - ID được gán theo thứ tự tên tăng dần, nên so sánh ID tương đương so sánh tên
+ *    (giữ nguyên thứ tự của TreeSet<Item> cũ khi xuất kết quả).
+ *  - Mỗi ID giữ một Item đại diện (lần xuất hiện đầu tiên trong DB) để in kết quả.
+ *  - Trọng số được chép ra mảng double[] để truy cập O(1) trong vòng lặp nóng.
+ */
+public class ItemDictionary {
+
+    private final Item[] items;
+    private final double[] weights;
+    private final Map<String, Integer> idByName;
+
+    /** @param items các item đại diện, mỗi tên xuất hiện đúng 1 lần */
+    public ItemDictionary(Collection<Item> items) {
+        this.items = items.toArray(new Item[0]);
+        Arrays.sort(this.items);
+
+        this.weights = new double[this.items.length];
+        this.idByName = new HashMap<>(this.items.length * 2);
+        for (int id = 0; id < this.items.length; id++) {
+            Item it = this.items[id];
+            if (idByName.put(it.getName(), id) != null)
+                throw new IllegalArgumentException("item trùng tên: " + it.getName());
+            weights[id] = it.getWeight();
+        }
+    }
+
+    /** Dựng từ điển từ các transaction: item đại diện = lần xuất hiện đầu tiên */
+    public static ItemDictionary fromTransactions(List<Transaction> transactions) {
+        Map<String, Item> first = new HashMap<>();
+        for (Transaction t : transactions) {
+            for (Item i : t.getItems()) first.putIfAbsent(i.getName(), i);
+        }
+        return new ItemDictionary(first.values());
+    }
+
+    public int size() { return items.length; }
+
+    /** ID của item theo tên, -1 nếu không có */
+    public int idOf(String name) {
+        Integer id = idByName.get(name);
+        return (id == null) ? -1 : id;
+    }
+
+    public int idOf(Item item) { return idOf(item.getName()); }
+
+    public Item item(int id) { return items[id]; }
+    public String name(int id) { return items[id].getName(); }
+    public double weight(int id) { return weights[id]; }
+
+    public double maxWeight() {
+        double m = 0.0;
+        for (double w : weights) m = Math.max(m, w);
+        return m;
+    }
+}
@@ -2,51 +2,120 @@ package entity;
 
 import java.util.*;
 
+/**
+ * Itemset mã hoá bằng mảng ID nguyên đã sắp xếp tăng dần (xem ItemDictionary).
+ *  - hashCode, tổng trọng số và trọng số nhỏ nhất được tính 1 lần khi tạo
+ *    => avgWeight()/minItemWeight()/hashCode() đều O(1).
+ *  - Các itemset so sánh với nhau phải dùng chung 1 từ điển.
+ */
 public class Itemset implements Comparable<Itemset> {
-    private final SortedSet<Item> items;
+    private final ItemDictionary dict;
+    private final int[] ids;
+    private final int hash;
+    private final double weightSum;
+    private final double minWeight;
 
-    public Itemset(Set<Item> items) {
-        this.items = new TreeSet<>(Objects.requireNonNull(items));
-        if (this.items.isEmpty()) throw new IllegalArgumentException("itemset must be non-empty");
+    public Itemset(ItemDictionary dict, int... ids) {
+        this(Objects.requireNonNull(dict), normalize(ids), true);
     }
 
-    public SortedSet<Item> getItems() { return Collections.unmodifiableSortedSet(items); }
-    public int size() { return items.size(); }
+    /** ids phải đã sắp xếp, không trùng (không sao chép) */
+    private Itemset(ItemDictionary dict, int[] ids, boolean trusted) {
+        this.dict = dict;
+        this.ids = ids;
 
-    public Itemset unionWith(Item i) {
-        SortedSet<Item> s = new TreeSet<>(items);
-        s.add(i);
-        return new Itemset(s);
+        // cộng theo thứ tự ID để kết quả avgWeight giống hệt cách duyệt TreeSet cũ
+        int h = 1;
+        double sum = 0, m = Double.POSITIVE_INFINITY;
+        for (int id : ids) {
+            h = 31 * h + id;
+            double w = dict.weight(id);
+            sum += w;
+            m = Math.min(m, w);
+        }
+        this.hash = h;
+        this.weightSum = sum;
+        this.minWeight = m;
     }
 
-    public double avgWeight() {
-        double sum = 0;
-        for (Item i : items) sum += i.getWeight();
-        return sum / items.size();
+    private static int[] normalize(int[] ids) {
+        if (ids == null || ids.length == 0) throw new IllegalArgumentException("itemset must be non-empty");
+        int[] s = ids.clone();
+        Arrays.sort(s);
+        for (int i = 1; i < s.length; i++) {
+            if (s[i] == s[i - 1]) throw new IllegalArgumentException("itemset có item trùng: " + s[i]);
+        }
+        return s;
     }
 
-    public double minItemWeight() {
-        double m = Double.POSITIVE_INFINITY;
-        for (Item i : items) m = Math.min(m, i.getWeight());
-        return m;
+    public ItemDictionary dictionary() { return dict; }
+    public int size() { return ids.length; }
+
+    /** ID thứ idx (theo thứ tự tăng dần) */
+    public int get(int idx) { return ids[idx]; }
+
+    /** Bản sao mảng ID */
+    public int[] toArray() { return ids.clone(); }
+
+    public boolean contains(int id) { return Arrays.binarySearch(ids, id) >= 0; }
+
+    /** Vị trí của id (theo thứ tự tăng dần), âm nếu không có */
+    public int indexOf(int id) { return Arrays.binarySearch(ids, id); }
+
+    /** Danh sách Item đại diện (chỉ dùng để hiển thị / tương thích) */
+    public List<Item> getItems() {
+        List<Item> list = new ArrayList<>(ids.length);
+        for (int id : ids) list.add(dict.item(id));
+        return list;
     }
 
-    @Override public String toString() { return items.toString(); }
+    public Itemset unionWith(int id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos >= 0) return this;
+        pos = -pos - 1;
+
+        int[] s = new int[ids.length + 1];
+        System.arraycopy(ids, 0, s, 0, pos);
+        s[pos] = id;
+        System.arraycopy(ids, pos, s, pos + 1, ids.length - pos);
+        return new Itemset(dict, s, true);
+    }
+
+    /** Itemset bỏ đi phần tử ở vị trí idx (dùng cho kiểm tra tập con (k-1)) */
+    public Itemset without(int idx) {
+        if (ids.length == 1) throw new IllegalStateException("itemset must be non-empty");
+        int[] s = new int[ids.length - 1];
+        System.arraycopy(ids, 0, s, 0, idx);
+        System.arraycopy(ids, idx + 1, s, idx, ids.length - idx - 1);
+        return new Itemset(dict, s, true);
+    }
+
+    public double weightSum() { return weightSum; }
+    public double avgWeight() { return weightSum / ids.length; }
+    public double minItemWeight() { return minWeight; }
+
+    @Override public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(dict.item(ids[i]));
+        }
+        return sb.append(']').toString();
+    }
 
     @Override public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Itemset)) return false;
         Itemset that = (Itemset) o;
-        return this.items.equals(that.items);
+        return this.hash == that.hash && Arrays.equals(this.ids, that.ids);
     }
 
-    @Override public int hashCode() { return items.hashCode(); }
+    @Override public int hashCode() { return hash; }
 
     @Override public int compareTo(Itemset o) {
-        Iterator<Item> a = this.items.iterator();
-        Iterator<Item> b = o.items.iterator();
-        while (a.hasNext() && b.hasNext()) {
-            int c = a.next().compareTo(b.next());
+        int n = Math.min(ids.length, o.ids.length);
+        for (int i = 0; i < n; i++) {
+            int c = Integer.compare(ids[i], o.ids[i]);
             if (c != 0) return c;
         }
         return Integer.compare(this.size(), o.size());
@@ -1,18 +1,48 @@
+import db.BinaryDatabaseFormat;
+import db.PartitionedDatabase;
 import db.UncertainDatabase;
+import miner.IncrementalState;
+import miner.MiningJobExecutor;
+import miner.NormalModel;
+import miner.ParameterSweep;
+import miner.PartitionedMiner;
+import miner.PoissonModel;
+import miner.ProbabilisticModel;
+import miner.ResultWriter;
+import miner.SampledMiner;
+import miner.StreamingWPFIMiner;
 import miner.WPFI_Apriori;
-import util.Constants;
+import util.MiningConfig;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 public class MainApp {
 
+    private static final String REPORT_CSV_HEADER = "mode,runtime_ms,peak_mem_mb,allocated_mb,gc_count,gc_pause_ms,"
+            + "total_candidates,total_evaluated,total_patterns,weight_hits,muhat_hits,approx_hits,ub_branch_hits,"
+            + "bound_pruned,subset_pruned,early_stopped,tid_cost_histogram,trie_nodes_visited\n";
+    private static final String LEVELS_CSV_HEADER = "mode,k,candidates,evaluated,patterns,gen_ms,eval_ms,write_ms\n";
+
     public static void main(String[] args) {
 
         try {
             /*
              * Cú pháp chạy:
              * 1) Chạy 1 mode theo kiểu cũ:
-             *    java -Xmx4g -cp bin MainApp [algo] [dataPath] [outputPath] [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT]
+             *    java -Xmx4g -cp bin MainApp [algo] [dataPath] [outputPath] [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT] [THREADS] [MODEL] [FORMAT]
              *    algo:
              *      0 = NONE (baseline)
              *      1 = WEIGHT_ONLY
@@ -20,13 +50,123 @@ public class MainApp {
              *      3 = APPROX_ONLY
              *      4 = ALL
              *      5 = FAST
+             *      6 = DEPTH_FIRST (duyệt sâu kiểu UEclat, mọi itemset có score >= T)
+             *      7 = EXACT (như 6 nhưng tail Poisson-binomial chính xác)
+             *      8 = CLOSED (như 6 nhưng chỉ xuất itemset closed: không có tập cha là kết quả cùng tập transaction)
+             *      9 = MAXIMAL (như 6 nhưng chỉ xuất itemset maximal: không có tập cha là kết quả)
+             *      8, 9 cắt nhánh theo các mẫu đã xuất, dùng được với MAX_K <= 0 (không giới hạn)
+             *    MODEL (tuỳ chọn): xấp xỉ tail cho score, không dùng với EXACT
+             *      default = Poisson dựng sẵn (như trước), poisson = Poisson ổn định số học,
+             *      normal = Normal/CLT từ μ, σ² (hợp khi n và MSUP lớn)
+             *    FORMAT (tuỳ chọn): text = như trước (mặc định), spmf = "a b #SUP: μ #SCORE: score",
+             *      binary = varint-delta + μ/score (đọc lại bằng lệnh dump)
              *
              * 2) Chạy experiment (chạy tất cả mode để so sánh):
-             *    java -Xmx4g -cp bin MainApp exp [dataPath] [outputDir] [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT]
+             *    java -Xmx4g -cp bin MainApp exp [dataPath] [outputDir] [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT] [THREADS]
+             *    Ngoài file kết quả mỗi mode, outputDir nhận report.json (MiningReport đầy đủ), report.csv
+             *    (1 dòng / mode) và report_levels.csv (1 dòng / mode / mức: thời gian sinh, tính μ, ghi).
+             *    Sự kiện JFR wpfi.MiningLevel: chạy kèm -XX:StartFlightRecording=filename=wpfi.jfr
+             *
+             * 3) Chuyển DB text sang định dạng nhị phân (mmap, không parse khi load):
+             *    java -cp bin MainApp convert [textPath] [binPath]
+             *    File nhị phân dùng được ở mọi chỗ nhận dataPath (tự nhận dạng theo magic).
+             *
+             * 4) Khai thác trên luồng với cửa sổ trượt (phát lại DB theo thứ tự dòng):
+             *    java -cp bin MainApp stream [dataPath] [outputPath] [WINDOW] [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT]
+             *    outputPath nhận các WPFI của cửa sổ cuối cùng.
+             *
+             * 5) Khai thác tăng dần sau khi nối thêm 1 batch transaction (mode FAST):
+             *    java -cp bin MainApp incr [basePath] [deltaPath|-] [outputPath] [statePath] [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT] [THREADS]
+             *    Lần đầu (chưa có state): khai thác basePath (+ delta) và ghi statePath + statePath.wdb (DB đã gộp).
+             *    Các lần sau: DB = statePath.wdb + delta, chỉ quét delta cho các itemset đã có μ trong state.
+             *
+             * 6) Chuyển file kết quả binary sang text kiểu SPMF:
+             *    java -cp bin MainApp dump [resultPath] [textPath]
+             *
+             * 7) Top-k (không cần chọn T): k itemset có score cao nhất, duyệt sâu trên TID-index:
+             *    java -cp bin MainApp topk [dataPath] [outputPath] [K] [MSUP] [MODEL] [FORMAT]
+             *    Ngưỡng cắt tỉa nâng dần theo score thứ k; kết quả theo score giảm dần.
+             *
+             * 8) DB lớn hơn heap (chia phần kiểu SON, kết quả giống hệt algo 6 trên cả DB):
+             *    java -Xmx512m -cp bin MainApp part [dataPath] [outputPath] [BUDGET_MB] [MSUP] [T] [FORMAT]
+             *    BUDGET_MB: heap cho 1 phần DB và cho tập ứng viên trên heap (mặc định 256), ứng viên vượt
+             *    ngân sách được ghi ra file tạm cạnh outputPath; file text hoặc nhị phân (convert).
              *
+             * 9) Khai thác xấp xỉ trên mẫu ngẫu nhiên, sai số (EPSILON, DELTA) cho μ / n:
+             *    java -cp bin MainApp sample [dataPath] [outputPath] [EPSILON] [DELTA] [MSUP] [T] [SEED] [COMPARE]
+             *    Itemset chưa phân loại chắc chắn được trên mẫu thì tính μ chính xác trên cả DB.
+             *    COMPARE (mặc định 1): chạy thêm FAST để báo speedup; 0 = bỏ qua.
+             *
+             * 10) Quét lưới tham số (μ tính 1 lần ở bộ lỏng nhất, các bộ khác lọc lại trên lattice):
+             *    java -Xmx4g -cp bin MainApp sweep [dataPath] [outputDir] [MSUPs] [Ts] [ALPHAs] [MIN_AVG_WEIGHTs] [ALGOs]
+             *    Mỗi tham số là danh sách cách nhau bởi dấu phẩy (vd 900,1000,1100); ALGOs theo số algo ở (1),
+             *    mặc định 0,1,2,3,4,5,6,8,9 (7 = EXACT chạy thật cho từng bộ). outputDir nhận report.csv và
+             *    report_levels.csv như exp, thêm các cột msup,t,alpha,min_avg_weight ở đầu.
+             *
+             * 11) Chạy nhiều job độc lập cùng lúc (mỗi job có tham số riêng, DB / TID-index dùng chung):
+             *    java -Xmx4g -cp bin MainApp jobs [outputDir] [PARALLEL] [JOB]...
+             *    JOB = dataPath,algo[,MSUP[,T[,ALPHA[,MIN_AVG_WEIGHT]]]] (thiếu thì lấy mặc định của Constants);
+             *    kết quả job i ở outputDir/job<i>_<MODE>.txt, outputDir nhận report.csv và report_levels.csv
+             *    (peak heap / GC chỉ đo được cho cả tiến trình: cột của job là -1, số chung in cuối cùng).
+             *
+             * Resume: mode 0-5 ghi checkpoint outputPath.ckpt sau mỗi mức; chạy lại đúng lệnh cũ sau khi bị dừng
+             * sẽ chạy tiếp từ mức kế tiếp (checkpoint bị xoá khi chạy xong, tham số khác thì chạy lại từ đầu).
              * Note: outputDir là thư mục, mỗi mode sẽ sinh 1 file riêng.
+             * THREADS (tuỳ chọn, mặc định 1): số thread tính μ song song cho mỗi mức. parallelism_by_k trong
+             * report = CPU time / thời gian thực của bước tính μ (số thread bận trung bình, không phải speedup).
              */
 
+            if (args.length >= 1 && args[0].equalsIgnoreCase("convert")) {
+                String textPath = (args.length >= 2) ? args[1] : "src/data/fruithut_original.txt";
+                String binPath = (args.length >= 3) ? args[2] : textPath + ".wdb";
+                ensureParentFolder(binPath);
+                long t0 = System.currentTimeMillis();
+                BinaryDatabaseFormat.convert(textPath, binPath);
+                System.out.println("Converted " + textPath + " -> " + binPath
+                        + " (" + (System.currentTimeMillis() - t0) + " ms)");
+                return;
+            }
+
+            if (args.length >= 1 && args[0].equalsIgnoreCase("dump")) {
+                runDump(args);
+                return;
+            }
+
+            if (args.length >= 1 && args[0].equalsIgnoreCase("topk")) {
+                runTopK(args);
+                return;
+            }
+
+            if (args.length >= 1 && args[0].equalsIgnoreCase("part")) {
+                runPartitioned(args);
+                return;
+            }
+
+            if (args.length >= 1 && args[0].equalsIgnoreCase("sample")) {
+                runSampled(args);
+                return;
+            }
+
+            if (args.length >= 1 && args[0].equalsIgnoreCase("jobs")) {
+                runJobs(args);
+                return;
+            }
+
+            if (args.length >= 1 && args[0].equalsIgnoreCase("sweep")) {
+                runSweep(args);
+                return;
+            }
+
+            if (args.length >= 1 && args[0].equalsIgnoreCase("stream")) {
+                runStream(args);
+                return;
+            }
+
+            if (args.length >= 1 && args[0].equalsIgnoreCase("incr")) {
+                runIncremental(args);
+                return;
+            }
+
             boolean isExperiment = (args.length >= 1 && args[0].equalsIgnoreCase("exp"));
 
             String dataPath;
@@ -49,7 +189,7 @@ public class MainApp {
                 WPFI_Apriori.PruningMode mode = mapAlgoToMode(algo);
 
                 // set params
-                applyParams(args, argOffset);
+                MiningConfig config = parseConfig(args, argOffset);
 
                 // tạo folder output
                 ensureParentFolder(outputBase);
@@ -67,23 +207,42 @@ public class MainApp {
                 System.out.println("Bat dau khai thac WPFI...");
                 System.out.println("Mode: " + mode);
                 System.out.println("Output: " + outputBase);
-                System.out.println("MSUP=" + Constants.MSUP + " | T=" + Constants.T + " | ALPHA=" + Constants.ALPHA + " | MIN_W=" + Constants.MIN_AVG_WEIGHT + " | MAX_K=" + Constants.MAX_K);
+                System.out.println(config);
 
-                WPFI_Apriori miner = new WPFI_Apriori(db, mode);
+                WPFI_Apriori miner = new WPFI_Apriori(db, mode, config);
+                String modelName = (args.length >= argOffset + 6) ? args[argOffset + 5] : "default";
+                miner.setModel(modelFor(modelName));
+                if (!modelName.equalsIgnoreCase("default")) System.out.println("Model: " + modelName);
+                if (args.length >= argOffset + 7) {
+                    miner.setOutputFormat(ResultWriter.Format.valueOf(args[argOffset + 6].toUpperCase()));
+                    System.out.println("Format: " + args[argOffset + 6]);
+                }
                 miner.mine(outputBase);
 
                 // report
                 WPFI_Apriori.MiningReport r = miner.getLastReport();
                 System.out.println("\n[REPORT] " + mode);
                 System.out.println("runtime_ms=" + r.runtimeMs + ", peak_mem_mb=" + r.peakMemoryMB + ", total_candidates=" + r.totalCandidates + ", total_patterns=" + r.totalPatterns);
+                System.out.println("candidates_by_k=" + r.candidatesByK + ", evaluated_by_k=" + r.evaluatedByK);
                 System.out.println("patterns_by_k=" + r.patternsByK);
+                System.out.println("eval_ms_by_k=" + r.evalMsByK + ", parallelism_by_k(threads=" + r.threads + ")=" + formatParallelism(r.parallelismByK));
+                System.out.println("bound_pruned=" + r.boundPruned + ", branch_pruned=" + r.branchPruned
+                        + ", subset_pruned=" + r.subsetPruned + ", early_stopped=" + r.earlyStopped);
+                System.out.println("subset_table_entries=" + r.subsetTableEntries + ", subset_memo_skipped=" + r.subsetMemoSkipped);
+                if (r.resumedLevel > 0) System.out.println("resumed_after_level=" + r.resumedLevel);
+                System.out.println("gen_ms_by_k=" + r.genMsByK + ", write_ms_by_k=" + r.writeMsByK);
+                System.out.println("allocated_mb=" + r.allocatedBytes / (1024 * 1024) + ", gc_count=" + r.gcCount + ", gc_pause_ms=" + r.gcPauseMs);
+                if (mode == WPFI_Apriori.PruningMode.EXACT) {
+                    System.out.println("accepted_by_bound=" + r.acceptedByBoundK + ", rejected_by_bound=" + r.rejectedByBoundK
+                            + ", exact_computed=" + r.exactComputedByK);
+                }
                 System.out.println("\nFINISHED");
                 return;
             }
 
             // ========== EXPERIMENT MODE ==========
             // set params cho experiment
-            applyParams(args, argOffset);
+            MiningConfig config = parseConfig(args, argOffset);
 
             // đảm bảo output dir tồn tại
             ensureDir(outputBase);
@@ -96,7 +255,7 @@ public class MainApp {
             System.out.println("Dataset : " + dataPath);
             System.out.println("Transactions : " + db.size());
             System.out.println("OutputDir : " + outputBase);
-            System.out.println("MSUP=" + Constants.MSUP + " | T=" + Constants.T + " | ALPHA=" + Constants.ALPHA + " | MIN_W=" + Constants.MIN_AVG_WEIGHT + " | MAX_K=" + Constants.MAX_K);
+            System.out.println(config);
             System.out.println("====================================\n");
 
             WPFI_Apriori.PruningMode[] modes = new WPFI_Apriori.PruningMode[]{
@@ -105,21 +264,31 @@ public class MainApp {
                     WPFI_Apriori.PruningMode.MUHAT_ONLY,
                     WPFI_Apriori.PruningMode.APPROX_ONLY,
                     WPFI_Apriori.PruningMode.ALL,
-                    WPFI_Apriori.PruningMode.FAST
+                    WPFI_Apriori.PruningMode.FAST,
+                    WPFI_Apriori.PruningMode.DEPTH_FIRST,
+                    WPFI_Apriori.PruningMode.EXACT,
+                    WPFI_Apriori.PruningMode.CLOSED,
+                    WPFI_Apriori.PruningMode.MAXIMAL
             };
 
             System.out.println("mode,runtime_ms,peak_mem_mb,total_candidates,total_patterns,patterns_by_k,output_file");
 
+            StringBuilder json = new StringBuilder("{\n");
+            StringBuilder csv = new StringBuilder(REPORT_CSV_HEADER);
+            StringBuilder levels = new StringBuilder(LEVELS_CSV_HEADER);
+
             for (WPFI_Apriori.PruningMode m : modes) {
                 String outFile = outputBase + File.separator + ("result_" + m.name() + ".txt");
                 ensureParentFolder(outFile);
 
                 System.out.println("[RUN] " + m + " -> " + outFile);
 
-                WPFI_Apriori miner = new WPFI_Apriori(db, m);
+                WPFI_Apriori miner = new WPFI_Apriori(db, m, config);
+                miner.setInstrumentation(true);
                 miner.mine(outFile);
 
                 WPFI_Apriori.MiningReport r = miner.getLastReport();
+                appendReport(m.name(), r, json, csv, levels);
                 System.out.println(
                         m.name() + "," +
                                 r.runtimeMs + "," +
@@ -131,6 +300,12 @@ public class MainApp {
                 );
             }
 
+            json.setLength(json.length() - 2); // bỏ ",\n" cuối
+            json.append("\n}\n");
+            writeText(outputBase + File.separator + "report.json", json);
+            writeText(outputBase + File.separator + "report.csv", csv);
+            writeText(outputBase + File.separator + "report_levels.csv", levels);
+
             System.out.println("\nFINISHED EXPERIMENT");
 
         } catch (Exception e) {
@@ -139,6 +314,99 @@ public class MainApp {
         }
     }
 
+    private static void runStream(String[] args) throws IOException {
+        // stream [dataPath] [outputPath] [WINDOW] [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT]
+        String dataPath = (args.length >= 2) ? args[1] : "src/data/fruithut_original.txt";
+        String outputPath = (args.length >= 3) ? args[2] : "src/out/stream.txt";
+        int windowSize = (args.length >= 4) ? Integer.parseInt(args[3]) : 10000;
+        MiningConfig config = parseConfig(args, 4);
+        ensureParentFolder(outputPath);
+
+        UncertainDatabase db = new UncertainDatabase();
+        db.loadDatabase(dataPath);
+        System.out.println("Dataset : " + dataPath + " | Transactions : " + db.size() + " | WINDOW=" + windowSize);
+        System.out.println("MSUP=" + config.msup + " | T=" + config.t + " | MAX_K=" + config.maxK);
+
+        StreamingWPFIMiner miner = StreamingWPFIMiner.countWindow(db.getDictionary(), windowSize, config);
+        UncertainDatabase.Cursor c = db.cursor();
+        int n = db.size();
+        int step = Math.max(1, n / 10);
+        for (int row = 0; row < n; row++) {
+            // mảng được cửa sổ giữ lại nên mỗi dòng 1 cặp mảng mới
+            int len = db.rowEnd(row) - db.rowStart(row);
+            int[] ids = new int[len];
+            double[] probs = new double[len];
+            c.seek(row);
+            for (int j = 0; c.next(); j++) {
+                ids[j] = c.item();
+                probs[j] = c.prob();
+            }
+            miner.add(row, ids, probs);
+            if ((row + 1) % step == 0 || row + 1 == n) System.out.println("[STREAM] " + miner.getReport());
+        }
+
+        List<StreamingWPFIMiner.Pattern> patterns = miner.currentPatterns();
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(outputPath))) {
+            for (StreamingWPFIMiner.Pattern p : patterns) {
+                w.write(p.itemset.toString());
+                w.newLine();
+            }
+        }
+        System.out.println("patterns_in_window=" + patterns.size() + " -> " + outputPath);
+        System.out.println("\nFINISHED");
+    }
+
+    private static void runIncremental(String[] args) throws IOException {
+        // incr [basePath] [deltaPath|-] [outputPath] [statePath] [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT] [THREADS]
+        String basePath = (args.length >= 2) ? args[1] : "src/data/fruithut_original.txt";
+        String deltaPath = (args.length >= 3) ? args[2] : "-";
+        String outputPath = (args.length >= 4) ? args[3] : "src/out/incr.txt";
+        String statePath = (args.length >= 5) ? args[4] : outputPath + ".state";
+        String mergedPath = statePath + ".wdb";
+        MiningConfig config = parseConfig(args, 5);
+        ensureParentFolder(outputPath);
+        ensureParentFolder(statePath);
+
+        // DB đã gộp của lần trước (nhị phân) giữ nguyên weight/p của các dòng cũ
+        IncrementalState prev = null;
+        UncertainDatabase db = new UncertainDatabase();
+        if (new File(statePath).exists() && new File(mergedPath).exists()) {
+            prev = IncrementalState.load(statePath);
+            db.loadDatabase(mergedPath);
+        } else {
+            db.loadDatabase(basePath);
+        }
+        int baseRows = db.size();
+        if (!deltaPath.equals("-")) {
+            UncertainDatabase delta = new UncertainDatabase();
+            delta.loadDatabase(deltaPath);
+            db = UncertainDatabase.concat(db, delta);
+        }
+        System.out.println("Base rows : " + baseRows + " | Delta rows : " + (db.size() - baseRows)
+                + " | State : " + (prev != null ? prev.rows() + " rows, " + prev.size() + " itemsets" : "none"));
+        System.out.println("MSUP=" + config.msup + " | T=" + config.t + " | MAX_K=" + config.maxK + " | THREADS=" + config.threads);
+
+        // output ghi lại toàn bộ (không dùng cơ chế resume của mine)
+        new File(outputPath).delete();
+
+        WPFI_Apriori miner = new WPFI_Apriori(db, WPFI_Apriori.PruningMode.FAST, config);
+        miner.enableIncremental(prev);
+        miner.mine(outputPath);
+
+        // ghi file tạm rồi đổi tên: file .wdb cũ có thể vẫn đang được mmap
+        db.saveBinary(mergedPath + ".tmp");
+        miner.getIncrementalState().save(statePath + ".tmp");
+        Files.move(Paths.get(mergedPath + ".tmp"), Paths.get(mergedPath), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(Paths.get(statePath + ".tmp"), Paths.get(statePath), StandardCopyOption.REPLACE_EXISTING);
+
+        WPFI_Apriori.IncrementalReport r = (WPFI_Apriori.IncrementalReport) miner.getLastReport();
+        System.out.println("\n[REPORT] INCREMENTAL");
+        System.out.println("runtime_ms=" + r.runtimeMs + ", delta_rows=" + r.deltaRows + ", total_evaluated=" + r.totalEvaluated
+                + ", mu_cache_hits=" + r.muCacheHits + ", mu_cache_misses=" + r.muCacheMisses + ", total_patterns=" + r.totalPatterns);
+        System.out.println("patterns_by_k=" + r.patternsByK);
+        System.out.println("\nFINISHED");
+    }
+
     private static WPFI_Apriori.PruningMode mapAlgoToMode(int algo) {
         return switch (algo) {
             case 0 -> WPFI_Apriori.PruningMode.NONE;
@@ -146,18 +414,299 @@ public class MainApp {
             case 2 -> WPFI_Apriori.PruningMode.MUHAT_ONLY;
             case 3 -> WPFI_Apriori.PruningMode.APPROX_ONLY;
             case 5 -> WPFI_Apriori.PruningMode.FAST;
+            case 6 -> WPFI_Apriori.PruningMode.DEPTH_FIRST;
+            case 7 -> WPFI_Apriori.PruningMode.EXACT;
+            case 8 -> WPFI_Apriori.PruningMode.CLOSED;
+            case 9 -> WPFI_Apriori.PruningMode.MAXIMAL;
             default -> WPFI_Apriori.PruningMode.ALL; // 4 hoặc khác
         };
     }
 
-    private static void applyParams(String[] args, int offset) {
-        // [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT]
-        // offset là vị trí bắt đầu của MSUP
-        Constants.MSUP = (args.length >= offset + 1) ? Integer.parseInt(args[offset]) : Constants.MSUP;
-        Constants.T = (args.length >= offset + 2) ? Double.parseDouble(args[offset + 1]) : Constants.T;
-        Constants.ALPHA = (args.length >= offset + 3) ? Double.parseDouble(args[offset + 2]) : Constants.ALPHA;
-        Constants.MIN_AVG_WEIGHT = (args.length >= offset + 4) ? Double.parseDouble(args[offset + 3]) : Constants.MIN_AVG_WEIGHT;
-        // Constants.MAX_K giữ nguyên theo file Constants.java (bạn set 0 để không giới hạn)
+    private static void runTopK(String[] args) throws IOException {
+        // topk [dataPath] [outputPath] [K] [MSUP] [MODEL] [FORMAT]
+        String dataPath = (args.length >= 2) ? args[1] : "src/data/fruithut_original.txt";
+        String outputPath = (args.length >= 3) ? args[2] : "src/out/topk.txt";
+        int k = (args.length >= 4) ? Integer.parseInt(args[3]) : 100;
+        MiningConfig config = MiningConfig.fromConstants();
+        if (args.length >= 5) config = config.withMsup(Integer.parseInt(args[4]));
+        String modelName = (args.length >= 6) ? args[5] : "default";
+        ensureParentFolder(outputPath);
+
+        UncertainDatabase db = new UncertainDatabase();
+        db.loadDatabase(dataPath);
+        System.out.println("Dataset : " + dataPath + " | Transactions : " + db.size());
+        System.out.println("K=" + k + " | MSUP=" + config.msup + " | MAX_K=" + config.maxK + " | MODEL=" + modelName);
+
+        WPFI_Apriori miner = new WPFI_Apriori(db, WPFI_Apriori.PruningMode.DEPTH_FIRST, config);
+        miner.setModel(modelFor(modelName));
+        if (args.length >= 7) miner.setOutputFormat(ResultWriter.Format.valueOf(args[6].toUpperCase()));
+        miner.mineTopK(k, outputPath);
+
+        WPFI_Apriori.TopKReport r = (WPFI_Apriori.TopKReport) miner.getLastReport();
+        System.out.println("\n[REPORT] TOP-K");
+        System.out.println("runtime_ms=" + r.runtimeMs + ", peak_mem_mb=" + r.peakMemoryMB + ", total_candidates=" + r.totalCandidates + ", total_patterns=" + r.totalPatterns);
+        System.out.println("patterns_by_k=" + r.patternsByK + ", kth_score=" + r.threshold);
+        System.out.println("bound_pruned=" + r.boundPruned + ", early_stopped=" + r.earlyStopped);
+        System.out.println("\nFINISHED");
+    }
+
+    private static void runPartitioned(String[] args) throws IOException {
+        // part [dataPath] [outputPath] [BUDGET_MB] [MSUP] [T] [FORMAT]
+        String dataPath = (args.length >= 2) ? args[1] : "src/data/fruithut_original.txt";
+        String outputPath = (args.length >= 3) ? args[2] : "src/out/partitioned.txt";
+        long budgetMb = (args.length >= 4) ? Long.parseLong(args[3]) : 256;
+        MiningConfig config = MiningConfig.fromConstants();
+        if (args.length >= 5) config = config.withMsup(Integer.parseInt(args[4]));
+        if (args.length >= 6) config = config.withT(Double.parseDouble(args[5]));
+        ensureParentFolder(outputPath);
+
+        PartitionedDatabase pdb = PartitionedDatabase.open(dataPath, budgetMb << 20);
+        System.out.println("Dataset : " + dataPath + " | Transactions : " + pdb.size() + " | Partitions : " + pdb.partitions());
+        System.out.println("BUDGET_MB=" + budgetMb + " | MSUP=" + config.msup + " | T=" + config.t + " | MAX_K=" + config.maxK);
+
+        PartitionedMiner miner = new PartitionedMiner(pdb, config);
+        if (args.length >= 7) miner.setOutputFormat(ResultWriter.Format.valueOf(args[6].toUpperCase()));
+        miner.mine(outputPath);
+
+        PartitionedMiner.Report r = miner.getLastReport();
+        System.out.println("\n[REPORT] PARTITIONED");
+        System.out.println("runtime_ms=" + r.runtimeMs + ", peak_mem_mb=" + r.peakMemoryMB + ", partitions=" + r.partitions
+                + ", spilled_runs=" + r.spilledRuns + ", total_candidates=" + r.totalCandidates + ", total_patterns=" + r.totalPatterns);
+        System.out.println("candidates_by_k=" + r.candidatesByK + ", patterns_by_k=" + r.patternsByK);
+        System.out.println("\nFINISHED");
+    }
+
+    private static void runSampled(String[] args) throws IOException {
+        // sample [dataPath] [outputPath] [EPSILON] [DELTA] [MSUP] [T] [SEED] [COMPARE]
+        String dataPath = (args.length >= 2) ? args[1] : "src/data/fruithut_original.txt";
+        String outputPath = (args.length >= 3) ? args[2] : "src/out/sampled.txt";
+        double epsilon = (args.length >= 4) ? Double.parseDouble(args[3]) : 0.01;
+        double delta = (args.length >= 5) ? Double.parseDouble(args[4]) : 0.05;
+        MiningConfig config = MiningConfig.fromConstants();
+        if (args.length >= 6) config = config.withMsup(Integer.parseInt(args[5]));
+        if (args.length >= 7) config = config.withT(Double.parseDouble(args[6]));
+        long seed = (args.length >= 8) ? Long.parseLong(args[7]) : 1L;
+        boolean compare = (args.length < 9) || !args[8].equals("0");
+        ensureParentFolder(outputPath);
+
+        UncertainDatabase db = new UncertainDatabase();
+        db.loadDatabase(dataPath);
+        System.out.println("Dataset : " + dataPath + " | Transactions : " + db.size());
+        System.out.println("EPSILON=" + epsilon + " | DELTA=" + delta + " | MSUP=" + config.msup + " | T=" + config.t
+                + " | MAX_K=" + config.maxK + " | SEED=" + seed);
+
+        SampledMiner miner = new SampledMiner(db, epsilon, delta, seed, config);
+        miner.setCompareWithFast(compare);
+        miner.mine(outputPath);
+
+        SampledMiner.Report sample = miner.getLastReport();
+        WPFI_Apriori.MiningReport r = sample.mining;
+        System.out.println("\n[REPORT] SAMPLED");
+        System.out.println("runtime_ms=" + r.runtimeMs + ", peak_mem_mb=" + r.peakMemoryMB + ", sample_size=" + sample.sampleSize
+                + ", verified=" + sample.verified + ", total_patterns=" + r.totalPatterns
+                + (compare ? String.format(Locale.ROOT, ", speedup_over_fast=%.2fx", sample.speedupOverFast) : ""));
+        System.out.println("accepted_by_bound_k=" + r.acceptedByBoundK + ", rejected_by_bound_k=" + r.rejectedByBoundK
+                + ", verified_by_k=" + r.exactComputedByK + ", patterns_by_k=" + r.patternsByK);
+        System.out.println("\nFINISHED");
+    }
+
+    private static void runSweep(String[] args) throws IOException {
+        // sweep [dataPath] [outputDir] [MSUPs] [Ts] [ALPHAs] [MIN_AVG_WEIGHTs] [ALGOs]
+        String dataPath = (args.length >= 2) ? args[1] : "src/data/fruithut_original.txt";
+        String outputDir = (args.length >= 3) ? args[2] : "src/out/sweep";
+        MiningConfig base = MiningConfig.fromConstants();
+        int[] msups = (args.length >= 4) ? parseInts(args[3]) : new int[]{base.msup};
+        double[] ts = (args.length >= 5) ? parseDoubles(args[4]) : new double[]{base.t};
+        double[] alphas = (args.length >= 6) ? parseDoubles(args[5]) : new double[]{base.alpha};
+        double[] minWs = (args.length >= 7) ? parseDoubles(args[6]) : new double[]{base.minAvgWeight};
+        int[] algos = (args.length >= 8) ? parseInts(args[7]) : new int[]{0, 1, 2, 3, 4, 5, 6, 8, 9};
+        ensureDir(outputDir);
+
+        UncertainDatabase db = new UncertainDatabase();
+        db.loadDatabase(dataPath);
+        List<ParameterSweep.Setting> grid = ParameterSweep.grid(msups, ts, alphas, minWs);
+        List<WPFI_Apriori.PruningMode> modes = Arrays.stream(algos).mapToObj(MainApp::mapAlgoToMode).toList();
+        System.out.println("Dataset : " + dataPath + " | Transactions : " + db.size());
+        System.out.println("Settings : " + grid.size() + " | Modes : " + modes + " | MAX_K=" + base.maxK);
+
+        String params = "msup,t,alpha,min_avg_weight,";
+        StringBuilder csv = new StringBuilder(params + REPORT_CSV_HEADER);
+        StringBuilder levels = new StringBuilder(params + LEVELS_CSV_HEADER);
+        long t0 = System.nanoTime();
+        ParameterSweep sweep = new ParameterSweep(db, base);
+        sweep.run(grid, modes, (s, mode, r) -> {
+            String prefix = s.msup + "," + s.t + "," + s.alpha + "," + s.minAvgWeight + ",";
+            appendReport(prefix, mode.name(), r, csv, levels);
+            System.out.println(prefix + mode.name() + "," + r.runtimeMs + "," + r.totalCandidates + "," + r.totalPatterns);
+        });
+        writeText(outputDir + File.separator + "report.csv", csv);
+        writeText(outputDir + File.separator + "report_levels.csv", levels);
+
+        WPFI_Apriori.MiningReport lr = sweep.getLatticeReport();
+        System.out.println("\n[REPORT] SWEEP");
+        System.out.println("lattice_ms=" + lr.runtimeMs + ", lattice_itemsets=" + lr.totalEvaluated
+                + ", lattice_peak_mem_mb=" + lr.peakMemoryMB + ", total_ms=" + (System.nanoTime() - t0) / 1_000_000);
+        System.out.println("\nFINISHED");
+    }
+
+    private static void runJobs(String[] args) throws IOException, InterruptedException {
+        // jobs [outputDir] [PARALLEL] [dataPath,algo[,MSUP[,T[,ALPHA[,MIN_AVG_WEIGHT]]]]]...
+        String outputDir = (args.length >= 2) ? args[1] : "src/out/jobs";
+        int parallel = (args.length >= 3) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        ensureDir(outputDir);
+
+        Map<String, UncertainDatabase> dbs = new HashMap<>();   // cùng dataPath => cùng DB
+        List<MiningJobExecutor.Job> jobs = new ArrayList<>();
+        MiningConfig defaults = MiningConfig.fromConstants();
+        for (int a = 3; a < args.length; a++) {
+            String[] f = args[a].split(",");
+            UncertainDatabase db = dbs.get(f[0]);
+            if (db == null) {
+                db = new UncertainDatabase();
+                db.loadDatabase(f[0]);
+                dbs.put(f[0], db);
+            }
+            WPFI_Apriori.PruningMode mode = mapAlgoToMode(Integer.parseInt(f[1].trim()));
+            MiningConfig config = defaults;
+            if (f.length >= 3) config = config.withMsup(Integer.parseInt(f[2].trim()));
+            if (f.length >= 4) config = config.withT(Double.parseDouble(f[3].trim()));
+            if (f.length >= 5) config = config.withAlpha(Double.parseDouble(f[4].trim()));
+            if (f.length >= 6) config = config.withMinAvgWeight(Double.parseDouble(f[5].trim()));
+            String name = "job" + (a - 2);
+            jobs.add(new MiningJobExecutor.Job(name, db, mode, config,
+                    outputDir + File.separator + name + "_" + mode.name() + ".txt"));
+        }
+        System.out.println("Jobs : " + jobs.size() + " | PARALLEL=" + parallel + " | Datasets : " + dbs.keySet());
+
+        String params = "job,msup,t,alpha,min_avg_weight,";
+        StringBuilder csv = new StringBuilder(params + REPORT_CSV_HEADER);
+        StringBuilder levels = new StringBuilder(params + LEVELS_CSV_HEADER);
+        List<MiningJobExecutor.Result> results;
+        MiningJobExecutor.ProcessStats stats;
+        try (MiningJobExecutor executor = new MiningJobExecutor(parallel)) {
+            results = executor.runAll(jobs);
+            stats = executor.lastProcessStats();
+        }
+        for (MiningJobExecutor.Result res : results) {
+            MiningJobExecutor.Job j = res.job;
+            if (!res.ok()) {
+                System.out.println(j.name + " " + j.mode + " FAILED: " + res.error);
+                continue;
+            }
+            MiningConfig c = j.config;
+            String prefix = j.name + "," + c.msup + "," + c.t + "," + c.alpha + "," + c.minAvgWeight + ",";
+            appendReport(prefix, j.mode.name(), res.report, csv, levels);
+            System.out.println(j.name + " " + j.mode + " [" + c + "] runtime_ms=" + res.report.runtimeMs
+                    + ", total_patterns=" + res.report.totalPatterns);
+        }
+        writeText(outputDir + File.separator + "report.csv", csv);
+        writeText(outputDir + File.separator + "report_levels.csv", levels);
+        // peak heap / GC chỉ có cho cả tiến trình (cột tương ứng của report.csv là -1)
+        System.out.println("\nwall_ms=" + stats.wallMs + ", process_peak_mem_mb=" + stats.peakMemoryMB
+                + ", process_gc_count=" + stats.gcCount + ", process_gc_pause_ms=" + stats.gcPauseMs);
+        System.out.println("\nFINISHED");
+    }
+
+    private static int[] parseInts(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+
+    private static double[] parseDoubles(String list) {
+        return Arrays.stream(list.split(",")).map(String::trim).mapToDouble(Double::parseDouble).toArray();
+    }
+
+    private static void runDump(String[] args) throws IOException {
+        // dump [resultPath] [textPath]
+        String resultPath = (args.length >= 2) ? args[1] : "src/out/result.bin";
+        String textPath = (args.length >= 3) ? args[2] : resultPath + ".txt";
+        if (!ResultWriter.isBinary(resultPath)) throw new IOException("Không phải file kết quả binary: " + resultPath);
+        ensureParentFolder(textPath);
+        long[] count = {0};
+        try (BufferedWriter w = new BufferedWriter(new FileWriter(textPath))) {
+            ResultWriter.readBinary(resultPath, new ResultWriter.RecordSink() {
+                String[] names;
+
+                @Override public void header(String[] names) { this.names = names; }
+
+                @Override public void accept(int[] ids, int size, double mu, double score) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = 0; i < size; i++) sb.append(names[ids[i]]).append(' ');
+                    sb.append(String.format(Locale.ROOT, "#SUP: %.4f #SCORE: %.4f", mu, score));
+                    try {
+                        w.write(sb.toString());
+                        w.newLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                }
+            });
+        }
+        System.out.println("Dumped " + count[0] + " patterns: " + resultPath + " -> " + textPath);
+    }
+
+    private static ProbabilisticModel modelFor(String name) {
+        return switch (name.toLowerCase()) {
+            case "default" -> null;
+            case "poisson" -> new PoissonModel();
+            case "normal" -> new NormalModel();
+            default -> throw new IllegalArgumentException("Model không hợp lệ: " + name + " (default|poisson|normal)");
+        };
+    }
+
+    private static MiningConfig parseConfig(String[] args, int offset) {
+        // [MSUP] [T] [ALPHA] [MIN_AVG_WEIGHT] [THREADS]
+        // offset là vị trí bắt đầu của MSUP; thiếu thì lấy mặc định của Constants (chỉ đọc)
+        MiningConfig c = MiningConfig.fromConstants();
+        if (args.length >= offset + 1) c = c.withMsup(Integer.parseInt(args[offset]));
+        if (args.length >= offset + 2) c = c.withT(Double.parseDouble(args[offset + 1]));
+        if (args.length >= offset + 3) c = c.withAlpha(Double.parseDouble(args[offset + 2]));
+        if (args.length >= offset + 4) c = c.withMinAvgWeight(Double.parseDouble(args[offset + 3]));
+        if (args.length >= offset + 5) c = c.withThreads(Integer.parseInt(args[offset + 4]));
+        // MAX_K giữ nguyên theo file Constants.java (bạn set 0 để không giới hạn)
+        return c;
+    }
+
+    /** 1 mode: thêm vào report.json, report.csv và các dòng theo mức của report_levels.csv */
+    private static void appendReport(String mode, WPFI_Apriori.MiningReport r,
+                                     StringBuilder json, StringBuilder csv, StringBuilder levels) {
+        json.append("  \"").append(mode).append("\": ").append(r.toJson()).append(",\n");
+        appendReport("", mode, r, csv, levels);
+    }
+
+    /** 1 dòng report.csv + các dòng report_levels.csv, mỗi dòng bắt đầu bằng prefix (các cột tham số của sweep) */
+    private static void appendReport(String prefix, String mode, WPFI_Apriori.MiningReport r,
+                                     StringBuilder csv, StringBuilder levels) {
+        csv.append(prefix).append(mode).append(',').append(r.runtimeMs).append(',').append(r.peakMemoryMB).append(',')
+                .append(r.allocatedBytes / (1024 * 1024)).append(',').append(r.gcCount).append(',').append(r.gcPauseMs).append(',')
+                .append(r.totalCandidates).append(',').append(r.totalEvaluated).append(',').append(r.totalPatterns).append(',')
+                .append(r.weightRuleHits).append(',').append(r.muHatRuleHits).append(',').append(r.approxRuleHits).append(',')
+                .append(r.ubBranchRuleHits).append(',').append(r.boundPruned).append(',').append(r.subsetPruned).append(',').append(r.earlyStopped).append(',')
+                .append('"').append(Arrays.toString(r.tidCostHistogram).replace(" ", "")).append("\",")
+                .append(r.trieNodesVisited).append('\n');
+
+        for (Integer k : r.patternsByK.keySet()) {
+            levels.append(prefix).append(mode).append(',').append(k).append(',')
+                    .append(r.candidatesByK.getOrDefault(k, 0)).append(',')
+                    .append(r.evaluatedByK.getOrDefault(k, 0)).append(',')
+                    .append(r.patternsByK.get(k)).append(',')
+                    .append(r.genMsByK.getOrDefault(k, 0L)).append(',')
+                    .append(r.evalMsByK.getOrDefault(k, 0L)).append(',')
+                    .append(r.writeMsByK.getOrDefault(k, 0L)).append('\n');
+        }
+    }
+
+    private static void writeText(String path, CharSequence text) throws IOException {
+        Files.writeString(Paths.get(path), text);
+    }
+
+    private static String formatParallelism(Map<Integer, Double> parallelismByK) {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<Integer, Double> e : parallelismByK.entrySet()) {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(e.getKey()).append('=').append(String.format("%.2f", e.getValue()));
+        }
+        return sb.append('}').toString();
     }
 
     private static void ensureParentFolder(String path) {
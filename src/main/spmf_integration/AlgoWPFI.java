@@ -2,7 +2,7 @@ package spmf_integration;
 
 import db.UncertainDatabase;
 import miner.WPFI_Apriori;
-import util.Constants;
+import util.MiningConfig;
 
 import java.io.IOException;
 
@@ -10,23 +10,23 @@ public class AlgoWPFI {
 
     /**
      * @param input   đường dẫn dataset
-     * @param output  file xuất kết quả (có resume)
-     * @param minsup  minsup (sẽ map sang Constants.MSUP)
+     * @param output  file xuất kết quả (chạy tiếp từ checkpoint output.ckpt nếu bị dừng giữa chừng)
+     * @param minsup  minsup (sẽ map sang MSUP của config, các tham số khác lấy từ Constants)
      */
     public void runAlgorithm(String input, String output, double minsup) throws IOException {
 
         /* 1️ Ánh xạ minsup SPMF → hệ thống WPFI */
-        Constants.MSUP = (int) Math.ceil(minsup);
+        MiningConfig config = MiningConfig.fromConstants().withMsup((int) Math.ceil(minsup));
 
-        System.out.println("[SPMF] MSUP = " + Constants.MSUP);
+        System.out.println("[SPMF] MSUP = " + config.msup);
         System.out.println("[SPMF] Input  = " + input);
         System.out.println("[SPMF] Output = " + output);
 
         /* 2️ Load database */
         UncertainDatabase db = SPMFReader.load(input, 0.8, 1.0);
 
-        /* 3️ Chạy thuật toán (auto write + resume) */
-        WPFI_Apriori algo = new WPFI_Apriori(db);
+        /* 3️ Chạy thuật toán (auto write + checkpoint theo mức) */
+        WPFI_Apriori algo = new WPFI_Apriori(db, WPFI_Apriori.PruningMode.ALL, config);
         algo.mine(output);
 
         System.out.println("[SPMF] WPFI mining finished.");
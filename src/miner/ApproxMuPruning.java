@@ -1,6 +1,5 @@
 package miner;
 
-import entity.Item;
 import entity.Itemset;
 
 public class ApproxMuPruning implements PruningStrategy {
@@ -15,7 +14,7 @@ public class ApproxMuPruning implements PruningStrategy {
     }
 
     @Override
-    public boolean shouldPrune(Itemset X, Item i, double muX, double muI) {
+    public boolean shouldPrune(Itemset X, int i, double muX, double muI) {
         return (muX * muI) < (alpha * n * muHat);
     }
 }
@@ -0,0 +1,137 @@
+package miner;
+
+import entity.Itemset;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tính μ cho toàn bộ Ck của một mức, tuần tự hoặc song song (ForkJoin, work-stealing).
+ *  - Mỗi task chỉ ghi vào đoạn [lo, hi) của mảng kết quả => không cần khoá.
+ *  - Kết quả nằm đúng vị trí của candidate trong Ck, nên bước gộp vào Lk/muMap
+ *    (chạy trên thread khai thác) cho ra đầu ra tất định, không phụ thuộc số thread.
+ */
+class CandidateEvaluator implements AutoCloseable {
+
+    /** Hàm tính μ, phải chỉ đọc (an toàn khi gọi đồng thời) */
+    interface MuFunction {
+        double computeMu(Itemset X);
+    }
+
+    /** Việc cho phần tử thứ i, chỉ được ghi vào vị trí i của các mảng kết quả */
+    interface IndexTask {
+        void run(int i);
+    }
+
+    // số task con trên mỗi thread: đủ nhỏ để work-stealing cân bằng tải
+    private static final int CHUNKS_PER_THREAD = 16;
+
+    // đo CPU time của từng chunk (không tính lúc thread bị OS tạm dừng)
+    private static final ThreadMXBean THREAD_MX = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREAD_MX.isCurrentThreadCpuTimeSupported();
+
+    private final int threads;
+    private final ForkJoinPool pool;
+
+    private long lastWallNs;
+    private long lastBusyNs;
+    private long lastAllocBytes;
+
+    CandidateEvaluator(int threads) {
+        this.threads = Math.max(1, threads);
+        this.pool = (this.threads > 1) ? new ForkJoinPool(this.threads) : null;
+    }
+
+    int threads() { return threads; }
+
+    /** mus[i] = μ(cands[i]) với i in [0, count) */
+    void evaluate(Itemset[] cands, int count, double[] mus, MuFunction f) {
+        evaluate(count, i -> mus[i] = f.computeMu(cands[i]));
+    }
+
+    /** task.run(i) với i in [0, count), ví dụ μ và σ² cùng lúc */
+    void evaluate(int count, IndexTask task) {
+        long start = System.nanoTime();
+
+        if (pool == null || count < 2) {
+            for (int i = 0; i < count; i++) task.run(i);
+            lastWallNs = System.nanoTime() - start;
+            lastBusyNs = lastWallNs;
+            lastAllocBytes = 0;
+            return;
+        }
+
+        int grain = Math.max(1, count / (threads * CHUNKS_PER_THREAD));
+        LongAdder busy = new LongAdder();
+        LongAdder alloc = new LongAdder();
+        pool.invoke(new Chunk(task, 0, count, grain, busy, alloc));
+
+        lastWallNs = System.nanoTime() - start;
+        lastBusyNs = busy.sum();
+        lastAllocBytes = alloc.sum();
+    }
+
+    private static long busyClock() {
+        return CPU_TIME ? THREAD_MX.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Byte cấp phát trên các worker của pool trong lần evaluate gần nhất
+     * (chạy tuần tự thì phần cấp phát nằm trên thread gọi, trả về 0)
+     */
+    long lastAllocBytes() { return lastAllocBytes; }
+
+    /** Thời gian thực (wall) của lần evaluate gần nhất */
+    long lastWallNs() { return lastWallNs; }
+
+    /**
+     * Tổng CPU time của các chunk / thời gian thực: số thread bận trung bình. Không phải speedup so với
+     * chạy 1 thread: máy ít core hoặc đang tranh CPU thì 2 số này có thể khác xa nhau.
+     */
+    double lastParallelism() {
+        return (lastWallNs > 0) ? (double) lastBusyNs / lastWallNs : 1.0;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) pool.shutdown();
+    }
+
+    private static final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final IndexTask task;
+        private final int lo, hi, grain;
+        private final LongAdder busy, alloc;
+
+        Chunk(IndexTask task, int lo, int hi, int grain, LongAdder busy, LongAdder alloc) {
+            this.task = task;
+            this.alloc = alloc;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+            this.busy = busy;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= grain) {
+                // chỉ đếm trên worker: thread gọi invoke đã tự đếm phần cấp phát của nó
+                boolean worker = Thread.currentThread() instanceof ForkJoinWorkerThread;
+                long a0 = worker ? JvmCounters.currentThreadAllocatedBytes() : 0L;
+                long t0 = busyClock();
+                for (int i = lo; i < hi; i++) task.run(i);
+                busy.add(busyClock() - t0);
+                if (worker) alloc.add(JvmCounters.currentThreadAllocatedBytes() - a0);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new Chunk(task, lo, mid, grain, busy, alloc),
+                      new Chunk(task, mid, hi, grain, busy, alloc));
+        }
+    }
+}
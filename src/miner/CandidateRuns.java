@@ -0,0 +1,184 @@
+package miner;
+
+import entity.ItemDictionary;
+import entity.Itemset;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Tập ứng viên pha 1 của PartitionedMiner, giới hạn theo ngân sách bộ nhớ:
+ *  - giữ trên heap (HashSet, bỏ trùng) tới limit itemset; đầy thì sắp theo thứ tự từ điển, ghi ra
+ *    1 run (file tạm) rồi làm lại từ tập rỗng
+ *  - finish(): không có run nào thì trả về mảng đã sắp như trước; ngược lại ghi nốt phần trên heap
+ *    và trộn các run thành 1 file đã sắp, không trùng, đọc lại theo khối tối đa limit itemset.
+ * File: mỗi itemset = size (int) + các ID tăng dần (int).
+ */
+final class CandidateRuns implements Closeable {
+
+    // heap ước lượng cho mỗi ứng viên trên heap: Itemset + mảng ID + nút HashSet và ô bảng băm
+    static final int HEAP_PER_CANDIDATE = 160;
+
+    private final ItemDictionary dict;
+    private final int limit;
+    private final File dir;
+    private Set<Itemset> mem = new HashSet<>();
+    private final List<File> runs = new ArrayList<>();
+    private File merged;
+    private int spilledRuns;
+    private long count;
+    private final Map<Integer, Integer> bySize = new TreeMap<>();
+
+    /** @param dir thư mục ghi file tạm (null: thư mục tạm của hệ thống) */
+    CandidateRuns(ItemDictionary dict, long budgetBytes, File dir) {
+        this.dict = dict;
+        this.limit = (int) Math.max(1, Math.min(Integer.MAX_VALUE - 8, budgetBytes / HEAP_PER_CANDIDATE));
+        this.dir = dir;
+    }
+
+    /** Số itemset tối đa trên heap (cũng là kích thước khối khi đọc lại) */
+    int limit() { return limit; }
+
+    void add(Itemset X) throws IOException {
+        if (mem.add(X) && mem.size() >= limit) spill();
+    }
+
+    /** Số run đã ghi ra đĩa */
+    int spilledRuns() { return spilledRuns; }
+
+    /** Đã ghi ra đĩa: đọc lại qua reader() thay vì mảng của finish() */
+    boolean spilled() { return merged != null || !runs.isEmpty(); }
+
+    /** Số ứng viên khác nhau (sau finish) */
+    long count() { return count; }
+
+    /** Số ứng viên theo kích thước (sau finish) */
+    Map<Integer, Integer> bySize() { return bySize; }
+
+    /**
+     * Kết thúc pha 1.
+     * @return các ứng viên theo thứ tự từ điển nếu chưa ghi ra đĩa, ngược lại null (đọc qua reader())
+     */
+    Itemset[] finish() throws IOException {
+        if (runs.isEmpty()) {
+            Itemset[] cands = mem.toArray(new Itemset[0]);
+            mem = null;
+            Arrays.sort(cands);     // thứ tự từ điển theo ID = thứ tự duyệt của DepthFirstEngine
+            for (Itemset X : cands) bySize.merge(X.size(), 1, Integer::sum);
+            count = cands.length;
+            return cands;
+        }
+        if (!mem.isEmpty()) spill();
+        mem = null;
+        merged = File.createTempFile("wpfi-cand-", ".bin", dir);
+        merge();
+        return null;
+    }
+
+    /** Đọc file đã trộn từ đầu */
+    Reader reader() throws IOException {
+        return new Reader(merged);
+    }
+
+    /** Đọc lần lượt các ứng viên đã sắp */
+    final class Reader implements Closeable {
+        private final DataInputStream in;
+        private long left = count;
+
+        private Reader(File f) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+        }
+
+        /** Đọc tối đa block.length itemset tiếp theo, trả về số itemset đã đọc (0 = hết) */
+        int next(Itemset[] block) throws IOException {
+            int m = 0;
+            for (; m < block.length && left > 0; m++, left--) block[m] = readItemset(in);
+            return m;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** Xoá các file tạm */
+    @Override
+    public void close() {
+        for (File f : runs) f.delete();
+        runs.clear();
+        if (merged != null) merged.delete();
+    }
+
+    private void spill() throws IOException {
+        Itemset[] sorted = mem.toArray(new Itemset[0]);
+        mem.clear();
+        Arrays.sort(sorted);
+        File run = File.createTempFile("wpfi-run-", ".bin", dir);
+        runs.add(run);
+        spilledRuns++;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16))) {
+            out.writeInt(sorted.length);
+            for (Itemset X : sorted) writeItemset(out, X);
+        }
+    }
+
+    /** Trộn k đường các run vào merged, bỏ itemset trùng (cùng 1 itemset có thể nằm ở nhiều run) */
+    private void merge() throws IOException {
+        PriorityQueue<RunCursor> heads = new PriorityQueue<>(Comparator.comparing((RunCursor c) -> c.head));
+        List<RunCursor> open = new ArrayList<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(merged), 1 << 16))) {
+            for (File f : runs) {
+                RunCursor c = new RunCursor(f);
+                open.add(c);
+                if (c.advance()) heads.add(c);
+            }
+            Itemset prev = null;
+            while (!heads.isEmpty()) {
+                RunCursor c = heads.poll();
+                Itemset X = c.head;
+                if (c.advance()) heads.add(c);
+                if (X.equals(prev)) continue;
+                writeItemset(out, X);
+                bySize.merge(X.size(), 1, Integer::sum);
+                count++;
+                prev = X;
+            }
+        } finally {
+            for (RunCursor c : open) c.in.close();
+        }
+        for (File f : runs) f.delete();
+        runs.clear();
+    }
+
+    private final class RunCursor {
+        final DataInputStream in;
+        int left;
+        Itemset head;
+
+        RunCursor(File f) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+            this.left = in.readInt();
+        }
+
+        boolean advance() throws IOException {
+            if (left == 0) return false;
+            left--;
+            head = readItemset(in);
+            return true;
+        }
+    }
+
+    private static void writeItemset(DataOutputStream out, Itemset X) throws IOException {
+        out.writeInt(X.size());
+        for (int j = 0; j < X.size(); j++) out.writeInt(X.get(j));
+    }
+
+    private Itemset readItemset(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len <= 0) throw new IOException("File ứng viên hỏng: kích thước itemset " + len);
+        int[] ids = new int[len];
+        for (int j = 0; j < len; j++) ids[j] = in.readInt();
+        return new Itemset(dict, ids);
+    }
+}
@@ -0,0 +1,193 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.Itemset;
+
+import java.util.Arrays;
+
+/**
+ * Cây tiền tố của cả Ck để tính μ (và Σp²) của mọi ứng viên trong 1 lần quét CSR:
+ * mỗi dòng được đi xuống cây theo các item tăng dần của nó, tích xác suất của tiền tố mang theo,
+ * đến nút là ứng viên thì cộng tích vào ứng viên đó. Thay |Ck| lần quét của WPFI_Metrics.computeMu.
+ *  - Cây dẹt theo từng độ sâu: key, ứng viên kết thúc ở nút (-1 nếu không) và đoạn con liên tiếp
+ *    ở độ sâu kế tiếp (ứng viên được sắp theo thứ tự từ điển nên con của 1 nút nằm liền nhau).
+ *  - Độ sâu 1 tra trực tiếp theo ID item, độ sâu sau merge dòng với key (tìm nhị phân khi nút
+ *    có nhiều con).
+ *  - Tích nhân theo thứ tự item và cộng theo thứ tự dòng như computeMu / computeMoments nên μ
+ *    trùng từng bit.
+ * Chia song song theo đoạn nút độ sâu 1 (part): mỗi part quét cả DB nhưng chỉ ghi ứng viên của nó.
+ */
+final class CandidateTrie {
+
+    private final int depth;          // độ dài ứng viên lớn nhất
+    private final int[][] keys;       // keys[d][e]: item của nút e ở độ sâu d + 1
+    private final int[][] cand;       // chỉ số ứng viên kết thúc tại nút, -1 nếu không
+    private final int[][] first;      // con của nút e: [first[d][e], first[d][e + 1]) ở độ sâu d + 2
+    private final int[] rootOf;       // item -> nút độ sâu 1, -1 nếu không có
+    private final int[] weightOf;     // số ứng viên dưới mỗi nút độ sâu 1 (để chia part)
+    private final int minSize;
+
+    private CandidateTrie(int depth, int[][] keys, int[][] cand, int[][] first, int[] rootOf, int[] weightOf,
+                          int minSize) {
+        this.depth = depth;
+        this.keys = keys;
+        this.cand = cand;
+        this.first = first;
+        this.rootOf = rootOf;
+        this.weightOf = weightOf;
+        this.minSize = minSize;
+    }
+
+    /** Cây của cands[0..count), các ứng viên phải khác nhau và không rỗng */
+    static CandidateTrie build(Itemset[] cands, int count, int nItems) {
+        Integer[] order = new Integer[count];
+        int depth = 0, minSize = Integer.MAX_VALUE;
+        for (int c = 0; c < count; c++) {
+            order[c] = c;
+            depth = Math.max(depth, cands[c].size());
+            minSize = Math.min(minSize, cands[c].size());
+        }
+        Arrays.sort(order, (a, b) -> cands[a].compareTo(cands[b]));
+
+        int[][] keys = new int[depth][count];
+        int[][] cand = new int[depth][count];
+        int[][] first = new int[depth][count + 1];
+        int[] size = new int[depth];
+        int[] path = new int[depth];       // nút trên đường của ứng viên trước
+        Itemset prev = null;
+        for (int o = 0; o < count; o++) {
+            int c = order[o];
+            Itemset X = cands[c];
+            int lcp = 0;
+            if (prev != null) {
+                int m = Math.min(prev.size(), X.size());
+                while (lcp < m && prev.get(lcp) == X.get(lcp)) lcp++;
+            }
+            for (int d = lcp; d < X.size(); d++) {
+                int e = size[d]++;
+                keys[d][e] = X.get(d);
+                cand[d][e] = -1;
+                if (d + 1 < depth) first[d][e] = size[d + 1];
+                path[d] = e;
+            }
+            cand[X.size() - 1][path[X.size() - 1]] = c;
+            prev = X;
+        }
+
+        int[] rootOf = new int[nItems];
+        Arrays.fill(rootOf, -1);
+        for (int d = 0; d < depth; d++) {
+            keys[d] = Arrays.copyOf(keys[d], size[d]);
+            cand[d] = Arrays.copyOf(cand[d], size[d]);
+            first[d] = Arrays.copyOf(first[d], size[d] + 1);
+            first[d][size[d]] = (d + 1 < depth) ? size[d + 1] : 0;
+        }
+        for (int e = 0; e < size[0]; e++) rootOf[keys[0][e]] = e;
+
+        int[] weightOf = new int[size[0]];
+        for (int c = 0; c < count; c++) weightOf[rootOf[cands[c].get(0)]]++;
+        return new CandidateTrie(depth, keys, cand, first, rootOf, weightOf, minSize);
+    }
+
+    /** Ranh giới của tối đa parts đoạn nút độ sâu 1 có số ứng viên xấp xỉ nhau: part i = [b[i], b[i + 1]) */
+    int[] split(int parts) {
+        int roots = weightOf.length;
+        parts = Math.max(1, Math.min(parts, roots));
+        long total = 0;
+        for (int w : weightOf) total += w;
+        int[] bounds = new int[parts + 1];
+        long acc = 0;
+        int p = 1;
+        for (int e = 0; e < roots && p < parts; e++) {
+            acc += weightOf[e];
+            if (acc * parts >= total * p) bounds[p++] = e + 1;
+        }
+        while (p <= parts) bounds[p++] = roots;
+        return Arrays.copyOf(bounds, parts + 1);
+    }
+
+    /**
+     * Cộng μ (và Σp² nếu sq != null) của các ứng viên có nút độ sâu 1 trong [rootLo, rootHi)
+     * trên các dòng [fromRow, toRow). mus / sq phải được khởi tạo 0 cho các ứng viên này.
+     *
+     * @return số lần 1 dòng khớp 1 nút (mỗi lần 1 phép nhân tích tiền tố): chi phí thật của lần quét
+     */
+    long count(UncertainDatabase db, int fromRow, int toRow, int rootLo, int rootHi, double[] mus, double[] sq) {
+        long visited = 0;
+        int[] items = new int[16];
+        double[] probs = new double[16];
+        for (int r = fromRow; r < toRow; r++) {
+            int start = db.rowStart(r), len = db.rowEnd(r) - start;
+            if (len < minSize) continue;
+            if (len > items.length) {
+                items = new int[Math.max(len, items.length * 2)];
+                probs = new double[items.length];
+            }
+            for (int j = 0; j < len; j++) {
+                items[j] = db.itemAt(start + j);
+                probs[j] = db.probAt(start + j);
+            }
+            for (int j = 0; j < len; j++) {
+                int e = rootOf[items[j]];
+                if (e < rootLo || e >= rootHi) continue;
+                double p = probs[j];
+                if (p == 0.0) continue;
+                visited++;
+                int c = cand[0][e];
+                if (c >= 0) {
+                    mus[c] += p;
+                    if (sq != null) sq[c] += p * p;
+                }
+                if (depth > 1 && first[0][e] < first[0][e + 1]) {
+                    visited += walk(1, first[0][e], first[0][e + 1], items, probs, j + 1, len, p, mus, sq);
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Merge các nút [lo, hi) ở độ sâu d + 1 với items[j..len) của dòng, prod = tích của tiền tố.
+     * Trả về số nút khớp (kể cả các nút con đã đi xuống).
+     */
+    private long walk(int d, int lo, int hi, int[] items, double[] probs, int j, int len, double prod,
+                      double[] mus, double[] sq) {
+        long visited = 0;
+        int[] k = keys[d];
+        while (lo < hi && j < len) {
+            int key = k[lo], it = items[j];
+            if (key < it) {
+                lo = (hi - lo > 8) ? lowerBound(k, lo + 1, hi, it) : lo + 1;
+            } else if (key > it) {
+                j++;
+            } else {
+                double p = probs[j];
+                if (p != 0.0) {
+                    visited++;
+                    double q = prod * p;
+                    int c = cand[d][lo];
+                    if (c >= 0) {
+                        mus[c] += q;
+                        if (sq != null) sq[c] += q * q;
+                    }
+                    if (d + 1 < depth && first[d][lo] < first[d][lo + 1]) {
+                        visited += walk(d + 1, first[d][lo], first[d][lo + 1], items, probs, j + 1, len, q, mus, sq);
+                    }
+                }
+                lo++;
+                j++;
+            }
+        }
+        return visited;
+    }
+
+    /** Vị trí đầu tiên trong [lo, hi) có a[i] >= key */
+    private static int lowerBound(int[] a, int lo, int hi, int key) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,295 @@
+package miner;
+
+import entity.ItemDictionary;
+import entity.Itemset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Duyệt sâu như DepthFirstEngine nhưng chỉ xuất tập rút gọn của kết quả (mode CLOSED / MAXIMAL).
+ * Kết quả = itemset có score >= T (|X| <= MAX_K); trong đó
+ *  - MAXIMAL: không có tập cha thật sự nào cũng là kết quả;
+ *  - CLOSED : không có tập cha thật sự nào là kết quả và nằm trong đúng các transaction của X
+ *    (cùng số TID). Xác suất p(i, t) khác nhau từng lần xuất hiện nên μ gần như không bao giờ
+ *    bằng nhau: "đóng" được định nghĩa theo tập transaction chứa X, và chỉ so với các kết quả
+ *    (bao đóng kinh điển thường có μ quá nhỏ để còn là kết quả).
+ *
+ * Quyết định X sau khi duyệt xong cây con của X (hậu thứ tự): với thứ tự duyệt cố định, mọi tập
+ * cha của X hoặc nằm trong cây con của X, hoặc thuộc nhánh đứng trước, nên đã được xét. Các mẫu đã
+ * xuất được giữ dạng bitset theo vị trí duyệt; mỗi nút giữ danh sách cục bộ các mẫu chứa nó (lọc
+ * từ danh sách của cha, mẫu mới tìm thấy được thêm vào danh sách của mọi tổ tiên), nên kiểm tra
+ * tập con chỉ duyệt các mẫu liên quan.
+ *
+ * Cắt cả cây con của X (kiểu HUT của MAFIA) khi X ∪ tail ⊆ một mẫu M đã xuất (CLOSED: thêm
+ * điều kiện M cùng số TID với X), tail = các con mở rộng được của X: mọi itemset trong cây con
+ * đều là tập con của M nên không thể maximal / closed. Kiểm tra lại sau mỗi con vì cây con của
+ * con đầu thường sinh ra chính mẫu phủ các con còn lại.
+ */
+final class CondensedEngine {
+
+    enum Kind { CLOSED, MAXIMAL }
+
+    private final TidIndex index;
+    private final ItemDictionary dict;
+    private final WPFI_Apriori.ScoreCheck check;
+    private final CostHistogram hist;
+    private final Kind kind;
+    private final int maxK;
+    private final boolean needVar;
+    private final WPFI_Apriori.MiningReport report;
+
+    private int[] items;          // các item mở rộng được, theo thứ tự duyệt
+    private double[] suffixMaxW;  // suffixMaxW[b] = weight lớn nhất của items[b..]
+    private int words;            // số long của 1 bitset vị trí
+    private DepthFirstEngine.PatternSink sink;
+
+    // mẫu đã xuất: bitset vị trí + số TID
+    private final ArrayList<long[]> found = new ArrayList<>();
+    private int[] foundCount = new int[64];
+
+    // theo độ sâu d (nút có |X| = d + 1): danh sách cục bộ các mẫu ⊇ X
+    private int[][] local = new int[4][];
+    private int[] localSize = new int[4];
+    private int[] path = new int[4];      // path[d] = vị trí duyệt của item thứ d trên đường đi
+
+    // theo độ sâu d: danh sách chiếu của các con mở rộng được của nút ở độ sâu d
+    private ChildLists[] children = new ChildLists[4];
+
+    private int[] rootT;
+    private double[] rootP;
+
+    /** Các con mở rộng được của 1 nút: vị trí, danh sách chiếu, μ, σ² */
+    private static final class ChildLists {
+        int size;
+        int[] pos = new int[8];
+        int[] len = new int[8];
+        double[] mu = new double[8];
+        double[] var = new double[8];
+        int[][] tids = new int[8][];
+        double[][] probs = new double[8][];
+
+        /** Chỗ cho con thứ size, danh sách dài tối đa cap */
+        void reserve(int cap) {
+            if (size == pos.length) {
+                int n = size * 2;
+                pos = Arrays.copyOf(pos, n);
+                len = Arrays.copyOf(len, n);
+                mu = Arrays.copyOf(mu, n);
+                var = Arrays.copyOf(var, n);
+                tids = Arrays.copyOf(tids, n);
+                probs = Arrays.copyOf(probs, n);
+            }
+            if (tids[size] == null || tids[size].length < cap) {
+                tids[size] = new int[cap];
+                probs[size] = new double[cap];
+            }
+        }
+    }
+
+    CondensedEngine(Kind kind, TidIndex index, ItemDictionary dict, WPFI_Apriori.ScoreCheck check,
+                    CostHistogram hist, WPFI_Apriori.MiningReport report) {
+        this.kind = kind;
+        this.index = index;
+        this.dict = dict;
+        this.check = check;
+        this.hist = hist;
+        this.maxK = check.config.maxK;
+        this.needVar = check.needsVariance();
+        this.report = report;
+    }
+
+    /**
+     * Duyệt mọi itemset dựng từ items (kể cả 1-itemset), chỉ đưa ra sink các itemset closed / maximal.
+     * @param items các 1-itemset mở rộng được, theo thứ tự duyệt (μ tăng dần: item dày đặc nằm ở
+     *              tail nên cắt theo mẫu đã tìm được nhiều hơn)
+     */
+    void run(int[] items, DepthFirstEngine.PatternSink sink) {
+        this.items = items;
+        this.sink = sink;
+        this.words = (items.length + 63) >>> 6;
+
+        suffixMaxW = new double[items.length + 1];
+        for (int b = items.length - 1; b >= 0; b--) {
+            suffixMaxW[b] = Math.max(suffixMaxW[b + 1], dict.weight(items[b]));
+        }
+
+        int cap = 0;
+        for (int i : items) cap = Math.max(cap, index.counts[i]);
+        rootT = new int[cap];
+        rootP = new double[cap];
+
+        for (int a = 0; a < items.length; a++) {
+            int i = items[a];
+            Itemset X = new Itemset(dict, i);
+            int len = index.listOf(i, rootT, rootP);
+            double mu = 0.0, sq = 0.0;
+            for (int t = 0; t < len; t++) {
+                double p = rootP[t];
+                mu += p;
+                sq += p * p;
+            }
+            // cận UB-score cho cả cây con của item (gồm cả chính item)
+            if (!check.extendable(maxAvg(dict.weight(i), 1, suffixMaxW[a + 1]), mu)) continue;
+
+            // danh sách cục bộ của gốc: mọi mẫu đã xuất chứa item
+            ensureDepth(0);
+            int n = 0;
+            for (int m = 0; m < found.size(); m++) {
+                if (has(found.get(m), a)) n = push(0, n, m);
+            }
+            localSize[0] = n;
+            visit(X, a, rootT, rootP, len, mu, Math.max(0.0, mu - sq), 0);
+        }
+    }
+
+    /**
+     * Duyệt cây con của X (danh sách chiếu tids/probs[0..len), đã có local[depth]), rồi quyết định X.
+     * @param pos vị trí của item cuối của X trong items
+     */
+    private void visit(Itemset X, int pos, int[] tids, double[] probs, int len,
+                       double muX, double varX, int depth) {
+        ensureDepth(depth + 1);
+        path[depth] = pos;
+        ChildLists kids = children[depth];
+        kids.size = 0;
+
+        // 1) các con mở rộng được (giữ danh sách để kiểm tra tail trước khi đi xuống)
+        int k = X.size() + 1;
+        if (maxK <= 0 || X.size() < maxK) {
+            for (int b = pos + 1; b < items.length; b++) {
+                int j = items[b];
+
+                report.candidatesByK.merge(k, 1, Integer::sum);
+                report.evaluatedByK.merge(k, 1, Integer::sum);
+                report.totalCandidates++;
+                report.totalEvaluated++;
+
+                double maxAvg = maxAvg(X.weightSum() + dict.weight(j), k, suffixMaxW[b + 1]);
+                if (hist != null) hist.record(len);
+                kids.reserve(len);
+                int c = kids.size;
+                int outLen = index.intersect(tids, probs, len, j, kids.tids[c], kids.probs[c],
+                        muX, check.extendFloor(maxAvg));
+                if (outLen < 0) { // μ chắc chắn dưới ngưỡng: cắt cả cây con
+                    check.stopped.increment();
+                    continue;
+                }
+
+                double[] outP = kids.probs[c];
+                double mu = 0.0, sq = 0.0;
+                if (needVar) {
+                    for (int t = 0; t < outLen; t++) {
+                        double p = outP[t];
+                        mu += p;
+                        sq += p * p;
+                    }
+                } else {
+                    for (int t = 0; t < outLen; t++) mu += outP[t];
+                }
+                if (!check.extendable(maxAvg, mu)) continue; // UB-score: cắt cả cây con
+
+                kids.pos[c] = b;
+                kids.len[c] = outLen;
+                kids.mu[c] = mu;
+                kids.var[c] = Math.max(0.0, mu - sq);
+                kids.size++;
+            }
+        }
+
+        // 2) X ∪ tail đã nằm trong 1 mẫu đã xuất: cả cây con (kể cả X) không closed / maximal
+        if (covered(depth, len, kids, 0)) return;
+        int checked = localSize[depth];
+
+        // 3) đi xuống các con
+        for (int c = 0; c < kids.size; c++) {
+            int b = kids.pos[c];
+            int n = 0;
+            for (int s = 0, e = localSize[depth]; s < e; s++) {
+                int m = local[depth][s];
+                if (has(found.get(m), b)) n = push(depth + 1, n, m);
+            }
+            localSize[depth + 1] = n;
+            visit(X.unionWith(items[b]), b, kids.tids[c], kids.probs[c], kids.len[c],
+                    kids.mu[c], kids.var[c], depth + 1);
+            // con vừa duyệt có thể đè mất children[depth + 1..], còn children[depth] nguyên vẹn
+            if (localSize[depth] > checked) {
+                if (covered(depth, len, kids, checked)) return;
+                checked = localSize[depth];
+            }
+        }
+
+        // 4) hậu thứ tự: mọi tập cha của X đã được xét
+        if (!check.isResult(X, muX, varX) || subsumed(depth, len)) return;
+        sink.accept(X, muX, check.score(X, muX, varX));
+
+        int m = found.size();
+        long[] bits = new long[words];
+        for (int d = 0; d <= depth; d++) set(bits, path[d]);
+        found.add(bits);
+        if (m == foundCount.length) foundCount = Arrays.copyOf(foundCount, m * 2);
+        foundCount[m] = len;
+        // X chứa mọi tổ tiên: thêm vào danh sách cục bộ của chúng
+        for (int d = 0; d < depth; d++) localSize[d] = push(d, localSize[d], m);
+    }
+
+    /**
+     * Có mẫu M trong local[depth][from..] phủ X ∪ tail không (CLOSED: M cùng số TID với X).
+     * X ⊆ M đã đúng theo cách dựng danh sách cục bộ, chỉ còn kiểm tra các con.
+     */
+    private boolean covered(int depth, int len, ChildLists kids, int from) {
+        for (int s = from, e = localSize[depth]; s < e; s++) {
+            int m = local[depth][s];
+            if (kind == Kind.CLOSED && foundCount[m] != len) continue;
+            long[] bits = found.get(m);
+            boolean all = true;
+            for (int c = 0; c < kids.size && all; c++) all = has(bits, kids.pos[c]);
+            if (all) return true;
+        }
+        return false;
+    }
+
+    /** X có tập cha thật sự đã xuất không (CLOSED: cùng số TID) */
+    private boolean subsumed(int depth, int len) {
+        if (kind == Kind.MAXIMAL) return localSize[depth] > 0;
+        for (int s = 0, e = localSize[depth]; s < e; s++) {
+            if (foundCount[local[depth][s]] == len) return true;
+        }
+        return false;
+    }
+
+    private int push(int depth, int n, int m) {
+        if (local[depth] == null) local[depth] = new int[16];
+        else if (n == local[depth].length) local[depth] = Arrays.copyOf(local[depth], n * 2);
+        local[depth][n] = m;
+        return n + 1;
+    }
+
+    private static boolean has(long[] bits, int b) {
+        return (bits[b >>> 6] & (1L << b)) != 0;
+    }
+
+    private static void set(long[] bits, int b) {
+        bits[b >>> 6] |= 1L << b;
+    }
+
+    /** Như DepthFirstEngine.maxAvg: cận avgWeight của mọi Y' ⊇ Y khi chỉ thêm item có weight <= sufMax */
+    private double maxAvg(double weightSum, int size, double sufMax) {
+        double avg = weightSum / size;
+        if (sufMax <= avg || (maxK > 0 && size >= maxK)) return avg * (1 + 1e-12);
+        if (maxK <= 0) return sufMax;
+        int room = maxK - size;
+        return (weightSum + room * sufMax) / (size + room) * (1 + 1e-12);
+    }
+
+    private void ensureDepth(int depth) {
+        if (depth >= children.length) {
+            int cap = Math.max(depth + 1, children.length * 2);
+            children = Arrays.copyOf(children, cap);
+            local = Arrays.copyOf(local, cap);
+            localSize = Arrays.copyOf(localSize, cap);
+            path = Arrays.copyOf(path, cap);
+        }
+        if (children[depth] == null) children[depth] = new ChildLists();
+    }
+}
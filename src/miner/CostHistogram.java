@@ -0,0 +1,25 @@
+package miner;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram chi phí tính μ theo số TID phải duyệt cho mỗi ứng viên, bucket theo lũy thừa 2:
+ * bucket 0 = 0 TID, bucket b >= 1 = [2^(b-1), 2^b). Ghi được từ nhiều thread.
+ */
+final class CostHistogram {
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    void record(long tids) {
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(0, tids)));
+    }
+
+    /** Các bucket, bỏ phần đuôi toàn 0 */
+    long[] toArray() {
+        int last = -1;
+        for (int b = 0; b < buckets.length(); b++) if (buckets.get(b) != 0) last = b;
+        long[] out = new long[last + 1];
+        for (int b = 0; b <= last; b++) out[b] = buckets.get(b);
+        return out;
+    }
+}
@@ -0,0 +1,214 @@
+package miner;
+
+import entity.ItemDictionary;
+import entity.Itemset;
+
+import java.util.Arrays;
+
+/**
+ * Engine khai thác theo chiều sâu (kiểu UEclat) trên TidIndex.
+ *  - Mỗi nút X mang danh sách chiếu (tid[], prob[]) với prob = Pr(X ⊆ t);
+ *    con X ∪ {j} chỉ cần merge danh sách của X với TID-list của j.
+ *  - Cắt cả cây con khi maxW * tail(μ_X) < T (UB-score của FAST, lossless), hoặc khi
+ *    cận avgWeight từ các item còn lại phía sau (weight lớn nhất của hậu tố) * tail(μ_X) < T.
+ *  - Giao danh sách dừng sớm khi μ chắc chắn dưới ngưỡng mở rộng được.
+ *  - Chỉ giữ danh sách của các nút trên đường đi hiện tại (mỗi độ sâu 1 buffer).
+ *
+ * Score theo mô hình của ScoreCheck (mặc định Poisson, hoặc ProbabilisticModel như Normal: σ² cộng
+ * cùng vòng với μ trên danh sách chiếu).
+ *
+ * Với ExactScorer (mode EXACT): tail Poisson-binomial chính xác thay cho Poisson, cắt theo cùng
+ * cận avgWeight (tail chính xác giảm khi thêm item nên vẫn lossless), giao danh sách dừng sớm theo
+ * Markov: Pr(S >= msup) <= μ / msup.
+ *
+ * Kết quả = mọi itemset có score >= T (|X| <= MAX_K), không đòi hỏi có cha trong L_{k-1}
+ * như bản theo mức, nên là tập cha (superset) của kết quả mode NONE.
+ */
+final class DepthFirstEngine {
+
+    /**
+     * Nhận các itemset thoả score >= T theo thứ tự duyệt.
+     * Mode EXACT: score dùng tail chính xác nếu đã tính, ngược lại ước lượng Poisson (đã quyết định bằng cận).
+     */
+    interface PatternSink {
+        void accept(Itemset X, double mu, double score);
+    }
+
+    private final TidIndex index;
+    private final ItemDictionary dict;
+    private WPFI_Apriori.ScoreCheck check;    // top-k thay bằng ngưỡng cao hơn trong lúc duyệt
+    private final ExactScorer exact;          // null: tail Poisson
+    private final CostHistogram hist;         // null: không đo số TID duyệt mỗi ứng viên
+    private final int maxK;
+    private final boolean needVar;            // mô hình cần σ²: cộng Σp² cùng lúc với μ
+    private final WPFI_Apriori.MiningReport report;
+
+    private int[] items;          // các item mở rộng được, theo thứ tự duyệt
+    private double[] suffixMaxW;  // suffixMaxW[b] = weight lớn nhất của items[b..]
+    private PatternSink sink;
+
+    // buffer theo độ sâu: depth d giữ danh sách của itemset kích thước d + 1
+    private int[][] tidBuf = new int[4][];
+    private double[][] probBuf = new double[4][];
+    private int bufCap;
+
+    DepthFirstEngine(TidIndex index, ItemDictionary dict, WPFI_Apriori.ScoreCheck check,
+                     ExactScorer exact, CostHistogram hist, WPFI_Apriori.MiningReport report) {
+        this.index = index;
+        this.dict = dict;
+        this.check = check;
+        this.exact = exact;
+        this.hist = hist;
+        this.maxK = check.config.maxK;
+        this.needVar = check.needsVariance();
+        this.report = report;
+    }
+
+    /**
+     * Đổi ngưỡng giữa chừng (top-k): chỉ được nâng, các nhánh đã cắt theo ngưỡng cũ vẫn đúng.
+     * Gọi được từ sink, có hiệu lực ngay từ ứng viên kế tiếp.
+     */
+    void useCheck(WPFI_Apriori.ScoreCheck check) {
+        this.check = check;
+    }
+
+    /**
+     * Duyệt mọi itemset kích thước >= 2 dựng từ items.
+     * @param items các 1-itemset mở rộng được (maxW * tail(μ) >= T), theo thứ tự duyệt
+     *              (DEPTH_FIRST / EXACT: ID tăng dần; top-k: μ giảm dần)
+     */
+    void run(int[] items, PatternSink sink) {
+        this.items = items;
+        this.sink = sink;
+        if (maxK > 0 && maxK < 2) return;
+
+        suffixMaxW = new double[items.length + 1];
+        for (int b = items.length - 1; b >= 0; b--) {
+            suffixMaxW[b] = Math.max(suffixMaxW[b + 1], dict.weight(items[b]));
+        }
+
+        bufCap = 0;
+        for (int i : items) bufCap = Math.max(bufCap, index.counts[i]);
+
+        // độ sâu 0: danh sách của chính item (TID-list hoặc bung từ bitset)
+        ensureDepth(0);
+        for (int a = 0; a < items.length; a++) {
+            int i = items[a];
+            Itemset X = new Itemset(dict, i);
+            int len = index.listOf(i, tidBuf[0], probBuf[0]);
+            double mu = 0.0;
+            for (int t = 0; t < len; t++) mu += probBuf[0][t];
+            // cận UB-score cho cả cây con của item (EXACT đã lọc item bằng tail chính xác)
+            if (exact == null && !check.extendable(maxAvg(dict.weight(i), 1, suffixMaxW[a + 1]), mu)) continue;
+            expand(X, a, tidBuf[0], probBuf[0], len, mu, 1);
+        }
+    }
+
+    /**
+     * Mở rộng X (danh sách chiếu tids/probs[0..len), tổng muX) bằng các item sau vị trí pos.
+     * @param depth độ sâu của con (= |X|), chọn buffer cho danh sách của con
+     */
+    private void expand(Itemset X, int pos, int[] tids, double[] probs, int len, double muX, int depth) {
+        int k = X.size() + 1;
+        ensureDepth(depth);
+        int[] outT = tidBuf[depth];
+        double[] outP = probBuf[depth];
+
+        for (int b = pos + 1; b < items.length; b++) {
+            int j = items[b];
+
+            report.candidatesByK.merge(k, 1, Integer::sum);
+            report.evaluatedByK.merge(k, 1, Integer::sum);
+            report.totalCandidates++;
+            report.totalEvaluated++;
+
+            double maxAvg = maxAvg(X.weightSum() + dict.weight(j), k, suffixMaxW[b + 1]);
+            if (hist != null) hist.record(len);
+            if (exact != null) {
+                expandExact(X, j, b, tids, probs, len, muX, maxAvg, depth);
+                continue;
+            }
+            int outLen = index.intersect(tids, probs, len, j, outT, outP, muX, check.extendFloor(maxAvg));
+            if (outLen < 0) { // μ chắc chắn dưới ngưỡng: cắt cả cây con
+                check.stopped.increment();
+                continue;
+            }
+
+            // μ và Σp² (nếu mô hình cần σ²) trong cùng 1 vòng
+            double mu = 0.0, sq = 0.0;
+            if (needVar) {
+                for (int t = 0; t < outLen; t++) {
+                    double p = outP[t];
+                    mu += p;
+                    sq += p * p;
+                }
+            } else {
+                for (int t = 0; t < outLen; t++) mu += outP[t];
+            }
+
+            if (!check.extendable(maxAvg, mu)) continue; // UB-score: cắt cả cây con
+
+            Itemset Y = X.unionWith(j);
+            double var = Math.max(0.0, mu - sq);
+            if (check.isResult(Y, mu, var)) {
+                sink.accept(Y, mu, check.score(Y, mu, var));
+            }
+
+            if (maxK <= 0 || k < maxK) expand(Y, b, outT, outP, outLen, mu, depth + 1);
+        }
+    }
+
+    /** Một bước mở rộng X ∪ {items[b]} của mode EXACT */
+    private void expandExact(Itemset X, int j, int b, int[] tids, double[] probs, int len,
+                             double muX, double maxAvg, int depth) {
+        int k = X.size() + 1;
+        int[] outT = tidBuf[depth];
+        double[] outP = probBuf[depth];
+
+        double r = check.config.t / maxAvg;
+        int outLen = index.intersect(tids, probs, len, j, outT, outP, muX, r * check.config.msup);
+        if (outLen < 0) {
+            check.stopped.increment();
+            report.rejectedByBoundK.merge(k, 1, Integer::sum);
+            return;
+        }
+
+        exact.reset(outP, outLen);
+        if (!exact.atLeast(r)) { // cắt cả cây con
+            exact.count(report, k, false);
+            return;
+        }
+
+        Itemset Y = X.unionWith(j);
+        boolean isResult = exact.atLeast(check.config.t / Y.avgWeight());
+        exact.count(report, k, isResult);
+        double mu = exact.mu();
+        if (isResult) sink.accept(Y, mu, Y.avgWeight() * exact.estimate());
+
+        if (maxK <= 0 || k < maxK) expand(Y, b, outT, outP, outLen, mu, depth + 1);
+    }
+
+    /**
+     * Cận avgWeight của mọi Y' ⊇ Y (|Y| = size, tổng weight weightSum) khi chỉ thêm
+     * được các item có weight <= sufMax, tối đa tới maxK item.
+     */
+    private double maxAvg(double weightSum, int size, double sufMax) {
+        double avg = weightSum / size;
+        if (sufMax <= avg || (maxK > 0 && size >= maxK)) return avg * (1 + 1e-12);
+        if (maxK <= 0) return sufMax;
+        int room = maxK - size;
+        return (weightSum + room * sufMax) / (size + room) * (1 + 1e-12);
+    }
+
+    private void ensureDepth(int depth) {
+        if (depth >= tidBuf.length) {
+            int cap = Math.max(depth + 1, tidBuf.length * 2);
+            tidBuf = Arrays.copyOf(tidBuf, cap);
+            probBuf = Arrays.copyOf(probBuf, cap);
+        }
+        if (tidBuf[depth] == null) {
+            tidBuf[depth] = new int[bufCap];
+            probBuf[depth] = new double[bufCap];
+        }
+    }
+}
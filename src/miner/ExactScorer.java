@@ -0,0 +1,92 @@
+package miner;
+
+import util.WPFI_Metrics;
+
+/**
+ * So sánh tail chính xác Pr(Sup(X) >= msup) (Poisson-binomial) với ngưỡng r cho mode EXACT.
+ * Thử lần lượt các cận rẻ, chỉ khi tất cả đều không quyết định được mới tính chính xác
+ * (DP hoặc chia để trị + FFT, xem WPFI_Metrics.poissonBinomialTailAtLeast):
+ *  1) Chernoff / Hoeffding trên μ: msup > μ cho cận trên của tail, msup <= μ cho cận dưới
+ *  2) Ước lượng Poisson ± sai số Barbour–Hall: d_TV <= (1 - e^-μ) / μ * Σp²
+ * Dùng cho một itemset tại một thời điểm (reset rồi gọi atLeast với các ngưỡng), không thread-safe.
+ */
+final class ExactScorer {
+
+    private final int msup;
+
+    // itemset hiện tại: danh sách xác suất khác 0 (TID-list thưa)
+    private double[] probs;
+    private int len;
+    private double mu, sumSq;
+    private double poisson;        // NaN: chưa tính
+    private double exact;          // NaN: chưa tính
+
+    ExactScorer(int msup) {
+        this.msup = msup;
+    }
+
+    /** Bắt đầu itemset mới với probs[0..len) = Pr(X ⊆ t) của các t chứa X */
+    void reset(double[] probs, int len) {
+        this.probs = probs;
+        this.len = len;
+        double m = 0.0, sq = 0.0;
+        for (int t = 0; t < len; t++) {
+            double p = probs[t];
+            m += p;
+            sq += p * p;
+        }
+        this.mu = m;
+        this.sumSq = sq;
+        this.poisson = Double.NaN;
+        this.exact = Double.NaN;
+    }
+
+    double mu() { return mu; }
+
+    /** Đã phải tính tail chính xác cho itemset hiện tại chưa */
+    boolean usedExact() { return !Double.isNaN(exact); }
+
+    /** Tail chính xác nếu đã tính, ngược lại ước lượng Poisson */
+    double estimate() {
+        if (usedExact()) return exact;
+        if (Double.isNaN(poisson)) poisson = WPFI_Metrics.poissonTailAtLeastStable(msup, mu);
+        return poisson;
+    }
+
+    /** Pr(S >= msup) >= r */
+    boolean atLeast(double r) {
+        if (!(r > 0)) return true;
+        if (r > 1.0) return false;
+        if (usedExact()) return exact >= r;
+        if (msup > len) return false;          // không đủ transaction: tail = 0
+
+        // 1) Chernoff / Hoeffding
+        if (msup > mu) {
+            double a = msup;
+            double chernoff = (mu > 0) ? Math.exp(a - mu - a * Math.log(a / mu)) : 0.0;
+            double hoeffding = Math.exp(-2 * (a - mu) * (a - mu) / len);
+            if (Math.min(chernoff, hoeffding) < r) return false;
+        } else {
+            double gap = mu - (msup - 1);      // Pr(S <= msup - 1) = Pr(S <= μ - gap)
+            double chernoff = Math.exp(-gap * gap / (2 * mu));
+            double hoeffding = Math.exp(-2 * gap * gap / len);
+            if (1.0 - Math.min(chernoff, hoeffding) >= r) return true;
+        }
+
+        // 2) Poisson ± Barbour–Hall
+        double eps = (1.0 - Math.exp(-mu)) / mu * sumSq + 1e-12;
+        double est = estimate();
+        if (est - eps >= r) return true;
+        if (est + eps < r) return false;
+
+        exact = WPFI_Metrics.poissonBinomialTailAtLeast(msup, probs, len);
+        return exact >= r;
+    }
+
+    /** Ghi nhận cách quyết định itemset hiện tại vào report theo kích thước k */
+    void count(WPFI_Apriori.MiningReport report, int k, boolean accepted) {
+        if (usedExact()) report.exactComputedByK.merge(k, 1, Integer::sum);
+        else if (accepted) report.acceptedByBoundK.merge(k, 1, Integer::sum);
+        else report.rejectedByBoundK.merge(k, 1, Integer::sum);
+    }
+}
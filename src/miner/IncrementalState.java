@@ -0,0 +1,181 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.ItemDictionary;
+import entity.Itemset;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Trạng thái để khai thác lại kiểu FUP sau khi nối thêm transaction:
+ *  - rows, checksum : số dòng đã tính và checksum nội dung các dòng đó (tên item + bit của p)
+ *  - μ của mọi 1-itemset và của mọi itemset đã được tính μ ở lần chạy trước (F + ứng viên mỗi mức)
+ * μ trên các dòng cũ không phụ thuộc tham số (MSUP, T, mode), nên lần chạy sau chỉ cần
+ * μ_mới(X) = μ_cũ(X) + μ_delta(X); itemset chưa có trong state mới phải tính trên toàn DB.
+ * Itemset được lưu theo tên item nên dùng được với từ điển mới (có thêm item).
+ */
+public final class IncrementalState {
+
+    private static final long MAGIC = 0x57504649494E4331L; // "WPFIINC1"
+    private static final long CHECKSUM_SEED = 0x243F6A8885A308D3L;
+
+    private final int rows;
+    private final long checksum;
+    private final String[] names;      // bảng tên, itemset tham chiếu theo chỉ số
+    private final double[] mu1;        // theo chỉ số tên
+    private final int[][] sets;        // itemset (chỉ số tên, tăng dần), |X| >= 2
+    private final double[] mus;
+
+    private IncrementalState(int rows, long checksum, String[] names, double[] mu1, int[][] sets, double[] mus) {
+        this.rows = rows;
+        this.checksum = checksum;
+        this.names = names;
+        this.mu1 = mu1;
+        this.sets = sets;
+        this.mus = mus;
+    }
+
+    /** Số dòng DB mà state đã tính */
+    public int rows() { return rows; }
+
+    /** Số itemset (|X| >= 2) có μ trong state */
+    public int size() { return sets.length; }
+
+    /** Các dòng [0, rows) của db có đúng là dữ liệu state đã tính (so checksum) */
+    public boolean matchesPrefix(UncertainDatabase db) {
+        return rows <= db.size() && checksum(db, 0, rows, CHECKSUM_SEED) == checksum;
+    }
+
+    /** μ_cũ của 1-itemset theo ID của dict (0 nếu item chưa có) */
+    double[] mu1For(ItemDictionary dict) {
+        double[] out = new double[dict.size()];
+        for (int i = 0; i < names.length; i++) {
+            int id = dict.idOf(names[i]);
+            if (id >= 0) out[id] = mu1[i];
+        }
+        return out;
+    }
+
+    /** μ_cũ của các itemset, khoá là Itemset theo dict */
+    Map<Itemset, Double> musFor(ItemDictionary dict) {
+        int[] idOf = new int[names.length];
+        for (int i = 0; i < names.length; i++) idOf[i] = dict.idOf(names[i]);
+
+        Map<Itemset, Double> out = new HashMap<>(sets.length * 2);
+        next:
+        for (int s = 0; s < sets.length; s++) {
+            int[] ids = new int[sets[s].length];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = idOf[sets[s][j]];
+                if (ids[j] < 0) continue next;
+            }
+            out.put(new Itemset(dict, ids), mus[s]);
+        }
+        return out;
+    }
+
+    /**
+     * Checksum tuần tự theo dòng: checksum(0, b) = tiếp tục checksum(0, a) qua các dòng [a, b),
+     * nên state mới chỉ cần băm phần delta.
+     */
+    static long checksum(UncertainDatabase db, int fromRow, int toRow, long h) {
+        ItemDictionary dict = db.getDictionary();
+        long[] nameHash = new long[dict.size()];
+        for (int id = 0; id < nameHash.length; id++) nameHash[id] = mix(dict.name(id).hashCode());
+
+        UncertainDatabase.Cursor c = db.cursor();
+        for (int r = fromRow; r < toRow; r++) {
+            c.seek(r);
+            h = mix(h ^ (db.rowEnd(r) - db.rowStart(r)));
+            while (c.next()) {
+                h = mix(h ^ nameHash[c.item()]);
+                h = mix(h ^ Double.doubleToRawLongBits(c.prob()));
+            }
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /* BUILD */
+
+    /** Gom μ trong 1 lần chạy để tạo state mới cho toàn bộ db */
+    static final class Recorder {
+        private final ItemDictionary dict;
+        private final List<int[]> sets = new ArrayList<>();
+        private double[] mus = new double[1024];
+        private double[] mu1;
+
+        Recorder(ItemDictionary dict) { this.dict = dict; }
+
+        void recordSingles(double[] mu1) { this.mu1 = mu1; }
+
+        void record(Itemset X, double mu) {
+            if (sets.size() == mus.length) mus = Arrays.copyOf(mus, mus.length * 2);
+            mus[sets.size()] = mu;
+            sets.add(X.toArray());
+        }
+
+        /**
+         * @param prev state đã khớp với [0, prev.rows) của db, hoặc null nếu tính lại checksum từ đầu
+         */
+        IncrementalState finish(UncertainDatabase db, IncrementalState prev) {
+            long h = (prev == null)
+                    ? checksum(db, 0, db.size(), CHECKSUM_SEED)
+                    : checksum(db, prev.rows, db.size(), prev.checksum);
+
+            String[] names = new String[dict.size()];
+            for (int id = 0; id < names.length; id++) names[id] = dict.name(id);
+            return new IncrementalState(db.size(), h, names,
+                    (mu1 != null) ? mu1.clone() : new double[names.length],
+                    sets.toArray(new int[0][]), Arrays.copyOf(mus, sets.size()));
+        }
+    }
+
+    /* PERSIST */
+
+    public void save(String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(rows);
+            out.writeLong(checksum);
+            out.writeInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                out.writeUTF(names[i]);
+                out.writeDouble(mu1[i]);
+            }
+            out.writeInt(sets.length);
+            for (int s = 0; s < sets.length; s++) {
+                out.writeByte(sets[s].length);
+                for (int id : sets[s]) out.writeInt(id);
+                out.writeDouble(mus[s]);
+            }
+        }
+    }
+
+    public static IncrementalState load(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readLong() != MAGIC) throw new IOException("Không phải file state incremental: " + path);
+            int rows = in.readInt();
+            long checksum = in.readLong();
+            String[] names = new String[in.readInt()];
+            double[] mu1 = new double[names.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+                mu1[i] = in.readDouble();
+            }
+            int[][] sets = new int[in.readInt()][];
+            double[] mus = new double[sets.length];
+            for (int s = 0; s < sets.length; s++) {
+                sets[s] = new int[in.readUnsignedByte()];
+                for (int j = 0; j < sets[s].length; j++) sets[s][j] = in.readInt();
+                mus[s] = in.readDouble();
+            }
+            return new IncrementalState(rows, checksum, names, mu1, sets, mus);
+        }
+    }
+}
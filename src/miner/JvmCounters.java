@@ -0,0 +1,81 @@
+package miner;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Số đo JVM cho 1 lần mine(), chỉ đọc MXBean lúc bắt đầu / kết thúc (không tốn gì trong lúc chạy):
+ *  - peak heap thật: đặt lại peak của các memory pool heap rồi cộng peak khi kết thúc
+ *  - byte cấp phát của thread khai thác (ThreadMXBean của HotSpot)
+ *  - số lần GC và tổng thời gian GC (xấp xỉ thời gian dừng)
+ * Peak heap và GC là số của cả tiến trình: khi nhiều job chạy cùng lúc (startShared) không chia được
+ * cho từng job nên ghi -1, chỉ byte cấp phát (theo thread) còn đúng cho job.
+ */
+final class JvmCounters {
+
+    private static final ThreadMXBean THREAD_MX = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOC_MX =
+            (THREAD_MX instanceof com.sun.management.ThreadMXBean t && t.isThreadAllocatedMemorySupported())
+                    ? t : null;
+
+    private final boolean shared;
+    private final long allocStart;
+    private final long gcCountStart, gcTimeStart;
+
+    private JvmCounters(boolean shared) {
+        this.shared = shared;
+        if (!shared) {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP && pool.isValid()) pool.resetPeakUsage();
+            }
+        }
+        allocStart = currentThreadAllocatedBytes();
+        long[] gc = gcTotals();
+        gcCountStart = gc[0];
+        gcTimeStart = gc[1];
+    }
+
+    static JvmCounters start() {
+        return new JvmCounters(false);
+    }
+
+    /** Cho job chạy cùng job khác: không đặt lại peak (xoá mất peak của job đang chạy), peak / GC ghi -1 */
+    static JvmCounters startShared() {
+        return new JvmCounters(true);
+    }
+
+    /** Ghi peak heap, byte cấp phát (cộng thêm vào phần các thread khác đã ghi), GC vào report */
+    void finish(WPFI_Apriori.MiningReport report) {
+        report.allocatedBytes += Math.max(0, currentThreadAllocatedBytes() - allocStart);
+        if (shared) {
+            report.peakMemoryMB = report.gcCount = report.gcPauseMs = -1;
+            return;
+        }
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) peak += pool.getPeakUsage().getUsed();
+        }
+        report.peakMemoryMB = peak / (1024 * 1024);
+        long[] gc = gcTotals();
+        report.gcCount = gc[0] - gcCountStart;
+        report.gcPauseMs = gc[1] - gcTimeStart;
+    }
+
+    /** Byte đã cấp phát bởi thread hiện tại, 0 nếu JVM không hỗ trợ */
+    static long currentThreadAllocatedBytes() {
+        return (ALLOC_MX != null && ALLOC_MX.isThreadAllocatedMemoryEnabled())
+                ? ALLOC_MX.getCurrentThreadAllocatedBytes() : 0L;
+    }
+
+    private static long[] gcTotals() {
+        long count = 0, time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+}
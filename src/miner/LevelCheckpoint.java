@@ -0,0 +1,278 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.ItemDictionary;
+import entity.Itemset;
+import util.MiningConfig;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Checkpoint sau mỗi mức của mine() (vòng Apriori), đủ để chạy tiếp từ mức k + 1:
+ *  - Lk, Fk (+ μ của Fk: phần muMap mà mức sau cần), các itemset dài k - 1 và k chắc chắn không
+ *    thuộc F (đã tính μ hoặc đã suy ra; mức k + 1 chỉ tra 2 độ dài này), I0 theo thứ tự chèn
+ *  - các bộ đếm của MiningReport và số byte file kết quả đã ghi xong (flush) tới mức k
+ * Khi chạy lại, file kết quả được cắt về đúng độ dài đó (bỏ dòng của mức đang dở) rồi ghi tiếp,
+ * nên không cần giữ lại các dòng đã ghi trong bộ nhớ.
+ * Fingerprint = checksum DB + mode + tham số + mô hình: checkpoint của lần chạy khác bị bỏ qua.
+ * Itemset lưu theo ID (DB giống hệt => từ điển giống hệt).
+ */
+final class LevelCheckpoint {
+
+    private static final long MAGIC = 0x57504649434B5035L; // "WPFICKP5"
+    private static final long SEED = 0x452821E638D01377L;
+
+    final long fingerprint;
+    final int level;             // mức đã xong
+    final long outputLength;
+    final int totalPatterns;
+    final long earlyStopped;
+    private final WPFI_Apriori.MiningReport counters;
+    private final int[][] lk;
+    private final int[][] fk;
+    private final double[] fkMus;
+    private final int[][] dead;
+    private final int[] i0;
+
+    private LevelCheckpoint(long fingerprint, int level, long outputLength, int totalPatterns, long earlyStopped,
+                            WPFI_Apriori.MiningReport counters, int[][] lk, int[][] fk, double[] fkMus, int[][] dead,
+                            int[] i0) {
+        this.fingerprint = fingerprint;
+        this.level = level;
+        this.outputLength = outputLength;
+        this.totalPatterns = totalPatterns;
+        this.earlyStopped = earlyStopped;
+        this.counters = counters;
+        this.lk = lk;
+        this.fk = fk;
+        this.fkMus = fkMus;
+        this.dead = dead;
+        this.i0 = i0;
+    }
+
+    /** Định danh lần chạy: nội dung DB, mode, tham số của config ảnh hưởng tới kết quả, mô hình, định dạng ghi */
+    static long fingerprint(UncertainDatabase db, WPFI_Apriori.PruningMode mode, MiningConfig config,
+                            ProbabilisticModel model, ResultWriter.Format format) {
+        long h = IncrementalState.checksum(db, 0, db.size(), SEED);
+        h = mix(h ^ db.size());
+        h = mix(h ^ mode.ordinal());
+        h = mix(h ^ config.msup);
+        h = mix(h ^ Double.doubleToLongBits(config.t));
+        h = mix(h ^ Double.doubleToLongBits(config.alpha));
+        h = mix(h ^ Double.doubleToLongBits(config.minAvgWeight));
+        h = mix(h ^ config.maxK);
+        h = mix(h ^ ((model == null) ? 0 : model.getClass().getName().hashCode()));
+        h = mix(h ^ format.ordinal());
+        return h;
+    }
+
+    private static long mix(long h) {
+        h *= 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    Set<Itemset> lk(ItemDictionary dict) {
+        Set<Itemset> out = new LinkedHashSet<>();
+        for (int[] ids : lk) out.add(new Itemset(dict, ids));
+        return out;
+    }
+
+    /** Fk theo thứ tự đã lưu (tăng dần), μ của chúng được thêm vào muMap */
+    List<Itemset> fk(ItemDictionary dict, Map<Itemset, Double> muMap) {
+        List<Itemset> out = new ArrayList<>(fk.length);
+        for (int s = 0; s < fk.length; s++) {
+            Itemset X = new Itemset(dict, fk[s]);
+            out.add(X);
+            muMap.put(X, fkMus[s]);
+        }
+        return out;
+    }
+
+    /** Các itemset đã tính μ mà không mở rộng được */
+    List<Itemset> dead(ItemDictionary dict) {
+        List<Itemset> out = new ArrayList<>(dead.length);
+        for (int[] ids : dead) out.add(new Itemset(dict, ids));
+        return out;
+    }
+
+    WPFI_Apriori.ItemOrder i0(int universeSize) {
+        WPFI_Apriori.ItemOrder order = new WPFI_Apriori.ItemOrder(universeSize);
+        for (int id : i0) order.add(id);
+        return order;
+    }
+
+    /* PERSIST */
+
+    /** Ghi ra file tạm rồi đổi tên, file cũ luôn còn nguyên nếu bị dừng giữa chừng */
+    static void save(String path, long fingerprint, int level, long outputLength, int totalPatterns, long earlyStopped,
+                     WPFI_Apriori.MiningReport report, Set<Itemset> lk, List<Itemset> fk, List<int[]> dead,
+                     Map<Itemset, Double> muMap, WPFI_Apriori.ItemOrder i0) throws IOException {
+        File tmp = new File(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeLong(MAGIC);
+            out.writeLong(fingerprint);
+            out.writeInt(level);
+            out.writeLong(outputLength);
+            out.writeInt(totalPatterns);
+            out.writeLong(earlyStopped);
+            writeCounters(out, report);
+
+            out.writeInt(lk.size());
+            for (Itemset X : lk) writeSet(out, X);
+            out.writeInt(fk.size());
+            for (Itemset X : fk) {
+                writeSet(out, X);
+                out.writeDouble(muMap.get(X));
+            }
+            out.writeInt(dead.size());
+            for (int[] ids : dead) writeSet(out, ids);
+            out.writeInt(i0.size());
+            for (int j = 0; j < i0.size(); j++) out.writeInt(i0.get(j));
+        }
+        Files.move(tmp.toPath(), new File(path).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeSet(DataOutputStream out, Itemset X) throws IOException {
+        writeSet(out, X.toArray());
+    }
+
+    /** Độ dài ghi bằng int: MAX_K <= 0 không giới hạn độ dài itemset */
+    private static void writeSet(DataOutputStream out, int[] ids) throws IOException {
+        out.writeInt(ids.length);
+        for (int id : ids) out.writeInt(id);
+    }
+
+    /** null nếu không có file, file hỏng hoặc fingerprint khác (checkpoint của lần chạy khác) */
+    static LevelCheckpoint loadIfMatches(String path, long fingerprint) {
+        File f = new File(path);
+        if (!f.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            if (in.readLong() != MAGIC || in.readLong() != fingerprint) return null;
+            int level = in.readInt();
+            long outputLength = in.readLong();
+            int totalPatterns = in.readInt();
+            long earlyStopped = in.readLong();
+            WPFI_Apriori.MiningReport counters = readCounters(in);
+
+            int[][] lk = new int[in.readInt()][];
+            for (int s = 0; s < lk.length; s++) lk[s] = readSet(in);
+            int[][] fk = new int[in.readInt()][];
+            double[] fkMus = new double[fk.length];
+            for (int s = 0; s < fk.length; s++) {
+                fk[s] = readSet(in);
+                fkMus[s] = in.readDouble();
+            }
+            int[][] dead = new int[in.readInt()][];
+            for (int s = 0; s < dead.length; s++) dead[s] = readSet(in);
+            int[] i0 = new int[in.readInt()];
+            for (int j = 0; j < i0.length; j++) i0[j] = in.readInt();
+            return new LevelCheckpoint(fingerprint, level, outputLength, totalPatterns, earlyStopped,
+                    counters, lk, fk, fkMus, dead, i0);
+        } catch (IOException e) {
+            System.out.println("[WARN] Checkpoint hỏng, bỏ qua: " + path + " (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    private static int[] readSet(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) throw new IOException("độ dài itemset âm: " + len);
+        int[] ids = new int[len];
+        for (int j = 0; j < ids.length; j++) ids[j] = in.readInt();
+        return ids;
+    }
+
+    /* BỘ ĐẾM CỦA REPORT (cộng dồn qua các mức, không gồm số đo JVM của riêng 1 lần chạy) */
+
+    private static void writeCounters(DataOutputStream out, WPFI_Apriori.MiningReport r) throws IOException {
+        out.writeLong(r.totalCandidates);
+        out.writeLong(r.totalEvaluated);
+        out.writeLong(r.boundPruned);
+        out.writeLong(r.branchPruned);
+        out.writeLong(r.subsetPruned);
+        out.writeLong(r.subsetTableEntries);
+        out.writeLong(r.subsetMemoSkipped);
+        out.writeLong(r.weightRuleHits);
+        out.writeLong(r.muHatRuleHits);
+        out.writeLong(r.approxRuleHits);
+        out.writeLong(r.ubBranchRuleHits);
+        writeMap(out, r.candidatesByK);
+        writeMap(out, r.evaluatedByK);
+        writeMap(out, r.patternsByK);
+        writeMap(out, r.genMsByK);
+        writeMap(out, r.evalMsByK);
+        writeMap(out, r.writeMsByK);
+        writeMap(out, r.parallelismByK);
+    }
+
+    private static void writeMap(DataOutputStream out, Map<Integer, ? extends Number> m) throws IOException {
+        out.writeInt(m.size());
+        for (Map.Entry<Integer, ? extends Number> e : m.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeDouble(e.getValue().doubleValue());
+        }
+    }
+
+    private static WPFI_Apriori.MiningReport readCounters(DataInputStream in) throws IOException {
+        WPFI_Apriori.MiningReport r = new WPFI_Apriori.MiningReport();
+        r.totalCandidates = in.readLong();
+        r.totalEvaluated = in.readLong();
+        r.boundPruned = in.readLong();
+        r.branchPruned = in.readLong();
+        r.subsetPruned = in.readLong();
+        r.subsetTableEntries = in.readLong();
+        r.subsetMemoSkipped = in.readLong();
+        r.weightRuleHits = in.readLong();
+        r.muHatRuleHits = in.readLong();
+        r.approxRuleHits = in.readLong();
+        r.ubBranchRuleHits = in.readLong();
+        readMap(in, r.candidatesByK, Double::intValue);
+        readMap(in, r.evaluatedByK, Double::intValue);
+        readMap(in, r.patternsByK, Double::intValue);
+        readMap(in, r.genMsByK, Double::longValue);
+        readMap(in, r.evalMsByK, Double::longValue);
+        readMap(in, r.writeMsByK, Double::longValue);
+        readMap(in, r.parallelismByK, v -> v);
+        return r;
+    }
+
+    private static <V> void readMap(DataInputStream in, Map<Integer, V> dst,
+                                    Function<Double, V> conv) throws IOException {
+        for (int n = in.readInt(); n > 0; n--) {
+            int k = in.readInt();
+            dst.put(k, conv.apply(in.readDouble()));
+        }
+    }
+
+    /** Ghi đè các bộ đếm của r bằng giá trị đã lưu */
+    void restoreCounters(WPFI_Apriori.MiningReport r) {
+        r.totalCandidates = counters.totalCandidates;
+        r.totalEvaluated = counters.totalEvaluated;
+        r.boundPruned = counters.boundPruned;
+        r.branchPruned = counters.branchPruned;
+        r.subsetPruned = counters.subsetPruned;
+        r.subsetTableEntries = counters.subsetTableEntries;
+        r.subsetMemoSkipped = counters.subsetMemoSkipped;
+        r.weightRuleHits = counters.weightRuleHits;
+        r.muHatRuleHits = counters.muHatRuleHits;
+        r.approxRuleHits = counters.approxRuleHits;
+        r.ubBranchRuleHits = counters.ubBranchRuleHits;
+        replace(r.candidatesByK, counters.candidatesByK);
+        replace(r.evaluatedByK, counters.evaluatedByK);
+        replace(r.patternsByK, counters.patternsByK);
+        replace(r.genMsByK, counters.genMsByK);
+        replace(r.evalMsByK, counters.evalMsByK);
+        replace(r.writeMsByK, counters.writeMsByK);
+        replace(r.parallelismByK, counters.parallelismByK);
+    }
+
+    private static <V> void replace(Map<Integer, V> dst, Map<Integer, V> src) {
+        dst.clear();
+        dst.putAll(src);
+    }
+}
@@ -0,0 +1,134 @@
+package miner;
+
+import entity.Itemset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bảng băm địa chỉ mở của các itemset cùng độ dài (mảng ID tăng dần), mỗi itemset kèm 1 trạng thái.
+ * Ô băm chỉ giữ số thứ tự của itemset; ID lưu liền nhau theo thứ tự thêm vào, nên ô trống không tốn
+ * chỗ cho khoá (bảng luôn còn >= 1/2 ô trống).
+ * Tra theo "mảng y bỏ phần tử ở vị trí skip" nên kiểm tra tập con (k-1) của ứng viên không phải tạo
+ * Itemset cho từng tập con.
+ */
+final class LevelTable {
+
+    static final byte ABSENT = 0;         // chưa tính μ, chưa suy ra được gì
+    static final byte DEAD = 1;           // đã tính μ, không mở rộng được
+    static final byte EXTENDABLE = 2;     // đã tính μ, thuộc F
+    static final byte RESULT = 3;         // thuộc Lk (cũng thuộc F)
+    static final byte IMPLIED_DEAD = 4;   // chưa tính μ, có tập con không thuộc F
+    static final byte IMPLIED_OK = 5;     // chưa tính μ, mọi tập con có thể thuộc F
+
+    private final int len;
+    private int[] slots;       // số thứ tự itemset + 1, 0 = ô trống
+    private int mask;
+    private int[] keys;        // ID của itemset e nằm ở keys[e * len .. e * len + len)
+    private byte[] status;     // theo số thứ tự itemset
+    private int size;
+
+    LevelTable(int len, int expected) {
+        this.len = len;
+        int cap = 16;
+        while (cap < expected * 2) cap <<= 1;
+        this.slots = new int[cap];
+        this.mask = cap - 1;
+        this.keys = new int[Math.max(1, expected) * len];
+        this.status = new byte[Math.max(1, expected)];
+    }
+
+    int size() { return size; }
+
+    void put(Itemset X, byte st) {
+        int[] ids = new int[len];
+        for (int j = 0; j < len; j++) ids[j] = X.get(j);
+        put(ids, -1, st);
+    }
+
+    /** Ghi trạng thái của y bỏ vị trí skip (skip = -1: cả y) */
+    void put(int[] y, int skip, byte st) {
+        int slot = find(y, skip);
+        int e = slots[slot] - 1;
+        if (e < 0) {
+            e = size++;
+            if (e == status.length) {
+                status = Arrays.copyOf(status, e * 2);
+                keys = Arrays.copyOf(keys, e * 2 * len);
+            }
+            int base = e * len;
+            for (int j = 0, o = 0; o < len; j++) {
+                if (j != skip) keys[base + o++] = y[j];
+            }
+            slots[slot] = e + 1;
+            if (size * 2 > slots.length) grow();
+        }
+        status[e] = st;
+    }
+
+    /** Trạng thái của y bỏ vị trí skip, ABSENT nếu không có */
+    byte statusWithout(int[] y, int skip) {
+        int e = slots[find(y, skip)] - 1;
+        return (e < 0) ? ABSENT : status[e];
+    }
+
+    /** Số itemset có trạng thái st */
+    int count(byte st) {
+        int c = 0;
+        for (int e = 0; e < size; e++) if (status[e] == st) c++;
+        return c;
+    }
+
+    /** Các itemset có trạng thái st, mỗi phần tử là mảng ID tăng dần */
+    List<int[]> withStatus(byte st) {
+        List<int[]> out = new ArrayList<>();
+        for (int e = 0; e < size; e++) {
+            if (status[e] == st) out.add(Arrays.copyOfRange(keys, e * len, e * len + len));
+        }
+        return out;
+    }
+
+    private int find(int[] y, int skip) {
+        int h = 1;
+        for (int j = 0, n = (skip < 0) ? len : len + 1; j < n; j++) {
+            if (j != skip) h = 31 * h + y[j];
+        }
+        for (int slot = mix(h) & mask; ; slot = (slot + 1) & mask) {
+            int e = slots[slot] - 1;
+            if (e < 0 || sameKey(e, y, skip)) return slot;
+        }
+    }
+
+    /** fmix32: ID nhỏ, liên tiếp vẫn rải đều các bit thấp dùng làm ô */
+    private static int mix(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85EBCA6B;
+        h ^= (h >>> 13);
+        h *= 0xC2B2AE35;
+        h ^= (h >>> 16);
+        return h;
+    }
+
+    private boolean sameKey(int e, int[] y, int skip) {
+        int base = e * len;
+        for (int j = 0, o = 0; o < len; j++) {
+            if (j == skip) continue;
+            if (keys[base + o++] != y[j]) return false;
+        }
+        return true;
+    }
+
+    /** Gấp đôi số ô, khoá giữ nguyên chỗ */
+    private void grow() {
+        slots = new int[slots.length * 2];
+        mask = slots.length - 1;
+        for (int e = 0; e < size; e++) {
+            int h = 1;
+            for (int j = e * len, end = j + len; j < end; j++) h = 31 * h + keys[j];
+            int slot = mix(h) & mask;
+            while (slots[slot] != 0) slot = (slot + 1) & mask;
+            slots[slot] = e + 1;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package miner;
+
+import db.UncertainDatabase;
+import util.MiningConfig;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Chạy nhiều job khai thác độc lập cùng lúc trong 1 JVM.
+ *  - Mỗi job có WPFI_Apriori, MiningConfig, file kết quả và report riêng: không job nào đọc/ghi Constants.
+ *  - DB và TID-index toàn DB dùng chung, chỉ đọc: CSR của DB được dựng trước khi job đầu tiên chạy,
+ *    TID-index build lười 1 lần cho mỗi DB (job FAST / DEPTH_FIRST / CLOSED / MAXIMAL / top-k dùng).
+ *  - Pool thread cố định (Java 17, chưa có virtual thread); mỗi job còn có thể tự song song mức bên
+ *    trong theo config.threads.
+ * Peak heap và GC là số của cả tiến trình, không tách được theo job: report của job ghi -1 cho
+ * peakMemoryMB / gcCount / gcPauseMs (job không đặt lại peak của job khác), số của cả lần runAll
+ * nằm trong lastProcessStats(); allocatedBytes vẫn là của thread chạy job.
+ */
+public final class MiningJobExecutor implements AutoCloseable {
+
+    /** 1 lần khai thác: mode + config trên db, ghi vào outputPath */
+    public static final class Job {
+        public final String name;
+        public final UncertainDatabase db;
+        public final WPFI_Apriori.PruningMode mode;
+        public final MiningConfig config;
+        public final String outputPath;
+
+        public Job(String name, UncertainDatabase db, WPFI_Apriori.PruningMode mode, MiningConfig config,
+                   String outputPath) {
+            this.name = name;
+            this.db = Objects.requireNonNull(db);
+            this.mode = (mode == null) ? WPFI_Apriori.PruningMode.ALL : mode;
+            this.config = Objects.requireNonNull(config);
+            this.outputPath = Objects.requireNonNull(outputPath);
+        }
+    }
+
+    /** Kết quả của 1 job: report, hoặc lỗi nếu job ném ngoại lệ (các job khác không bị ảnh hưởng) */
+    public static final class Result {
+        public final Job job;
+        public final WPFI_Apriori.MiningReport report;
+        public final Throwable error;
+
+        Result(Job job, WPFI_Apriori.MiningReport report, Throwable error) {
+            this.job = job;
+            this.report = report;
+            this.error = error;
+        }
+
+        public boolean ok() { return error == null; }
+    }
+
+    /** Số đo JVM của cả tiến trình trong 1 lần runAll (mọi job cộng lại, cả phần ngoài job) */
+    public static final class ProcessStats {
+        public final long wallMs;
+        public final long peakMemoryMB;
+        public final long gcCount;
+        public final long gcPauseMs;
+
+        ProcessStats(long wallMs, WPFI_Apriori.MiningReport jvm) {
+            this.wallMs = wallMs;
+            this.peakMemoryMB = jvm.peakMemoryMB;
+            this.gcCount = jvm.gcCount;
+            this.gcPauseMs = jvm.gcPauseMs;
+        }
+    }
+
+    /** TID-index của 1 DB, build lần đầu có job cần */
+    private static final class SharedIndex implements Supplier<TidIndex> {
+        private final UncertainDatabase db;
+        private volatile TidIndex index;
+
+        SharedIndex(UncertainDatabase db) {
+            this.db = db;
+        }
+
+        @Override
+        public TidIndex get() {
+            TidIndex idx = index;
+            if (idx == null) {
+                synchronized (this) {
+                    idx = index;
+                    if (idx == null) index = idx = TidIndex.build(db);
+                }
+            }
+            return idx;
+        }
+    }
+
+    private final ExecutorService pool;
+    private final Map<UncertainDatabase, SharedIndex> indexes = new IdentityHashMap<>();
+    private volatile ProcessStats lastStats;
+
+    public MiningJobExecutor(int parallelism) {
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "wpfi-job-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Đưa job vào hàng đợi; lỗi của job nằm trong Result, Future không ném */
+    public Future<Result> submit(Job job) {
+        SharedIndex index = sharedIndex(job.db);
+        return pool.submit(() -> run(job, index));
+    }
+
+    /**
+     * Chạy mọi job, chờ xong hết; kết quả theo thứ tự của jobs. Peak heap / GC của cả lần chạy lấy qua
+     * lastProcessStats() (peak được đặt lại lúc bắt đầu: không gọi khi job submit() khác còn đang chạy).
+     */
+    public List<Result> runAll(List<Job> jobs) throws InterruptedException {
+        long t0 = System.nanoTime();
+        JvmCounters jvm = JvmCounters.start();
+        List<Future<Result>> futures = new ArrayList<>(jobs.size());
+        for (Job job : jobs) futures.add(submit(job));
+        List<Result> out = new ArrayList<>(jobs.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                out.add(futures.get(i).get());
+            } catch (ExecutionException e) {   // không xảy ra: run() bắt mọi lỗi
+                out.add(new Result(jobs.get(i), null, e.getCause()));
+            }
+        }
+        WPFI_Apriori.MiningReport process = new WPFI_Apriori.MiningReport();
+        jvm.finish(process);
+        lastStats = new ProcessStats((System.nanoTime() - t0) / 1_000_000, process);
+        return out;
+    }
+
+    /** Số đo của lần runAll gần nhất, null nếu chưa có */
+    public ProcessStats lastProcessStats() {
+        return lastStats;
+    }
+
+    private synchronized SharedIndex sharedIndex(UncertainDatabase db) {
+        SharedIndex index = indexes.get(db);
+        if (index == null) {
+            db.occurrences();   // dựng CSR trên thread gọi: các job chỉ còn đọc DB
+            index = new SharedIndex(db);
+            indexes.put(db, index);
+        }
+        return index;
+    }
+
+    private static Result run(Job job, SharedIndex index) {
+        try {
+            WPFI_Apriori miner = new WPFI_Apriori(job.db, job.mode, job.config);
+            miner.useSharedIndex(index, true);
+            miner.mine(job.outputPath);
+            return new Result(job, miner.getLastReport(), null);
+        } catch (Throwable e) {
+            return new Result(job, null, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
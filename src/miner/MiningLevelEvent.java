@@ -0,0 +1,48 @@
+package miner;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Sự kiện JFR cho mỗi mức của mine() (thời lượng = cả mức). Chỉ được ghi khi có JFR recording,
+ * ngoài ra commit() gần như không tốn gì. level = 0: toàn bộ phần duyệt sâu (DEPTH_FIRST / EXACT).
+ */
+@Name("wpfi.MiningLevel")
+@Label("WPFI Mining Level")
+@Category("WPFI")
+@Description("Một mức của WPFI_Apriori.mine(): số ứng viên và thời gian sinh / tính μ / ghi")
+@StackTrace(false)
+final class MiningLevelEvent extends Event {
+
+    @Label("Mode")
+    String mode;
+
+    @Label("Level")
+    int level;
+
+    @Label("Candidates")
+    long candidates;
+
+    @Label("Evaluated")
+    long evaluated;
+
+    @Label("Patterns")
+    long patterns;
+
+    @Label("Generation Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long genNanos;
+
+    @Label("Evaluation Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long evalNanos;
+
+    @Label("Write Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long writeNanos;
+}
@@ -1,6 +1,5 @@
 package miner;
 
-import entity.Item;
 import entity.Itemset;
 
 public class MuHatPruning implements PruningStrategy {
@@ -11,7 +10,7 @@ public class MuHatPruning implements PruningStrategy {
     }
 
     @Override
-    public boolean shouldPrune(Itemset X, Item i, double muX, double muI) {
+    public boolean shouldPrune(Itemset X, int i, double muX, double muI) {
         return Math.min(muX, muI) < muHat;
     }
 }
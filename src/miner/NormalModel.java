@@ -0,0 +1,23 @@
+package miner;
+
+import util.WPFI_Metrics;
+
+/**
+ * Sup(X) ≈ N(μ, σ²) (CLT, hiệu chỉnh liên tục): chính xác hơn Poisson khi n và msup lớn,
+ * các p không nhỏ (Poisson bỏ qua phần Σp² của phương sai).
+ */
+public class NormalModel implements ProbabilisticModel {
+
+    @Override
+    public double tailAtLeast(int msup, double mu, double var) {
+        return WPFI_Metrics.normalTailAtLeast(msup, mu, var);
+    }
+
+    @Override
+    public double extendBound(int msup, double mu) {
+        return WPFI_Metrics.normalTailUpperBound(msup, mu);
+    }
+
+    @Override
+    public boolean needsVariance() { return true; }
+}
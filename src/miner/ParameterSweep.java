@@ -0,0 +1,430 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.ItemDictionary;
+import entity.Itemset;
+import util.MiningConfig;
+import util.WPFI_Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chạy nhiều bộ tham số (MSUP, T, ALPHA, MIN_AVG_WEIGHT) × mode trên cùng 1 DB mà chỉ tính μ 1 lần:
+ *  - Khai thác 1 lần ở bộ tham số lỏng nhất (MSUP nhỏ nhất, T nhỏ nhất): lattice = mọi itemset
+ *    (|X| <= MAX_K) có maxW * tail(μ) >= T, cùng μ và số TID. μ đơn điệu giảm nên lattice đóng với
+ *    tập con, và sàn μ của mọi bộ tham số chặt hơn đều cao hơn: F, L và mọi ứng viên có μ qua sàn
+ *    của từng bộ đều nằm trong lattice; itemset ngoài lattice coi như μ = 0 (dưới mọi sàn).
+ *  - Mỗi (bộ tham số, mode) chạy lại đúng logic của mode trên lattice, không quét DB:
+ *      NONE .. FAST : vòng Apriori theo mức của WPFI_Apriori.mine (cùng generateCandidatesWithPruning,
+ *                     nên ALPHA / MIN_AVG_WEIGHT và các luật của mode áp như khi chạy thật)
+ *      DEPTH_FIRST  : duyệt sâu như DepthFirstEngine
+ *      CLOSED / MAXIMAL: lọc kết quả của DEPTH_FIRST (so mọi tập con, cần MAX_K trong [1, 16])
+ *    Số ứng viên / itemset tính μ / kết quả và số lần các luật cắt tỉa của mode giống chạy thật;
+ *    early_stopped là số ứng viên dưới sàn (không có phép giao dừng sớm) nên nó và bound_pruned có
+ *    thể lệch chút ít. μ có thể khác chạy thật ở bit cuối (thứ tự nhân xác suất) nên itemset nằm
+ *    đúng trên ngưỡng có thể lệch.
+ *  - EXACT (tail Poisson-binomial cần danh sách xác suất, lattice chỉ có μ), CLOSED / MAXIMAL với
+ *    MAX_K ngoài [1, 16]: chạy thật trên DB cho từng bộ tham số (file kết quả tạm).
+ * Chỉ mô hình Poisson dựng sẵn. Mỗi bộ là MiningConfig gốc thay (MSUP, T, ALPHA, MIN_AVG_WEIGHT).
+ */
+public final class ParameterSweep {
+
+    private static final int MAX_SUBSET_K = 16;   // CLOSED / MAXIMAL từ lattice: 2^k tập con mỗi kết quả
+
+    /** 1 bộ tham số của lưới */
+    public static final class Setting {
+        public final int msup;
+        public final double t, alpha, minAvgWeight;
+
+        public Setting(int msup, double t, double alpha, double minAvgWeight) {
+            this.msup = msup;
+            this.t = t;
+            this.alpha = alpha;
+            this.minAvgWeight = minAvgWeight;
+        }
+
+        MiningConfig config(MiningConfig base) {
+            return base.withMsup(msup).withT(t).withAlpha(alpha).withMinAvgWeight(minAvgWeight);
+        }
+    }
+
+    /** Nhận report của từng (bộ tham số, mode) theo thứ tự của lưới */
+    public interface ReportSink {
+        void accept(Setting setting, WPFI_Apriori.PruningMode mode, WPFI_Apriori.MiningReport report);
+    }
+
+    /** Tích Descartes, MSUP đổi chậm nhất */
+    public static List<Setting> grid(int[] msups, double[] ts, double[] alphas, double[] minAvgWeights) {
+        List<Setting> out = new ArrayList<>();
+        for (int msup : msups)
+            for (double t : ts)
+                for (double alpha : alphas)
+                    for (double w : minAvgWeights) out.add(new Setting(msup, t, alpha, w));
+        return out;
+    }
+
+    /** μ và số TID của 1 itemset trong lattice */
+    private static final class Node {
+        final double mu;
+        final int count;
+
+        Node(double mu, int count) {
+            this.mu = mu;
+            this.count = count;
+        }
+    }
+
+    private final UncertainDatabase db;
+    private final ItemDictionary dict;
+    private final int[] universe;
+    private final double maxW;
+    private final MiningConfig base;
+    private final int maxK;
+
+    private double[] mu1;
+    private Map<Itemset, Node> lattice;
+    private WPFI_Apriori.MiningReport latticeReport = new WPFI_Apriori.MiningReport();
+
+    public ParameterSweep(UncertainDatabase db) {
+        this(db, MiningConfig.fromConstants());
+    }
+
+    /** base: MAX_K, THREADS (và giá trị không có trong bộ tham số) dùng cho mọi bộ */
+    public ParameterSweep(UncertainDatabase db, MiningConfig base) {
+        this.db = db;
+        this.base = base;
+        this.maxK = base.maxK;
+        this.dict = db.getDictionary();
+        this.universe = WPFI_Apriori.collectUniverse(db);
+        this.maxW = WPFI_Apriori.maxWeight(dict, universe);
+    }
+
+    /** Report của lần khai thác lattice (runtime, bộ nhớ, số itemset trong lattice = totalEvaluated) */
+    public WPFI_Apriori.MiningReport getLatticeReport() { return latticeReport; }
+
+    public void run(List<Setting> settings, List<WPFI_Apriori.PruningMode> modes, ReportSink sink) throws IOException {
+        if (settings.isEmpty()) return;
+        int loosestMsup = Integer.MAX_VALUE;
+        double loosestT = Double.POSITIVE_INFINITY;
+        for (Setting s : settings) {
+            loosestMsup = Math.min(loosestMsup, s.msup);
+            loosestT = Math.min(loosestT, s.t);
+        }
+        buildLattice(loosestMsup, loosestT);
+
+        for (Setting s : settings) {
+            MiningConfig config = s.config(base);
+            for (WPFI_Apriori.PruningMode mode : modes) sink.accept(s, mode, answer(mode, config));
+        }
+    }
+
+    private WPFI_Apriori.MiningReport answer(WPFI_Apriori.PruningMode mode, MiningConfig config) throws IOException {
+        boolean condensed = (mode == WPFI_Apriori.PruningMode.CLOSED || mode == WPFI_Apriori.PruningMode.MAXIMAL);
+        if (mode == WPFI_Apriori.PruningMode.EXACT || (condensed && (maxK <= 0 || maxK > MAX_SUBSET_K))) {
+            return mineDirect(mode, config);
+        }
+
+        WPFI_Apriori.MiningReport r = new WPFI_Apriori.MiningReport();
+        long startNs = System.nanoTime();
+        JvmCounters jvm = JvmCounters.start();
+        WPFI_Apriori.ScoreCheck check = new WPFI_Apriori.ScoreCheck(dict, universe, maxW, null, r, config);
+        int total;
+        if (mode == WPFI_Apriori.PruningMode.DEPTH_FIRST) {
+            total = depthFirst(check, r, null);
+        } else if (condensed) {
+            List<Itemset> results = new ArrayList<>();
+            depthFirst(check, r, results);
+            total = condense(results, mode == WPFI_Apriori.PruningMode.CLOSED, r);
+        } else {
+            total = levelWise(mode, check, r);
+        }
+        r.earlyStopped = check.stopped.sum();
+        r.totalPatterns = total;
+        r.runtimeMs = (System.nanoTime() - startNs) / 1_000_000;
+        jvm.finish(r);
+        return r;
+    }
+
+    /** Chạy thật mode trên DB, kết quả ghi vào file tạm rồi xoá */
+    private WPFI_Apriori.MiningReport mineDirect(WPFI_Apriori.PruningMode mode, MiningConfig config) throws IOException {
+        File tmp = File.createTempFile("wpfi-sweep-", ".txt");
+        try {
+            WPFI_Apriori miner = new WPFI_Apriori(db, mode, config);
+            miner.mine(tmp.getPath());
+            return miner.getLastReport();
+        } finally {
+            tmp.delete();
+            new File(tmp.getPath() + WPFI_Apriori.CHECKPOINT_SUFFIX).delete();
+        }
+    }
+
+    /* LATTICE */
+
+    /** μ của 1-itemset và mọi itemset có maxW * tail(μ) >= T ở (msup, t), duyệt sâu trên TID-index */
+    private void buildLattice(int msup, double t) {
+        latticeReport = new WPFI_Apriori.MiningReport();
+        long startNs = System.nanoTime();
+        JvmCounters jvm = JvmCounters.start();
+        WPFI_Apriori.ScoreCheck loose = new WPFI_Apriori.ScoreCheck(dict, universe, maxW, null, latticeReport,
+                base.withMsup(msup).withT(t));
+
+        // cùng thứ tự cộng như WPFI_Apriori.mine
+        mu1 = new double[dict.size()];
+        for (int pos = 0, end = db.occurrences(); pos < end; pos++) mu1[db.itemAt(pos)] += db.probAt(pos);
+
+        TidIndex index = TidIndex.build(db);
+        latticeReport.denseItems = index.denseCount();
+        lattice = new HashMap<>();
+        int[] items = WPFI_Apriori.extendableItems(universe, mu1, loose);
+        for (int i : items) lattice.put(new Itemset(dict, i), new Node(mu1[i], index.counts[i]));
+        if (maxK <= 0 || maxK >= 2) new LatticeBuilder(index, items, loose.extendFloor(Double.NaN)).run();
+
+        latticeReport.totalEvaluated = lattice.size();
+        latticeReport.earlyStopped = loose.stopped.sum();
+        latticeReport.runtimeMs = (System.nanoTime() - startNs) / 1_000_000;
+        jvm.finish(latticeReport);
+    }
+
+    /** Duyệt sâu giữ mọi itemset có μ >= floor (như DepthFirstEngine, không cận weight) */
+    private final class LatticeBuilder {
+        private final TidIndex index;
+        private final int[] items;
+        private final double floor;
+        private int[][] tidBuf = new int[4][];
+        private double[][] probBuf = new double[4][];
+        private int bufCap;
+
+        LatticeBuilder(TidIndex index, int[] items, double floor) {
+            this.index = index;
+            this.items = items;
+            this.floor = floor;
+            for (int i : items) bufCap = Math.max(bufCap, index.counts[i]);
+        }
+
+        void run() {
+            ensureDepth(0);
+            for (int a = 0; a < items.length; a++) {
+                int len = index.listOf(items[a], tidBuf[0], probBuf[0]);
+                expand(new Itemset(dict, items[a]), a, tidBuf[0], probBuf[0], len, mu1[items[a]], 1);
+            }
+        }
+
+        private void expand(Itemset X, int pos, int[] tids, double[] probs, int len, double muX, int depth) {
+            ensureDepth(depth);
+            int[] outT = tidBuf[depth];
+            double[] outP = probBuf[depth];
+            for (int b = pos + 1; b < items.length; b++) {
+                latticeReport.totalCandidates++;
+                int outLen = index.intersect(tids, probs, len, items[b], outT, outP, muX, floor);
+                if (outLen < 0) {
+                    latticeReport.earlyStopped++;
+                    continue;
+                }
+                double mu = 0.0;
+                for (int t = 0; t < outLen; t++) mu += outP[t];
+                if (mu < floor) continue;
+
+                Itemset Y = X.unionWith(items[b]);
+                lattice.put(Y, new Node(mu, outLen));
+                if (maxK <= 0 || Y.size() < maxK) expand(Y, b, outT, outP, outLen, mu, depth + 1);
+            }
+        }
+
+        private void ensureDepth(int depth) {
+            if (depth >= tidBuf.length) {
+                int cap = Math.max(depth + 1, tidBuf.length * 2);
+                tidBuf = Arrays.copyOf(tidBuf, cap);
+                probBuf = Arrays.copyOf(probBuf, cap);
+            }
+            if (tidBuf[depth] == null) {
+                tidBuf[depth] = new int[bufCap];
+                probBuf[depth] = new double[bufCap];
+            }
+        }
+    }
+
+    /** μ từ lattice, 0 nếu X nằm ngoài (μ dưới sàn lỏng nhất) */
+    private double muOf(Itemset X) {
+        Node nd = lattice.get(X);
+        return (nd == null) ? 0.0 : nd.mu;
+    }
+
+    /* MODE THEO MỨC: như WPFI_Apriori.mine, μ tra trong lattice */
+
+    private int levelWise(WPFI_Apriori.PruningMode mode, WPFI_Apriori.ScoreCheck check, WPFI_Apriori.MiningReport r) {
+        boolean tight = (mode == WPFI_Apriori.PruningMode.FAST);
+        if (tight) check.restrictTo(WPFI_Apriori.extendableItems(universe, mu1, check));
+        double muHat = WPFI_Metrics.solveMuHatPoisson(check.config.msup, check.config.t / maxW);
+        int n = db.size();
+
+        Set<Itemset> Lprev = new LinkedHashSet<>();
+        List<Integer> F1 = new ArrayList<>();
+        Map<Itemset, Double> muMap = new HashMap<>();
+        WPFI_Apriori.SubsetFilter subsets = new WPFI_Apriori.SubsetFilter();
+        for (int i : universe) {
+            Itemset X = new Itemset(dict, i);
+            if (check.extendable(X, mu1[i])) {
+                F1.add(i);
+                muMap.put(X, mu1[i]);
+                subsets.add(X, LevelTable.EXTENDABLE);
+            }
+            if (check.isResult(X, mu1[i], 0.0)) {
+                Lprev.add(X);
+                subsets.add(X, LevelTable.RESULT);
+            }
+        }
+        int total = Lprev.size();
+        r.patternsByK.put(1, total);
+        int[] f1 = F1.stream().mapToInt(Integer::intValue).toArray();
+        if (tight) check.restrictTo(f1);
+
+        WPFI_Apriori.ItemOrder I0 = new WPFI_Apriori.ItemOrder(dict.size());
+        for (Itemset x : Lprev) I0.addAll(x);
+
+        for (int k = 2; !Lprev.isEmpty(); k++) {
+            if (maxK > 0 && k > maxK) break;
+            Itemset[] cands = WPFI_Apriori.generateCandidatesWithPruning(
+                    Lprev, f1, subsets, I0, muMap, mu1, muHat, n, mode, check, false);
+
+            boolean lastLevel = (maxK > 0 && k == maxK);
+            r.candidatesByK.put(k, cands.length);
+            r.totalCandidates += cands.length;
+            r.evaluatedByK.put(k, cands.length);
+            r.totalEvaluated += cands.length;
+            if (cands.length == 0) break;
+
+            Set<Itemset> Lk = new LinkedHashSet<>();
+            for (Itemset X : cands) {
+                double mu = muOf(X);
+                if (!lastLevel) {
+                    if (check.extendable(X, mu)) {
+                        muMap.put(X, mu);
+                        subsets.add(X, LevelTable.EXTENDABLE);
+                    } else {
+                        subsets.add(X, LevelTable.DEAD);
+                    }
+                }
+                if (check.isResult(X, mu, 0.0)) {
+                    Lk.add(X);
+                    if (!lastLevel) subsets.add(X, LevelTable.RESULT);
+                }
+            }
+            r.patternsByK.put(k, Lk.size());
+            total += Lk.size();
+            if (Lk.isEmpty()) break;
+
+            for (Itemset x : Lk) I0.addAll(x);
+            Lprev = Lk;
+        }
+        return total;
+    }
+
+    /* DUYỆT SÂU: như DepthFirstEngine, μ tra trong lattice */
+
+    /** @param results nhận mọi kết quả (cả 1-itemset) nếu khác null */
+    private int depthFirst(WPFI_Apriori.ScoreCheck check, WPFI_Apriori.MiningReport r, List<Itemset> results) {
+        check.restrictTo(WPFI_Apriori.extendableItems(universe, mu1, check));
+        List<Integer> f1 = new ArrayList<>();
+        int singles = 0;
+        for (int i : universe) {
+            Itemset X = new Itemset(dict, i);
+            if (check.extendable(X, mu1[i])) f1.add(i);
+            if (check.isResult(X, mu1[i], 0.0)) {
+                singles++;
+                if (results != null) results.add(X);
+            }
+        }
+        r.patternsByK.put(1, singles);
+        int[] items = f1.stream().mapToInt(Integer::intValue).toArray();
+        check.restrictTo(items);
+        if (singles == 0 || (maxK > 0 && maxK < 2)) return singles;
+
+        double[] suffixMaxW = new double[items.length + 1];
+        for (int b = items.length - 1; b >= 0; b--) {
+            suffixMaxW[b] = Math.max(suffixMaxW[b + 1], dict.weight(items[b]));
+        }
+        int[] total = {singles};
+        for (int a = 0; a < items.length; a++) {
+            int i = items[a];
+            if (!check.extendable(maxAvg(dict.weight(i), 1, suffixMaxW[a + 1]), mu1[i])) continue;
+            expand(new Itemset(dict, i), a, items, suffixMaxW, check, r, results, total);
+        }
+        return total[0];
+    }
+
+    private void expand(Itemset X, int pos, int[] items, double[] suffixMaxW, WPFI_Apriori.ScoreCheck check,
+                        WPFI_Apriori.MiningReport r, List<Itemset> results, int[] total) {
+        int k = X.size() + 1;
+        for (int b = pos + 1; b < items.length; b++) {
+            int j = items[b];
+            r.candidatesByK.merge(k, 1, Integer::sum);
+            r.evaluatedByK.merge(k, 1, Integer::sum);
+            r.totalCandidates++;
+            r.totalEvaluated++;
+
+            double maxAvg = maxAvg(X.weightSum() + dict.weight(j), k, suffixMaxW[b + 1]);
+            Itemset Y = X.unionWith(j);
+            double mu = muOf(Y);
+            if (mu < check.extendFloor(maxAvg)) { // chạy thật: giao danh sách dừng sớm
+                check.stopped.increment();
+                continue;
+            }
+            if (!check.extendable(maxAvg, mu)) continue;
+
+            if (check.isResult(Y, mu, 0.0)) {
+                r.patternsByK.merge(k, 1, Integer::sum);
+                total[0]++;
+                if (results != null) results.add(Y);
+            }
+            if (maxK <= 0 || k < maxK) expand(Y, b, items, suffixMaxW, check, r, results, total);
+        }
+    }
+
+    /** Như DepthFirstEngine.maxAvg */
+    private double maxAvg(double weightSum, int size, double sufMax) {
+        double avg = weightSum / size;
+        if (sufMax <= avg || (maxK > 0 && size >= maxK)) return avg * (1 + 1e-12);
+        if (maxK <= 0) return sufMax;
+        int room = maxK - size;
+        return (weightSum + room * sufMax) / (size + room) * (1 + 1e-12);
+    }
+
+    /**
+     * CLOSED / MAXIMAL từ tập kết quả (định nghĩa như CondensedEngine): mỗi kết quả Z loại các tập con
+     * thật sự của nó là kết quả (CLOSED: chỉ tập con cùng số TID).
+     */
+    private int condense(List<Itemset> results, boolean closed, WPFI_Apriori.MiningReport r) {
+        Map<Itemset, Integer> indexOf = new HashMap<>(results.size() * 2);
+        for (int q = 0; q < results.size(); q++) indexOf.put(results.get(q), q);
+        boolean[] covered = new boolean[results.size()];
+        for (Itemset Z : results) {
+            int k = Z.size();
+            int[] ids = Z.toArray();
+            int count = lattice.get(Z).count;
+            for (int mask = 1, full = (1 << k) - 1; mask < full; mask++) {
+                int[] sub = new int[Integer.bitCount(mask)];
+                for (int b = 0, s = 0; b < k; b++) if ((mask & (1 << b)) != 0) sub[s++] = ids[b];
+                Itemset S = new Itemset(dict, sub);
+                Integer q = indexOf.get(S);
+                if (q == null || covered[q]) continue;
+                if (!closed || lattice.get(S).count == count) covered[q] = true;
+            }
+        }
+        r.patternsByK.clear();
+        int total = 0;
+        for (int q = 0; q < results.size(); q++) {
+            if (covered[q]) continue;
+            r.patternsByK.merge(results.get(q).size(), 1, Integer::sum);
+            total++;
+        }
+        return total;
+    }
+}
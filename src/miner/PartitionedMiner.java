@@ -0,0 +1,420 @@
+package miner;
+
+import db.PartitionedDatabase;
+import db.UncertainDatabase;
+import entity.ItemDictionary;
+import entity.Itemset;
+import util.MiningConfig;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Khai thác WPFI khi DB lớn hơn heap, kiểu SON/Savasere trên PartitionedDatabase (mỗi lúc chỉ 1 phần
+ * nằm trên heap). Kết quả và file kết quả giống hệt DEPTH_FIRST trên toàn DB (mô hình Poisson dựng
+ * sẵn): mọi itemset có score >= T, |X| <= MAX_K, 1-itemset trước rồi tới các itemset theo thứ tự duyệt.
+ *  - Pha 0: đọc từng phần, cộng μ của 1-itemset => F1 (item mở rộng được trên toàn DB).
+ *  - Pha 1: đọc từng phần (n_c dòng), duyệt sâu các item F1 trên TID-index của phần và giữ
+ *    các X có μ_c(X) >= (n_c / n) * sàn μ của kết quả theo avgW(X). X là kết quả thì μ(X) >= sàn, mà
+ *    μ(X) = Σ μ_c(X) nên có phần với μ_c(X) / n_c >= μ(X) / n: tập ứng viên chứa mọi kết quả.
+ *    Cây con cắt theo sàn mở rộng (cận avgWeight từ hậu tố, như DepthFirstEngine) cùng tỉ lệ.
+ *  - Pha 2: đọc lại từng phần, tính μ cho các ứng viên theo thứ tự từ điển (dùng lại danh sách chiếu
+ *    của tiền tố chung với ứng viên trước). μ cộng tiếp qua các phần theo đúng thứ tự dòng nên trùng
+ *    từng bit với μ khi khai thác trong bộ nhớ.
+ * Bộ nhớ: 1 phần + TID-index của nó, cộng tập ứng viên trên heap tối đa bằng ngân sách của 1 phần
+ * (CandidateRuns). Vượt quá thì ứng viên được ghi ra đĩa thành các run đã sắp, trộn lại sau pha 1;
+ * pha 2 đọc lại theo khối và cộng dồn μ qua 1 file tạm cho mỗi phần (cùng thứ tự cộng, μ không đổi).
+ * File tạm nằm cạnh file kết quả và bị xoá khi xong.
+ */
+public final class PartitionedMiner {
+
+    private static final double FLOOR_SLACK = 1 - 1e-12;   // bù sai số làm tròn của n_c / n
+
+    private final PartitionedDatabase pdb;
+    private final MiningConfig config;
+    private final int maxK;
+    private ResultWriter.Format outputFormat = ResultWriter.Format.TEXT;
+    private Report lastReport = new Report();
+
+    /** Report của PartitionedMiner */
+    public static class Report extends WPFI_Apriori.MiningReport {
+        public int partitions;      // số phần DB
+        public int spilledRuns;     // số run ứng viên đã ghi ra đĩa (0 = tập ứng viên nằm trọn trên heap)
+
+        @Override
+        protected Map<String, Object> extraFields() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("partitions", partitions);
+            m.put("spilledRuns", spilledRuns);
+            return m;
+        }
+    }
+
+    public PartitionedMiner(PartitionedDatabase pdb) {
+        this(pdb, MiningConfig.fromConstants());
+    }
+
+    public PartitionedMiner(PartitionedDatabase pdb, MiningConfig config) {
+        this.pdb = pdb;
+        this.config = config;
+        this.maxK = config.maxK;
+    }
+
+    public Report getLastReport() { return lastReport; }
+
+    /** Định dạng file kết quả (mặc định TEXT), xem ResultWriter */
+    public void setOutputFormat(ResultWriter.Format format) {
+        this.outputFormat = (format == null) ? ResultWriter.Format.TEXT : format;
+    }
+
+    /** @return số itemset đã ghi vào outputPath */
+    public int mine(String outputPath) throws IOException {
+        lastReport = new Report();
+        long startNs = System.nanoTime();
+        JvmCounters jvm = JvmCounters.start();
+
+        ItemDictionary dict = pdb.getDictionary();
+        int[] universe = new int[dict.size()];          // từ điển chỉ gồm item có xuất hiện
+        for (int i = 0; i < universe.length; i++) universe[i] = i;
+        WPFI_Apriori.ScoreCheck check = new WPFI_Apriori.ScoreCheck(dict, universe,
+                WPFI_Apriori.maxWeight(dict, universe), null, lastReport, config);
+        int n = pdb.size();
+        int parts = pdb.partitions();
+        lastReport.partitions = parts;
+
+        /* Pha 0: μ của 1-itemset (cộng theo thứ tự dòng như khi DB nằm trong bộ nhớ) */
+        double[] mu1 = new double[dict.size()];
+        for (int p = 0; p < parts; p++) {
+            PartitionedDatabase.Part part = pdb.part(p);
+            UncertainDatabase db = part.db;
+            for (int pos = db.rowStart(part.fromRow), end = db.rowStart(part.toRow); pos < end; pos++) {
+                mu1[db.itemAt(pos)] += db.probAt(pos);
+            }
+        }
+        // mọi item của 1 kết quả đều mở rộng được trên toàn DB: phần chỉ duyệt các item này
+        boolean[] inF1 = new boolean[dict.size()];
+        for (int i : WPFI_Apriori.extendableItems(universe, mu1, check)) inF1[i] = true;
+
+        File tmpDir = new File(outputPath).getAbsoluteFile().getParentFile();
+        int total = 0;
+        File muFile = null;
+        try (CandidateRuns candidates = new CandidateRuns(dict, pdb.memoryBudget(), tmpDir)) {
+            /* Pha 1: ứng viên từ từng phần */
+            for (int p = 0; p < parts && (maxK <= 0 || maxK >= 2); p++) {
+                PartitionedDatabase.Part part = pdb.part(p);
+                TidIndex index = TidIndex.build(part.db, part.fromRow, part.toRow, TidIndex.DENSE_RATIO);
+                new LocalPass(part, index, dict, check, inF1, (double) part.rows() / n * FLOOR_SLACK, candidates).run();
+            }
+            Itemset[] cands = candidates.finish();     // null: đã ghi ra đĩa
+            lastReport.spilledRuns = candidates.spilledRuns();
+            lastReport.candidatesByK.put(1, universe.length);
+            lastReport.candidatesByK.putAll(candidates.bySize());
+            lastReport.totalCandidates = universe.length + candidates.count();
+
+            /* Pha 2: μ toàn cục của ứng viên */
+            double[] mu = null;
+            if (cands != null) {
+                mu = new double[cands.length];
+                for (int p = 0; p < parts && cands.length > 0; p++) {
+                    PartitionedDatabase.Part part = pdb.part(p);
+                    accumulate(TidIndex.build(part.db, part.fromRow, part.toRow, TidIndex.DENSE_RATIO), cands, mu);
+                }
+            } else {
+                muFile = accumulateSpilled(candidates, tmpDir);
+            }
+            lastReport.totalEvaluated = universe.length + candidates.count();
+
+            /* Ghi kết quả như DEPTH_FIRST: 1-itemset theo ID, rồi các itemset dài hơn theo thứ tự duyệt */
+            try (ResultWriter writer = new ResultWriter(outputPath, outputFormat, dict, 0L)) {
+                boolean wantScore = writer.needsScore();
+                for (int i : universe) {
+                    Itemset X = new Itemset(dict, i);
+                    if (!check.isResult(X, mu1[i], 0.0)) continue;
+                    writer.write(X, mu1[i], wantScore ? check.score(X, mu1[i], 0.0) : Double.NaN);
+                    total++;
+                }
+                lastReport.patternsByK.put(1, total);
+                if (total > 0 && cands != null) { // như DEPTH_FIRST: không có 1-itemset nào qua thì không duyệt sâu
+                    total += write(writer, check, cands, mu, cands.length);
+                } else if (total > 0) {
+                    Itemset[] block = new Itemset[blockSize(candidates)];
+                    double[] muBlock = new double[block.length];
+                    try (CandidateRuns.Reader in = candidates.reader(); DataInputStream mus = openMu(muFile)) {
+                        for (int m; (m = in.next(block)) > 0; ) {
+                            for (int c = 0; c < m; c++) muBlock[c] = mus.readDouble();
+                            total += write(writer, check, block, muBlock, m);
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (muFile != null) muFile.delete();
+        }
+
+        lastReport.earlyStopped = check.stopped.sum();
+        lastReport.totalPatterns = total;
+        lastReport.runtimeMs = (System.nanoTime() - startNs) / 1_000_000;
+        jvm.finish(lastReport);
+        return total;
+    }
+
+    /** Ghi các ứng viên cands[0..count) là kết quả, trả về số itemset đã ghi */
+    private int write(ResultWriter writer, WPFI_Apriori.ScoreCheck check, Itemset[] cands, double[] mu, int count) {
+        boolean wantScore = writer.needsScore();
+        int written = 0;
+        for (int c = 0; c < count; c++) {
+            Itemset X = cands[c];
+            if (!check.isResult(X, mu[c], 0.0)) continue;
+            writer.write(X, mu[c], wantScore ? check.score(X, mu[c], 0.0) : Double.NaN);
+            lastReport.patternsByK.merge(X.size(), 1, Integer::sum);
+            written++;
+        }
+        return written;
+    }
+
+    /**
+     * Pha 2 khi ứng viên nằm trên đĩa: với mỗi phần, đọc lại ứng viên theo khối cùng μ đã cộng tới phần
+     * trước, cộng tiếp trên phần này rồi ghi ra file μ mới.
+     * @return file μ toàn cục, cùng thứ tự với candidates.reader()
+     */
+    private File accumulateSpilled(CandidateRuns candidates, File dir) throws IOException {
+        Itemset[] block = new Itemset[blockSize(candidates)];
+        double[] mu = new double[block.length];
+        File muFile = null;
+        try {
+            for (int p = 0; p < pdb.partitions(); p++) {
+                PartitionedDatabase.Part part = pdb.part(p);
+                TidIndex index = TidIndex.build(part.db, part.fromRow, part.toRow, TidIndex.DENSE_RATIO);
+                File next = File.createTempFile("wpfi-mu-", ".bin", dir);
+                try (CandidateRuns.Reader in = candidates.reader();
+                     DataInputStream prev = (muFile == null) ? null : openMu(muFile);
+                     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(next), 1 << 16))) {
+                    for (int m; (m = in.next(block)) > 0; ) {
+                        for (int c = 0; c < m; c++) mu[c] = (prev == null) ? 0.0 : prev.readDouble();
+                        accumulate(index, (m == block.length) ? block : Arrays.copyOf(block, m), mu);
+                        for (int c = 0; c < m; c++) out.writeDouble(mu[c]);
+                    }
+                } finally {
+                    if (muFile != null) muFile.delete();
+                    muFile = next;
+                }
+            }
+            return muFile;
+        } catch (IOException | RuntimeException e) {
+            if (muFile != null) muFile.delete();
+            throw e;
+        }
+    }
+
+    private static int blockSize(CandidateRuns candidates) {
+        return (int) Math.max(1, Math.min(candidates.limit(), candidates.count()));
+    }
+
+    private static DataInputStream openMu(File f) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+    }
+
+    /**
+     * Cộng tiếp μ trên phần này cho mọi ứng viên (đã sắp theo thứ tự từ điển):
+     * danh sách chiếu theo độ sâu, chỉ dựng lại từ vị trí khác tiền tố của ứng viên trước.
+     * Tích xác suất nhân theo ID tăng dần như DepthFirstEngine.
+     */
+    static void accumulate(TidIndex index, Itemset[] cands, double[] mu) {
+        int cap = 0;
+        for (int c : index.counts) cap = Math.max(cap, c);
+        int[][] tids = new int[4][];
+        double[][] probs = new double[4][];
+        int[] lens = new int[4];
+
+        Itemset prev = null;
+        for (int c = 0; c < cands.length; c++) {
+            Itemset X = cands[c];
+            int k = X.size();
+            if (k > tids.length) {
+                tids = Arrays.copyOf(tids, Math.max(k, tids.length * 2));
+                probs = Arrays.copyOf(probs, tids.length);
+                lens = Arrays.copyOf(lens, tids.length);
+            }
+            int d = 0;
+            if (prev != null) {
+                int m = Math.min(k, prev.size());
+                while (d < m && X.get(d) == prev.get(d)) d++;
+            }
+            for (; d < k; d++) {
+                if (tids[d] == null) {
+                    tids[d] = new int[cap];
+                    probs[d] = new double[cap];
+                }
+                lens[d] = (d == 0)
+                        ? index.listOf(X.get(0), tids[0], probs[0])
+                        : index.intersect(tids[d - 1], probs[d - 1], lens[d - 1], X.get(d), tids[d], probs[d]);
+            }
+            double m = mu[c];
+            double[] p = probs[k - 1];
+            for (int t = 0, len = lens[k - 1]; t < len; t++) m += p[t];
+            mu[c] = m;
+            prev = X;
+        }
+    }
+
+    /**
+     * Pha 1 trên 1 phần: duyệt sâu các itemset kích thước >= 2 có μ trên phần đủ lớn
+     * (μ_c >= frac * sàn toàn cục, frac = n_c / n), như DepthFirstEngine nhưng so với sàn μ thay vì score.
+     * Sàn của phần nhỏ nên rất nhiều con được thử: μ_c của mọi con được đếm ngang qua các dòng của
+     * danh sách chiếu (rẻ trên dữ liệu thưa), chỉ con qua sàn mới giao danh sách.
+     */
+    private final class LocalPass {
+        private final UncertainDatabase db;
+        private final int fromRow;
+        private final TidIndex index;
+        private final ItemDictionary dict;
+        private final WPFI_Apriori.ScoreCheck check;
+        private final boolean[] inF1;
+        private final double frac;
+        private final CandidateRuns out;
+
+        private int[] items;
+        private double[] suffixMaxW;
+        private int[][] tidBuf = new int[4][];
+        private double[][] probBuf = new double[4][];
+        private int bufCap;
+
+        // đếm ngang: μ_c của mọi con cộng qua các dòng của danh sách chiếu
+        private int[] posOf;          // vị trí trong items theo ID, -1 nếu không duyệt
+        private double[] childMu;     // theo vị trí, 0 ngoài lúc đếm
+        private boolean[] seen;       // theo vị trí: đã nằm trong touched (tích có thể bằng 0), false ngoài lúc đếm
+        private int[] touched;
+        private int[][] passBuf = new int[4][];   // theo độ sâu: các vị trí con qua sàn
+
+        LocalPass(PartitionedDatabase.Part part, TidIndex index, ItemDictionary dict, WPFI_Apriori.ScoreCheck check,
+                  boolean[] inF1, double frac, CandidateRuns out) {
+            this.db = part.db;
+            this.fromRow = part.fromRow;
+            this.index = index;
+            this.dict = dict;
+            this.check = check;
+            this.inF1 = inF1;
+            this.frac = frac;
+            this.out = out;
+        }
+
+        void run() throws IOException {
+            // item có thể nằm trong 1 ứng viên của phần: thuộc F1 và μ_c(i) >= frac * sàn theo maxW
+            double byMaxW = frac * check.extendFloor(Double.NaN);
+            int[] keep = new int[index.counts.length];
+            int m = 0;
+            for (int i = 0; i < keep.length; i++) {
+                if (inF1[i] && index.counts[i] > 0 && index.sums[i] >= byMaxW) keep[m++] = i;
+            }
+            items = Arrays.copyOf(keep, m);
+            posOf = new int[index.counts.length];
+            Arrays.fill(posOf, -1);
+            for (int b = 0; b < m; b++) posOf[items[b]] = b;
+            childMu = new double[m];
+            seen = new boolean[m];
+            touched = new int[m];
+
+            suffixMaxW = new double[items.length + 1];
+            for (int b = items.length - 1; b >= 0; b--) {
+                suffixMaxW[b] = Math.max(suffixMaxW[b + 1], dict.weight(items[b]));
+            }
+            for (int i : items) bufCap = Math.max(bufCap, index.counts[i]);
+
+            ensureDepth(0);
+            for (int a = 0; a < items.length; a++) {
+                int i = items[a];
+                int len = index.listOf(i, tidBuf[0], probBuf[0]);
+                double mu = 0.0;
+                for (int t = 0; t < len; t++) mu += probBuf[0][t];
+                if (mu < frac * check.extendFloor(maxAvg(dict.weight(i), 1, suffixMaxW[a + 1]))) continue;
+                expand(new Itemset(dict, i), a, tidBuf[0], probBuf[0], len, mu, 1);
+            }
+        }
+
+        private void expand(Itemset X, int pos, int[] tids, double[] probs, int len, double muX, int depth)
+                throws IOException {
+            int k = X.size() + 1;
+            ensureDepth(depth);
+            int[] outT = tidBuf[depth];
+            double[] outP = probBuf[depth];
+
+            // μ_c của mọi con bằng 1 lượt qua các dòng, chỉ giao với các con qua sàn
+            int[] pass = passBuf[depth];
+            int np = 0;
+            for (int q = 0, nt = countChildren(tids, probs, len, pos); q < nt; q++) {
+                int b = touched[q];
+                double floor = frac * check.extendFloor(maxAvg(X.weightSum() + dict.weight(items[b]), k, suffixMaxW[b + 1]));
+                if (childMu[b] >= floor) pass[np++] = b;
+                else check.stopped.increment();
+                childMu[b] = 0.0;
+                seen[b] = false;
+            }
+            Arrays.sort(pass, 0, np);
+
+            for (int q = 0; q < np; q++) {
+                int b = pass[q];
+                int j = items[b];
+                double floor = frac * check.extendFloor(maxAvg(X.weightSum() + dict.weight(j), k, suffixMaxW[b + 1]));
+                int outLen = index.intersect(tids, probs, len, j, outT, outP, muX, floor);
+                if (outLen < 0) {
+                    check.stopped.increment();
+                    continue;
+                }
+                double mu = 0.0;
+                for (int t = 0; t < outLen; t++) mu += outP[t];
+                if (mu < floor) continue;
+
+                Itemset Y = X.unionWith(j);
+                if (mu >= frac * check.resultFloor(Y)) out.add(Y);
+                if (maxK <= 0 || k < maxK) expand(Y, b, outT, outP, outLen, mu, depth + 1);
+            }
+        }
+
+        /**
+         * Cộng μ_c(X ∪ {items[b]}) vào childMu[b] cho mọi b > pos có mặt trong các dòng của danh sách chiếu
+         * (tids, probs)[0..len); các b chạm tới nằm trong touched[0..return).
+         */
+        private int countChildren(int[] tids, double[] probs, int len, int pos) {
+            int nt = 0;
+            for (int t = 0; t < len; t++) {
+                int row = fromRow + tids[t];
+                double px = probs[t];
+                for (int q = db.rowStart(row), e = db.rowEnd(row); q < e; q++) {
+                    int b = posOf[db.itemAt(q)];
+                    if (b <= pos) continue;
+                    if (!seen[b]) {
+                        seen[b] = true;
+                        touched[nt++] = b;
+                    }
+                    childMu[b] += px * db.probAt(q);
+                }
+            }
+            return nt;
+        }
+
+        /** Như DepthFirstEngine.maxAvg */
+        private double maxAvg(double weightSum, int size, double sufMax) {
+            double avg = weightSum / size;
+            if (sufMax <= avg || (maxK > 0 && size >= maxK)) return avg * (1 + 1e-12);
+            if (maxK <= 0) return sufMax;
+            int room = maxK - size;
+            return (weightSum + room * sufMax) / (size + room) * (1 + 1e-12);
+        }
+
+        private void ensureDepth(int depth) {
+            if (depth >= tidBuf.length) {
+                int cap = Math.max(depth + 1, tidBuf.length * 2);
+                tidBuf = Arrays.copyOf(tidBuf, cap);
+                probBuf = Arrays.copyOf(probBuf, cap);
+                passBuf = Arrays.copyOf(passBuf, cap);
+            }
+            if (tidBuf[depth] == null) {
+                tidBuf[depth] = new int[bufCap];
+                probBuf[depth] = new double[bufCap];
+                passBuf[depth] = new int[items.length];
+            }
+        }
+    }
+}
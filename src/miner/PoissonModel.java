@@ -1,39 +1,24 @@
 package miner;
 
-import db.UncertainDatabase;
-import entity.Itemset;
-import entity.Item;
-import entity.Transaction;
+import util.WPFI_Metrics;
 
+/**
+ * Sup(X) ≈ Poisson(μ): hợp khi các p nhỏ. Tail tính ổn định (log-pmf, không giai thừa đệ quy),
+ * không dùng σ² nên không cần cộng Σp².
+ */
 public class PoissonModel implements ProbabilisticModel {
 
     @Override
-    public double computeProbAtLeast(Itemset X, UncertainDatabase db, int msup) {
-        double mu = computeMu(X, db);
-        return 1.0 - Math.exp(-mu) * Math.pow(mu, msup - 1) / factorial(msup - 1);
+    public double tailAtLeast(int msup, double mu, double var) {
+        return WPFI_Metrics.poissonTailAtLeastStable(msup, mu);
     }
 
+    /** Tail Poisson tăng theo μ và μ_Y <= μ_X nên chính nó là cận */
     @Override
-    public double computeMu(Itemset X, UncertainDatabase db) {
-        double mu = 0.0;
-        for (Transaction t : db.getTransactions()) {
-            double p = 1.0;
-            for (Item i : X.getItems()) p *= t.getProb(i);
-            mu += p;
-        }
-        return mu;
+    public double extendBound(int msup, double mu) {
+        return WPFI_Metrics.poissonTailAtLeastStable(msup, mu);
     }
 
     @Override
-    public double computeVar(Itemset X, UncertainDatabase db) {
-        double v = 0.0;
-        for (Transaction t : db.getTransactions()) {
-            double p = 1.0;
-            for (Item i : X.getItems()) p *= t.getProb(i);
-            v += p * (1.0 - p);
-        }
-        return v;
-    }
-
-    private double factorial(int n) { return (n <= 1) ? 1 : n * factorial(n - 1); }
+    public boolean needsVariance() { return false; }
 }
@@ -0,0 +1,129 @@
+package miner;
+
+import entity.Itemset;
+
+/**
+ * Các vòng nhân-cộng xác suất trong TidIndex, tách ra để thay được bằng bản SIMD:
+ *  - denseMu / denseMoments: mọi item của X dày, Σ_t Π cột (cột = 0 ở transaction không chứa item
+ *    nên không cần mặt nạ trong từng word, chỉ bỏ qua word AND = 0)
+ *  - gatherMu: item gốc thưa, các item còn lại dày: tích theo TID-list của item gốc (gather cột)
+ * Scalar (mặc định) giữ đúng thứ tự nhân/cộng cũ nên μ không đổi. Bản vector (VectorProbKernels,
+ * thư mục simd/, cần module jdk.incubator.vector) cộng theo lane nên μ có thể lệch ở bit cuối;
+ * bật bằng -Dwpfi.kernels=vector, module hoặc class không có thì dùng scalar.
+ */
+interface ProbKernels {
+
+    String name();
+
+    /** μ(X) khi mọi item dày, base: item ít TID nhất */
+    double denseMu(TidIndex index, Itemset X, int base);
+
+    /** μ(X) khi mọi item dày, ghi σ² = μ - Σp² vào vars[slot] */
+    double denseMoments(TidIndex index, Itemset X, int base, double[] vars, int slot);
+
+    /**
+     * μ(X) khi base thưa và mọi item khác dày; -1 khi chắc chắn μ < floor
+     * (floor <= 0: không dừng sớm, slack: sai số làm tròn cho phép của phần còn lại).
+     */
+    double gatherMu(TidIndex index, Itemset X, int base, double floor, double slack);
+
+    /** Kernel theo -Dwpfi.kernels (scalar | vector), 1 lần cho mỗi JVM */
+    ProbKernels DEFAULT = load(System.getProperty("wpfi.kernels", "scalar"));
+
+    static ProbKernels load(String name) {
+        if (!name.equalsIgnoreCase("vector")) return Scalar.INSTANCE;
+        try {
+            return (ProbKernels) Class.forName("miner.VectorProbKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            System.out.println("[WARN] Không nạp được kernel vector (cần biên dịch simd/ và chạy với "
+                    + "--add-modules jdk.incubator.vector), dùng scalar: " + e);
+            return Scalar.INSTANCE;
+        }
+    }
+
+    /** Vòng lặp vô hướng, cùng thứ tự phép tính với bản trước khi tách kernel */
+    final class Scalar implements ProbKernels {
+        static final Scalar INSTANCE = new Scalar();
+
+        private Scalar() {}
+
+        @Override
+        public String name() { return "scalar"; }
+
+        @Override
+        public double denseMu(TidIndex index, Itemset X, int base) {
+            int k = X.size();
+            long[] baseBits = index.bits[base];
+            double[] baseCol = index.cols[base];
+
+            double mu = 0.0;
+            for (int w = 0; w < baseBits.length; w++) {
+                long m = baseBits[w];
+                for (int j = 0; j < k && m != 0; j++) m &= index.bits[X.get(j)][w];
+
+                while (m != 0) {
+                    int t = (w << 6) + Long.numberOfTrailingZeros(m);
+                    double prod = baseCol[t];
+                    for (int j = 0; j < k; j++) {
+                        int it = X.get(j);
+                        if (it != base) prod *= index.cols[it][t];
+                    }
+                    mu += prod;
+                    m &= m - 1;
+                }
+            }
+            return mu;
+        }
+
+        @Override
+        public double denseMoments(TidIndex index, Itemset X, int base, double[] vars, int slot) {
+            int k = X.size();
+            long[] baseBits = index.bits[base];
+            double mu = 0.0, sq = 0.0;
+            for (int w = 0; w < baseBits.length; w++) {
+                long m = baseBits[w];
+                for (int j = 0; j < k && m != 0; j++) m &= index.bits[X.get(j)][w];
+                while (m != 0) {
+                    int t = (w << 6) + Long.numberOfTrailingZeros(m);
+                    double prod = index.cols[base][t];
+                    for (int j = 0; j < k; j++) {
+                        int it = X.get(j);
+                        if (it != base) prod *= index.cols[it][t];
+                    }
+                    mu += prod;
+                    sq += prod * prod;
+                    m &= m - 1;
+                }
+            }
+            vars[slot] = Math.max(0.0, mu - sq);
+            return mu;
+        }
+
+        @Override
+        public double gatherMu(TidIndex index, Itemset X, int base, double floor, double slack) {
+            int k = X.size();
+            int[] baseTids = index.tids[base];
+            double[] basePs = index.probs[base];
+            boolean bounded = floor > 0;
+            double rest = index.sums[base];
+
+            double mu = 0.0;
+            for (int i = 0; i < baseTids.length; i++) {
+                int tid = baseTids[i];
+                double prod = basePs[i];
+                rest -= prod;
+
+                boolean ok = true;
+                for (int j = 0; j < k; j++) {
+                    int it = X.get(j);
+                    if (it == base) continue;
+                    if ((index.bits[it][tid >>> 6] & (1L << tid)) == 0) { ok = false; break; }
+                    prod *= index.cols[it][tid];
+                }
+                if (ok) mu += prod;
+                else if (bounded && mu + rest + slack < floor) return -1.0;
+            }
+            return mu;
+        }
+    }
+}
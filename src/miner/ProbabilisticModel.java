@@ -2,9 +2,39 @@ package miner;
 
 import db.UncertainDatabase;
 import entity.Itemset;
+import util.WPFI_Metrics;
 
+/**
+ * Mô hình xấp xỉ Pr(Sup(X) >= msup) từ các moment của Sup(X).
+ * Miner chỉ gọi tailAtLeast / extendBound trên μ, σ² đã tính sẵn (σ² cộng dồn cùng vòng
+ * lặp với μ khi needsVariance()), nên đổi mô hình không thêm lần quét DB nào.
+ */
 public interface ProbabilisticModel {
-    double computeProbAtLeast(Itemset X, UncertainDatabase db, int msup);
-    double computeMu(Itemset X, UncertainDatabase db);
-    double computeVar(Itemset X, UncertainDatabase db);
+
+    /** Pr(Sup >= msup) xấp xỉ từ μ = Σp và σ² = Σp(1-p) */
+    double tailAtLeast(int msup, double mu, double var);
+
+    /**
+     * Cận trên của tailAtLeast cho mọi Y ⊇ X khi chỉ biết μ_X, không giảm theo μ
+     * (điều kiện để F và các bước cắt tỉa của miner vẫn lossless).
+     */
+    double extendBound(int msup, double mu);
+
+    /** false: tailAtLeast không dùng σ², miner bỏ qua việc cộng Σp² */
+    boolean needsVariance();
+
+    /** Tail của X trên db, μ và σ² trong cùng 1 lần quét */
+    default double computeProbAtLeast(Itemset X, UncertainDatabase db, int msup) {
+        if (!needsVariance()) return tailAtLeast(msup, computeMu(X, db), 0.0);
+        double[] m = WPFI_Metrics.computeMoments(X, db);
+        return tailAtLeast(msup, m[0], m[1]);
+    }
+
+    default double computeMu(Itemset X, UncertainDatabase db) {
+        return WPFI_Metrics.computeMu(X, db);
+    }
+
+    default double computeVar(Itemset X, UncertainDatabase db) {
+        return WPFI_Metrics.computeVar(X, db);
+    }
 }
@@ -1,8 +1,8 @@
 package miner;
 
-import entity.Item;
 import entity.Itemset;
 
 public interface PruningStrategy {
-    boolean shouldPrune(Itemset X, Item i, double muX, double muI);
+    /** @param i ID của item định thêm vào X (xem ItemDictionary) */
+    boolean shouldPrune(Itemset X, int i, double muX, double muI);
 }
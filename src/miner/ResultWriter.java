@@ -0,0 +1,416 @@
+package miner;
+
+import entity.ItemDictionary;
+import entity.Itemset;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Ghi kết quả bất đồng bộ: miner chỉ chép ID item + μ + score vào lô (batch) rồi đẩy qua hàng đợi
+ * có giới hạn, 1 luồng ghi riêng mã hoá vào ByteBuffer dùng lại và ghi qua FileChannel.
+ * Số lô cố định (POOL): khi luồng ghi chậm, miner chờ lô trống (backpressure) thay vì tích RAM.
+ *
+ * Định dạng:
+ *  - TEXT:   "[item[p=.., w=..], ...]" mỗi dòng, giống hệt Itemset.toString() (mặc định)
+ *  - SPMF:   "a b c #SUP: μ #SCORE: score" (μ, score 4 chữ số thập phân)
+ *  - BINARY: header (magic + tên item theo ID), mỗi bản ghi: varint k, varint ID đầu,
+ *            varint hiệu các ID kế tiếp (ID tăng dần), μ và score dạng double 8 byte
+ *
+ * Chỉ 1 luồng được gọi write/flush/close.
+ */
+public final class ResultWriter implements AutoCloseable {
+
+    public enum Format { TEXT, SPMF, BINARY }
+
+    static final byte[] MAGIC = "WPFIRES1".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int BATCH = 4096;          // bản ghi / lô
+    private static final int POOL = 4;              // số lô tối đa đang chờ ghi
+    private static final int BUF = 1 << 16;
+
+    /** Lô bản ghi: ID của bản ghi r nằm trong items[starts[r] .. starts[r+1]) */
+    private static final class Batch {
+        int[] items;
+        final int[] starts;
+        final double[] mu;
+        final double[] score;
+        int count;
+        CountDownLatch barrier;                     // != null: lô đánh dấu flush
+        boolean last;                               // lô đánh dấu close
+
+        Batch(int cap) {
+            items = new int[cap * 4];
+            starts = new int[cap + 1];
+            mu = new double[cap];
+            score = new double[cap];
+        }
+
+        void add(Itemset X, double m, double s) {
+            int at = starts[count], k = X.size();
+            if (at + k > items.length) items = Arrays.copyOf(items, Math.max(items.length * 2, at + k));
+            for (int i = 0; i < k; i++) items[at + i] = X.get(i);
+            mu[count] = m;
+            score[count] = s;
+            starts[++count] = at + k;
+        }
+
+        boolean full() { return count == BATCH; }
+    }
+
+    private final Format format;
+    private final ItemDictionary dict;
+    private final FileChannel channel;
+    private final BlockingQueue<Batch> full = new ArrayBlockingQueue<>(POOL + 2);
+    private final BlockingQueue<Batch> free = new ArrayBlockingQueue<>(POOL);
+    private final Thread thread;
+
+    private Batch current;
+    private boolean closed;
+
+    // chỉ luồng ghi dùng
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(BUF);
+    private final byte[][] labels;                  // nhãn TEXT/SPMF theo ID, tạo lười
+    private volatile long position;                 // vị trí file sau lần flush gần nhất
+    private volatile Throwable failure;             // lỗi đầu tiên của luồng ghi (kể cả RuntimeException / Error)
+
+    /**
+     * @param keepBytes > 0: giữ keepBytes byte đầu của file rồi ghi nối (chạy tiếp từ checkpoint);
+     *                  0: ghi mới (BINARY ghi header)
+     */
+    public ResultWriter(String path, Format format, ItemDictionary dict, long keepBytes) throws IOException {
+        this.format = (format == null) ? Format.TEXT : format;
+        this.dict = dict;
+        this.labels = new byte[dict.size()][];
+        this.channel = (keepBytes > 0)
+                ? FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+                : FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+        if (keepBytes > 0) {
+            channel.truncate(keepBytes);
+            channel.position(keepBytes);
+        } else if (this.format == Format.BINARY) {
+            writeHeader();
+        }
+        this.position = channel.position();
+
+        for (int i = 0; i < POOL; i++) free.add(new Batch(BATCH));
+        this.current = take(free);
+        this.thread = new Thread(this::drain, "wpfi-result-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public Format format() { return format; }
+
+    /** Định dạng có lưu score (TEXT bỏ qua nên miner khỏi tính) */
+    public boolean needsScore() { return format != Format.TEXT; }
+
+    public void write(Itemset X, double mu, double score) {
+        current.add(X, mu, score);
+        if (current.full()) {
+            handOff(current);
+            current = take(free);
+        }
+    }
+
+    /** Đẩy hết bản ghi đã nhận xuống đĩa (force) và trả về độ dài file kết quả */
+    public long flush() {
+        Batch mark = new Batch(0);
+        mark.barrier = new CountDownLatch(1);
+        if (current.count > 0) {
+            handOff(current);
+            current = take(free);
+        }
+        handOff(mark);
+        try {
+            mark.barrier.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bị ngắt khi chờ ghi kết quả", e);
+        }
+        checkFailure();
+        return position;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            // put thẳng (không qua handOff): kể cả khi đã lỗi, luồng ghi vẫn phải nhận mark cuối để thoát
+            if (current.count > 0) full.put(current);
+            Batch mark = new Batch(0);
+            mark.last = true;
+            full.put(mark);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+        checkFailure();
+    }
+
+    private void handOff(Batch b) {
+        checkFailure();
+        try {
+            full.put(b);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bị ngắt khi chờ ghi kết quả", e);
+        }
+    }
+
+    private static Batch take(BlockingQueue<Batch> q) {
+        try {
+            return q.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Bị ngắt khi chờ ghi kết quả", e);
+        }
+    }
+
+    private void checkFailure() {
+        Throwable f = failure;
+        if (f == null) return;
+        if (f instanceof IOException e) throw new UncheckedIOException("Ghi file kết quả lỗi", e);
+        throw new IllegalStateException("Luồng ghi kết quả lỗi", f);
+    }
+
+    /* LUỒNG GHI */
+
+    /**
+     * Sau lỗi đầu tiên vẫn nhận lô (bỏ qua không ghi), trả lô trống và mở barrier, để miner đang chờ
+     * take(free) / flush() không bị treo và flush()/close() ném lại lỗi.
+     */
+    private void drain() {
+        while (true) {
+            Batch b = take(full);
+            try {
+                if (failure == null) {
+                    for (int r = 0; r < b.count; r++) encode(b, r);
+                    if (b.barrier != null || b.last) {
+                        writeOut();
+                        if (b.barrier != null) channel.force(false);
+                        position = channel.position();
+                    }
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+            if (b.barrier != null) b.barrier.countDown();
+            if (b.last) return;
+            if (b.barrier == null) {
+                b.count = 0;
+                free.add(b);
+            }
+        }
+    }
+
+    private void encode(Batch b, int r) throws IOException {
+        int from = b.starts[r], to = b.starts[r + 1];
+        switch (format) {
+            case TEXT -> {
+                put((byte) '[');
+                for (int i = from; i < to; i++) {
+                    if (i > from) put(SEP);
+                    put(label(b.items[i]));
+                }
+                put((byte) ']');
+                put(NEWLINE);
+            }
+            case SPMF -> {
+                for (int i = from; i < to; i++) {
+                    if (i > from) put((byte) ' ');
+                    put(label(b.items[i]));
+                }
+                put(SUP);
+                putFixed4(b.mu[r]);
+                put(SCORE);
+                putFixed4(b.score[r]);
+                put((byte) '\n');
+            }
+            case BINARY -> {
+                ensure(5 * (to - from + 1) + 16);
+                putVarint(to - from);
+                int prev = 0;
+                for (int i = from; i < to; i++) {
+                    putVarint(b.items[i] - prev);
+                    prev = b.items[i];
+                }
+                buf.putDouble(b.mu[r]);
+                buf.putDouble(b.score[r]);
+            }
+        }
+    }
+
+    private static final byte[] SEP = ", ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SUP = " #SUP: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SCORE = " #SCORE: ".getBytes(StandardCharsets.US_ASCII);
+
+    /** Nhãn item: TEXT giống Item.toString() (String.format chỉ chạy 1 lần / item), SPMF là tên */
+    private byte[] label(int id) {
+        byte[] l = labels[id];
+        if (l == null) {
+            String s = (format == Format.TEXT) ? dict.item(id).toString() : dict.name(id);
+            labels[id] = l = s.getBytes(StandardCharsets.UTF_8);
+        }
+        return l;
+    }
+
+    private void writeHeader() throws IOException {
+        buf.put(MAGIC);
+        putVarint(dict.size());
+        for (int id = 0; id < dict.size(); id++) {
+            byte[] name = dict.name(id).getBytes(StandardCharsets.UTF_8);
+            ensure(5);
+            putVarint(name.length);
+            put(name);
+        }
+        writeOut();
+    }
+
+    private void ensure(int n) throws IOException {
+        if (buf.remaining() < n) writeOut();
+    }
+
+    private void put(byte b) throws IOException {
+        ensure(1);
+        buf.put(b);
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        int off = 0;
+        while (off < bytes.length) {
+            if (!buf.hasRemaining()) writeOut();
+            int n = Math.min(buf.remaining(), bytes.length - off);
+            buf.put(bytes, off, n);
+            off += n;
+        }
+    }
+
+    /** Gọi sau ensure() */
+    private void putVarint(int v) {
+        while ((v & ~0x7F) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    /** v với đúng 4 chữ số thập phân, không qua String.format */
+    private void putFixed4(double v) throws IOException {
+        if (!Double.isFinite(v) || Math.abs(v) >= 1e14) {
+            put(Double.toString(v).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        long s = Math.round(v * 10_000);
+        ensure(24);
+        if (s < 0) {
+            buf.put((byte) '-');
+            s = -s;
+        }
+        putDigits(s / 10_000);
+        buf.put((byte) '.');
+        long f = s % 10_000;
+        buf.put((byte) ('0' + f / 1000));
+        buf.put((byte) ('0' + f / 100 % 10));
+        buf.put((byte) ('0' + f / 10 % 10));
+        buf.put((byte) ('0' + f % 10));
+    }
+
+    private void putDigits(long v) {
+        if (v >= 10) putDigits(v / 10);
+        buf.put((byte) ('0' + v % 10));
+    }
+
+    private void writeOut() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+
+    /* ĐỌC BINARY */
+
+    public interface RecordSink {
+        /** @param names tên item theo ID (từ header) */
+        default void header(String[] names) {}
+
+        /** @param ids ID tăng dần, mảng dùng lại giữa các lần gọi */
+        void accept(int[] ids, int size, double mu, double score);
+    }
+
+    /** Đọc file kết quả BINARY */
+    public static void readBinary(String path, RecordSink sink) throws IOException {
+        Path p = Paths.get(path);
+        try (InputStream raw = Channels.newInputStream(FileChannel.open(p, StandardOpenOption.READ));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, BUF))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Không phải file kết quả BINARY: " + path);
+            String[] names = new String[readVarint(in)];
+            for (int id = 0; id < names.length; id++) {
+                byte[] b = new byte[readVarint(in)];
+                in.readFully(b);
+                names[id] = new String(b, StandardCharsets.UTF_8);
+            }
+            sink.header(names);
+
+            int[] ids = new int[16];
+            while (true) {
+                int k;
+                try {
+                    k = readVarint(in);
+                } catch (EOFException end) {
+                    return;
+                }
+                if (k > ids.length) ids = new int[Math.max(k, ids.length * 2)];
+                int prev = 0;
+                for (int i = 0; i < k; i++) ids[i] = prev = prev + readVarint(in);
+                double mu = in.readDouble();
+                double score = in.readDouble();
+                sink.accept(ids, k, mu, score);
+            }
+        }
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+    }
+
+    /** true nếu file bắt đầu bằng magic của định dạng BINARY */
+    public static boolean isBinary(String path) {
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.ItemDictionary;
+import entity.Itemset;
+import util.MiningConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Khai thác WPFI xấp xỉ trên mẫu m dòng chọn đều ngẫu nhiên (không lặp, seed cố định), sai số (ε, δ):
+ *  - s(X) = Σ trên mẫu của Pr(X ⊆ t) ∈ [0, 1], μ̂(X) = (n / m) * s(X).
+ *  - Khoảng tin cậy của μ từ s (chứa μ với xác suất >= 1 - δ với mỗi itemset), giao của:
+ *      Hoeffding : |s - E| <= sqrt(m ln(4/δ) / 2)              (chặt khi μ / n lớn)
+ *      Bernstein : phương sai <= E, mỗi phía δ/4                (chặt khi μ nhỏ so với n)
+ *    với E = m μ / n. m = ⌈ln(4/δ) / (2ε²)⌉ nên sai số tuyệt đối của μ / n không quá ε.
+ *  - Duyệt sâu trên TID-index của mẫu như DEPTH_FIRST, so cận của μ với các sàn μ của ScoreCheck:
+ *      cận trên < sàn mở rộng : chắc chắn loại, cắt cả cây con
+ *      cận dưới >= sàn kết quả: chắc chắn là kết quả, ghi với μ̂
+ *      cận trên < sàn kết quả : chắc chắn không là kết quả
+ *      còn lại                : chưa chắc, tính μ chính xác trên toàn DB (như pha 2 của PartitionedMiner)
+ *  - m còn được nâng để itemset không có trong mẫu chắc chắn dưới sàn (sàn μ nhỏ so với n cần mẫu lớn);
+ *    m >= n: không có gì để lấy mẫu, chạy DEPTH_FIRST.
+ * File kết quả theo thứ tự của DEPTH_FIRST; chỉ itemset phân loại chắc chắn có thể sai (xác suất <= δ
+ * mỗi itemset). Chỉ dùng mô hình Poisson dựng sẵn (cần sàn μ).
+ */
+public final class SampledMiner {
+
+    private static final double FLOOR_SLACK = 1 - 1e-9;   // sàn dừng sớm khi giao: nới cho sai số làm tròn
+
+    private final UncertainDatabase db;
+    private final double epsilon, delta;
+    private final long seed;
+    private final MiningConfig config;
+    private final int maxK;
+    private ResultWriter.Format outputFormat = ResultWriter.Format.TEXT;
+    private boolean compareWithFast;
+    private WPFI_Apriori.MiningReport lastReport = new WPFI_Apriori.MiningReport();
+    private Report lastSample = new Report(lastReport);
+
+    /**
+     * Report của SampledMiner: report khai thác (của DEPTH_FIRST khi mẫu phủ cả DB) và các số đo của mẫu.
+     */
+    public static final class Report {
+        public final WPFI_Apriori.MiningReport mining;
+        public int sampleSize;      // số dòng của mẫu
+        public long verified;       // itemset chưa phân loại được trên mẫu, tính μ chính xác
+        public double speedupOverFast = Double.NaN; // thời gian FAST / thời gian lấy mẫu
+
+        Report(WPFI_Apriori.MiningReport mining) {
+            this.mining = mining;
+        }
+
+        @Override
+        public String toString() {
+            return "SampledMiner.Report{" +
+                    "sampleSize=" + sampleSize +
+                    ", verified=" + verified +
+                    ", speedupOverFast=" + speedupOverFast +
+                    ", mining=" + mining +
+                    '}';
+        }
+    }
+
+    public SampledMiner(UncertainDatabase db, double epsilon, double delta, long seed) {
+        this(db, epsilon, delta, seed, MiningConfig.fromConstants());
+    }
+
+    public SampledMiner(UncertainDatabase db, double epsilon, double delta, long seed, MiningConfig config) {
+        if (!(epsilon > 0 && epsilon < 1)) throw new IllegalArgumentException("ε phải trong (0, 1)");
+        if (!(delta > 0 && delta < 1)) throw new IllegalArgumentException("δ phải trong (0, 1)");
+        this.db = db;
+        this.epsilon = epsilon;
+        this.delta = delta;
+        this.seed = seed;
+        this.config = config;
+        this.maxK = config.maxK;
+    }
+
+    /** Số dòng mẫu để sai số của μ / n không quá ε với xác suất >= 1 - δ (Hoeffding, xem Bounds) */
+    public static long sampleSize(double epsilon, double delta) {
+        return (long) Math.ceil(Math.log(4 / delta) / (2 * epsilon * epsilon));
+    }
+
+    public Report getLastReport() { return lastSample; }
+
+    /** Định dạng file kết quả (mặc định TEXT), xem ResultWriter */
+    public void setOutputFormat(ResultWriter.Format format) {
+        this.outputFormat = (format == null) ? ResultWriter.Format.TEXT : format;
+    }
+
+    /** Chạy thêm FAST trên toàn DB (file tạm) sau khi khai thác để điền speedupOverFast */
+    public void setCompareWithFast(boolean on) {
+        this.compareWithFast = on;
+    }
+
+    /** @return số itemset đã ghi vào outputPath */
+    public int mine(String outputPath) throws IOException {
+        long startNs = System.nanoTime();
+        lastReport = new WPFI_Apriori.MiningReport();
+        ItemDictionary dict = db.getDictionary();
+        int[] universe = new int[dict.size()];          // từ điển chỉ gồm item có xuất hiện
+        for (int i = 0; i < universe.length; i++) universe[i] = i;
+        WPFI_Apriori.ScoreCheck check = new WPFI_Apriori.ScoreCheck(dict, universe,
+                WPFI_Apriori.maxWeight(dict, universe), null, lastReport, config);
+
+        // mẫu còn phải đủ lớn để itemset không có trong mẫu (s = 0) chắc chắn dưới sàn mở rộng:
+        // cận trên của μ khi s = 0 là 2 L n / m (Bernstein), phải < sàn theo maxW
+        int n = db.size();
+        double minFromFloor = 2 * Math.log(4 / delta) * n / check.extendFloor(Double.NaN);
+        long want = Math.max(sampleSize(epsilon, delta), (long) Math.floor(minFromFloor) + 1);
+        int m = (minFromFloor >= n) ? n : (int) Math.min(n, want);
+
+        long[] verified = new long[1];
+        int total = (m >= n) ? mineAll(outputPath) : mineSample(outputPath, m, dict, universe, check, startNs, verified);
+        long ns = System.nanoTime() - startNs;
+        Report sample = new Report(lastReport);
+        sample.sampleSize = m;
+        sample.verified = verified[0];
+        if (compareWithFast) sample.speedupOverFast = (double) runFast(outputPath) / Math.max(1L, ns);
+        lastSample = sample;
+        return total;
+    }
+
+    /** Mẫu phủ cả DB: kết quả chính xác bằng DEPTH_FIRST */
+    private int mineAll(String outputPath) {
+        WPFI_Apriori exact = new WPFI_Apriori(db, WPFI_Apriori.PruningMode.DEPTH_FIRST, config);
+        exact.setOutputFormat(outputFormat);
+        exact.mine(outputPath);
+        lastReport = exact.getLastReport();
+        return lastReport.totalPatterns;
+    }
+
+    /** Thời gian (ns) của FAST trên toàn DB, kết quả ghi vào file tạm rồi xoá */
+    private long runFast(String outputPath) throws IOException {
+        File tmp = File.createTempFile("wpfi-fast-", ".txt", new File(outputPath).getAbsoluteFile().getParentFile());
+        try {
+            long t0 = System.nanoTime();
+            new WPFI_Apriori(db, WPFI_Apriori.PruningMode.FAST, config).mine(tmp.getPath());
+            return System.nanoTime() - t0;
+        } finally {
+            tmp.delete();
+            new File(tmp.getPath() + WPFI_Apriori.CHECKPOINT_SUFFIX).delete();
+        }
+    }
+
+    private int mineSample(String outputPath, int m, ItemDictionary dict, int[] universe,
+                           WPFI_Apriori.ScoreCheck check, long startNs, long[] verified) throws IOException {
+        JvmCounters jvm = JvmCounters.start();
+        Bounds bounds = new Bounds(m, db.size(), delta);
+
+        UncertainDatabase sample = db.sample(m, seed);
+        TidIndex index = TidIndex.build(sample);
+        lastReport.denseItems = index.denseCount();
+
+        List<Hit> hits = new ArrayList<>();            // chắc chắn là kết quả (μ̂)
+        List<Itemset> unsure = new ArrayList<>();      // cần μ chính xác
+        new SamplePass(index, dict, check, bounds, hits, unsure).run(universe);
+
+        /* μ chính xác cho các itemset chưa chắc (theo thứ tự từ điển, dùng lại danh sách của tiền tố) */
+        Itemset[] cands = unsure.toArray(new Itemset[0]);
+        unsure = null;
+        Arrays.sort(cands);
+        double[] mu = new double[cands.length];
+        if (cands.length > 0) PartitionedMiner.accumulate(TidIndex.build(db), cands, mu);
+        for (int c = 0; c < cands.length; c++) {
+            if (check.isResult(cands[c], mu[c], 0.0)) hits.add(new Hit(cands[c], mu[c]));
+        }
+        verified[0] = cands.length;
+        lastReport.totalEvaluated = lastReport.totalCandidates + cands.length;
+
+        /* Ghi như DEPTH_FIRST: 1-itemset theo ID, rồi các itemset dài hơn theo thứ tự duyệt */
+        hits.sort(Comparator.<Hit>comparingInt(h -> h.itemset.size() == 1 ? 0 : 1).thenComparing(h -> h.itemset));
+        int total = 0;
+        try (ResultWriter writer = new ResultWriter(outputPath, outputFormat, dict, 0L)) {
+            boolean wantScore = writer.needsScore();
+            for (Hit h : hits) {
+                // như DEPTH_FIRST: không có 1-itemset nào là kết quả thì không duyệt sâu
+                if (total == 0 && h.itemset.size() > 1) break;
+                writer.write(h.itemset, h.mu, wantScore ? check.score(h.itemset, h.mu, 0.0) : Double.NaN);
+                lastReport.patternsByK.merge(h.itemset.size(), 1, Integer::sum);
+                total++;
+            }
+        }
+
+        lastReport.earlyStopped = check.stopped.sum();
+        lastReport.totalPatterns = total;
+        lastReport.runtimeMs = (System.nanoTime() - startNs) / 1_000_000;
+        jvm.finish(lastReport);
+        return total;
+    }
+
+    private static final class Hit {
+        final Itemset itemset;
+        final double mu;
+
+        Hit(Itemset itemset, double mu) {
+            this.itemset = itemset;
+            this.mu = mu;
+        }
+    }
+
+    /**
+     * Khoảng tin cậy của μ từ tổng s trên mẫu (m dòng của n). Với E = m μ / n, L = ln(4/δ):
+     *  - Hoeffding: |s - E| <= a = sqrt(m L / 2) với xác suất >= 1 - δ/2.
+     *  - Bernstein (các số hạng trong [0, 1] nên phương sai <= E), mỗi phía xác suất sai <= δ/4:
+     *      s >= E - sqrt(2 L E)                => E <= (sqrt(L/2) + sqrt(L/2 + s))²
+     *      s <= E + L/3 + sqrt(L²/9 + 2 L E)   => E >= (c + L) - sqrt(2 c L + 10 L² / 9), c = s - L/3
+     * Lấy mẫu không lặp thoả cùng các cận như lấy mẫu có lặp (Hoeffding 1963).
+     */
+    static final class Bounds {
+        final double scale;     // n / m
+        private final double m, a, halfL, L;
+
+        Bounds(int m, int n, double delta) {
+            this.m = m;
+            this.scale = (double) n / m;
+            this.L = Math.log(4 / delta);
+            this.halfL = L / 2;
+            this.a = Math.sqrt(m * halfL);
+        }
+
+        /** Cận trên của μ */
+        double upper(double s) {
+            double r = Math.sqrt(halfL) + Math.sqrt(halfL + s);
+            return Math.min(s + a, r * r) * scale;
+        }
+
+        /** Cận dưới của μ */
+        double lower(double s) {
+            double c = s - L / 3;
+            double bern = (c <= 0) ? 0.0 : (c + L) - Math.sqrt(2 * c * L + 10 * L * L / 9);
+            return Math.max(0.0, Math.max(s - a, bern)) * scale;
+        }
+
+        /** s nhỏ nhất có upper(s) >= muFloor (s dưới mức này: μ chắc chắn dưới sàn) */
+        double sampleFloor(double muFloor) {
+            double g = muFloor / scale;
+            double r = Math.sqrt(g) - Math.sqrt(halfL);
+            double bern = (r > 0) ? r * r - halfL : Double.NEGATIVE_INFINITY;
+            return Math.max(g - a, bern);
+        }
+    }
+
+    /**
+     * Duyệt sâu trên mẫu (như DepthFirstEngine, UB-score theo cận avgWeight của hậu tố), quyết định
+     * theo cận của μ thay vì μ. 1-itemset xét theo ID; cây con của item chỉ duyệt khi cận trên qua sàn.
+     */
+    private final class SamplePass {
+        private final TidIndex index;
+        private final ItemDictionary dict;
+        private final WPFI_Apriori.ScoreCheck check;
+        private final Bounds bounds;
+        private final List<Hit> hits;
+        private final List<Itemset> unsure;
+
+        private int[] items;
+        private double[] suffixMaxW;
+        private int[][] tidBuf = new int[4][];
+        private double[][] probBuf = new double[4][];
+        private int bufCap;
+
+        SamplePass(TidIndex index, ItemDictionary dict, WPFI_Apriori.ScoreCheck check, Bounds bounds,
+                   List<Hit> hits, List<Itemset> unsure) {
+            this.index = index;
+            this.dict = dict;
+            this.check = check;
+            this.bounds = bounds;
+            this.hits = hits;
+            this.unsure = unsure;
+        }
+
+        void run(int[] universe) {
+            // 1-itemset: mọi item của từ điển (item không có trong mẫu: s = 0, chắc chắn dưới sàn theo cỡ mẫu)
+            double byMaxW = check.extendFloor(Double.NaN);
+            int[] keep = new int[universe.length];
+            int m = 0;
+            for (int i : universe) {
+                double s = (index.counts[i] > 0) ? index.sums[i] : 0.0;
+                classify(new Itemset(dict, i), s);
+                if (index.counts[i] > 0 && bounds.upper(s) >= byMaxW) keep[m++] = i;
+            }
+            lastReport.candidatesByK.put(1, universe.length);
+            lastReport.totalCandidates = universe.length;
+            if (maxK > 0 && maxK < 2) return;
+
+            items = Arrays.copyOf(keep, m);
+            suffixMaxW = new double[items.length + 1];
+            for (int b = items.length - 1; b >= 0; b--) {
+                suffixMaxW[b] = Math.max(suffixMaxW[b + 1], dict.weight(items[b]));
+            }
+            for (int i : items) bufCap = Math.max(bufCap, index.counts[i]);
+
+            ensureDepth(0);
+            for (int a = 0; a < items.length; a++) {
+                int i = items[a];
+                int len = index.listOf(i, tidBuf[0], probBuf[0]);
+                double s = 0.0;
+                for (int t = 0; t < len; t++) s += probBuf[0][t];
+                if (bounds.upper(s) < check.extendFloor(maxAvg(dict.weight(i), 1, suffixMaxW[a + 1]))) continue;
+                expand(new Itemset(dict, i), a, tidBuf[0], probBuf[0], len, s, 1);
+            }
+        }
+
+        private void expand(Itemset X, int pos, int[] tids, double[] probs, int len, double sX, int depth) {
+            int k = X.size() + 1;
+            ensureDepth(depth);
+            int[] outT = tidBuf[depth];
+            double[] outP = probBuf[depth];
+
+            for (int b = pos + 1; b < items.length; b++) {
+                int j = items[b];
+                lastReport.candidatesByK.merge(k, 1, Integer::sum);
+                lastReport.totalCandidates++;
+
+                double floor = check.extendFloor(maxAvg(X.weightSum() + dict.weight(j), k, suffixMaxW[b + 1]));
+                int outLen = index.intersect(tids, probs, len, j, outT, outP, sX,
+                        bounds.sampleFloor(floor) * FLOOR_SLACK);
+                if (outLen < 0) {
+                    check.stopped.increment();
+                    continue;
+                }
+                double s = 0.0;
+                for (int t = 0; t < outLen; t++) s += outP[t];
+                if (bounds.upper(s) < floor) continue;    // chắc chắn loại cả cây con
+
+                Itemset Y = X.unionWith(j);
+                classify(Y, s);
+                if (maxK <= 0 || k < maxK) expand(Y, b, outT, outP, outLen, s, depth + 1);
+            }
+        }
+
+        private void classify(Itemset X, double s) {
+            double floor = check.resultFloor(X);
+            if (bounds.lower(s) >= floor) {
+                // μ̂ >= cận dưới nên score(μ̂) >= T
+                hits.add(new Hit(X, s * bounds.scale));
+                lastReport.acceptedByBoundK.merge(X.size(), 1, Integer::sum);
+            } else if (bounds.upper(s) < floor) {
+                lastReport.rejectedByBoundK.merge(X.size(), 1, Integer::sum);
+            } else {
+                unsure.add(X);
+                lastReport.exactComputedByK.merge(X.size(), 1, Integer::sum);
+            }
+        }
+
+        /** Như DepthFirstEngine.maxAvg */
+        private double maxAvg(double weightSum, int size, double sufMax) {
+            double avg = weightSum / size;
+            if (sufMax <= avg || (maxK > 0 && size >= maxK)) return avg * (1 + 1e-12);
+            if (maxK <= 0) return sufMax;
+            int room = maxK - size;
+            return (weightSum + room * sufMax) / (size + room) * (1 + 1e-12);
+        }
+
+        private void ensureDepth(int depth) {
+            if (depth >= tidBuf.length) {
+                int cap = Math.max(depth + 1, tidBuf.length * 2);
+                tidBuf = Arrays.copyOf(tidBuf, cap);
+                probBuf = Arrays.copyOf(probBuf, cap);
+            }
+            if (tidBuf[depth] == null) {
+                tidBuf[depth] = new int[bufCap];
+                probBuf[depth] = new double[bufCap];
+            }
+        }
+    }
+}
@@ -0,0 +1,577 @@
+package miner;
+
+import entity.Item;
+import entity.ItemDictionary;
+import entity.Itemset;
+import entity.Transaction;
+import util.MiningConfig;
+import util.TailThreshold;
+import util.WPFI_Metrics;
+
+import java.util.*;
+
+/**
+ * Khai thác WPFI trên luồng transaction với cửa sổ trượt (theo số lượng hoặc theo thời gian).
+ *
+ * Các itemset được theo dõi nằm trong 1 cây tiền tố (ID tăng dần), mỗi nút giữ μ và số transaction
+ * chứa nó trong cửa sổ:
+ *  - F      : các itemset mở rộng được, maxW * tail(μ) >= T (đóng với tập con vì μ giảm khi thêm item)
+ *  - biên   : itemset Z có mọi tập con kích thước |Z|-1 thuộc F và xuất hiện trong cửa sổ
+ *             (ứng viên chưa xuất hiện có μ = 0, không cần nút)
+ * Transaction vào/ra cửa sổ: duyệt cây theo các item của t, cộng/trừ p(X ⊆ t) cho mọi nút chứa trong t;
+ * khi vào, ứng viên chưa có nút mà t chứa được tạo ngay (μ trước đó = 0).
+ * Khi 1 itemset X vào F: quét các transaction chứa item hiếm nhất của X (chỉ mục theo item của cửa sổ)
+ * để tạo các ứng viên X ∪ {a} kèm μ. Khi X rời F hoặc ứng viên không còn xuất hiện: bỏ nút.
+ * Chi phí mỗi transaction <= số nút chứa trong t (x |t| khi tạo ứng viên), cộng 1 lần quét chỉ mục
+ * cho mỗi itemset vào F; setMaxTracked chặn tổng số nút.
+ *
+ * Kết quả = mọi itemset có score = avgW * tail(μ) >= T (|X| <= MAX_K) trên cửa sổ hiện tại,
+ * giống DEPTH_FIRST chạy trên các transaction đang nằm trong cửa sổ (khi chưa chạm maxTracked).
+ * Ngưỡng theo tail được đổi thành ngưỡng theo μ (tail tăng theo μ): chỉ khi μ nằm sát ngưỡng mới
+ * tính lại tail, nên cập nhật 1 nút là O(1).
+ */
+public class StreamingWPFIMiner {
+
+    /** 1 WPFI trong cửa sổ hiện tại */
+    public static final class Pattern {
+        public final Itemset itemset;
+        public final double mu;
+        public final double score;
+
+        Pattern(Itemset itemset, double mu, double score) {
+            this.itemset = itemset;
+            this.mu = mu;
+            this.score = score;
+        }
+
+        @Override
+        public String toString() { return itemset + " mu=" + mu + " score=" + score; }
+    }
+
+    public static class StreamReport {
+        public long transactions;      // số transaction đã nhận
+        public int windowSize;         // số transaction đang trong cửa sổ
+        public long updateNs;          // tổng thời gian cập nhật (add)
+        public int tracked;            // số itemset (k >= 2) đang theo dõi
+        public int extendable;         // |F| (mọi k)
+        public int patterns;           // số WPFI hiện tại
+        public long promotions;        // lần score vượt lên >= T
+        public long demotions;         // lần score rơi xuống < T
+        public long created;           // ứng viên được tạo
+        public long dropped;           // ứng viên bị bỏ
+        public long unknownItems;      // item không có trong từ điển (bỏ qua)
+        public boolean saturated;      // đã chạm maxTracked => kết quả có thể thiếu
+
+        /** Số transaction/giây (chỉ tính thời gian cập nhật) */
+        public double throughput() {
+            return updateNs == 0 ? 0.0 : transactions / (updateNs / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return "StreamReport{" +
+                    "transactions=" + transactions +
+                    ", windowSize=" + windowSize +
+                    ", throughput_tps=" + String.format("%.0f", throughput()) +
+                    ", tracked=" + tracked +
+                    ", extendable=" + extendable +
+                    ", patterns=" + patterns +
+                    ", promotions=" + promotions +
+                    ", demotions=" + demotions +
+                    ", created=" + created +
+                    ", dropped=" + dropped +
+                    ", unknownItems=" + unknownItems +
+                    ", saturated=" + saturated +
+                    '}';
+        }
+    }
+
+    private static final int[] NO_ITEMS = new int[0];
+    private static final Node[] NO_NODES = new Node[0];
+
+    /** Nút cây tiền tố = 1 itemset (đường đi từ gốc) */
+    private static final class Node {
+        final int item;
+        final Node parent;
+        final int size;
+        final double weightSum;
+
+        double mu;
+        int count;          // số transaction trong cửa sổ chứa itemset
+        boolean inF;
+        boolean isResult;
+        boolean removed;
+        boolean dirty;
+
+        // ngưỡng μ của score >= T, tính khi nút vào F lần đầu
+        TailThreshold resultBand;
+
+        int[] childItems = NO_ITEMS;
+        Node[] children = NO_NODES;
+        int childCount;
+
+        Node(int item, Node parent, double weight) {
+            this.item = item;
+            this.parent = parent;
+            this.size = (parent == null) ? 1 : parent.size + 1;
+            this.weightSum = (parent == null) ? weight : parent.weightSum + weight;
+        }
+
+        Node child(int id) {
+            int pos = Arrays.binarySearch(childItems, 0, childCount, id);
+            return pos >= 0 ? children[pos] : null;
+        }
+
+        void insert(Node c) {
+            int pos = -Arrays.binarySearch(childItems, 0, childCount, c.item) - 1;
+            if (childCount == childItems.length) {
+                int cap = Math.max(4, childCount * 2);
+                childItems = Arrays.copyOf(childItems, cap);
+                children = Arrays.copyOf(children, cap);
+            }
+            System.arraycopy(childItems, pos, childItems, pos + 1, childCount - pos);
+            System.arraycopy(children, pos, children, pos + 1, childCount - pos);
+            childItems[pos] = c.item;
+            children[pos] = c;
+            childCount++;
+        }
+
+        void remove(Node c) {
+            int pos = Arrays.binarySearch(childItems, 0, childCount, c.item);
+            if (pos < 0) return;
+            System.arraycopy(childItems, pos + 1, childItems, pos, childCount - pos - 1);
+            System.arraycopy(children, pos + 1, children, pos, childCount - pos - 1);
+            childCount--;
+            children[childCount] = null;
+        }
+    }
+
+    private static final class WindowTx {
+        final long ts;
+        final int[] ids;
+        final double[] probs;
+
+        WindowTx(long ts, int[] ids, double[] probs) {
+            this.ts = ts;
+            this.ids = ids;
+            this.probs = probs;
+        }
+    }
+
+    private final ItemDictionary dict;
+    private final int maxCount;      // > 0: cửa sổ theo số lượng
+    private final long span;         // > 0: cửa sổ theo thời gian (ts > now - span)
+    private final int msup;
+    private final double T;
+    private final int maxK;
+    private final double maxW;
+    private final TailThreshold fBand;
+
+    private int maxTracked = Integer.MAX_VALUE;
+
+    private final Node[] singles;
+    private final boolean[] inF1;    // {a} ∈ F
+
+    private final ArrayDeque<WindowTx> window = new ArrayDeque<>();
+    private final ArrayDeque<WindowTx>[] byItem; // chỉ mục theo item của cửa sổ (cùng thứ tự vào)
+    private final ArrayList<Node> changed = new ArrayList<>();
+    private final StreamReport report = new StreamReport();
+    private long lastTs = Long.MIN_VALUE;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private StreamingWPFIMiner(ItemDictionary dict, int maxCount, long span, MiningConfig config) {
+        this.dict = Objects.requireNonNull(dict);
+        this.maxCount = maxCount;
+        this.span = span;
+        this.msup = config.msup;
+        this.T = config.t;
+        this.maxK = config.maxK;
+        this.maxW = dict.maxWeight();
+        this.fBand = new TailThreshold(msup, maxW, T);
+
+        singles = new Node[dict.size()];
+        inF1 = new boolean[dict.size()];
+        byItem = new ArrayDeque[dict.size()];
+        for (int id = 0; id < singles.length; id++) {
+            singles[id] = new Node(id, null, dict.weight(id));
+            byItem[id] = new ArrayDeque<>();
+        }
+    }
+
+    /** Cửa sổ gồm size transaction gần nhất. MSUP/T/MAX_K lấy từ Constants lúc tạo. */
+    public static StreamingWPFIMiner countWindow(ItemDictionary dict, int size) {
+        return countWindow(dict, size, MiningConfig.fromConstants());
+    }
+
+    public static StreamingWPFIMiner countWindow(ItemDictionary dict, int size, MiningConfig config) {
+        if (size <= 0) throw new IllegalArgumentException("window size phải > 0");
+        return new StreamingWPFIMiner(dict, size, 0, config);
+    }
+
+    /** Cửa sổ gồm các transaction có timestamp > now - span (timestamp không giảm) */
+    public static StreamingWPFIMiner timeWindow(ItemDictionary dict, long span) {
+        return timeWindow(dict, span, MiningConfig.fromConstants());
+    }
+
+    public static StreamingWPFIMiner timeWindow(ItemDictionary dict, long span, MiningConfig config) {
+        if (span <= 0) throw new IllegalArgumentException("span phải > 0");
+        return new StreamingWPFIMiner(dict, 0, span, config);
+    }
+
+    /** Giới hạn số itemset (k >= 2) được theo dõi; vượt quá thì ngừng tạo ứng viên (report.saturated) */
+    public void setMaxTracked(int maxTracked) { this.maxTracked = maxTracked; }
+
+    /** Thêm transaction với timestamp = số thứ tự (dùng cho cửa sổ theo số lượng) */
+    public void add(Transaction t) {
+        add(report.transactions, t);
+    }
+
+    public void add(long timestamp, Transaction t) {
+        Map<Item, Double> m = t.getItemProbMap();
+        int[] ids = new int[m.size()];
+        double[] probs = new double[m.size()];
+        int n = 0;
+        for (Map.Entry<Item, Double> e : m.entrySet()) {
+            int id = dict.idOf(e.getKey());
+            if (id < 0) { report.unknownItems++; continue; }
+            ids[n] = id;
+            probs[n] = e.getValue();
+            n++;
+        }
+        add(timestamp, Arrays.copyOf(ids, n), Arrays.copyOf(probs, n));
+    }
+
+    /**
+     * Thêm transaction dạng ID (theo từ điển của miner) + xác suất.
+     * Mảng được giữ lại trong cửa sổ (không sao chép nếu ids đã tăng dần).
+     */
+    public void add(long timestamp, int[] ids, double[] probs) {
+        long t0 = System.nanoTime();
+        if (timestamp < lastTs) throw new IllegalArgumentException("timestamp phải không giảm: " + timestamp + " < " + lastTs);
+        lastTs = timestamp;
+
+        WindowTx tx = normalize(timestamp, ids, probs);
+        window.addLast(tx);
+        for (int id : tx.ids) byItem[id].addLast(tx);
+        apply(tx, +1);
+
+        if (maxCount > 0) {
+            while (window.size() > maxCount) evict();
+        } else {
+            while (window.peekFirst().ts <= timestamp - span) evict();
+        }
+
+        settle();
+
+        report.transactions++;
+        report.windowSize = window.size();
+        report.updateNs += System.nanoTime() - t0;
+    }
+
+    /** Các WPFI của cửa sổ hiện tại, theo thứ tự itemset tăng dần */
+    public List<Pattern> currentPatterns() {
+        List<Pattern> out = new ArrayList<>(report.patterns);
+        for (Node s : singles) collect(s, out);
+        return out;
+    }
+
+    public int windowSize() { return window.size(); }
+
+    public StreamReport getReport() { return report; }
+
+    /* UPDATE */
+
+    private WindowTx normalize(long ts, int[] ids, double[] probs) {
+        boolean sorted = true;
+        for (int j = 1; j < ids.length && sorted; j++) sorted = ids[j - 1] < ids[j];
+        if (sorted) return new WindowTx(ts, ids, probs);
+
+        // sắp theo ID; item lặp lại giữ p của lần cuối
+        long[] keys = new long[ids.length];
+        for (int j = 0; j < ids.length; j++) keys[j] = ((long) ids[j] << 32) | j;
+        Arrays.sort(keys);
+        int[] outIds = new int[ids.length];
+        double[] outP = new double[ids.length];
+        int n = 0;
+        for (long key : keys) {
+            int id = (int) (key >>> 32);
+            double p = probs[(int) key];
+            if (n > 0 && outIds[n - 1] == id) outP[n - 1] = p;
+            else { outIds[n] = id; outP[n] = p; n++; }
+        }
+        return new WindowTx(ts, Arrays.copyOf(outIds, n), Arrays.copyOf(outP, n));
+    }
+
+    private void evict() {
+        WindowTx old = window.pollFirst();
+        for (int id : old.ids) byItem[id].pollFirst();
+        apply(old, -1);
+    }
+
+    /** Cộng (sign = +1) hoặc trừ (sign = -1) p(X ⊆ t) cho mọi nút X ⊆ t */
+    private void apply(WindowTx t, int sign) {
+        int[] ids = t.ids;
+        double[] ps = t.probs;
+        for (int j = 0; j < ids.length; j++) {
+            Node s = singles[ids[j]];
+            s.mu += sign * ps[j];
+            s.count += sign;
+            touch(s);
+            descend(s, t, j + 1, ps[j], sign);
+        }
+    }
+
+    private void descend(Node n, WindowTx t, int from, double prob, int sign) {
+        int[] ids = t.ids;
+        if (sign > 0 && n.inF && (maxK <= 0 || n.size < maxK)) {
+            // transaction vào: duyệt theo item của t, tạo ứng viên còn thiếu (μ trước đó = 0)
+            for (int j = from; j < ids.length; j++) {
+                Node c = n.child(ids[j]);
+                if (c == null) c = newCandidate(n, ids[j]);
+                if (c != null) visit(c, t, j, prob, sign);
+            }
+            return;
+        }
+
+        int i = 0, j = from;
+        while (i < n.childCount && j < ids.length) {
+            int a = n.childItems[i], b = ids[j];
+            if (a < b) i++;
+            else if (a > b) j++;
+            else {
+                visit(n.children[i], t, j, prob, sign);
+                i++;
+                j++;
+            }
+        }
+    }
+
+    private void visit(Node c, WindowTx t, int j, double prob, int sign) {
+        double q = prob * t.probs[j];
+        c.mu += sign * q;
+        c.count += sign;
+        touch(c);
+        if (c.childCount > 0 || (sign > 0 && c.inF)) descend(c, t, j + 1, q, sign);
+    }
+
+    private void touch(Node n) {
+        if (!n.dirty) {
+            n.dirty = true;
+            changed.add(n);
+        }
+    }
+
+    /** Cập nhật trạng thái F / kết quả của các nút vừa đổi μ, rồi sửa cây */
+    private void settle() {
+        List<Node> promoted = new ArrayList<>();
+        List<Node> demoted = new ArrayList<>();
+        for (Node n : changed) {
+            n.dirty = false;
+            if (n.removed) continue;
+            if (n.count == 0) n.mu = 0.0; // xoá sai số cộng/trừ dồn lại
+            boolean f = fBand.passes(n.mu);
+            if (f && !n.inF) promoted.add(n);
+            else if (!f && n.inF) demoted.add(n);
+            else if (f) updateResult(n);
+            else if (n.count == 0 && n.parent != null) drop(n); // ứng viên không còn xuất hiện
+        }
+        changed.clear();
+
+        for (Node n : demoted) {
+            if (n.removed) continue;
+            setF(n, false);
+            dropSupersets(n);
+            if (n.count == 0 && n.parent != null) drop(n);
+        }
+
+        promoted.sort(Comparator.comparingInt(n -> n.size));
+        ArrayDeque<Node> queue = new ArrayDeque<>(promoted);
+        while (!queue.isEmpty()) {
+            Node n = queue.pollFirst();
+            if (n.removed || n.inF) continue;
+            setF(n, true);
+            expand(n, queue);
+        }
+    }
+
+    private void setF(Node n, boolean f) {
+        n.inF = f;
+        report.extendable += f ? 1 : -1;
+        if (n.parent == null) inF1[n.item] = f;
+        updateResult(n);
+    }
+
+    private void updateResult(Node n) {
+        boolean res = false;
+        if (n.inF && !n.removed) {
+            if (n.resultBand == null) n.resultBand = new TailThreshold(msup, n.weightSum / n.size, T);
+            res = n.resultBand.passes(n.mu);
+        }
+        if (res == n.isResult) return;
+        n.isResult = res;
+        if (res) { report.patterns++; report.promotions++; }
+        else { report.patterns--; report.demotions++; }
+    }
+
+    /**
+     * X vừa vào F: tạo ứng viên X ∪ {a} xuất hiện trong cửa sổ, μ cộng dồn khi quét
+     * các transaction chứa item hiếm nhất của X.
+     */
+    private void expand(Node x, ArrayDeque<Node> queue) {
+        if (maxK > 0 && x.size >= maxK) return;
+        int[] xs = path(x);
+        int rare = xs[0];
+        for (int id : xs) if (byItem[id].size() < byItem[rare].size()) rare = id;
+
+        Map<Integer, Node> made = new HashMap<>(); // a -> nút mới (null: không phải ứng viên)
+        for (WindowTx t : byItem[rare]) {
+            double prob = probOf(t, xs);
+            if (prob == 0.0 && !containsAll(t, xs)) continue;
+
+            for (int j = 0; j < t.ids.length; j++) {
+                int a = t.ids[j];
+                if (!inF1[a] || Arrays.binarySearch(xs, a) >= 0) continue;
+                Node z;
+                if (made.containsKey(a)) z = made.get(a);
+                else {
+                    z = newSuperset(xs, a);
+                    made.put(a, z);
+                }
+                if (z == null) continue;
+                z.mu += prob * t.probs[j];
+                z.count++;
+            }
+        }
+        for (Node z : made.values()) {
+            if (z != null && fBand.passes(z.mu)) queue.addLast(z);
+        }
+    }
+
+    /** Nút mới cho xs ∪ {a} nếu là ứng viên chưa theo dõi, ngược lại null */
+    private Node newSuperset(int[] xs, int a) {
+        int[] z = insertSorted(xs, a);
+        if (lookup(z, z.length) != null) return null;
+        Node parent = lookup(z, z.length - 1);
+        if (parent == null || !parent.inF) return null;
+        return newCandidate(parent, z[z.length - 1], z);
+    }
+
+    /** Ứng viên parent ∪ {a} (a > item cuối của parent), null nếu có tập con ngoài F */
+    private Node newCandidate(Node parent, int a) {
+        if (!inF1[a]) return null;
+        int[] ps = path(parent);
+        int[] z = Arrays.copyOf(ps, ps.length + 1);
+        z[ps.length] = a;
+        return newCandidate(parent, a, z);
+    }
+
+    private Node newCandidate(Node parent, int a, int[] z) {
+        if (!allSubsetsInF(z)) return null;
+        if (report.tracked >= maxTracked) { report.saturated = true; return null; }
+        Node c = new Node(a, parent, dict.weight(a));
+        parent.insert(c);
+        report.tracked++;
+        report.created++;
+        return c;
+    }
+
+    /** X vừa rời F: mọi itemset theo dõi chứa X không còn là ứng viên */
+    private void dropSupersets(Node x) {
+        int[] xs = path(x);
+        for (int a = 0; a < inF1.length; a++) {
+            if (!inF1[a] || Arrays.binarySearch(xs, a) >= 0) continue;
+            int[] z = insertSorted(xs, a);
+            Node c = lookup(z, z.length);
+            if (c != null) drop(c);
+        }
+    }
+
+    /** Bỏ nút c và cả cây con (đều là tập cha của c) */
+    private void drop(Node c) {
+        if (c.removed) return;
+        c.parent.remove(c);
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(c);
+        List<Node> wasF = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            n.removed = true;
+            report.tracked--;
+            report.dropped++;
+            if (n.inF) {
+                // tập cha cùng rời F trong lần cập nhật này (chưa xử lý tới) hoặc sai số sát ngưỡng
+                n.inF = false;
+                report.extendable--;
+                wasF.add(n);
+            }
+            if (n.isResult) { n.isResult = false; report.patterns--; report.demotions++; }
+            for (int i = 0; i < n.childCount; i++) stack.push(n.children[i]);
+        }
+        // tập cha không cùng tiền tố nằm ở nhánh khác, tra theo đường đi
+        for (Node n : wasF) dropSupersets(n);
+    }
+
+    private boolean allSubsetsInF(int[] z) {
+        int[] sub = new int[z.length - 1];
+        for (int skip = 0; skip < z.length; skip++) {
+            System.arraycopy(z, 0, sub, 0, skip);
+            System.arraycopy(z, skip + 1, sub, skip, z.length - skip - 1);
+            Node s = lookup(sub, sub.length);
+            if (s == null || !s.inF) return false;
+        }
+        return true;
+    }
+
+    /** Nút của itemset z[0..len) (tăng dần), null nếu không theo dõi */
+    private Node lookup(int[] z, int len) {
+        Node n = singles[z[0]];
+        for (int i = 1; i < len && n != null; i++) n = n.child(z[i]);
+        return n;
+    }
+
+    private static int[] insertSorted(int[] xs, int a) {
+        int pos = -Arrays.binarySearch(xs, a) - 1;
+        int[] z = new int[xs.length + 1];
+        System.arraycopy(xs, 0, z, 0, pos);
+        z[pos] = a;
+        System.arraycopy(xs, pos, z, pos + 1, xs.length - pos);
+        return z;
+    }
+
+    private static int[] path(Node n) {
+        int[] ids = new int[n.size];
+        for (Node c = n; c != null; c = c.parent) ids[c.size - 1] = c.item;
+        return ids;
+    }
+
+    /** p(xs ⊆ t), 0 nếu t không chứa đủ xs */
+    private static double probOf(WindowTx t, int[] xs) {
+        int[] ids = t.ids;
+        double prod = 1.0;
+        int j = 0;
+        for (int x : xs) {
+            while (j < ids.length && ids[j] < x) j++;
+            if (j == ids.length || ids[j] != x) return 0.0;
+            prod *= t.probs[j++];
+        }
+        return prod;
+    }
+
+    private static boolean containsAll(WindowTx t, int[] xs) {
+        int j = 0;
+        for (int x : xs) {
+            while (j < t.ids.length && t.ids[j] < x) j++;
+            if (j == t.ids.length || t.ids[j] != x) return false;
+        }
+        return true;
+    }
+
+    private void collect(Node n, List<Pattern> out) {
+        if (!n.inF) return; // ngoài F thì mọi tập cha cũng không là kết quả
+        if (n.isResult) {
+            Itemset X = new Itemset(dict, path(n));
+            out.add(new Pattern(X, n.mu, X.avgWeight() * WPFI_Metrics.poissonTailAtLeast(msup, n.mu)));
+        }
+        for (int i = 0; i < n.childCount; i++) collect(n.children[i], out);
+    }
+}
@@ -0,0 +1,310 @@
+package miner;
+
+import db.UncertainDatabase;
+import entity.Itemset;
+
+import java.util.Arrays;
+
+/**
+ * FAST: TID INDEX (LOSSLESS)
+ *
+ * Chỉ mục dọc cho từng item, chọn biểu diễn theo mật độ của item:
+ *  - thưa : TID-list tăng dần + xác suất tương ứng (int[] + double[])
+ *  - dày  : bitset các transaction chứa item + cột xác suất đầy đủ n phần tử
+ *           (0 ở transaction không chứa item)
+ * Item xuất hiện trong >= DENSE_RATIO * n transaction dùng dạng dày: kiểm tra
+ * "tid có chứa item" là 1 phép test bit + 1 lần đọc cột, thay vì binarySearch,
+ * và itemset toàn item dày được tính bằng AND từng word rồi cộng tích theo mặt nạ.
+ * Thứ tự nhân/cộng giữ như bản chỉ có TID-list nên μ không đổi.
+ * Nhánh toàn item dày và nhánh gốc thưa + item dày chạy qua ProbKernels (scalar hoặc SIMD).
+ */
+class TidIndex {
+
+    /** Ngưỡng mật độ chuyển sang dạng dày (chess/mushrooms: phần lớn item) */
+    static final double DENSE_RATIO = 0.25;
+
+    final int n;
+    // dạng thưa (null nếu item dày)
+    final int[][] tids;
+    final double[][] probs;
+    // dạng dày (null nếu item thưa)
+    final long[][] bits;
+    final double[][] cols;
+    // số transaction chứa item (cả 2 dạng)
+    final int[] counts;
+    // tổng xác suất của item (= μ của 1-itemset), cận trên cho μ mọi itemset chứa item
+    final double[] sums;
+    // vòng nhân-cộng của nhánh toàn item dày / gốc thưa + item dày (scalar hoặc SIMD)
+    private ProbKernels kernels = ProbKernels.DEFAULT;
+
+    private TidIndex(int n, int nItems) {
+        this.n = n;
+        tids = new int[nItems][];
+        probs = new double[nItems][];
+        bits = new long[nItems][];
+        cols = new double[nItems][];
+        counts = new int[nItems];
+        sums = new double[nItems];
+    }
+
+    static TidIndex build(UncertainDatabase db) {
+        return build(db, DENSE_RATIO);
+    }
+
+    /** @param denseRatio > 1 để tắt dạng dày, <= 0 để mọi item đều dày */
+    static TidIndex build(UncertainDatabase db, double denseRatio) {
+        return build(db, 0, db.size(), denseRatio);
+    }
+
+    /**
+     * Chỉ mục trên các dòng [fromRow, toRow) (tid = row - fromRow), dùng cho phần DB mới thêm.
+     */
+    static TidIndex build(UncertainDatabase db, int fromRow, int toRow, double denseRatio) {
+        int nItems = db.getDictionary().size();
+        int n = toRow - fromRow;
+        TidIndex idx = new TidIndex(n, nItems);
+
+        // đếm trước độ dài TID-list để cấp phát đúng 1 lần
+        int[] len = idx.counts;
+        int end = db.rowStart(toRow);
+        for (int pos = db.rowStart(fromRow); pos < end; pos++) len[db.itemAt(pos)]++;
+
+        int words = (n + 63) >>> 6;
+        for (int i = 0; i < nItems; i++) {
+            if (len[i] > 0 && len[i] >= denseRatio * n) {
+                idx.bits[i] = new long[words];
+                idx.cols[i] = new double[n];
+            } else {
+                idx.tids[i] = new int[len[i]];
+                idx.probs[i] = new double[len[i]];
+            }
+        }
+
+        int[] fill = new int[nItems];
+        UncertainDatabase.Cursor c = db.cursor();
+        for (int tid = 0; tid < n; tid++) {
+            c.seek(fromRow + tid);
+            while (c.next()) {
+                int i = c.item();
+                if (idx.bits[i] != null) {
+                    idx.bits[i][tid >>> 6] |= 1L << tid;
+                    idx.cols[i][tid] = c.prob();
+                } else {
+                    int l = fill[i]++;
+                    idx.tids[i][l] = tid;
+                    idx.probs[i][l] = c.prob();
+                }
+                idx.sums[i] += c.prob();
+            }
+        }
+        return idx;
+    }
+
+    boolean isDense(int item) { return bits[item] != null; }
+
+    int denseCount() {
+        int d = 0;
+        for (long[] b : bits) if (b != null) d++;
+        return d;
+    }
+
+    /** Ghi TID-list + xác suất của item vào outT/outP (đủ chỗ counts[item]). Trả về độ dài. */
+    int listOf(int item, int[] outT, double[] outP) {
+        if (bits[item] == null) {
+            int l = tids[item].length;
+            System.arraycopy(tids[item], 0, outT, 0, l);
+            System.arraycopy(probs[item], 0, outP, 0, l);
+            return l;
+        }
+        long[] b = bits[item];
+        double[] col = cols[item];
+        int out = 0;
+        for (int w = 0; w < b.length; w++) {
+            long m = b[w];
+            while (m != 0) {
+                int t = (w << 6) + Long.numberOfTrailingZeros(m);
+                outT[out] = t;
+                outP[out] = col[t];
+                out++;
+                m &= m - 1;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Giao danh sách chiếu (tids, probs)[0..len) với item:
+     * outT/outP nhận các tid chung và tích xác suất. Trả về độ dài kết quả.
+     */
+    int intersect(int[] tids, double[] probs, int len, int item, int[] outT, double[] outP) {
+        return intersect(tids, probs, len, item, outT, outP, 0.0, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Như trên, dừng sớm và trả về -1 khi chắc chắn tổng xác suất kết quả < floor.
+     * @param mu tổng probs[0..len) (μ của danh sách đầu vào)
+     */
+    int intersect(int[] tids, double[] probs, int len, int item, int[] outT, double[] outP,
+                  double mu, double floor) {
+        double slack = 1e-9 * (mu + 1.0);
+        if (floor > 0 && Math.min(mu, sums[item]) + slack < floor) return -1;
+
+        int out = 0;
+        if (bits[item] != null) {
+            long[] b = bits[item];
+            double[] col = cols[item];
+            if (floor > 0) {
+                // μ kết quả <= phần đã giữ + phần chưa duyệt của đầu vào (tích <= probs[i])
+                double bound = mu;
+                for (int i = 0; i < len; i++) {
+                    int t = tids[i];
+                    if ((b[t >>> 6] & (1L << t)) != 0) {
+                        outT[out] = t;
+                        outP[out] = probs[i] * col[t];
+                        bound -= probs[i] - outP[out];
+                        out++;
+                    } else {
+                        bound -= probs[i];
+                        if (bound + slack < floor) return -1;
+                    }
+                }
+                return out;
+            }
+            for (int i = 0; i < len; i++) {
+                int t = tids[i];
+                if ((b[t >>> 6] & (1L << t)) != 0) {
+                    outT[out] = t;
+                    outP[out] = probs[i] * col[t];
+                    out++;
+                }
+            }
+            return out;
+        }
+
+        int[] t2 = this.tids[item];
+        double[] p2 = this.probs[item];
+        int i = 0, j = 0;
+        while (i < len && j < t2.length) {
+            int a = tids[i], b = t2[j];
+            if (a < b) i++;
+            else if (a > b) j++;
+            else {
+                outT[out] = a;
+                outP[out] = probs[i] * p2[j];
+                out++;
+                i++;
+                j++;
+            }
+        }
+        return out;
+    }
+
+    /** Đổi kernel (benchmark), chỉ gọi trước khi index được dùng chung */
+    void useKernels(ProbKernels kernels) {
+        this.kernels = kernels;
+    }
+
+    ProbKernels kernels() { return kernels; }
+
+    /** Số TID của item ít xuất hiện nhất trong X (độ dài danh sách computeMu phải duyệt) */
+    int baseCount(Itemset X) {
+        int c = counts[X.get(0)];
+        for (int j = 1; j < X.size(); j++) c = Math.min(c, counts[X.get(j)]);
+        return c;
+    }
+
+    double computeMu(Itemset X) {
+        return computeMu(X, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * μ(X), dừng sớm và trả về -1 khi chắc chắn μ < floor: phần chưa duyệt của item gốc
+     * không đủ bù (μ đã cộng + tổng xác suất còn lại của item gốc < floor).
+     * Nhánh toàn item dày chỉ kiểm tra trước khi duyệt.
+     */
+    double computeMu(Itemset X, double floor) {
+        int k = X.size();
+
+        // base item = item có TID-list ngắn nhất
+        int base = X.get(0);
+        int sparse = isDense(base) ? 0 : 1;
+        for (int j = 1; j < k; j++) {
+            int it = X.get(j);
+            if (counts[it] < counts[base]) base = it;
+            if (!isDense(it)) sparse++;
+        }
+
+        // sai số làm tròn của phần còn lại (trừ dần từ sums) không vượt quá slack
+        double slack = 1e-9 * (sums[base] + 1.0);
+        if (sums[base] + slack < floor) return -1.0;
+        if (sparse == 0) return kernels.denseMu(this, X, base);
+        if (sparse == 1) return kernels.gatherMu(this, X, base, floor, slack);   // chỉ base thưa
+
+        // base thưa (item dày luôn có count lớn hơn => chỉ dày khi mọi item đều dày)
+        int[] baseTids = tids[base];
+        double[] basePs = probs[base];
+        boolean bounded = floor > 0;
+        double rest = sums[base];
+
+        double mu = 0.0;
+        for (int i = 0; i < baseTids.length; i++) {
+            int tid = baseTids[i];
+            double prod = basePs[i];
+            rest -= prod;
+
+            boolean ok = true;
+            for (int j = 0; j < k; j++) {
+                int it = X.get(j);
+                if (it == base) continue;
+                if (bits[it] != null) {
+                    if ((bits[it][tid >>> 6] & (1L << tid)) == 0) { ok = false; break; }
+                    prod *= cols[it][tid];
+                } else {
+                    int pos = Arrays.binarySearch(tids[it], tid);
+                    if (pos < 0) { ok = false; break; }
+                    prod *= probs[it][pos];
+                }
+            }
+            if (ok) mu += prod;
+            else if (bounded && mu + rest + slack < floor) return -1.0;
+        }
+        return mu;
+    }
+
+    /**
+     * μ(X) và σ²(X) = μ - Σp² cộng dồn trong cùng 1 lần duyệt (không dừng sớm).
+     * Trả về μ, ghi σ² vào vars[slot].
+     */
+    double computeMoments(Itemset X, double[] vars, int slot) {
+        int k = X.size();
+        int base = X.get(0);
+        for (int j = 1; j < k; j++) {
+            if (counts[X.get(j)] < counts[base]) base = X.get(j);
+        }
+
+        // base dày => mọi item đều dày
+        if (bits[base] != null) return kernels.denseMoments(this, X, base, vars, slot);
+
+        double mu = 0.0, sq = 0.0;
+        int[] baseTids = tids[base];
+        double[] basePs = probs[base];
+        for (int i = 0; i < baseTids.length; i++) {
+            int tid = baseTids[i];
+            double prod = basePs[i];
+            for (int j = 0; j < k && prod != 0.0; j++) {
+                int it = X.get(j);
+                if (it == base) continue;
+                if (bits[it] != null) {
+                    prod = ((bits[it][tid >>> 6] & (1L << tid)) == 0) ? 0.0 : prod * cols[it][tid];
+                } else {
+                    int pos = Arrays.binarySearch(tids[it], tid);
+                    prod = (pos < 0) ? 0.0 : prod * probs[it][pos];
+                }
+            }
+            mu += prod;
+            sq += prod * prod;
+        }
+        vars[slot] = Math.max(0.0, mu - sq);
+        return mu;
+    }
+}
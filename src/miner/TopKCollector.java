@@ -0,0 +1,68 @@
+package miner;
+
+import entity.Itemset;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Giữ k itemset có score cao nhất bằng min-heap: đỉnh heap là score thứ k, cũng là ngưỡng mà
+ * itemset mới phải vượt (bằng nhau thì giữ itemset tìm thấy trước, nên kết quả không phụ thuộc
+ * vào việc heap đã bỏ ra những gì).
+ */
+final class TopKCollector {
+
+    static final class Entry {
+        final Itemset itemset;
+        final double mu;
+        final double score;
+        private final long seq;     // thứ tự tìm thấy
+
+        private Entry(Itemset itemset, double mu, double score, long seq) {
+            this.itemset = itemset;
+            this.mu = mu;
+            this.score = score;
+            this.seq = seq;
+        }
+    }
+
+    // đỉnh: score nhỏ nhất, bằng nhau thì itemset tìm thấy sau (bị bỏ trước)
+    private static final Comparator<Entry> WORST_FIRST =
+            Comparator.<Entry>comparingDouble(e -> e.score).thenComparing(e -> -e.seq);
+
+    private final int k;
+    private final PriorityQueue<Entry> heap;
+    private long seq;
+
+    TopKCollector(int k) {
+        this.k = k;
+        this.heap = new PriorityQueue<>(Math.min(k, 1 << 16) + 1, WORST_FIRST);
+    }
+
+    /** @return true nếu X vào top-k */
+    boolean offer(Itemset X, double mu, double score) {
+        if (!(score > 0)) return false;
+        if (heap.size() == k) {
+            if (!(score > heap.peek().score)) return false;
+            heap.poll();
+        }
+        heap.add(new Entry(X, mu, score, seq++));
+        return true;
+    }
+
+    boolean full() { return heap.size() == k; }
+
+    /** Score thứ k khi đã đủ k itemset (itemset mới phải cao hơn), ngược lại 0 */
+    double threshold() {
+        return full() ? heap.peek().score : 0.0;
+    }
+
+    /** Score giảm dần, bằng nhau theo thứ tự tìm thấy */
+    List<Entry> sorted() {
+        List<Entry> out = new ArrayList<>(heap);
+        out.sort(WORST_FIRST.reversed());
+        return out;
+    }
+}
@@ -1,19 +1,22 @@
 package miner;
 
 import db.UncertainDatabase;
-import entity.Item;
+import entity.ItemDictionary;
 import entity.Itemset;
-import entity.Transaction;
-import util.Constants;
+import util.MiningConfig;
+import util.TailThreshold;
 import util.WPFI_Metrics;
 
 import java.io.*;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * Thuật toán Weighted Probabilistic Frequent Itemset (WPFI) – mở rộng Apriori.
- * Giới hạn độ dài itemset tối đa bằng Constants.MAX_K:
+ * Tham số (MSUP, T, ALPHA, MIN_AVG_WEIGHT, MAX_K, THREADS) lấy từ MiningConfig của miner, chụp lúc tạo
+ * (mặc định từ Constants). Giới hạn độ dài itemset tối đa bằng maxK:
  *   - MAX_K > 0: giới hạn
  *   - MAX_K <= 0: chạy đến khi hết pattern
  */
@@ -25,409 +28,1427 @@ public class WPFI_Apriori {
         MUHAT_ONLY,
         APPROX_ONLY,
         ALL,            // WPFI ban đầu: weight + muhat + approx
-        FAST            // ALL + tối ưu lossless (UB-score + TID-index)
+        FAST,           // ALL + tối ưu lossless (UB-score + TID-index)
+        DEPTH_FIRST,    // duyệt sâu kiểu UEclat trên TID-index, mọi itemset có score >= T
+        EXACT,          // như DEPTH_FIRST nhưng tail Poisson-binomial chính xác (cận trước, DP/FFT sau)
+        CLOSED,         // như DEPTH_FIRST nhưng chỉ xuất itemset closed (theo tập transaction chứa nó)
+        MAXIMAL         // như DEPTH_FIRST nhưng chỉ xuất itemset maximal
     }
 
     public static class MiningReport {
         public long runtimeMs;
-        public long peakMemoryMB;
+        public long peakMemoryMB;   // peak heap thật (tổng peak các memory pool heap)
+        public long allocatedBytes; // byte cấp phát: thread khai thác + worker tính μ (ThreadMXBean)
+        public long gcCount;        // số lần GC trong lúc mine()
+        public long gcPauseMs;      // tổng thời gian GC (GarbageCollectorMXBean)
+        // peakMemoryMB / gcCount / gcPauseMs = -1: job của MiningJobExecutor, số của cả tiến trình nằm
+        // trong MiningJobExecutor.ProcessStats
         public int totalPatterns;
         public long totalCandidates;
-        public final Map<Integer, Integer> candidatesByK = new LinkedHashMap<>();
-        public final Map<Integer, Integer> patternsByK = new LinkedHashMap<>();
+        public long totalEvaluated;
+        public int threads = 1;
+        public int denseItems;      // số item dùng bitset + cột xác suất trong TidIndex
+        public int resumedLevel;    // chạy tiếp từ checkpoint sau mức này (0 = chạy từ đầu)
+        public long boundPruned;    // itemset loại khỏi F nhờ cận weight chặt (maxW vẫn giữ)
+        public long branchPruned;   // cặp (X, I) loại khỏi Ck nhờ avgW(X ∪ I) * tail(μ_X) < T
+        public long subsetPruned;   // cặp (P, I) loại khi sinh Ck vì 1 tập con (k-1) của P ∪ {I} không thuộc F (mọi mode)
+        public long subsetTableEntries; // số itemset lớn nhất trong các bảng kiểm tra tập con (đo sau mỗi lần sinh Ck)
+        public long subsetMemoSkipped;  // tập con chưa tính μ coi như có thể thuộc F vì đã nhớ đủ setSubsetMemoLimit
+        public long earlyStopped;   // ứng viên dừng tính μ sớm vì chắc chắn dưới ngưỡng
+        // setInstrumentation(true), không thì 0: số cặp (X ∈ Lprev, I) bị từng luật loại khi sinh Ck:
+        // mọi cặp cha của mỗi Y đều được thử và mọi luật của mode đều được xét
+        // (1 cặp có thể bị nhiều luật loại, Y vào Ck nếu có cặp qua hết).
+        // μ̂: X ∈ Lprev và I ∈ F1 có μ >= μ̂ (F = {maxW * tail(μ) >= T}, μ̂ là nghiệm của dấu bằng), nên
+        // luật này gần như không loại cặp nào; chỉ còn các cặp sát ngưỡng (μ̂ giải số, F theo TailThreshold)
+        public long weightRuleHits;
+        public long muHatRuleHits;
+        public long approxRuleHits;
+        public long ubBranchRuleHits;
+        // setInstrumentation(true): số ứng viên theo số TID phải duyệt khi tính μ,
+        // bucket 0 = 0 TID, bucket b = [2^(b-1), 2^b). Không gồm các mức đếm theo lô (CandidateTrie):
+        // cả Ck chung 1 lần quét nên ứng viên không có chi phí riêng, xem trieNodesVisited
+        public long[] tidCostHistogram = new long[0];
+        public long trieNodesVisited;   // đếm theo lô: tổng số lần 1 dòng khớp 1 nút của cây (1 phép nhân mỗi lần)
+        // các map theo k: TreeMap để luôn in theo k tăng dần (duyệt sâu / CLOSED / MAXIMAL điền không theo thứ tự)
+        public final Map<Integer, Integer> candidatesByK = new TreeMap<>();
+        public final Map<Integer, Integer> evaluatedByK = new TreeMap<>();
+        public final Map<Integer, Integer> patternsByK = new TreeMap<>();
+        // thời gian tính μ mỗi mức (ms) và độ song song = tổng CPU time các chunk / thời gian thực
+        // (số thread bận trung bình, không phải speedup so với 1 thread, xem CandidateEvaluator)
+        public final Map<Integer, Long> evalMsByK = new TreeMap<>();
+        // thời gian sinh ứng viên và chấm điểm + ghi kết quả mỗi mức (ms)
+        public final Map<Integer, Long> genMsByK = new TreeMap<>();
+        public final Map<Integer, Long> writeMsByK = new TreeMap<>();
+        public final Map<Integer, Double> parallelismByK = new TreeMap<>();
+        // EXACT: số itemset quyết định được bằng cận (nhận / loại) và số phải tính tail chính xác
+        public final Map<Integer, Integer> acceptedByBoundK = new TreeMap<>();
+        public final Map<Integer, Integer> rejectedByBoundK = new TreeMap<>();
+        public final Map<Integer, Integer> exactComputedByK = new TreeMap<>();
 
         @Override
         public String toString() {
             return "MiningReport{" +
                     "runtimeMs=" + runtimeMs +
                     ", peakMemoryMB=" + peakMemoryMB +
+                    ", allocatedBytes=" + allocatedBytes +
+                    ", gcCount=" + gcCount +
+                    ", gcPauseMs=" + gcPauseMs +
                     ", totalPatterns=" + totalPatterns +
                     ", totalCandidates=" + totalCandidates +
+                    ", totalEvaluated=" + totalEvaluated +
+                    ", threads=" + threads +
+                    ", denseItems=" + denseItems +
+                    ", resumedLevel=" + resumedLevel +
+                    ", boundPruned=" + boundPruned +
+                    ", branchPruned=" + branchPruned +
+                    ", subsetPruned=" + subsetPruned +
+                    ", subsetTableEntries=" + subsetTableEntries +
+                    ", subsetMemoSkipped=" + subsetMemoSkipped +
+                    ", earlyStopped=" + earlyStopped +
+                    ", weightRuleHits=" + weightRuleHits +
+                    ", muHatRuleHits=" + muHatRuleHits +
+                    ", approxRuleHits=" + approxRuleHits +
+                    ", ubBranchRuleHits=" + ubBranchRuleHits +
+                    ", tidCostHistogram=" + Arrays.toString(tidCostHistogram) +
+                    ", trieNodesVisited=" + trieNodesVisited +
                     ", candidatesByK=" + candidatesByK +
+                    ", evaluatedByK=" + evaluatedByK +
                     ", patternsByK=" + patternsByK +
+                    ", genMsByK=" + genMsByK +
+                    ", evalMsByK=" + evalMsByK +
+                    ", writeMsByK=" + writeMsByK +
+                    ", parallelismByK=" + parallelismByK +
+                    ", acceptedByBoundK=" + acceptedByBoundK +
+                    ", rejectedByBoundK=" + rejectedByBoundK +
+                    ", exactComputedByK=" + exactComputedByK +
+                    extraString() +
                     '}';
         }
+
+        /** Trường riêng của report từng miner (lớp con), theo thứ tự in ra */
+        protected Map<String, Object> extraFields() {
+            return Map.of();
+        }
+
+        private String extraString() {
+            StringBuilder sb = new StringBuilder();
+            extraFields().forEach((name, v) -> sb.append(", ").append(name).append('=').append(v));
+            return sb.toString();
+        }
+
+        /** Mọi trường dưới dạng 1 object JSON (map theo k: key là chuỗi) */
+        public String toJson() {
+            StringBuilder sb = new StringBuilder("{");
+            json(sb, "runtimeMs", runtimeMs);
+            json(sb, "peakMemoryMB", peakMemoryMB);
+            json(sb, "allocatedBytes", allocatedBytes);
+            json(sb, "gcCount", gcCount);
+            json(sb, "gcPauseMs", gcPauseMs);
+            json(sb, "totalPatterns", totalPatterns);
+            json(sb, "totalCandidates", totalCandidates);
+            json(sb, "totalEvaluated", totalEvaluated);
+            json(sb, "threads", threads);
+            json(sb, "denseItems", denseItems);
+            json(sb, "resumedLevel", resumedLevel);
+            json(sb, "boundPruned", boundPruned);
+            json(sb, "branchPruned", branchPruned);
+            json(sb, "subsetPruned", subsetPruned);
+            json(sb, "subsetTableEntries", subsetTableEntries);
+            json(sb, "subsetMemoSkipped", subsetMemoSkipped);
+            json(sb, "earlyStopped", earlyStopped);
+            json(sb, "weightRuleHits", weightRuleHits);
+            json(sb, "muHatRuleHits", muHatRuleHits);
+            json(sb, "approxRuleHits", approxRuleHits);
+            json(sb, "ubBranchRuleHits", ubBranchRuleHits);
+            json(sb, "tidCostHistogram", tidCostHistogram);
+            json(sb, "trieNodesVisited", trieNodesVisited);
+            json(sb, "candidatesByK", candidatesByK);
+            json(sb, "evaluatedByK", evaluatedByK);
+            json(sb, "patternsByK", patternsByK);
+            json(sb, "genMsByK", genMsByK);
+            json(sb, "evalMsByK", evalMsByK);
+            json(sb, "writeMsByK", writeMsByK);
+            json(sb, "parallelismByK", parallelismByK);
+            json(sb, "acceptedByBoundK", acceptedByBoundK);
+            json(sb, "rejectedByBoundK", rejectedByBoundK);
+            json(sb, "exactComputedByK", exactComputedByK);
+            extraFields().forEach((name, v) -> json(sb, name, v));
+            return sb.append('}').toString();
+        }
+
+        private static void json(StringBuilder sb, String name, Object v) {
+            if (sb.length() > 1) sb.append(',');
+            sb.append('"').append(name).append("\":");
+            if (v instanceof Map<?, ?> m) {
+                sb.append('{');
+                boolean first = true;
+                for (Map.Entry<?, ?> e : m.entrySet()) {
+                    if (!first) sb.append(',');
+                    first = false;
+                    sb.append('"').append(e.getKey()).append("\":").append(jsonNumber(e.getValue()));
+                }
+                sb.append('}');
+            } else if (v instanceof long[] a) {
+                sb.append(Arrays.toString(a).replace(" ", ""));
+            } else {
+                sb.append(jsonNumber(v));
+            }
+        }
+
+        private static String jsonNumber(Object v) {
+            if (v instanceof Double d) return Double.isFinite(d) ? String.format(Locale.ROOT, "%.4f", d) : "null";
+            return String.valueOf(v);
+        }
+    }
+
+    /** Report của mineTopK */
+    public static class TopKReport extends MiningReport {
+        public double threshold;    // score thứ k (0 nếu ít hơn k itemset có score > 0)
+
+        @Override
+        protected Map<String, Object> extraFields() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("threshold", threshold);
+            return m;
+        }
+    }
+
+    /** Report của mine() khi bật khai thác tăng dần */
+    public static class IncrementalReport extends MiningReport {
+        public int deltaRows = -1;  // số dòng mới phải quét (-1 = chạy toàn bộ)
+        public long muCacheHits;    // μ lấy từ state + μ trên delta
+        public long muCacheMisses;  // itemset mới, tính trên toàn DB
+
+        @Override
+        protected Map<String, Object> extraFields() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("deltaRows", deltaRows);
+            m.put("muCacheHits", muCacheHits);
+            m.put("muCacheMisses", muCacheMisses);
+            return m;
+        }
     }
 
-    /* RESUME SUPPORT */
-    private final Set<String> existedResults = new HashSet<>();
-    private BufferedWriter resultWriter;
+    /* RESUME SUPPORT (checkpoint theo mức, xem LevelCheckpoint) */
+    public static final String CHECKPOINT_SUFFIX = ".ckpt";
+    private ResultWriter resultWriter;
     private String outputPath;
+    private String checkpointPath;         // null: không checkpoint (duyệt sâu, incremental)
+    private Long fingerprint;              // tính lười: cần 1 lần quét DB
 
     /* CORE DATA */
     private final UncertainDatabase db;
     private final PruningMode pruningMode;
+    private final MiningConfig config;
+    private Supplier<TidIndex> indexSource;   // TID-index dùng chung giữa các job (null: tự build)
+    private boolean concurrentJob;             // chạy trong MiningJobExecutor cùng job khác
 
     // report cho experiment
     private MiningReport lastReport = new MiningReport();
     public MiningReport getLastReport() { return lastReport; }
 
+    /* INCREMENTAL SUPPORT */
+    private boolean incremental;
+    private IncrementalState incrPrev;     // state của lần chạy trước (null = chạy toàn bộ)
+    private IncrementalState incrNext;     // state sau lần mine() gần nhất
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    /**
+     * Bật khai thác tăng dần: nếu prev khớp với phần đầu của DB thì chỉ quét các dòng mới,
+     * μ(X) = μ_cũ(X) + μ_delta(X) cho mọi X có trong prev. Sau mine(), state mới cho toàn DB
+     * lấy qua getIncrementalState(). prev = null: chạy toàn bộ nhưng vẫn ghi state.
+     */
+    public void enableIncremental(IncrementalState prev) {
+        if (depthFirst()) {
+            throw new IllegalStateException("Incremental không hỗ trợ mode " + pruningMode);
+        }
+        this.incremental = true;
+        this.incrPrev = prev;
+    }
+
+    public IncrementalState getIncrementalState() { return incrNext; }
+
+    /* BATCH COUNTING */
+    private boolean batchCounting = true;  // mode theo chiều ngang: μ cả Ck trong 1 lần quét (CandidateTrie)
+
+    /**
+     * Mode theo chiều ngang (NONE, WEIGHT_ONLY, MUHAT_ONLY, APPROX_ONLY, ALL): bật (mặc định) thì μ của
+     * cả Ck được cộng trong 1 lần quét CSR qua cây tiền tố, tắt thì quét CSR riêng cho từng ứng viên
+     * (WPFI_Metrics.computeMu). Kết quả như nhau.
+     */
+    public void setBatchCounting(boolean on) {
+        this.batchCounting = on;
+    }
+
+    /* SUBSET FILTER */
+    private int subsetMemoLimit = SubsetFilter.DEFAULT_MEMO_LIMIT;
+
+    /**
+     * Số itemset chưa tính μ tối đa mà bước sinh Ck nhớ kết luận (suy từ tập con của chúng).
+     * Đủ thì tập con chưa biết coi như có thể thuộc F: Ck có thể lớn hơn nhưng kết quả không đổi,
+     * số lần như vậy ở MiningReport.subsetMemoSkipped.
+     */
+    public void setSubsetMemoLimit(int entries) {
+        this.subsetMemoLimit = Math.max(0, entries);
+    }
+
+    /* INSTRUMENTATION */
+    private boolean instrument;            // số đo theo từng ứng viên / cặp cha
+
+    /**
+     * Bật các số đo có chi phí theo từng ứng viên: MiningReport.tidCostHistogram và các bộ đếm luật
+     * (*RuleHits; phải thử mọi cặp cha và mọi luật thay vì dừng ở cặp/luật quyết định).
+     * Các số đo còn lại (thời gian mỗi mức, heap/cấp phát/GC, sự kiện JFR) luôn bật
+     * vì chỉ tốn vài phép đo mỗi mức.
+     */
+    public void setInstrumentation(boolean on) {
+        this.instrument = on;
+    }
+
+    /* OUTPUT FORMAT */
+    private ResultWriter.Format outputFormat = ResultWriter.Format.TEXT;
+
+    /** Định dạng file kết quả (mặc định TEXT, giống Itemset.toString() từng dòng), xem ResultWriter */
+    public void setOutputFormat(ResultWriter.Format format) {
+        this.outputFormat = (format == null) ? ResultWriter.Format.TEXT : format;
+    }
+
+    /* SCORING MODEL */
+    private ProbabilisticModel model;      // null: Poisson dựng sẵn (ngưỡng μ qua TailThreshold)
+
+    /**
+     * Chọn mô hình xấp xỉ tail cho score = avgWeight * tail(μ, σ²). null = Poisson dựng sẵn
+     * (kết quả như trước). σ² chỉ được cộng dồn, cùng vòng lặp với μ, khi mô hình cần.
+     * Mode EXACT luôn dùng tail chính xác nên không nhận mô hình.
+     */
+    public void setModel(ProbabilisticModel model) {
+        if (model != null && pruningMode == PruningMode.EXACT) {
+            throw new IllegalStateException("Mode EXACT không dùng mô hình xấp xỉ");
+        }
+        this.model = model;
+    }
+
     public WPFI_Apriori(UncertainDatabase db) {
         this(db, PruningMode.ALL);
     }
 
     public WPFI_Apriori(UncertainDatabase db, PruningMode mode) {
+        this(db, mode, MiningConfig.fromConstants());
+    }
+
+    public WPFI_Apriori(UncertainDatabase db, PruningMode mode, MiningConfig config) {
         this.db = Objects.requireNonNull(db);
         this.pruningMode = (mode == null) ? PruningMode.ALL : mode;
+        this.config = Objects.requireNonNull(config);
+    }
+
+    public MiningConfig getConfig() { return config; }
+
+    /**
+     * Lấy TID-index toàn DB từ source (đã build sẵn, chỉ đọc) thay vì build trong mine().
+     * concurrent: chạy cùng lúc với miner khác trong JVM, peak heap / GC của report ghi -1 (xem JvmCounters).
+     */
+    void useSharedIndex(Supplier<TidIndex> source, boolean concurrent) {
+        this.indexSource = source;
+        this.concurrentJob = concurrent;
+    }
+
+    private JvmCounters startCounters() {
+        return concurrentJob ? JvmCounters.startShared() : JvmCounters.start();
     }
 
     public Set<Itemset> mine(String outputPath) {
+        final boolean needVar = (model != null && model.needsVariance());
+        if (needVar && incremental) {
+            throw new IllegalStateException("Incremental chỉ lưu μ, không dùng được mô hình cần σ²");
+        }
+
         // reset report
-        lastReport = new MiningReport();
+        lastReport = incremental ? new IncrementalReport() : new MiningReport();
 
         long startNs = System.nanoTime();
-        Runtime rt = Runtime.getRuntime();
-        long peakMemBytes = 0;
+        JvmCounters jvm = startCounters();
+        CostHistogram hist = instrument ? new CostHistogram() : null;
+        MiningLevelEvent event = new MiningLevelEvent();
+        event.begin();
 
         this.outputPath = outputPath;
-        loadExistingResults();
-        initWriter();
+        this.fingerprint = null;
+        this.checkpointPath = (!depthFirst() && !incremental) ? outputPath + CHECKPOINT_SUFFIX : null;
+        LevelCheckpoint resume = loadCheckpoint();
+        initWriter((resume != null) ? resume.outputLength : 0L);
+        try {
+            final boolean wantScore = resultWriter.needsScore();
 
-        // Lưu ý: nếu output rất lớn, giữ "all" sẽ tốn RAM.
-        // Ở mode FAST, mình không add vào "all" để tiết kiệm bộ nhớ.
-        Set<Itemset> all = new LinkedHashSet<>();
+            // Lưu ý: nếu output rất lớn, giữ "all" sẽ tốn RAM.
+            // Ở mode FAST, mình không add vào "all" để tiết kiệm bộ nhớ.
+            Set<Itemset> all = new LinkedHashSet<>();
 
-        /* 1) Thu thập item */
-        SortedSet<Item> universe = collectUniverse(db);
+            /* 1) Thu thập item (ID tăng dần = tên tăng dần) */
+            ItemDictionary dict = db.getDictionary();
+            int[] universe = collectUniverse(db);
 
-        /* 2) Tính μ cho 1-itemset (1 pass qua DB) */
-        Map<Item, Double> mu1 = new HashMap<>();
-        for (Transaction t : db.getTransactions()) {
-            for (Item i : t.getItems()) {
-                mu1.merge(i, t.getProb(i), Double::sum);
+            /* Incremental: chỉ dùng state cũ khi nó khớp phần đầu DB */
+            IncrementalState prev = incrPrev;
+            if (prev != null && !prev.matchesPrefix(db)) {
+                System.out.println("[WARN] Incremental state không khớp dữ liệu, khai thác lại toàn bộ.");
+                prev = null;
+            }
+            final int deltaStart = (prev != null) ? prev.rows() : 0;
+            IncrementalState.Recorder recorder = incremental ? new IncrementalState.Recorder(dict) : null;
+            if (prev != null) ((IncrementalReport) lastReport).deltaRows = db.size() - deltaStart;
+
+            /* 2) Tính μ (+ Σp² nếu mô hình cần σ²) cho 1-itemset (1 pass qua DB, hoặc chỉ qua delta) */
+            double[] mu1 = (prev != null) ? prev.mu1For(dict) : new double[dict.size()];
+            double[] sq1 = needVar ? new double[dict.size()] : null;
+            long evalStart = System.nanoTime();
+            int from = (prev == null) ? 0 : (deltaStart < db.size()) ? db.rowStart(deltaStart) : db.occurrences();
+            for (int pos = from, end = db.occurrences(); pos < end; pos++) {
+                double p = db.probAt(pos);
+                mu1[db.itemAt(pos)] += p;
+                if (sq1 != null) sq1[db.itemAt(pos)] += p * p;
+            }
+            if (recorder != null) recorder.recordSingles(mu1);
+            long evalNs = System.nanoTime() - evalStart;
+            lastReport.evalMsByK.put(1, evalNs / 1_000_000);
+
+            /* 3) Tính μ̂  */
+            double maxW = maxWeight(dict, universe);
+
+            final double muHat = WPFI_Metrics.solveMuHatPoisson(config.msup, config.t / maxW);
+            final int n = db.size();
+
+            // FAST / duyệt sâu (trừ EXACT): cận weight theo các item còn mở rộng được thay cho maxW
+            boolean tight = (pruningMode == PruningMode.FAST || (depthFirst() && pruningMode != PruningMode.EXACT));
+            ScoreCheck check = new ScoreCheck(dict, universe, maxW, model, lastReport, config);
+            if (tight) check.restrictTo(extendableItems(universe, mu1, check));
+
+            // FAST / DEPTH_FIRST: build TID-index để computeMu nhanh (lossless)
+            TidIndex tidIndex = null;
+            final CandidateEvaluator.MuFunction muFn;
+            if (prev != null) {
+                muFn = incrementalMuFunction(prev.musFor(dict), deltaStart);
+            } else {
+                if (pruningMode == PruningMode.FAST || depthFirst()) {
+                    tidIndex = (indexSource != null) ? indexSource.get() : TidIndex.build(db);
+                    lastReport.denseItems = tidIndex.denseCount();
+                }
+                muFn = (tidIndex != null)
+                        ? tidIndex::computeMu                      // nhanh hơn, lossless
+                        : X -> WPFI_Metrics.computeMu(X, db);
+            }
+            final boolean batch = (tidIndex == null && prev == null && batchCounting);
+
+            /* 4) L1 (+ F1: item mở rộng được, maxW * tail(μ) >= T) */
+            Set<Itemset> Lprev = new LinkedHashSet<>();
+            List<Itemset> F1 = new ArrayList<>();
+            Map<Itemset, Double> muMap = new HashMap<>();
+            SubsetFilter subsets = new SubsetFilter(subsetMemoLimit);
+
+            int totalPatterns = 0;
+
+            // EXACT: tail Poisson-binomial từ TID-list của từng item
+            ExactScorer exact = null;
+            int[] tidBuf = null;
+            double[] probBuf = null;
+            if (pruningMode == PruningMode.EXACT) {
+                exact = new ExactScorer(config.msup);
+                int cap = 0;
+                for (int i : universe) cap = Math.max(cap, tidIndex.counts[i]);
+                tidBuf = new int[cap];
+                probBuf = new double[cap];
             }
+
+            // CLOSED / MAXIMAL: 1-itemset cũng chỉ được quyết định sau khi duyệt cây con của nó
+            final boolean condensed = (pruningMode == PruningMode.CLOSED || pruningMode == PruningMode.MAXIMAL);
+            long writeStart = System.nanoTime();
+            for (int i : universe) {
+                Itemset X = new Itemset(dict, i);
+                double mu = mu1[i];
+
+                boolean inF, isResult;
+                double score;
+                if (exact != null) {
+                    exact.reset(probBuf, tidIndex.listOf(i, tidBuf, probBuf));
+                    inF = exact.atLeast(config.t / maxW);
+                    isResult = inF && exact.atLeast(config.t / X.avgWeight());
+                    exact.count(lastReport, 1, isResult);
+                    score = (isResult && wantScore) ? X.avgWeight() * exact.estimate() : Double.NaN;
+                } else {
+                    double var = (sq1 != null) ? Math.max(0.0, mu - sq1[i]) : 0.0;
+                    inF = check.extendable(X, mu);
+                    isResult = check.isResult(X, mu, var);
+                    score = (isResult && wantScore) ? check.score(X, mu, var) : Double.NaN;
+                }
+
+                if (inF) {
+                    F1.add(X);
+                    muMap.put(X, mu);
+                }
+
+                if (isResult) {
+                    Lprev.add(X);
+                    if (condensed) continue;
+                    if (resume == null) resultWriter.write(X, mu, score); // chạy tiếp: L1 đã nằm trong file kết quả
+
+                    totalPatterns++;
+                    if (keepAll()) all.add(X);
+                }
+            }
+
+            if (!condensed) lastReport.patternsByK.put(1, Lprev.size());
+            long writeNs = System.nanoTime() - writeStart;
+            lastReport.writeMsByK.put(1, writeNs / 1_000_000);
+            commitLevel(event, 1, universe.length, universe.length, totalPatterns, 0L, evalNs, writeNs);
+            int[] f1 = new int[F1.size()];
+            for (int a = 0; a < f1.length; a++) f1[a] = F1.get(a).get(0);
+            if (tight) check.restrictTo(f1);
+
+            if (depthFirst() && !Lprev.isEmpty()) {
+                int[] items = f1.clone();
+                if (condensed) { // μ tăng dần: item dày đặc nằm ở tail, cắt theo mẫu đã xuất được nhiều hơn
+                    items = Arrays.stream(items).boxed()
+                            .sorted(Comparator.<Integer>comparingDouble(i -> mu1[i]).thenComparingInt(i -> i))
+                            .mapToInt(Integer::intValue).toArray();
+                }
+
+                // các mức không tách riêng: 1 sự kiện (level 0) cho cả phần duyệt sâu
+                event = new MiningLevelEvent();
+                event.begin();
+                long dfsStart = System.nanoTime();
+                int[] found = {totalPatterns};
+                DepthFirstEngine.PatternSink sink = (X, mu, score) -> {
+                    resultWriter.write(X, mu, score);
+                    lastReport.patternsByK.merge(X.size(), 1, Integer::sum);
+                    found[0]++;
+                };
+                if (condensed) {
+                    CondensedEngine.Kind kind = (pruningMode == PruningMode.CLOSED)
+                            ? CondensedEngine.Kind.CLOSED : CondensedEngine.Kind.MAXIMAL;
+                    new CondensedEngine(kind, tidIndex, dict, check, hist, lastReport).run(items, sink);
+                } else {
+                    new DepthFirstEngine(tidIndex, dict, check, exact, hist, lastReport).run(items, sink);
+                }
+                commitLevel(event, 0, lastReport.totalCandidates, lastReport.totalEvaluated,
+                        found[0] - totalPatterns, 0L, System.nanoTime() - dfsStart, 0L);
+                totalPatterns = found[0];
+                Lprev.clear();
+            }
+
+            if (Lprev.isEmpty()) {
+                finishOutput();
+                if (recorder != null) finishIncremental(recorder, prev);
+                finishReport(check, totalPatterns, startNs, jvm, hist);
+                return all;
+            }
+
+            /* I0: giữ thứ tự chèn (list) + cờ membership theo ID */
+            ItemOrder I0 = new ItemOrder(dict.size());
+            for (Itemset x : Lprev) I0.addAll(x);
+
+            for (Itemset X : F1) subsets.add(X, LevelTable.EXTENDABLE);
+            for (Itemset X : Lprev) subsets.add(X, LevelTable.RESULT);
+
+            // chạy tiếp từ checkpoint: bước L1 ở trên chỉ dựng lại F1 (+ cận weight), phần còn lại lấy từ file
+            int startK = 2;
+            if (resume != null) {
+                Lprev = resume.lk(dict);
+                for (Itemset X : resume.fk(dict, muMap)) subsets.add(X, LevelTable.EXTENDABLE);
+                for (Itemset X : resume.dead(dict)) subsets.add(X, LevelTable.DEAD);   // kể cả IMPLIED_DEAD: cùng là NOT_F
+                for (Itemset X : Lprev) subsets.add(X, LevelTable.RESULT);
+                I0 = resume.i0(dict.size());
+                resume.restoreCounters(lastReport);
+                totalPatterns = resume.totalPatterns;
+                check.stopped.add(resume.earlyStopped);
+                lastReport.resumedLevel = resume.level;
+                startK = resume.level + 1;
+            }
+
+            /* 5) Apriori Loop */
+            lastReport.threads = config.threads;
+            try (CandidateEvaluator evaluator = new CandidateEvaluator(config.threads)) {
+                int k = startK;
+                while (!Lprev.isEmpty()) {
+
+                    // GIỚI HẠN K: MAX_K <= 0 nghĩa là KHÔNG GIỚI HẠN
+                    int MAX_K = config.maxK;
+                    if (MAX_K > 0 && k > MAX_K) {
+                        System.out.println("[INFO] Stop: reached MAX_K = " + MAX_K);
+                        break;
+                    }
+
+                    System.out.println("[INFO] Mining level k = " + k + ", |Lprev| = " + Lprev.size());
+
+                    event = new MiningLevelEvent();
+                    event.begin();
+                    long genStart = System.nanoTime();
+                    long skipped = subsets.memoSkipped;
+                    Itemset[] cands = generateCandidatesWithPruning(
+                            Lprev, f1, subsets, I0, muMap, mu1, muHat, n, pruningMode, check, instrument
+                    );
+                    long genNs = System.nanoTime() - genStart;
+                    lastReport.subsetTableEntries = Math.max(lastReport.subsetTableEntries, subsets.entries());
+                    lastReport.subsetMemoSkipped += subsets.memoSkipped - skipped;
+                    lastReport.genMsByK.put(k, genNs / 1_000_000);
+
+                    // Mức cuối (k = MAX_K) không cần F_k
+                    boolean lastLevel = (MAX_K > 0 && k == MAX_K);
+
+                    // candidatesByK: ứng viên theo nghĩa của mode; evaluatedByK: số lần tính μ (= |Ck|)
+                    lastReport.candidatesByK.put(k, cands.length);
+                    lastReport.totalCandidates += cands.length;
+                    lastReport.evaluatedByK.put(k, cands.length);
+                    lastReport.totalEvaluated += cands.length;
+
+                    if (cands.length == 0) break;
+
+                    // tính μ (có thể song song), sau đó gộp tuần tự theo thứ tự join
+                    double[] mus = new double[cands.length];
+                    double[] vars = needVar ? new double[cands.length] : null;
+                    if (batch) {
+                        batchEvaluate(evaluator, cands, mus, vars);
+                    } else if (vars != null) {
+                        evaluator.evaluate(cands.length, momentTask(tidIndex, cands, mus, vars, hist));
+                    } else {
+                        evaluator.evaluate(cands, cands.length, mus, withCost(
+                                (tidIndex != null && recorder == null) ? boundedMuFunction(tidIndex, check, lastLevel) : muFn,
+                                tidIndex, hist));
+                    }
+                    lastReport.evalMsByK.put(k, evaluator.lastWallNs() / 1_000_000);
+                    lastReport.parallelismByK.put(k, evaluator.lastParallelism());
+                    lastReport.allocatedBytes += evaluator.lastAllocBytes();
+                    if (recorder != null) {
+                        for (int c = 0; c < cands.length; c++) recorder.record(cands[c], mus[c]);
+                    }
+
+                    writeStart = System.nanoTime();
+                    Set<Itemset> Lk = new LinkedHashSet<>();
+                    List<Itemset> Fk = new ArrayList<>();
+                    for (int c = 0; c < cands.length; c++) {
+                        Itemset X = cands[c];
+                        double mu = mus[c];
+
+                        if (!lastLevel) {
+                            if (check.extendable(X, mu)) {
+                                Fk.add(X);
+                                muMap.put(X, mu);
+                                subsets.add(X, LevelTable.EXTENDABLE);
+                            } else {
+                                subsets.add(X, LevelTable.DEAD);
+                            }
+                        }
+
+                        double var = (vars != null) ? vars[c] : 0.0;
+                        if (check.isResult(X, mu, var)) {
+                            Lk.add(X);
+                            if (!lastLevel) subsets.add(X, LevelTable.RESULT);
+                            resultWriter.write(X, mu, wantScore ? check.score(X, mu, var) : Double.NaN);
+
+                            totalPatterns++;
+                            if (keepAll()) all.add(X);
+                        }
+                    }
+
+                    lastReport.patternsByK.put(k, Lk.size());
+                    writeNs = System.nanoTime() - writeStart;
+                    lastReport.writeMsByK.put(k, writeNs / 1_000_000);
+                    commitLevel(event, k, cands.length, cands.length, Lk.size(), genNs, evaluator.lastWallNs(), writeNs);
+
+                    if (Lk.isEmpty()) break;
+
+                    for (Itemset x : Lk) I0.addAll(x);
+                    Lprev = Lk;
+                    // mức sau chỉ cần μ của Fk (như khi chạy tiếp từ checkpoint)
+                    final int done = k;
+                    muMap.keySet().removeIf(X -> X.size() < done);
+                    if (!lastLevel) saveCheckpoint(k, totalPatterns, check, Lprev, Fk, subsets, muMap, I0);
+                    k++;
+                }
+            }
+
+            finishOutput();
+            if (recorder != null) finishIncremental(recorder, prev);
+
+            finishReport(check, totalPatterns, startNs, jvm, hist);
+            return all;
+        } finally {
+            closeWriter();   // lỗi giữa chừng: vẫn dừng luồng ghi và đóng file
+        }
+    }
+
+    private void finishReport(ScoreCheck check, int totalPatterns, long startNs, JvmCounters jvm, CostHistogram hist) {
+        lastReport.earlyStopped = check.stopped.sum();
+        lastReport.totalPatterns = totalPatterns;
+        if (hist != null) lastReport.tidCostHistogram = hist.toArray();
+        lastReport.runtimeMs = (System.nanoTime() - startNs) / 1_000_000;
+        jvm.finish(lastReport);
+    }
+
+    /** Ghi sự kiện JFR của 1 mức (chỉ điền trường khi có recording bật sự kiện) */
+    private void commitLevel(MiningLevelEvent event, int level, long candidates, long evaluated, long patterns,
+                             long genNs, long evalNs, long writeNs) {
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.mode = pruningMode.name();
+        event.level = level;
+        event.candidates = candidates;
+        event.evaluated = evaluated;
+        event.patterns = patterns;
+        event.genNanos = genNs;
+        event.evalNanos = evalNs;
+        event.writeNanos = writeNs;
+        event.commit();
+    }
+
+    /** Bọc f để ghi số TID phải duyệt của mỗi ứng viên vào hist (hist = null: giữ nguyên f) */
+    private CandidateEvaluator.MuFunction withCost(CandidateEvaluator.MuFunction f, TidIndex index, CostHistogram hist) {
+        if (hist == null) return f;
+        return X -> {
+            hist.record(tidCost(index, X));
+            return f.computeMu(X);
+        };
+    }
+
+    /**
+     * μ (và σ² nếu vars != null) của cả Ck qua CandidateTrie: mỗi part của cây 1 lần quét CSR,
+     * các part chạy song song trên evaluator. μ trùng từng bit với computeMu / computeMoments.
+     * Chi phí ghi vào trieNodesVisited, không vào tidCostHistogram (không chia được theo ứng viên).
+     */
+    private void batchEvaluate(CandidateEvaluator evaluator, Itemset[] cands, double[] mus, double[] vars) {
+        CandidateTrie trie = CandidateTrie.build(cands, cands.length, db.getDictionary().size());
+        int[] parts = trie.split(evaluator.threads());
+        int n = db.size();
+        LongAdder visited = new LongAdder();
+        evaluator.evaluate(parts.length - 1, i -> visited.add(trie.count(db, 0, n, parts[i], parts[i + 1], mus, vars)));
+        if (vars != null) {
+            for (int c = 0; c < cands.length; c++) vars[c] = Math.max(0.0, mus[c] - vars[c]);   // vars đang giữ Σp²
         }
+        lastReport.trieNodesVisited += visited.sum();
+    }
 
-        /* 3) Tính μ̂  */
-        double maxW = universe.stream().mapToDouble(Item::getWeight).max().orElse(1.0);
-        if (maxW <= 0) maxW = 1.0;
+    /** TID-index: độ dài TID-list ngắn nhất (danh sách được duyệt), CSR: mọi dòng */
+    private long tidCost(TidIndex index, Itemset X) {
+        return (index != null) ? index.baseCount(X) : db.size();
+    }
 
-        final double muHat = WPFI_Metrics.solveMuHatPoisson(Constants.MSUP, Constants.T / maxW);
+    /**
+     * μ khi có state cũ: X có trong state -> μ_cũ + μ trên các dòng [deltaStart, n);
+     * X mới -> tính trên toàn DB (TID-index toàn DB chỉ build khi lần đầu gặp X mới).
+     * Có thể gọi song song từ CandidateEvaluator.
+     */
+    private CandidateEvaluator.MuFunction incrementalMuFunction(Map<Itemset, Double> cached, int deltaStart) {
         final int n = db.size();
+        final boolean useIndex = (pruningMode == PruningMode.FAST);
+        final TidIndex deltaIndex = useIndex ? TidIndex.build(db, deltaStart, n, TidIndex.DENSE_RATIO) : null;
+        if (deltaIndex != null) lastReport.denseItems = deltaIndex.denseCount();
+
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        final TidIndex[] full = new TidIndex[1];
+
+        return X -> {
+            Double old = cached.get(X);
+            if (old != null) {
+                cacheHits.incrementAndGet();
+                return old + ((deltaIndex != null) ? deltaIndex.computeMu(X) : WPFI_Metrics.computeMu(X, db, deltaStart, n));
+            }
+            cacheMisses.incrementAndGet();
+            if (!useIndex) return WPFI_Metrics.computeMu(X, db);
+            TidIndex idx;
+            synchronized (full) {
+                if (full[0] == null) full[0] = TidIndex.build(db);
+                idx = full[0];
+            }
+            return idx.computeMu(X);
+        };
+    }
 
-        // FAST: build TID-index để computeMu nhanh (lossless)
-        TidIndex tidIndex = null;
-        if (pruningMode == PruningMode.FAST) {
-            tidIndex = TidIndex.build(db);
+    /**
+     * μ qua TID-index, dừng sớm khi μ chắc chắn dưới ngưỡng cần thiết:
+     * mức cuối chỉ cần score, các mức khác cần thuộc F (ngưỡng thấp hơn).
+     */
+    private static CandidateEvaluator.MuFunction boundedMuFunction(TidIndex index, ScoreCheck check, boolean lastLevel) {
+        return X -> {
+            double mu = index.computeMu(X, lastLevel ? check.resultFloor(X) : check.extendFloor(X));
+            if (mu < 0) check.stopped.increment();
+            return mu;
+        };
+    }
+
+    /** μ và σ² của cands[i] trong cùng 1 lần duyệt (TID-index nếu có, ngược lại CSR) */
+    private CandidateEvaluator.IndexTask momentTask(TidIndex index, Itemset[] cands, double[] mus, double[] vars,
+                                                    CostHistogram hist) {
+        if (hist != null) {
+            CandidateEvaluator.IndexTask task = momentTask(index, cands, mus, vars, null);
+            return i -> {
+                hist.record(tidCost(index, cands[i]));
+                task.run(i);
+            };
         }
+        if (index != null) return i -> mus[i] = index.computeMoments(cands[i], vars, i);
+        return i -> {
+            double[] m = WPFI_Metrics.computeMoments(cands[i], db);
+            mus[i] = m[0];
+            vars[i] = m[1];
+        };
+    }
 
-        /* 4) L1 */
-        Set<Itemset> Lprev = new LinkedHashSet<>();
-        Map<Itemset, Double> muMap = new HashMap<>();
+    /** Weight lớn nhất của các item (1.0 nếu không có item / mọi weight bằng 0) */
+    static double maxWeight(ItemDictionary dict, int[] universe) {
+        double maxW = 1.0;
+        if (universe.length > 0) {
+            maxW = 0.0;
+            for (int i : universe) maxW = Math.max(maxW, dict.weight(i));
+        }
+        return (maxW <= 0) ? 1.0 : maxW;
+    }
 
-        int totalPatterns = 0;
+    /** Các item có maxW * tail(μ_i) >= T (tập item của mọi itemset mở rộng được) */
+    static int[] extendableItems(int[] universe, double[] mu1, ScoreCheck check) {
+        int[] out = new int[universe.length];
+        int j = 0;
+        for (int i : universe) if (check.extendableByMaxW(mu1[i])) out[j++] = i;
+        return Arrays.copyOf(out, j);
+    }
 
-        for (Item i : universe) {
-            Itemset X = new Itemset(Set.of(i));
-            double mu = mu1.getOrDefault(i, 0.0);
-            muMap.put(X, mu);
+    private void finishIncremental(IncrementalState.Recorder recorder, IncrementalState prev) {
+        incrNext = recorder.finish(db, prev);
+        IncrementalReport r = (IncrementalReport) lastReport;
+        r.muCacheHits = cacheHits.get();
+        r.muCacheMisses = cacheMisses.get();
+    }
 
-            double pTail = WPFI_Metrics.poissonTailAtLeast(Constants.MSUP, mu);
-            double score = X.avgWeight() * pTail;
+    /**
+     * Kiểm tra score / F bằng ngưỡng μ (TailThreshold) thay cho tính tail mỗi lần:
+     *  - isResult   : avgW(X) * tail(μ) >= T
+     *  - extendable : maxW * tail(μ) >= T, và nếu đã có cận weight (FAST / DEPTH_FIRST)
+     *                 thì maxAvg(X) * tail(μ) >= T khi μ < SUBNORMAL_LO (tail còn đơn điệu,
+     *                 nên mọi Y ⊇ X có tail(μ_Y) <= tail(μ_X))
+     * Kết quả giống hệt cách tính trực tiếp bằng poissonTailAtLeast.
+     *
+     * Có ProbabilisticModel: tail = model.tailAtLeast(μ, σ²) cho score, model.extendBound(μ) cho
+     * F và các cận (lossless vì extendBound là cận của mọi tập cha và không giảm theo μ).
+     * Khi đó không có ngưỡng μ nên không dừng sớm (floor = -∞).
+     *
+     * MSUP, MAX_K và ngưỡng T mặc định lấy từ MiningConfig; top-k dựng lại với ngưỡng cao dần qua
+     * withThreshold().
+     */
+    static final class ScoreCheck {
+        final MiningReport report;
+        final MiningConfig config;
+        final LongAdder stopped;                     // tăng từ các thread tính μ
+        final double T;
+        private final int msup;
+        private final ItemDictionary dict;
+        private final double minW, maxW;
+        private final ProbabilisticModel model;      // null: Poisson dựng sẵn
+        private final TailThreshold byMaxW;
+        private final TailThreshold.Table byWeight;
+        private WeightBound bound;
+
+        ScoreCheck(ItemDictionary dict, int[] universe, double maxW, ProbabilisticModel model, MiningReport report,
+                   MiningConfig config) {
+            this(dict, universe, maxW, model, report, config, config.t);
+        }
 
-            if (score >= Constants.T) {
-                Lprev.add(X);
-                writeResult(X);
+        ScoreCheck(ItemDictionary dict, int[] universe, double maxW, ProbabilisticModel model, MiningReport report,
+                   MiningConfig config, double T) {
+            this(dict, minWeight(dict, universe, maxW), maxW, model, report, config, T, new LongAdder());
+        }
 
-                totalPatterns++;
-                if (pruningMode != PruningMode.FAST) all.add(X);
-            }
+        private ScoreCheck(ItemDictionary dict, double minW, double maxW, ProbabilisticModel model,
+                           MiningReport report, MiningConfig config, double T, LongAdder stopped) {
+            this.dict = dict;
+            this.minW = minW;
+            this.maxW = maxW;
+            this.model = model;
+            this.report = report;
+            this.config = config;
+            this.T = T;
+            this.stopped = stopped;
+            this.msup = config.msup;
+            this.byMaxW = new TailThreshold(msup, maxW, T);
+            this.byWeight = new TailThreshold.Table(msup, T, minW, maxW, 256);
         }
 
-        lastReport.patternsByK.put(1, Lprev.size());
+        private static double minWeight(ItemDictionary dict, int[] universe, double maxW) {
+            double minW = maxW;
+            for (int i : universe) minW = Math.min(minW, dict.weight(i));
+            return minW;
+        }
 
-        if (Lprev.isEmpty()) {
-            closeWriter();
-            lastReport.totalPatterns = totalPatterns;
-            lastReport.runtimeMs = (System.nanoTime() - startNs) / 1_000_000;
-            lastReport.peakMemoryMB = (rt.totalMemory() - rt.freeMemory()) / (1024 * 1024);
-            return all;
+        /** Cùng mô hình, cận weight và bộ đếm, ngưỡng mới T */
+        ScoreCheck withThreshold(double T) {
+            ScoreCheck c = new ScoreCheck(dict, minW, maxW, model, report, config, T, stopped);
+            c.bound = bound;
+            return c;
         }
 
-        /* I0 */
-        Set<Item> I0 = Lprev.stream()
-                .flatMap(s -> s.getItems().stream())
-                .collect(Collectors.toCollection(LinkedHashSet::new));
+        /** Cận weight lấy từ các item này (mọi itemset mở rộng được về sau đều dựng từ chúng) */
+        void restrictTo(int[] items) {
+            bound = new WeightBound(dict, items, config.maxK);
+        }
 
-        /* 5) Apriori Loop */
-        int k = 2;
-        while (!Lprev.isEmpty()) {
+        WeightBound bound() { return bound; }
 
-            // GIỚI HẠN K: MAX_K <= 0 nghĩa là KHÔNG GIỚI HẠN
-            int MAX_K = Constants.MAX_K;
-            if (MAX_K > 0 && k > MAX_K) {
-                System.out.println("[INFO] Stop: reached MAX_K = " + MAX_K);
-                break;
-            }
+        /** Mô hình cần σ² (miner phải cộng Σp² cùng lúc với μ) */
+        boolean needsVariance() {
+            return model != null && model.needsVariance();
+        }
 
-            System.out.println("[INFO] Mining level k = " + k + ", |Lprev| = " + Lprev.size());
+        /** @param var σ², bỏ qua nếu !needsVariance() */
+        boolean isResult(Itemset X, double mu, double var) {
+            if (model != null) return X.avgWeight() * model.tailAtLeast(msup, mu, var) >= T;
+            return byWeight.passes(X.avgWeight(), mu);
+        }
 
-            Set<Itemset> Ck = generateCandidatesWithPruning(
-                    Lprev, universe, I0, muMap, mu1, muHat, n, pruningMode, maxW
-            );
-            lastReport.candidatesByK.put(k, Ck.size());
-            lastReport.totalCandidates += Ck.size();
+        double score(Itemset X, double mu, double var) {
+            if (model != null) return X.avgWeight() * model.tailAtLeast(msup, mu, var);
+            return X.avgWeight() * WPFI_Metrics.poissonTailAtLeast(msup, mu);
+        }
 
-            if (Ck.isEmpty()) break;
+        double resultFloor(Itemset X) {
+            return (model != null) ? Double.NEGATIVE_INFINITY : byWeight.floor(X.avgWeight());
+        }
 
-            Set<Itemset> Lk = new LinkedHashSet<>();
-            for (Itemset X : Ck) {
-                double mu;
-                if (pruningMode == PruningMode.FAST && tidIndex != null) {
-                    mu = tidIndex.computeMu(X); // nhanh hơn, lossless
-                } else {
-                    mu = WPFI_Metrics.computeMu(X, db.getTransactions());
-                }
-                muMap.put(X, mu);
+        boolean extendableByMaxW(double mu) {
+            if (model != null) return maxW * model.extendBound(msup, mu) >= T;
+            return byMaxW.passes(mu);
+        }
 
-                double pTail = WPFI_Metrics.poissonTailAtLeast(Constants.MSUP, mu);
-                double score = X.avgWeight() * pTail;
+        /** maxAvg * tail(μ) có thể đạt T (ngoài vùng đơn điệu luôn coi là có) */
+        boolean mayReach(double maxAvg, double mu) {
+            if (model != null) return maxAvg * model.extendBound(msup, mu) >= T;
+            return mu >= TailThreshold.SUBNORMAL_LO || byWeight.passes(maxAvg, mu);
+        }
 
-                if (score >= Constants.T) {
-                    Lk.add(X);
-                    writeResult(X);
+        boolean extendable(Itemset X, double mu) {
+            return extendable(bound != null ? bound.maxAvg(X) : Double.NaN, mu);
+        }
 
-                    totalPatterns++;
-                    if (pruningMode != PruningMode.FAST) all.add(X);
-                }
-            }
+        /** @param maxAvg cận avgWeight của mọi tập cha, NaN nếu chỉ dùng maxW */
+        boolean extendable(double maxAvg, double mu) {
+            if (!extendableByMaxW(mu)) return false;
+            if (Double.isNaN(maxAvg) || mayReach(maxAvg, mu)) return true;
+            report.boundPruned++;
+            return false;
+        }
 
-            lastReport.patternsByK.put(k, Lk.size());
+        double extendFloor(Itemset X) {
+            return extendFloor(bound != null ? bound.maxAvg(X) : Double.NaN);
+        }
 
-            // peak memory (ước lượng)
-            long usedBytes = rt.totalMemory() - rt.freeMemory();
-            if (usedBytes > peakMemBytes) peakMemBytes = usedBytes;
+        /** Mọi μ < extendFloor đều không mở rộng được */
+        double extendFloor(double maxAvg) {
+            if (model != null) return Double.NEGATIVE_INFINITY;
+            double f = byMaxW.floor();
+            return Double.isNaN(maxAvg) ? f : Math.max(f, byWeight.floor(maxAvg));
+        }
+    }
 
-            if (Lk.isEmpty()) break;
+    /** Các mode lossless tối ưu bộ nhớ không giữ tập kết quả trong RAM */
+    private boolean keepAll() {
+        return pruningMode != PruningMode.FAST && !depthFirst();
+    }
 
-            for (Itemset x : Lk) I0.addAll(x.getItems());
-            Lprev = Lk;
-            k++;
+    /** Các mode duyệt sâu trên TID-index (không theo mức, không checkpoint) */
+    private boolean depthFirst() {
+        return pruningMode == PruningMode.DEPTH_FIRST || pruningMode == PruningMode.EXACT
+                || pruningMode == PruningMode.CLOSED || pruningMode == PruningMode.MAXIMAL;
+    }
+
+    /* TOP-K */
+
+    // dựng lại ScoreCheck (giải lại các ngưỡng μ) khi score thứ k vượt ngưỡng cắt tỉa hiện tại hơn 1%
+    // và đã duyệt thêm ít nhất max(TOPK_REBUILD_MIN, 1/TOPK_REBUILD_DIV số ứng viên tới lúc đó):
+    // số lần dựng lại chỉ tăng theo log số ứng viên
+    private static final double TOPK_RAISE = 1.01;
+    private static final long TOPK_REBUILD_MIN = 512;
+    private static final long TOPK_REBUILD_DIV = 4;
+
+    /**
+     * k itemset có score = avgWeight * tail(μ) cao nhất (không dùng ngưỡng T của config), duyệt sâu trên
+     * TID-index như DEPTH_FIRST (mọi itemset, |X| <= MAX_K). Min-heap giữ k itemset tốt nhất; khi heap
+     * đầy, score thứ k thành ngưỡng T của UB-score / cận weight / dừng sớm khi giao nên cây duyệt hẹp
+     * dần (lossless: itemset nào vào được top-k đều có score > score thứ k hiện tại).
+     * Ngưỡng ban đầu là score thứ k của các 1-itemset (0 nếu chưa đủ k), item có score cao duyệt trước.
+     * File kết quả theo score giảm dần (bằng nhau: itemset tìm thấy trước đứng trước).
+     */
+    public List<Itemset> mineTopK(int k, String outputPath) {
+        if (k <= 0) throw new IllegalArgumentException("k phải > 0");
+        if (pruningMode == PruningMode.EXACT || pruningMode == PruningMode.CLOSED
+                || pruningMode == PruningMode.MAXIMAL || incremental) {
+            throw new IllegalStateException("Top-k không hỗ trợ mode " + pruningMode + " / incremental");
         }
+        TopKReport report = new TopKReport();
+        lastReport = report;
 
-        closeWriter();
+        long startNs = System.nanoTime();
+        JvmCounters jvm = startCounters();
+        CostHistogram hist = instrument ? new CostHistogram() : null;
+        MiningLevelEvent event = new MiningLevelEvent();
+        event.begin();
 
-        lastReport.totalPatterns = totalPatterns;
-        lastReport.runtimeMs = (System.nanoTime() - startNs) / 1_000_000;
-        lastReport.peakMemoryMB = peakMemBytes / (1024 * 1024);
+        this.outputPath = outputPath;
+        this.checkpointPath = null;
+        initWriter(0L);
+        try {
+            ItemDictionary dict = db.getDictionary();
+            int[] universe = collectUniverse(db);
+            final boolean needVar = (model != null && model.needsVariance());
+            double[] mu1 = new double[dict.size()];
+            double[] sq1 = needVar ? new double[dict.size()] : null;
+            for (int pos = 0, end = db.occurrences(); pos < end; pos++) {
+                double p = db.probAt(pos);
+                mu1[db.itemAt(pos)] += p;
+                if (sq1 != null) sq1[db.itemAt(pos)] += p * p;
+            }
 
-        return all;
+            ScoreCheck base = new ScoreCheck(dict, universe, maxWeight(dict, universe), model, lastReport, config, 0.0);
+            double[] singleScore = new double[dict.size()];
+            TopKCollector top = new TopKCollector(k);
+            for (int i : universe) {
+                Itemset X = new Itemset(dict, i);
+                double var = (sq1 != null) ? Math.max(0.0, mu1[i] - sq1[i]) : 0.0;
+                singleScore[i] = base.score(X, mu1[i], var);
+                top.offer(X, mu1[i], singleScore[i]);
+            }
+            lastReport.candidatesByK.put(1, universe.length);
+            lastReport.evaluatedByK.put(1, universe.length);
+            lastReport.totalCandidates = lastReport.totalEvaluated = universe.length;
+
+            // duyệt item có score (rồi μ) lớn trước: itemset score cao được tìm sớm, ngưỡng lên nhanh
+            int[] order = Arrays.stream(universe).boxed()
+                    .sorted(Comparator.<Integer>comparingDouble(i -> -singleScore[i]).thenComparingDouble(i -> -mu1[i]))
+                    .mapToInt(Integer::intValue).toArray();
+
+            TidIndex tidIndex = (indexSource != null) ? indexSource.get() : TidIndex.build(db);
+            lastReport.denseItems = tidIndex.denseCount();
+            ScoreCheck check = base.withThreshold(top.threshold());
+            int[] items = Arrays.stream(order).filter(i -> check.extendableByMaxW(mu1[i])).toArray();
+            check.restrictTo(items);
+            DepthFirstEngine engine = new DepthFirstEngine(tidIndex, dict, check, null, hist, lastReport);
+
+            ScoreCheck[] current = {check};
+            long[] lastRebuild = {lastReport.totalCandidates};
+            engine.run(items, (X, mu, score) -> {
+                top.offer(X, mu, score);
+                double t = top.threshold();
+                long seen = lastReport.totalCandidates;
+                long gap = Math.max(TOPK_REBUILD_MIN, lastRebuild[0] / TOPK_REBUILD_DIV);
+                if (t > current[0].T * TOPK_RAISE && seen - lastRebuild[0] >= gap) {
+                    current[0] = current[0].withThreshold(t);
+                    lastRebuild[0] = seen;
+                    engine.useCheck(current[0]);
+                }
+            });
+            long searchNs = System.nanoTime() - startNs;
+
+            long writeStart = System.nanoTime();
+            List<Itemset> result = new ArrayList<>(k);
+            for (TopKCollector.Entry e : top.sorted()) {
+                resultWriter.write(e.itemset, e.mu, e.score);
+                result.add(e.itemset);
+                lastReport.patternsByK.merge(e.itemset.size(), 1, Integer::sum);
+            }
+            finishOutput();
+            long writeNs = System.nanoTime() - writeStart;
+
+            report.threshold = top.threshold();
+            commitLevel(event, 0, lastReport.totalCandidates, lastReport.totalEvaluated, result.size(), 0L, searchNs, writeNs);
+            finishReport(current[0], result.size(), startNs, jvm, hist);
+            return result;
+        } finally {
+            closeWriter();
+        }
     }
 
     /* RESUME METHODS */
 
-    private void loadExistingResults() {
-        File file = new File(outputPath);
-        if (!file.exists()) return;
+    private long runFingerprint() {
+        if (fingerprint == null) fingerprint = LevelCheckpoint.fingerprint(db, pruningMode, config, model, outputFormat);
+        return fingerprint;
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                existedResults.add(line.trim());
-            }
-            System.out.println("[INFO] Loaded " + existedResults.size() + " existing itemsets.");
-        } catch (IOException e) {
-            e.printStackTrace();
+    /** Checkpoint của đúng lần chạy này (cùng DB, mode, tham số) nếu có, ngược lại null */
+    private LevelCheckpoint loadCheckpoint() {
+        if (checkpointPath == null || !new File(checkpointPath).isFile()) return null;
+        LevelCheckpoint ckpt = LevelCheckpoint.loadIfMatches(checkpointPath, runFingerprint());
+        if (ckpt != null && new File(outputPath).length() < ckpt.outputLength) ckpt = null; // file kết quả bị cắt/xoá
+        if (ckpt == null) {
+            System.out.println("[WARN] Checkpoint không khớp lần chạy này, khai thác lại từ đầu.");
+            return null;
         }
+        System.out.println("[INFO] Resume from checkpoint: level " + ckpt.level + " done, "
+                + ckpt.totalPatterns + " patterns in output.");
+        return ckpt;
     }
 
-    private void initWriter() {
+    /** Sau mức level: flush file kết quả rồi lưu trạng thái để chạy tiếp từ level + 1 */
+    private void saveCheckpoint(int level, int totalPatterns, ScoreCheck check, Set<Itemset> Lk, List<Itemset> Fk,
+                                SubsetFilter subsets, Map<Itemset, Double> muMap, ItemOrder I0) {
+        if (checkpointPath == null) return;
         try {
-            resultWriter = new BufferedWriter(new FileWriter(outputPath, true));
+            long outputLength = resultWriter.flush();
+            LevelCheckpoint.save(checkpointPath, runFingerprint(), level, outputLength, totalPatterns,
+                    check.stopped.sum(), lastReport, Lk, Fk, subsets.dead(level - 1), muMap, I0);
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            System.out.println("[WARN] Không ghi được checkpoint, tắt checkpoint: " + e.getMessage());
+            checkpointPath = null;
         }
     }
 
-    private long writeCount = 0;
-
-    private void writeResult(Itemset X) {
+    /**
+     * @param keepBytes > 0: chạy tiếp, giữ đúng keepBytes byte đầu (các mức đã xong) rồi ghi nối;
+     *                  0: ghi mới
+     */
+    private void initWriter(long keepBytes) {
         try {
-            String key = X.toString();
-            if (!existedResults.contains(key)) {
-                resultWriter.write(key);
-                resultWriter.newLine();
-                existedResults.add(key);
-
-                writeCount++;
-                if (writeCount % 5000 == 0) resultWriter.flush();
-            }
+            resultWriter = new ResultWriter(outputPath, outputFormat, db.getDictionary(), keepBytes);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new RuntimeException(e);
         }
     }
 
+    /** Đóng file kết quả; chạy xong trọn vẹn thì checkpoint không còn cần */
+    private void finishOutput() {
+        closeWriter();
+        if (checkpointPath != null) new File(checkpointPath).delete();
+    }
+
+    /** Đóng file kết quả nếu còn mở (gọi lại sau finishOutput() không làm gì) */
     private void closeWriter() {
-        try {
-            if (resultWriter != null) resultWriter.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        ResultWriter w = resultWriter;
+        resultWriter = null;
+        if (w != null) w.close();
     }
 
-    private static SortedSet<Item> collectUniverse(UncertainDatabase db) {
-        SortedSet<Item> set = new TreeSet<>();
-        for (Transaction t : db.getTransactions()) {
-            set.addAll(t.getItems());
+    /** Các ID item có mặt trong DB, tăng dần */
+    static int[] collectUniverse(UncertainDatabase db) {
+        ItemDictionary dict = db.getDictionary();
+        boolean[] seen = new boolean[dict.size()];
+        int count = 0;
+        for (int pos = 0, end = db.occurrences(); pos < end; pos++) {
+            int id = db.itemAt(pos);
+            if (!seen[id]) { seen[id] = true; count++; }
         }
-        return set;
+        int[] ids = new int[count];
+        int j = 0;
+        for (int id = 0; id < seen.length; id++) if (seen[id]) ids[j++] = id;
+        return ids;
     }
 
-    private static Set<Itemset> generateCandidatesWithPruning(
-            Set<Itemset> Lprev,
-            SortedSet<Item> universe,
-            Set<Item> I0,
-            Map<Itemset, Double> muMap,
-            Map<Item, Double> mu1,
-            double muHat,
-            int n,
-            PruningMode mode,
-            double maxW
-    ) {
-        Set<Itemset> Ck = new LinkedHashSet<>();
+    /** Tập ID giữ thứ tự chèn (thay LinkedHashSet<Item>) */
+    static final class ItemOrder {
+        private final boolean[] member;
+        private int[] order = new int[16];
+        private int size;
 
-        final boolean useWeight = (mode == PruningMode.WEIGHT_ONLY || mode == PruningMode.ALL || mode == PruningMode.FAST);
-        final boolean useMuHat  = (mode == PruningMode.MUHAT_ONLY  || mode == PruningMode.ALL || mode == PruningMode.FAST);
-        final boolean useApprox = (mode == PruningMode.APPROX_ONLY || mode == PruningMode.ALL || mode == PruningMode.FAST);
-        final boolean useUbBranch = (mode == PruningMode.FAST);
+        ItemOrder(int universeSize) { member = new boolean[universeSize]; }
 
-        for (Itemset X : Lprev) {
-            double muX = muMap.getOrDefault(X, 0.0);
+        boolean contains(int id) { return member[id]; }
 
-            // UB-score branch pruning (LOSSLESS) - chỉ bật ở FAST
-            if (useUbBranch) {
-                double ubTail = WPFI_Metrics.poissonTailAtLeast(Constants.MSUP, muX);
-                double ubScore = maxW * ubTail;
-                if (ubScore < Constants.T) continue; // prune cả nhánh mở rộng của X
-            }
+        void add(int id) {
+            if (member[id]) return;
+            member[id] = true;
+            if (size == order.length) order = Arrays.copyOf(order, size * 2);
+            order[size++] = id;
+        }
 
-            double minW = X.minItemWeight();
+        void addAll(Itemset X) {
+            for (int j = 0; j < X.size(); j++) add(X.get(j));
+        }
 
-            /* (A) item trong I0 */
-            for (Item I : I0) {
-                if (X.getItems().contains(I)) continue;
+        int size() { return size; }
+        int get(int idx) { return order[idx]; }
+    }
 
-                if (useWeight) {
-                    if (avgWeightAfterUnion(X, I) < Constants.MIN_AVG_WEIGHT) continue;
-                }
+    /**
+     * Kiểm tra tập con cho sinh ứng viên: trạng thái của mọi itemset đã tính μ, 1 LevelTable cho mỗi độ dài.
+     *  - đã tính μ: RESULT (thuộc Lk), EXTENDABLE (thuộc F) hoặc DEAD (không mở rộng được)
+     *  - chưa tính μ (không thuộc Ck của mức nó): không thuộc F nếu có 1 tập con (size-1) không thuộc F
+     *    (μ đơn điệu giảm), kết luận được ghi lại vào bảng (IMPLIED_*); 1-itemset đều đã tính μ
+     * Chỉ giữ bảng của các độ dài >= floor (keepFrom): itemset ngắn hơn coi như có thể thuộc F, nên bộ
+     * nhớ không tăng theo số mức mà vẫn không mất kết quả. Kết luận suy ra (IMPLIED_*) chỉ nhớ tới
+     * memoLimit itemset; đầy thì tập con chưa biết cũng coi như có thể thuộc F (Ck lớn hơn, vẫn đúng).
+     */
+    static final class SubsetFilter {
+        static final int NOT_F = 0, MAYBE_F = 1, IN_L = 2;
+        static final int DEFAULT_MEMO_LIMIT = 1 << 23;
+
+        private final List<LevelTable> tables = new ArrayList<>();   // tables.get(j): itemset dài j + 1
+        private final int memoLimit;
+        private int memo;            // số itemset IMPLIED_* trong các bảng đang giữ
+        long memoSkipped;            // tập con chưa biết không suy ra vì đã đầy memoLimit
+        private int floor = 1;
+        private int[][] scratch = new int[0][];
+
+        SubsetFilter() {
+            this(DEFAULT_MEMO_LIMIT);
+        }
 
-                double muI = mu1.getOrDefault(I, 0.0);
+        SubsetFilter(int memoLimit) {
+            this.memoLimit = memoLimit;
+        }
 
-                if (useMuHat) {
-                    if (Math.min(muX, muI) < muHat) continue;
-                }
+        LevelTable table(int len) {
+            while (tables.size() < len) tables.add(null);
+            LevelTable t = tables.get(len - 1);
+            if (t == null) tables.set(len - 1, t = new LevelTable(len, 1024));
+            return t;
+        }
 
-                if (useApprox) {
-                    if (Constants.ALPHA > 0 && (muX * muI) < (Constants.ALPHA * n * muHat)) continue;
-                }
+        /** Bỏ bảng của các itemset ngắn hơn len */
+        void keepFrom(int len) {
+            floor = Math.max(floor, len);
+            for (int j = 0; j < Math.min(floor - 1, tables.size()); j++) {
+                LevelTable t = tables.get(j);
+                if (t == null) continue;
+                memo -= t.count(LevelTable.IMPLIED_OK) + t.count(LevelTable.IMPLIED_DEAD);
+                tables.set(j, null);
+            }
+        }
+
+        /** Số itemset trong các bảng đang giữ (mọi trạng thái) */
+        long entries() {
+            long n = 0;
+            for (LevelTable t : tables) if (t != null) n += t.size();
+            return n;
+        }
+
+        void add(Itemset X, byte status) { table(X.size()).put(X, status); }
 
-                Ck.add(X.unionWith(I));
+        /** Các itemset dài >= fromLen chắc chắn không thuộc F: đã tính μ (DEAD) hoặc đã suy ra (IMPLIED_DEAD) */
+        List<int[]> dead(int fromLen) {
+            List<int[]> out = new ArrayList<>();
+            for (int j = Math.max(fromLen, 1) - 1; j < tables.size(); j++) {
+                LevelTable t = tables.get(j);
+                if (t == null) continue;
+                out.addAll(t.withStatus(LevelTable.DEAD));
+                out.addAll(t.withStatus(LevelTable.IMPLIED_DEAD));
             }
+            return out;
+        }
 
-            /* (B) item ngoài I0 */
-            for (Item I : universe) {
-                if (X.getItems().contains(I)) continue;
-                if (I0.contains(I)) continue;
+        /** y bỏ vị trí skip: IN_L (thuộc Lk), MAYBE_F (có thể thuộc F) hoặc NOT_F (chắc chắn không thuộc F) */
+        int classify(int[] y, int skip) {
+            if (y.length - 1 < floor) return MAYBE_F;
+            LevelTable t = table(y.length - 1);
+            switch (t.statusWithout(y, skip)) {
+                case LevelTable.RESULT:
+                    return IN_L;
+                case LevelTable.DEAD:
+                case LevelTable.IMPLIED_DEAD:
+                    return NOT_F;
+                case LevelTable.ABSENT:
+                    break;
+                default:
+                    return MAYBE_F;
+            }
+            int len = y.length - 1;
+            if (len == 1) return MAYBE_F;
+            if (memo >= memoLimit) {
+                memoSkipped++;
+                return MAYBE_F;
+            }
 
-                if (useWeight) {
-                    if (I.getWeight() >= minW) continue;
-                    if (avgWeightAfterUnion(X, I) < Constants.MIN_AVG_WEIGHT) continue;
-                }
+            if (scratch.length <= len) scratch = Arrays.copyOf(scratch, len + 1);
+            if (scratch[len] == null) scratch[len] = new int[len];
+            int[] S = scratch[len];
+            for (int j = 0, o = 0; o < len; j++) if (j != skip) S[o++] = y[j];
 
-                double muI = mu1.getOrDefault(I, 0.0);
+            boolean ok = true;
+            for (int d = 0; d < len && ok; d++) ok = classify(S, d) != NOT_F;
+            t.put(y, skip, ok ? LevelTable.IMPLIED_OK : LevelTable.IMPLIED_DEAD);
+            memo++;
+            return ok ? MAYBE_F : NOT_F;
+        }
+    }
 
-                if (useMuHat) {
-                    if (Math.min(muX, muI) < muHat) continue;
+    /**
+     * Sinh Ck: mở rộng mỗi X ∈ Lprev bằng 1 item của F1, giữ Y = X ∪ {I} nếu có cặp cha
+     * (Y \ {y_d} ∈ Lprev, y_d) qua các bộ lọc weight/μ̂/approx của mode (đúng tập ứng viên của cách
+     * mở rộng Lprev × universe cũ), sau đó chỉ Ck được tính μ.
+     * Score = avgWeight * tail(μ) KHÔNG đơn điệu giảm (thêm item nặng làm tăng avgWeight), nên kiểm tra
+     * tập con dùng F = các itemset có maxW * tail(μ) >= T (cận trên, đơn điệu giảm): mọi Y có score >= T
+     * đều có toàn bộ tập con trong F. Tập con (k-1) chưa tính μ (không thuộc C(k-1)) coi như có thể
+     * thuộc F nếu các tập con của nó cũng vậy (SubsetFilter); chỉ tập con chắc chắn không mở rộng được
+     * mới loại Y, nên không mất kết quả.
+     * Mỗi Y chỉ sinh 1 lần, từ cha trong Lprev bỏ item ở vị trí lớn nhất, và item mở rộng phải thuộc F1
+     * ({I} cũng là tập con của Y).
+     *
+     * @param items    các item của F1 (1-itemset mở rộng được), tăng dần
+     * @param subsets  các itemset chắc chắn không mở rộng được (đã tính μ, hoặc suy ra từ tập con)
+     * @param countRules  đếm luật (MiningReport.*RuleHits): thử mọi cặp cha của Y và mọi luật của mode;
+     *                    tắt thì dừng ở luật đầu tiên loại cặp và ở cặp đầu tiên qua bộ lọc
+     * @return Ck theo thứ tự từ điển
+     */
+    static Itemset[] generateCandidatesWithPruning(
+            Set<Itemset> Lprev,
+            int[] items,
+            SubsetFilter subsets,
+            ItemOrder I0,
+            Map<Itemset, Double> muMap,
+            double[] mu1,
+            double muHat,
+            int n,
+            PruningMode mode,
+            ScoreCheck check,
+            boolean countRules
+    ) {
+        final boolean useWeight = (mode == PruningMode.WEIGHT_ONLY || mode == PruningMode.ALL || mode == PruningMode.FAST);
+        final boolean useMuHat  = (mode == PruningMode.MUHAT_ONLY  || mode == PruningMode.ALL || mode == PruningMode.FAST);
+        final boolean useApprox = (mode == PruningMode.APPROX_ONLY || mode == PruningMode.ALL || mode == PruningMode.FAST);
+        final boolean useUbBranch = (mode == PruningMode.FAST);
+        final boolean anyRule = useWeight || useMuHat || useApprox || useUbBranch;
+
+        List<Itemset> ck = new ArrayList<>();
+        if (Lprev.isEmpty()) return new Itemset[0];
+        Itemset[] ps = Lprev.toArray(new Itemset[0]);
+        Arrays.sort(ps);
+        final int k = ps[0].size() + 1;
+        subsets.keepFrom(k - 2);   // bảng k-1 (tập con của Y) và k-2 (suy ra tập con chưa tính μ)
+        int[] y = new int[k];
+        int[] cls = new int[k];
+        // P = Q ∪ {p} (p là item cuối): Y \ {p} = Q ∪ {I} không phụ thuộc p => nhớ theo nhóm cùng tiền tố Q
+        // -1: chưa tra, ngược lại SubsetFilter.classify
+        byte[] byQ = new byte[items.length];
+
+        for (int a = 0; a < ps.length; a++) {
+            Itemset P = ps[a];
+            if (a == 0 || !samePrefix(ps[a - 1], P)) Arrays.fill(byQ, (byte) -1);
+            int p = P.get(k - 2);
+
+            for (int ii = 0; ii < items.length; ii++) {
+                int I = items[ii];
+                int dP = P.indexOf(I);
+                if (dP >= 0) continue;
+                dP = -dP - 1;
+                int dp = (I < p) ? k - 1 : k - 2;   // vị trí của p trong Y
+                for (int j = 0; j < k; j++) y[j] = (j < dP) ? P.get(j) : (j == dP) ? I : P.get(j - 1);
+
+                if (byQ[ii] < 0) byQ[ii] = (byte) subsets.classify(y, dp);
+                if (byQ[ii] == SubsetFilter.NOT_F) {
+                    check.report.subsetPruned++;
+                    continue;
                 }
-
-                if (useApprox) {
-                    if (Constants.ALPHA > 0 && (muX * muI) < (Constants.ALPHA * n * muHat)) continue;
+                if (dp > dP && byQ[ii] == SubsetFilter.IN_L) continue;
+                cls[dp] = byQ[ii];
+
+                // Y đã (sẽ) sinh từ cha trong Lprev bỏ item ở vị trí lớn hơn dP;
+                // Apriori: tập con (k-1) đã tính μ phải mở rộng được (chưa tính: suy từ tập con của nó)
+                boolean dead = false, later = false;
+                for (int d = k - 1; d >= 0 && !dead && !later; d--) {
+                    if (d == dP || d == dp) continue;
+                    cls[d] = subsets.classify(y, d);
+                    dead = cls[d] == SubsetFilter.NOT_F;
+                    later = d > dP && cls[d] == SubsetFilter.IN_L;
+                }
+                if (dead) check.report.subsetPruned++;
+                if (dead || later) continue;
+
+                Itemset Y = P.unionWith(I);
+
+                // FAST: μ_Y <= μ của mọi tập con đã biết μ (ít nhất là P); nếu cả cận weight
+                // của các tập cha của Y cũng không đạt T thì bỏ Y trước khi tính μ
+                if (useUbBranch && check.bound() != null) {
+                    double ubMu = muMap.getOrDefault(P, Double.POSITIVE_INFINITY);
+                    for (int d = 0; d < k; d++) {
+                        Double mu = (d == dP) ? null : muMap.get(Y.without(d));
+                        if (mu != null) ubMu = Math.min(ubMu, mu);
+                    }
+                    if (!check.mayReach(check.bound().maxAvg(Y), ubMu)) {
+                        check.report.boundPruned++;
+                        continue;
+                    }
                 }
 
-                Ck.add(X.unionWith(I));
+                // Có cặp cha (X ∈ Lprev, I) qua bộ lọc của mode không? (đếm luật: thử hết các cặp)
+                boolean inCk = !anyRule;
+                for (int d = dP; d >= 0 && anyRule && (countRules || !inCk); d--) {
+                    if (d < dP && cls[d] != SubsetFilter.IN_L) continue;
+                    Itemset X = (d == dP) ? P : Y.without(d);
+                    inCk |= pairPasses(X, Y.get(d), Y.avgWeight(), I0, muMap, mu1, muHat, n, check,
+                            useWeight, useMuHat, useApprox, useUbBranch, countRules);
+                }
+                if (inCk) ck.add(Y);
             }
         }
-        return Ck;
-    }
 
-    private static double avgWeightAfterUnion(Itemset X, Item I) {
-        double sum = X.avgWeight() * X.size() + I.getWeight();
-        return sum / (X.size() + 1);
+        Itemset[] out = ck.toArray(new Itemset[0]);
+        Arrays.sort(out);
+        return out;
     }
 
-    /* FAST: TID INDEX (LOSSLESS) */
-
-    static class TidIndex {
-        final Map<Item, int[]> tids = new HashMap<>();
-        final Map<Item, double[]> probs = new HashMap<>();
-
-        static TidIndex build(UncertainDatabase db) {
-            TidIndex idx = new TidIndex();
-
-            Map<Item, ArrayList<Integer>> tidList = new HashMap<>();
-            Map<Item, ArrayList<Double>>  pList  = new HashMap<>();
+    /** Cùng (size-1) item đầu */
+    private static boolean samePrefix(Itemset A, Itemset B) {
+        for (int j = 0; j < A.size() - 1; j++) if (A.get(j) != B.get(j)) return false;
+        return true;
+    }
 
-            int tid = 0;
-            for (Transaction t : db.getTransactions()) {
-                for (Item i : t.getItems()) {
-                    tidList.computeIfAbsent(i, k -> new ArrayList<>()).add(tid);
-                    pList.computeIfAbsent(i, k -> new ArrayList<>()).add(t.getProb(i));
-                }
-                tid++;
+    /**
+     * Bộ lọc weight/μ̂/approx cho cặp (X, I), giống hệt cách mở rộng X bằng I trước đây.
+     * countRules: xét mọi luật của mode (không dừng ở luật đầu tiên loại cặp) để bộ đếm của từng luật đúng.
+     */
+    private static boolean pairPasses(
+            Itemset X, int I, double avgY, ItemOrder I0,
+            Map<Itemset, Double> muMap, double[] mu1,
+            double muHat, int n, ScoreCheck check,
+            boolean useWeight, boolean useMuHat, boolean useApprox, boolean useUbBranch, boolean countRules
+    ) {
+        double muX = muMap.getOrDefault(X, 0.0);
+        boolean pass = true;
+
+        // UB-score branch pruning (LOSSLESS) - chỉ bật ở FAST
+        if (useUbBranch) {
+            if (!check.extendableByMaxW(muX)) { // prune cả nhánh mở rộng của X
+                if (!countRules) return false;
+                check.report.ubBranchRuleHits++;
+                pass = false;
+            } else if (!check.mayReach(avgY, muX)) {
+                // μ_{X∪I} <= μ_X: cặp này chỉ sinh được X ∪ I, nên avgW(X ∪ I) * tail(μ_X) là cận của score
+                check.report.branchPruned++;
+                if (!countRules) return false;
+                check.report.ubBranchRuleHits++;
+                pass = false;
             }
+        }
 
-            for (Item i : tidList.keySet()) {
-                ArrayList<Integer> tl = tidList.get(i);
-                ArrayList<Double> pl = pList.get(i);
+        double wI = X.dictionary().weight(I);
 
-                int[] tarr = new int[tl.size()];
-                double[] parr = new double[pl.size()];
-                for (int j = 0; j < tl.size(); j++) {
-                    tarr[j] = tl.get(j);
-                    parr[j] = pl.get(j);
-                }
-                idx.tids.put(i, tarr);
-                idx.probs.put(i, parr);
+        if (useWeight) {
+            // (B) item ngoài I0: chỉ nhận item nhẹ hơn min_w(X)
+            if ((!I0.contains(I) && wI >= X.minItemWeight()) || avgWeightAfterUnion(X, wI) < check.config.minAvgWeight) {
+                if (!countRules) return false;
+                check.report.weightRuleHits++;
+                pass = false;
             }
-            return idx;
         }
 
-        double computeMu(Itemset X) {
-            List<Item> items = new ArrayList<>(X.getItems());
-            if (items.isEmpty()) return 0.0;
-            Collections.sort(items);
+        double muI = mu1[I];
 
-            // base item = item có TID-list ngắn nhất
-            Item base = items.get(0);
-            int minLen = getLen(base);
-            for (Item it : items) {
-                int len = getLen(it);
-                if (len < minLen) { minLen = len; base = it; }
+        if (useMuHat) {
+            if (Math.min(muX, muI) < muHat) {
+                if (!countRules) return false;
+                check.report.muHatRuleHits++;
+                pass = false;
             }
+        }
 
-            int[] baseTids = tids.getOrDefault(base, new int[0]);
-            double[] basePs = probs.getOrDefault(base, new double[0]);
-
-            double mu = 0.0;
-            for (int i = 0; i < baseTids.length; i++) {
-                int tid = baseTids[i];
-                double prod = basePs[i];
-
-                boolean ok = true;
-                for (Item it : items) {
-                    if (it.equals(base)) continue;
-                    int[] tlist = tids.getOrDefault(it, new int[0]);
-                    int pos = Arrays.binarySearch(tlist, tid);
-                    if (pos < 0) { ok = false; break; }
-                    prod *= probs.get(it)[pos];
-                }
-                if (ok) mu += prod;
+        if (useApprox) {
+            if (check.config.alpha > 0 && (muX * muI) < (check.config.alpha * n * muHat)) {
+                if (!countRules) return false;
+                check.report.approxRuleHits++;
+                pass = false;
             }
-            return mu;
         }
 
-        private int getLen(Item it) {
-            return tids.getOrDefault(it, new int[0]).length;
-        }
+        return pass;
+    }
+
+    private static double avgWeightAfterUnion(Itemset X, double wI) {
+        double sum = X.avgWeight() * X.size() + wI;
+        return sum / (X.size() + 1);
     }
-}
\ No newline at end of file
+}
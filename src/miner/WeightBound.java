@@ -0,0 +1,61 @@
+package miner;
+
+import entity.ItemDictionary;
+import entity.Itemset;
+
+import java.util.Arrays;
+
+/**
+ * Cận trên avgWeight của mọi tập cha Y ⊇ X dựng từ một tập item cho trước (|Y| <= maxK),
+ * thay cho maxW toàn cục trong UB-score: maxAvg(X) * tail(μ_X) < T thì không Y nào đạt T.
+ * Với mỗi số item thêm vào, tốt nhất là lấy các item nặng nhất; trung bình tăng khi item
+ * kế tiếp còn nặng hơn trung bình hiện tại, nên chỉ cần thêm tham lam theo weight giảm dần.
+ */
+final class WeightBound {
+
+    private final int[] ids;         // item của tập, weight giảm dần
+    private final double[] weights;
+    private final int maxK;          // <= 0: không giới hạn
+
+    WeightBound(ItemDictionary dict, int[] items, int maxK) {
+        Integer[] order = new Integer[items.length];
+        for (int a = 0; a < items.length; a++) order[a] = items[a];
+        Arrays.sort(order, (x, y) -> Double.compare(dict.weight(y), dict.weight(x)));
+
+        this.ids = new int[items.length];
+        this.weights = new double[items.length];
+        for (int a = 0; a < items.length; a++) {
+            ids[a] = order[a];
+            weights[a] = dict.weight(order[a]);
+        }
+        this.maxK = maxK;
+    }
+
+    /** Weight lớn nhất trong tập (cận của itemset chưa có item nào) */
+    double maxWeight() {
+        return (weights.length > 0) ? weights[0] : 0.0;
+    }
+
+    /** max avgWeight(Y) với Y ⊇ X, Y \ X lấy từ tập item, |Y| <= maxK */
+    double maxAvg(Itemset X) {
+        return maxAvg(X, -1, 0.0);
+    }
+
+    /** Như trên cho X ∪ {extra} (extra < 0: không có), không cần tạo Itemset */
+    double maxAvg(Itemset X, int extra, double extraWeight) {
+        double weightSum = X.weightSum() + (extra >= 0 ? extraWeight : 0.0);
+        int size = X.size() + (extra >= 0 ? 1 : 0);
+        double avg = weightSum / size;
+        for (int a = 0; a < ids.length; a++) {
+            if (maxK > 0 && size >= maxK) break;
+            double w = weights[a];
+            if (w <= avg) break;
+            if (ids[a] == extra || X.contains(ids[a])) continue;
+            weightSum += w;
+            size++;
+            avg = weightSum / size;
+        }
+        // avgWeight của Itemset cộng theo thứ tự ID: nới 1 chút để không nhỏ hơn do làm tròn
+        return avg * (1 + 1e-12);
+    }
+}
@@ -1,8 +1,6 @@
 package miner;
 
-import entity.Item;
 import entity.Itemset;
-import util.Constants;
 
 /**
  * Chiến lược cắt tỉa theo trọng số (Weight-based pruning).
@@ -14,30 +12,30 @@ import util.Constants;
 public class WeightPruning implements PruningStrategy {
 
     private final boolean debug;
+    private final double minAvgWeight;
 
-    public WeightPruning() {
-        this(false);
-    }
-
-    public WeightPruning(boolean debug) {
+    public WeightPruning(double minAvgWeight, boolean debug) {
+        this.minAvgWeight = minAvgWeight;
         this.debug = debug;
     }
 
     @Override
-    public boolean shouldPrune(Itemset X, Item i, double muX, double muI) {
+    public boolean shouldPrune(Itemset X, int i, double muX, double muI) {
+        double wi = X.dictionary().weight(i);
+
         // (1) Quy tắc weight pruning cơ bản
-        if (i.getWeight() >= X.minItemWeight()) {
+        if (wi >= X.minItemWeight()) {
             if (debug) {
-                System.out.printf("[PRUNE-W] %s weight >= min(X) => prune%n", i.getName());
+                System.out.printf("[PRUNE-W] %s weight >= min(X) => prune%n", X.dictionary().name(i));
             }
             return true;
         }
 
         // (2) Quy tắc trọng số trung bình
-        double newAvgW = (X.avgWeight() * X.size() + i.getWeight()) / (X.size() + 1);
-        if (newAvgW < Constants.MIN_AVG_WEIGHT) {
+        double newAvgW = (X.avgWeight() * X.size() + wi) / (X.size() + 1);
+        if (newAvgW < minAvgWeight) {
             if (debug) {
-                System.out.printf("[PRUNE-WAVG] %s avgW=%.3f < MIN_AVG_WEIGHT%n", i.getName(), newAvgW);
+                System.out.printf("[PRUNE-WAVG] %s avgW=%.3f < MIN_AVG_WEIGHT%n", X.dictionary().name(i), newAvgW);
             }
             return true;
         }
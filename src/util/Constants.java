@@ -21,4 +21,7 @@ public class Constants {
 
     /** Max itemset size: 0/-1 = không giới hạn */
     public static int MAX_K = 3;
+
+    /** Số thread tính μ cho Ck mỗi mức (1 = tuần tự) */
+    public static int THREADS = 1;
 }
@@ -0,0 +1,64 @@
+package util;
+
+import java.util.Locale;
+
+/**
+ * Tham số của 1 lần khai thác (bất biến). Mỗi miner giữ config riêng từ lúc tạo, nên nhiều job với
+ * tham số khác nhau chạy song song trong cùng JVM không ảnh hưởng nhau. Constants chỉ còn là giá trị
+ * mặc định mà CLI đặt (fromConstants() chụp lại tại thời điểm gọi).
+ * Ý nghĩa các trường như Constants (maxK <= 0: không giới hạn).
+ */
+public final class MiningConfig {
+
+    public final int msup;
+    public final double t;
+    public final double alpha;
+    public final double minAvgWeight;
+    public final int maxK;
+    public final int threads;
+
+    public MiningConfig(int msup, double t, double alpha, double minAvgWeight, int maxK, int threads) {
+        this.msup = msup;
+        this.t = t;
+        this.alpha = alpha;
+        this.minAvgWeight = minAvgWeight;
+        this.maxK = maxK;
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Giá trị hiện tại của Constants */
+    public static MiningConfig fromConstants() {
+        return new MiningConfig(Constants.MSUP, Constants.T, Constants.ALPHA, Constants.MIN_AVG_WEIGHT,
+                Constants.MAX_K, Constants.THREADS);
+    }
+
+    public MiningConfig withMsup(int msup) {
+        return new MiningConfig(msup, t, alpha, minAvgWeight, maxK, threads);
+    }
+
+    public MiningConfig withT(double t) {
+        return new MiningConfig(msup, t, alpha, minAvgWeight, maxK, threads);
+    }
+
+    public MiningConfig withAlpha(double alpha) {
+        return new MiningConfig(msup, t, alpha, minAvgWeight, maxK, threads);
+    }
+
+    public MiningConfig withMinAvgWeight(double minAvgWeight) {
+        return new MiningConfig(msup, t, alpha, minAvgWeight, maxK, threads);
+    }
+
+    public MiningConfig withMaxK(int maxK) {
+        return new MiningConfig(msup, t, alpha, minAvgWeight, maxK, threads);
+    }
+
+    public MiningConfig withThreads(int threads) {
+        return new MiningConfig(msup, t, alpha, minAvgWeight, maxK, threads);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "MSUP=%d | T=%s | ALPHA=%s | MIN_W=%s | MAX_K=%d | THREADS=%d",
+                msup, t, alpha, minAvgWeight, maxK, threads);
+    }
+}
@@ -0,0 +1,126 @@
+package util;
+
+/**
+ * Đảo ngưỡng factor * tail(μ) >= T thành ngưỡng trên μ (tail Poisson tăng theo μ):
+ * kiểm tra thường chỉ còn 1 phép so sánh thay vì vòng lặp msup lần + Math.exp.
+ *
+ * poissonTailAtLeast bắt đầu từ exp(-μ): với μ trong [SUBNORMAL_LO, SUBNORMAL_HI] exp(-μ) là
+ * số subnormal nên tail không còn đơn điệu, còn từ ~745.2 trở lên exp(-μ) = 0 và tail = 1.
+ * Trong vùng đó và sát ngưỡng (±1e-9 tương đối) luôn tính trực tiếp, nên kết quả giống hệt
+ * factor * poissonTailAtLeast(msup, μ) >= T.
+ */
+public final class TailThreshold {
+
+    public static final double SUBNORMAL_LO = 700.0;
+    public static final double SUBNORMAL_HI = 746.0;
+
+    private final int msup;
+    private final double factor;
+    private final double T;
+    private final boolean exactOnly;   // tham số suy biến: luôn tính trực tiếp
+    private final double lo, hi;       // [lo, hi): sát ngưỡng, tính trực tiếp
+
+    public TailThreshold(int msup, double factor, double T) {
+        this.msup = msup;
+        this.factor = factor;
+        this.T = T;
+
+        double rhs = T / factor;
+        exactOnly = !(factor > 0) || !(rhs > 0) || msup <= 0;
+        if (exactOnly) {
+            lo = hi = Double.NEGATIVE_INFINITY;
+        } else if (rhs > 1.0) {
+            // tail <= 1: ngoài vùng subnormal không bao giờ qua
+            lo = hi = Double.POSITIVE_INFINITY;
+        } else if (WPFI_Metrics.poissonTailAtLeast(msup, SUBNORMAL_LO) < rhs) {
+            // không cắt ngưỡng trong vùng đơn điệu: dưới vùng subnormal trượt, trên vùng (tail = 1) qua
+            lo = hi = SUBNORMAL_LO;
+        } else {
+            double mu = solveBelow(msup, rhs);
+            double eps = 1e-9 * Math.max(1.0, mu);
+            lo = mu - eps;
+            hi = mu + eps;
+        }
+    }
+
+    /** Nhị phân trên [0, SUBNORMAL_LO] (tail đơn điệu ở đây), biết tail(SUBNORMAL_LO) >= rhs */
+    private static double solveBelow(int msup, double rhs) {
+        double a = 0.0, b = SUBNORMAL_LO;
+        for (int it = 0; it < 60; it++) {
+            double mid = 0.5 * (a + b);
+            if (WPFI_Metrics.poissonTailAtLeast(msup, mid) >= rhs) b = mid; else a = mid;
+        }
+        return 0.5 * (a + b);
+    }
+
+    private static boolean inSubnormalZone(double mu) {
+        return mu >= SUBNORMAL_LO && mu <= SUBNORMAL_HI;
+    }
+
+    /** factor * poissonTailAtLeast(msup, μ) >= T */
+    public boolean passes(double mu) {
+        if (exactOnly || (mu >= lo && mu < hi) || inSubnormalZone(mu)) {
+            return factor * WPFI_Metrics.poissonTailAtLeast(msup, mu) >= T;
+        }
+        return mu >= hi;
+    }
+
+    /** Mọi μ < floor() đều không qua (dùng để dừng sớm khi tính μ) */
+    public double floor() {
+        return exactOnly ? Double.NEGATIVE_INFINITY : Math.min(lo, SUBNORMAL_LO);
+    }
+
+    /**
+     * Bảng ngưỡng theo weight cho w * tail(μ) >= T với w trong [wMin, wMax]:
+     * chia thành các khoảng đều, mỗi biên có 1 TailThreshold (tính lười).
+     * Weight lớn hơn => ngưỡng μ nhỏ hơn, nên μ trên ngưỡng của biên dưới chắc chắn qua,
+     * dưới ngưỡng của biên trên chắc chắn trượt; ở giữa mới tính trực tiếp.
+     */
+    public static final class Table {
+        private final int msup;
+        private final double T;
+        private final double wMin, step;
+        private final TailThreshold[] edges;
+
+        public Table(int msup, double T, double wMin, double wMax, int buckets) {
+            this.msup = msup;
+            this.T = T;
+            this.wMin = wMin;
+            this.step = (wMax > wMin) ? (wMax - wMin) / buckets : 0.0;
+            this.edges = new TailThreshold[(step > 0) ? buckets + 1 : 1];
+        }
+
+        private TailThreshold edge(int b) {
+            TailThreshold t = edges[b];
+            if (t == null) {
+                t = new TailThreshold(msup, wMin + b * step, T);
+                edges[b] = t;
+            }
+            return t;
+        }
+
+        private int bucket(double w) {
+            if (step == 0) return -1;
+            int b = (int) ((w - wMin) / step);
+            return (b < 0 || b >= edges.length - 1) ? -1 : b;
+        }
+
+        /** w * poissonTailAtLeast(msup, μ) >= T */
+        public boolean passes(double w, double mu) {
+            int b = bucket(w);
+            if (b < 0 || inSubnormalZone(mu)) {
+                return w * WPFI_Metrics.poissonTailAtLeast(msup, mu) >= T;
+            }
+            TailThreshold low = edge(b), high = edge(b + 1);
+            if (!low.exactOnly && mu >= low.hi) return true;
+            if (mu < high.floor()) return false;
+            return w * WPFI_Metrics.poissonTailAtLeast(msup, mu) >= T;
+        }
+
+        /** Mọi μ < floor(w) đều không qua */
+        public double floor(double w) {
+            int b = bucket(w);
+            return (b < 0) ? Double.NEGATIVE_INFINITY : edge(b + 1).floor();
+        }
+    }
+}
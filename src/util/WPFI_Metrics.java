@@ -1,9 +1,11 @@
 package util;
 
-import entity.Item;
+import db.UncertainDatabase;
+import entity.ItemDictionary;
 import entity.Itemset;
 import entity.Transaction;
 
+import java.util.Arrays;
 import java.util.List;
 
 public class WPFI_Metrics {
@@ -27,11 +29,57 @@ public class WPFI_Metrics {
         return v;
     }
 
+    /** μ_X trên CSR: duyệt tuần tự 3 mảng phẳng, không tra hash */
+    public static double computeMu(Itemset X, UncertainDatabase db) {
+        return computeMu(X, db, 0, db.size());
+    }
+
+    /** μ_X trên các dòng [fromRow, toRow) */
+    public static double computeMu(Itemset X, UncertainDatabase db, int fromRow, int toRow) {
+        UncertainDatabase.Cursor c = db.cursor();
+        double mu = 0.0;
+        for (int r = fromRow; r < toRow; r++) mu += probOfItemsetInRow(c.seek(r), X);
+        return mu;
+    }
+
+    /** σ²_X trên CSR */
+    public static double computeVar(Itemset X, UncertainDatabase db) {
+        return computeMoments(X, db)[1];
+    }
+
+    /** {μ_X, σ²_X} trong cùng 1 lần quét CSR (σ² = μ - Σp²) */
+    public static double[] computeMoments(Itemset X, UncertainDatabase db) {
+        UncertainDatabase.Cursor c = db.cursor();
+        double mu = 0.0, sq = 0.0;
+        for (int r = 0, n = db.size(); r < n; r++) {
+            double p = probOfItemsetInRow(c.seek(r), X);
+            mu += p;
+            sq += p * p;
+        }
+        return new double[]{mu, Math.max(0.0, mu - sq)};
+    }
+
+    /**
+     * Pr(X⊆t) với t là dòng cursor vừa seek tới.
+     * Dòng CSR và X đều tăng dần theo ID nên chỉ cần 1 lần merge.
+     */
+    public static double probOfItemsetInRow(UncertainDatabase.Cursor row, Itemset X) {
+        double p = 1.0;
+        for (int k = 0; k < X.size(); k++) {
+            if (!row.advanceTo(X.get(k))) return 0.0;
+            double pi = row.prob();
+            if (pi == 0.0) return 0.0;
+            p *= pi;
+        }
+        return p;
+    }
+
     /** Giả định độc lập item trong 1 giao dịch: Pr(X⊆t) = ∏ p(i|t) */
     public static double probOfItemsetInTransaction(Transaction t, Itemset X) {
+        ItemDictionary dict = X.dictionary();
         double p = 1.0;
-        for (Item i : X.getItems()) {
-            double pi = t.getProb(i);
+        for (int k = 0; k < X.size(); k++) {
+            double pi = t.getProb(dict.item(X.get(k)));
             if (pi == 0.0) return 0.0;
             p *= pi;
         }
@@ -71,23 +119,226 @@ public class WPFI_Metrics {
         return 0.5 * (lo + hi);
     }
 
-    /* DP exact cho tail Poisson-Binomial */
+    /**
+     * Tail Poisson ổn định số học: cộng pmf từ msup ra xa (log-pmf tại msup tính bằng logFactorial),
+     * không bắt đầu từ exp(-μ) nên không bị subnormal/underflow khi μ lớn.
+     */
+    public static double poissonTailAtLeastStable(int msup, double mu) {
+        if (msup <= 0) return 1.0;
+        if (!(mu > 0)) return 0.0;
+
+        if (msup > mu) {
+            // P(X >= msup) = Σ_{k>=msup} pmf(k), pmf(k+1) = pmf(k) * μ/(k+1) giảm dần
+            double term = Math.exp(-mu + msup * Math.log(mu) - logFactorial(msup));
+            double sum = 0.0;
+            for (int k = msup; term > 0 && term > sum * 1e-17; k++) {
+                sum += term;
+                term *= mu / (k + 1);
+            }
+            return Math.min(1.0, sum);
+        }
+        // P(X >= msup) = 1 - Σ_{k<msup} pmf(k), pmf(k-1) = pmf(k) * k/μ giảm dần
+        int top = msup - 1;
+        double term = Math.exp(-mu + top * Math.log(mu) - logFactorial(top));
+        double sum = 0.0;
+        for (int k = top; k >= 0 && term > 0 && term > sum * 1e-17; k--) {
+            sum += term;
+            term *= k / mu;
+        }
+        return Math.max(0.0, 1.0 - sum);
+    }
+
+    /** ln(m!), cộng trực tiếp khi m nhỏ, Stirling khi m lớn */
+    public static double logFactorial(int m) {
+        if (m < 2) return 0.0;
+        if (m < 256) {
+            double s = 0.0;
+            for (int i = 2; i <= m; i++) s += Math.log(i);
+            return s;
+        }
+        double x = m, x2 = x * x;
+        return x * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI * x)
+                + 1.0 / (12 * x) - 1.0 / (360 * x * x2) + 1.0 / (1260 * x2 * x2 * x);
+    }
+
+    /* Normal (CLT) */
+
+    /**
+     * Pr(S >= msup) ≈ Pr(N(μ, σ²) >= msup - 0.5) (hiệu chỉnh liên tục).
+     * σ² = 0: S không ngẫu nhiên (mọi p bằng 0 hoặc 1) nên tail = [μ >= msup].
+     */
+    public static double normalTailAtLeast(int msup, double mu, double var) {
+        if (msup <= 0) return 1.0;
+        if (!(var > 0)) return (mu >= msup - 0.5) ? 1.0 : 0.0;
+        return 0.5 * erfc((msup - 0.5 - mu) / Math.sqrt(2.0 * var));
+    }
+
+    /**
+     * Cận trên của normalTailAtLeast cho mọi Y ⊇ X khi chỉ biết μ_X:
+     * μ_Y <= μ_X và σ²_Y = Σp(1-p) <= μ_Y <= μ_X, nên khi msup - 0.5 > μ_X thì
+     * z_Y = (msup - 0.5 - μ_Y) / σ_Y >= (msup - 0.5 - μ_X) / √μ_X. Tăng theo μ_X.
+     */
+    public static double normalTailUpperBound(int msup, double mu) {
+        double c = msup - 0.5;
+        if (msup <= 0 || mu >= c) return 1.0;
+        if (!(mu > 0)) return 0.0;
+        return 0.5 * erfc((c - mu) / Math.sqrt(2.0 * mu));
+    }
+
+    /** erfc(x), xấp xỉ Chebyshev, sai số tương đối < 1.2e-7 (giữ được cả đuôi rất nhỏ) */
+    public static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1.0 / (1.0 + 0.5 * z);
+        double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196
+                + t * (0.09678418 + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398
+                + t * (1.48851587 + t * (-0.82215223 + t * 0.17087277)))))))));
+        return (x >= 0) ? r : 2.0 - r;
+    }
+
+    /* Tail chính xác Poisson-Binomial */
+
+    // bậc cắt cụt lớn hơn mức này thì nhân đa thức bằng chia để trị + FFT thay cho DP
+    private static final int DP_MAX_DEGREE = 64;
+    private static final int LEAF = 32;
 
-    /** DP chính xác Pr(Sup(X) >= msup) từ mảng p[t] = Pr(X⊆T_t). O(n*msup) */
+    /** DP chính xác Pr(Sup(X) >= msup) từ mảng p[t] = Pr(X⊆T_t) */
     public static double dpTailAtLeast(int msup, double[] probs) {
-        int n = probs.length;
-        msup = Math.min(msup, n);
-        double[] dp = new double[msup + 1];
-        dp[0] = 1.0;
-        for (int t = 0; t < n; t++) {
-            double p = probs[t];
-            for (int s = msup; s >= 0; s--) {
-                double stay = dp[s] * (1.0 - p);
-                double go   = (s > 0 ? dp[s - 1] : 0.0) * p;
-                dp[s] = stay + go;
+        return dpTailAtLeast(msup, probs, probs.length);
+    }
+
+    /**
+     * Pr(S >= msup), S = tổng Bernoulli(probs[0..len)). Chỉ cần các p khác 0 (danh sách TID thưa).
+     * Đếm số lần thành công nếu msup - 1 <= len - msup, ngược lại đếm số lần thất bại,
+     * nên DP chỉ giữ min(msup, len - msup + 1) trạng thái. O(len * min(msup, len - msup)).
+     */
+    public static double dpTailAtLeast(int msup, double[] probs, int len) {
+        if (msup <= 0) return 1.0;
+        if (msup > len) return 0.0;
+        boolean failures = (msup - 1 > len - msup);
+        int d = failures ? len - msup : msup - 1;
+        double[] c = new double[d + 1];
+        c[0] = 1.0;
+        int deg = 0;
+        for (int t = 0; t < len; t++) {
+            double p = failures ? 1.0 - probs[t] : probs[t];
+            double q = 1.0 - p;
+            if (deg < d) deg++;
+            for (int s = deg; s > 0; s--) c[s] = c[s] * q + c[s - 1] * p;
+            c[0] *= q;
+        }
+        return finishTail(c, failures);
+    }
+
+    /**
+     * Như dpTailAtLeast nhưng nhân ∏(q_t + p_t z) (cắt ở bậc d) bằng chia để trị, các nửa lớn nhân
+     * qua FFT: O(len log len log d) thay vì O(len * d). Sai số tuyệt đối cỡ 1e-13.
+     */
+    public static double fftTailAtLeast(int msup, double[] probs, int len) {
+        if (msup <= 0) return 1.0;
+        if (msup > len) return 0.0;
+        boolean failures = (msup - 1 > len - msup);
+        int d = failures ? len - msup : msup - 1;
+        return finishTail(productLow(probs, 0, len, d, failures), failures);
+    }
+
+    /** Chọn DP khi bậc cắt cụt nhỏ, FFT khi lớn */
+    public static double poissonBinomialTailAtLeast(int msup, double[] probs, int len) {
+        if (msup <= 0) return 1.0;
+        if (msup > len) return 0.0;
+        int d = Math.min(msup - 1, len - msup);
+        return (d <= DP_MAX_DEGREE) ? dpTailAtLeast(msup, probs, len) : fftTailAtLeast(msup, probs, len);
+    }
+
+    /** c = hệ số thấp của phân phối số thành công (1 - Σ) hoặc số thất bại (Σ) */
+    private static double finishTail(double[] c, boolean failures) {
+        double sum = 0.0;
+        for (double v : c) sum += v;
+        double tail = failures ? sum : 1.0 - sum;
+        return Math.max(0.0, Math.min(1.0, tail));
+    }
+
+    /** Hệ số bậc 0..d của ∏_{t in [lo, hi)} (q_t + p_t z) */
+    private static double[] productLow(double[] probs, int lo, int hi, int d, boolean failures) {
+        if (hi - lo <= LEAF) {
+            int deg = Math.min(d, hi - lo);
+            double[] c = new double[deg + 1];
+            c[0] = 1.0;
+            int cur = 0;
+            for (int t = lo; t < hi; t++) {
+                double p = failures ? 1.0 - probs[t] : probs[t];
+                double q = 1.0 - p;
+                if (cur < deg) cur++;
+                for (int s = cur; s > 0; s--) c[s] = c[s] * q + c[s - 1] * p;
+                c[0] *= q;
+            }
+            return c;
+        }
+        int mid = (lo + hi) >>> 1;
+        return multiplyLow(productLow(probs, lo, mid, d, failures), productLow(probs, mid, hi, d, failures), d);
+    }
+
+    private static double[] multiplyLow(double[] a, double[] b, int d) {
+        int outLen = Math.min(a.length + b.length - 1, d + 1);
+        if ((long) a.length * b.length <= 4096) {
+            double[] c = new double[outLen];
+            for (int i = 0; i < a.length && i < outLen; i++) {
+                for (int j = 0; j < b.length && i + j < outLen; j++) c[i + j] += a[i] * b[j];
+            }
+            return c;
+        }
+
+        int size = 1;
+        while (size < a.length + b.length - 1) size <<= 1;
+        double[] aRe = Arrays.copyOf(a, size), aIm = new double[size];
+        double[] bRe = Arrays.copyOf(b, size), bIm = new double[size];
+        double[] cos = new double[size / 2], sin = new double[size / 2];
+        for (int k = 0; k < size / 2; k++) {
+            double ang = 2 * Math.PI * k / size;
+            cos[k] = Math.cos(ang);
+            sin[k] = Math.sin(ang);
+        }
+        fft(aRe, aIm, cos, sin, false);
+        fft(bRe, bIm, cos, sin, false);
+        for (int k = 0; k < size; k++) {
+            double re = aRe[k] * bRe[k] - aIm[k] * bIm[k];
+            double im = aRe[k] * bIm[k] + aIm[k] * bRe[k];
+            aRe[k] = re;
+            aIm[k] = im;
+        }
+        fft(aRe, aIm, cos, sin, true);
+
+        double[] c = new double[outLen];
+        for (int k = 0; k < outLen; k++) c[k] = Math.max(0.0, aRe[k] / size);
+        return c;
+    }
+
+    /** FFT radix-2 tại chỗ; cos/sin là bảng căn đơn vị của kích thước re.length */
+    private static void fft(double[] re, double[] im, double[] cos, double[] sin, boolean inverse) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) j ^= bit;
+            j ^= bit;
+            if (i < j) {
+                double t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int len = 2; len <= n; len <<= 1) {
+            int half = len >> 1, step = n / len;
+            for (int i = 0; i < n; i += len) {
+                for (int j = 0; j < half; j++) {
+                    double wr = cos[j * step], wi = inverse ? sin[j * step] : -sin[j * step];
+                    int u = i + j, v = u + half;
+                    double vr = re[v] * wr - im[v] * wi;
+                    double vi = re[v] * wi + im[v] * wr;
+                    re[v] = re[u] - vr;
+                    im[v] = im[u] - vi;
+                    re[u] += vr;
+                    im[u] += vi;
+                }
             }
         }
-        return dp[msup];
     }
 
     public static double[] probsPerTransaction(Itemset X, List<Transaction> db) {
@@ -96,4 +347,11 @@ public class WPFI_Metrics {
         for (Transaction t : db) arr[idx++] = probOfItemsetInTransaction(t, X);
         return arr;
     }
+
+    public static double[] probsPerTransaction(Itemset X, UncertainDatabase db) {
+        UncertainDatabase.Cursor c = db.cursor();
+        double[] arr = new double[db.size()];
+        for (int r = 0; r < arr.length; r++) arr[r] = probOfItemsetInRow(c.seek(r), X);
+        return arr;
+    }
 }